@@ -0,0 +1,117 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The BenchmarkData class provides the datasets the benchmarks run on: the records of CrimeLatLonXY.csv, or synthetic
+ * datasets of one or ten million records from a CrimeDataGenerator, along with random query rectangles and points over the city.
+ * Generation is seeded, so every run of a benchmark sees the same records and queries.
+ */
+final class BenchmarkData {
+
+    private static final double MIN_X = CrimeDataGenerator.MIN_X; // The smallest x coordinate of a query
+    private static final double MAX_X = CrimeDataGenerator.MAX_X; // The largest x coordinate of a query
+    private static final double MIN_Y = CrimeDataGenerator.MIN_Y; // The smallest y coordinate of a query
+    private static final double MAX_Y = CrimeDataGenerator.MAX_Y; // The largest y coordinate of a query
+
+    /**
+     * Private constructor, as the class only has static methods.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private BenchmarkData() {
+    }
+
+    /**
+     * Loads or generates the records of a dataset.
+     *
+     * @param dataset "csv" for the file named by the system property crime.csv (CrimeLatLonXY.csv by default),
+     *                or "1M" or "10M" for a synthetic dataset of that many records.
+     * @return A store holding the records.
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: dataset must be one of the names above.
+     *                     Postconditions: None.
+     *                     Time complexity: O(n), where n is the number of records.
+     */
+    static CrimeStore load(String dataset) throws IOException {
+        switch (dataset) {
+            case "csv":
+                return CrimeCsvLoader.loadStore(Path.of(System.getProperty("crime.csv", "CrimeLatLonXY.csv")));
+            case "1M":
+                return new CrimeDataGenerator(1).generate(1_000_000);
+            case "10M":
+                return new CrimeDataGenerator(10).generate(10_000_000);
+            default:
+                throw new IllegalArgumentException("Unknown dataset " + dataset);
+        }
+    }
+
+    /**
+     * Loads or generates a dataset and bulk loads it into a balanced tree.
+     *
+     * @param dataset The name of the dataset, as for load.
+     * @return A balanced tree of the records.
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: dataset must be a valid name.
+     *                     Postconditions: None.
+     *                     Time complexity: O(n log n), where n is the number of records.
+     */
+    static TwoDTree tree(String dataset) throws IOException {
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(load(dataset), true);
+        return tree;
+    }
+
+    /**
+     * Generates random query rectangles covering a given share of the area of the synthetic datasets.
+     *
+     * @param count       The number of rectangles.
+     * @param selectivity The share of the area each rectangle covers, for example 0.01 for one percent.
+     * @param seed        The seed of the generator.
+     * @return The rectangles, each as {x1, y1, x2, y2}.
+     * <p>
+     * Preconditions: 0 < selectivity <= 1.
+     * Postconditions: Every rectangle lies inside the area, with the aspect ratio of the area.
+     * Time complexity: O(q), where q is count.
+     */
+    static double[][] rectangles(int count, double selectivity, long seed) {
+        Random random = new Random(seed);
+        double width = (MAX_X - MIN_X) * Math.sqrt(selectivity);
+        double height = (MAX_Y - MIN_Y) * Math.sqrt(selectivity);
+        double[][] rectangles = new double[count][];
+        for (int i = 0; i < count; i++) {
+            double x = MIN_X + random.nextDouble() * (MAX_X - MIN_X - width);
+            double y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y - height);
+            rectangles[i] = new double[]{x, y, x + width, y + height};
+        }
+        return rectangles;
+    }
+
+    /**
+     * Generates random query points over the area of the synthetic datasets.
+     *
+     * @param count The number of points.
+     * @param seed  The seed of the generator.
+     * @return The points, each as {x, y}.
+     * <p>
+     * Preconditions: count must be non-negative.
+     * Postconditions: None.
+     * Time complexity: O(q), where q is count.
+     */
+    static double[][] points(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new double[]{MIN_X + random.nextDouble() * (MAX_X - MIN_X), MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y)};
+        }
+        return points;
+    }
+}
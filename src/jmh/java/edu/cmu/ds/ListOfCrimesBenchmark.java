@@ -0,0 +1,85 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ListOfCrimesBenchmark class measures building a ListOfCrimes one record at a time and rendering it as KML,
+ * for lists the size of a small, a large and a very large range query result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ListOfCrimesBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size; // The number of records in the list
+
+    private CrimeRecord[] records; // The records to add
+    private ListOfCrimes crimes; // A list of all the records
+
+    /**
+     * Generates the records once per trial.
+     * <p>
+     * Preconditions: size must be positive.
+     * Postconditions: records and crimes are set.
+     * Time complexity: O(s), where s is size.
+     */
+    @Setup(Level.Trial)
+    public void generate() {
+        records = new CrimeDataGenerator(31).generate(size).toArray();
+        crimes = new ListOfCrimes();
+        for (CrimeRecord crimeRecord : records) {
+            crimes.addCrime(crimeRecord);
+        }
+    }
+
+    /**
+     * Builds a list by adding the records one at a time, as a range query does.
+     *
+     * @return The list, so that the build is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(s) amortized.
+     */
+    @Benchmark
+    public ListOfCrimes addCrime() {
+        ListOfCrimes list = new ListOfCrimes();
+        for (CrimeRecord crimeRecord : records) {
+            list.addCrime(crimeRecord);
+        }
+        return list;
+    }
+
+    /**
+     * Renders the list as a KML document.
+     *
+     * @return The document, so that the rendering is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(s).
+     */
+    @Benchmark
+    public String toKML() {
+        return crimes.toKML();
+    }
+}
@@ -0,0 +1,86 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The NearestNeighborBenchmark class measures the latency of nearest neighbor and k nearest neighbor queries from random
+ * points over the area the records are spread over.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NearestNeighborBenchmark {
+
+    private static final int POINTS = 4096; // Number of query points cycled through, a power of two
+
+    @Param({"csv", "1M", "10M"})
+    public String dataset; // The dataset to query
+
+    private TwoDTree tree; // The tree to query
+    private double[][] points; // The query points, each as {x, y}
+    private int next; // Index of the next query point
+
+    /**
+     * Builds the tree and generates the query points once per trial.
+     *
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: dataset must be a valid name.
+     *                     Postconditions: tree and points are set, and TwoDTree logs nothing.
+     *                     Time complexity: O(n log n), where n is the number of records.
+     */
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(TwoDTree.class)).setLevel(ch.qos.logback.classic.Level.OFF);
+        tree = BenchmarkData.tree(dataset);
+        points = BenchmarkData.points(POINTS, 23);
+    }
+
+    /**
+     * Finds the record nearest to the next query point.
+     *
+     * @return The nearest neighbor, so that the query is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(log n) on average.
+     */
+    @Benchmark
+    public Neighbor nearestNeighbor() {
+        return tree.nearestNeighbor(points[next++ & (POINTS - 1)]);
+    }
+
+    /**
+     * Finds the ten records nearest to the next query point.
+     *
+     * @return The neighbors, so that the query is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(log n) on average.
+     */
+    @Benchmark
+    public Neighbor[] kNearest() {
+        return tree.kNearest(points[next++ & (POINTS - 1)], 10);
+    }
+}
@@ -0,0 +1,124 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RangeQueryBenchmark class measures range queries whose rectangles cover a tenth, a hundredth or a thousandth of the area
+ * the records are spread over. Each invocation queries the next of a fixed set of random rectangles, so that the result does not
+ * depend on where a single rectangle happens to fall.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RangeQueryBenchmark {
+
+    private static final int RECTANGLES = 1024; // Number of rectangles cycled through, a power of two
+
+    @Param({"csv", "1M", "10M"})
+    public String dataset; // The dataset to query
+
+    @Param({"0.001", "0.01", "0.1"})
+    public double selectivity; // The share of the area each rectangle covers
+
+    private TwoDTree tree; // The tree to query
+    private double[][] rectangles; // The rectangles, each as {x1, y1, x2, y2}
+    private int next; // Index of the next rectangle
+
+    /**
+     * Builds the tree and generates the rectangles once per trial.
+     *
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: dataset must be a valid name.
+     *                     Postconditions: tree and rectangles are set.
+     *                     Time complexity: O(n log n), where n is the number of records.
+     */
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        tree = BenchmarkData.tree(dataset);
+        rectangles = BenchmarkData.rectangles(RECTANGLES, selectivity, 17);
+    }
+
+    /**
+     * Returns the next rectangle.
+     *
+     * @return The rectangle as {x1, y1, x2, y2}.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: next is advanced.
+     * Time complexity: O(1).
+     */
+    private double[] nextRectangle() {
+        return rectangles[next++ & (RECTANGLES - 1)];
+    }
+
+    /**
+     * Collects the records in a rectangle into a list.
+     *
+     * @return The records, so that the query is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(sqrt(n) + m), where m is the number of matches.
+     */
+    @Benchmark
+    public ListOfCrimes findPointsInRange() {
+        double[] rectangle = nextRectangle();
+        return tree.findPointsInRange(new double[]{rectangle[0], rectangle[1]}, new double[]{rectangle[2], rectangle[3]});
+    }
+
+    /**
+     * Counts the records in a rectangle.
+     *
+     * @return The count, so that the query is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(sqrt(n)).
+     */
+    @Benchmark
+    public int countInRange() {
+        double[] rectangle = nextRectangle();
+        return tree.countInRange(new double[]{rectangle[0], rectangle[1]}, new double[]{rectangle[2], rectangle[3]});
+    }
+
+    /**
+     * Visits the records in a rectangle without collecting them.
+     *
+     * @param blackhole Consumes every record visited.
+     * @return Whether the visit ran to the end.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(sqrt(n) + m), where m is the number of matches.
+     */
+    @Benchmark
+    public boolean visitPointsInRange(Blackhole blackhole) {
+        double[] rectangle = nextRectangle();
+        return tree.visitPointsInRange(new double[]{rectangle[0], rectangle[1]}, new double[]{rectangle[2], rectangle[3]},
+                (x, y, crimeRecord) -> {
+                    blackhole.consume(crimeRecord);
+                    return true;
+                });
+    }
+}
@@ -0,0 +1,112 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import ch.qos.logback.classic.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TraversalBenchmark class measures the inorder and preorder traversals of a whole tree.
+ * The tree's logger is switched off, so the benchmark measures the walk and the logging guards rather than the console.
+ * The level order benchmarks dump the tree to a CSV writer that discards its output, which allocates nothing per record,
+ * so running them with -prof gc shows what the traversal queue and stack allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TraversalBenchmark {
+
+    @Param({"csv", "1M", "10M"})
+    public String dataset; // The dataset to traverse
+
+    private TwoDTree tree; // The tree to traverse
+    private CrimeCsvWriter csv; // A CSV writer that discards its output
+
+    /**
+     * Builds the tree and switches its logger off once per trial.
+     *
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: dataset must be a valid name.
+     *                     Postconditions: tree and csv are set, and TwoDTree logs nothing.
+     *                     Time complexity: O(n log n), where n is the number of records.
+     */
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void build() throws IOException {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(TwoDTree.class)).setLevel(Level.OFF);
+        tree = BenchmarkData.tree(dataset);
+        csv = new CrimeCsvWriter(Writer.nullWriter());
+    }
+
+    /**
+     * Walks the whole tree in order.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n).
+     */
+    @Benchmark
+    public void inorder() {
+        tree.inorder();
+    }
+
+    /**
+     * Walks the whole tree in preorder.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n).
+     */
+    @Benchmark
+    public void preorder() {
+        tree.preorder();
+    }
+
+    /**
+     * Dumps the whole tree in level order to a writer that discards its output.
+     *
+     * @return The number of records written.
+     * @throws IOException Never, as the output is discarded.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: None.
+     *                     Time complexity: O(n).
+     */
+    @Benchmark
+    public long levelOrderDump() throws IOException {
+        return tree.dump(TraversalOrder.LEVEL_ORDER, csv);
+    }
+
+    /**
+     * Dumps the whole tree in reverse level order to a writer that discards its output.
+     *
+     * @return The number of records written.
+     * @throws IOException Never, as the output is discarded.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: None.
+     *                     Time complexity: O(n).
+     */
+    @Benchmark
+    public long reverseLevelOrderDump() throws IOException {
+        return tree.dump(TraversalOrder.REVERSE_LEVEL_ORDER, csv);
+    }
+}
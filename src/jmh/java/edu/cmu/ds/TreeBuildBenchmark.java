@@ -0,0 +1,162 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TreeBuildBenchmark class measures how long it takes to get a balanced tree of crime records: bulk loading a store already
+ * in memory, sequentially and in parallel, parsing the CSV file and bulk loading it, and reading a snapshot of the tree instead.
+ * Each build is timed once per iteration, as a build is long enough to time on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TreeBuildBenchmark {
+
+    @Param({"csv", "1M", "10M"})
+    public String dataset; // The dataset to build from
+
+    private CrimeStore store; // The records to build from
+    private Path directory; // Temporary directory holding the snapshot, and the CSV file of a synthetic dataset
+    private Path csvPath; // The CSV file of the dataset
+    private Path snapshotPath; // A snapshot of the tree of the dataset
+
+    /**
+     * Loads or generates the dataset once per trial, writing a synthetic dataset to a CSV file, and writes a snapshot of its tree.
+     *
+     * @throws IOException If the CSV file cannot be read or a file cannot be written.
+     *                     <p>
+     *                     Preconditions: dataset must be a valid name.
+     *                     Postconditions: store holds the records, csvPath and snapshotPath hold the dataset.
+     *                     Time complexity: O(n log n), where n is the number of records.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        store = BenchmarkData.load(dataset);
+        directory = Files.createTempDirectory("tree-build-benchmark");
+        switch (dataset) {
+            case "csv":
+                csvPath = Path.of(System.getProperty("crime.csv", "CrimeLatLonXY.csv"));
+                break;
+            case "1M":
+                csvPath = directory.resolve("crimes.csv");
+                new CrimeDataGenerator(1).write(1_000_000, csvPath);
+                break;
+            case "10M":
+                csvPath = directory.resolve("crimes.csv");
+                new CrimeDataGenerator(10).write(10_000_000, csvPath);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown dataset " + dataset);
+        }
+        snapshotPath = directory.resolve("crimes.snapshot");
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(store, true);
+        TreeSnapshot.write(tree, snapshotPath, Files.size(csvPath), TreeSnapshot.modified(csvPath), TreeSnapshot.checksum(csvPath));
+    }
+
+    /**
+     * Deletes the files written by load.
+     *
+     * @throws IOException If a file cannot be deleted.
+     *                     <p>
+     *                     Preconditions: load has run.
+     *                     Postconditions: The temporary directory no longer exists.
+     *                     Time complexity: O(1).
+     */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(snapshotPath);
+        Files.deleteIfExists(directory.resolve("crimes.csv"));
+        Files.delete(directory);
+    }
+
+    /**
+     * Builds a balanced tree on the calling thread.
+     *
+     * @return The tree, so that the build is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n log n), where n is the number of records.
+     */
+    @Benchmark
+    public TwoDTree bulkLoad() {
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(store, false);
+        return tree;
+    }
+
+    /**
+     * Builds a balanced tree with the subtrees built in parallel.
+     *
+     * @return The tree, so that the build is not optimized away.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n log n), where n is the number of records.
+     */
+    @Benchmark
+    public TwoDTree bulkLoadParallel() {
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(store, true);
+        return tree;
+    }
+
+    /**
+     * Parses the CSV file and builds a balanced tree with the subtrees built in parallel, as a start without a snapshot does.
+     *
+     * @return The tree, so that the build is not optimized away.
+     * @throws IOException If the CSV file cannot be read.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: None.
+     *                     Time complexity: O(s + n log n), where s is the size of the file and n the number of records.
+     */
+    @Benchmark
+    public TwoDTree loadCsvAndBulkLoad() throws IOException {
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(CrimeCsvLoader.loadStore(csvPath), true);
+        return tree;
+    }
+
+    /**
+     * Reads the tree from its snapshot, as a start with a current snapshot does.
+     *
+     * @return The tree, so that the read is not optimized away.
+     * @throws IOException If the snapshot cannot be read.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: None.
+     *                     Time complexity: O(n + d), where n is the number of records and d the number of distinct text values.
+     */
+    @Benchmark
+    public TwoDTree readSnapshot() throws IOException {
+        TwoDTree tree = TreeSnapshot.read(snapshotPath, csvPath);
+        if (tree == null) {
+            throw new IllegalStateException("Snapshot " + snapshotPath + " is stale");
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,337 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * The BatchQueries class answers large batches of nearest neighbor and range queries against one TwoDTree, spreading them over
+ * a fork-join pool. Each result is stored at the position of its query, so results always come back in input order.
+ * <p>
+ * Optionally the queries are first ordered along a Z-order (Morton) curve through their query points, or the centres of their
+ * rectangles, and each task answers a run of consecutive queries in that order. Neighbouring queries then walk mostly the same
+ * nodes, which are still in the cache of the thread from the previous query.
+ * <p>
+ * Queries only read the tree, so the tree must not be modified while a batch runs; a version published by ConcurrentTwoDTree
+ * never is.
+ */
+public class BatchQueries {
+
+    private static final Logger logger = LoggerUtil.getLogger(BatchQueries.class);
+    private static final int TASK_SIZE = 64; // Runs of at most this many queries are answered by one task instead of being split
+    private static final int CURVE_BITS = 16; // Bits per coordinate of a position on the Z-order curve, 65,536 cells per axis
+
+    private final TwoDTree tree; // The tree the queries are run against
+    private final boolean spatialOrder; // Whether queries are ordered along the Z-order curve before they are split into tasks
+    private final ForkJoinPool pool; // The pool running the tasks
+
+    /**
+     * Constructor to create a batch runner over a tree using the common fork-join pool, without spatial ordering.
+     * On one core, ordering 200k nearest neighbor queries over 1.09M records took as long as answering them unordered, so it is
+     * left to callers that measure a gain on their own hardware.
+     *
+     * @param tree The tree to query.
+     *             <p>
+     *             Preconditions: tree must be non-null and must not be modified while a batch runs.
+     *             Postconditions: A new BatchQueries is created.
+     *             Time complexity: O(1).
+     */
+    public BatchQueries(TwoDTree tree) {
+        this(tree, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor to create a batch runner over a tree.
+     *
+     * @param tree         The tree to query.
+     * @param spatialOrder Whether queries are ordered along a Z-order curve before they are answered.
+     * @param pool         The fork-join pool running the queries; its parallelism decides how many cores are used.
+     *                     <p>
+     *                     Preconditions: tree and pool must be non-null, and the tree must not be modified while a batch runs.
+     *                     Postconditions: A new BatchQueries is created.
+     *                     Time complexity: O(1).
+     */
+    public BatchQueries(TwoDTree tree, boolean spatialOrder, ForkJoinPool pool) {
+        this.tree = tree;
+        this.spatialOrder = spatialOrder;
+        this.pool = pool;
+    }
+
+    /**
+     * Finds the nearest crime record to each of a batch of points.
+     *
+     * @param points The x and y coordinates of each query point.
+     * @return The nearest neighbor of points[i] at index i (with a null record if the tree is empty), and the statistics of the batch.
+     * <p>
+     * Preconditions: points must be non-null and hold valid coordinate arrays.
+     * Postconditions: Each result equals tree.nearestNeighbor(points[i]).
+     * Time complexity: O(q log n / p) on average, where q is the number of queries, n the number of records and p the parallelism.
+     */
+    public Result<Neighbor> nearestNeighbors(double[][] points) {
+        int count = points.length;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = points[i][0];
+            ys[i] = points[i][1];
+        }
+        Neighbor[] results = new Neighbor[count];
+        long start = System.nanoTime();
+        run(xs, ys, results, i -> tree.nearestNeighbor(points[i]));
+        long elapsed = System.nanoTime() - start;
+        long matches = 0;
+        for (Neighbor neighbor : results) {
+            if (neighbor.getCrimeDetails() != null) {
+                matches++;
+            }
+        }
+        return new Result<>(results, stats("nearest neighbor", count, matches, elapsed));
+    }
+
+    /**
+     * Finds the crime records within each of a batch of rectangles.
+     *
+     * @param lowerLefts  The lower left corner of each rectangle.
+     * @param upperRights The upper right corner of each rectangle, upperRights[i] belonging to lowerLefts[i].
+     * @return The records within rectangle i at index i, and the statistics of the batch.
+     * <p>
+     * Preconditions: lowerLefts and upperRights must be non-null, of equal length, and hold valid coordinate arrays.
+     * Postconditions: Each result holds the same records as tree.findPointsInRange(lowerLefts[i], upperRights[i]), in the same order.
+     * Time complexity: O((q sqrt(n) + m) / p), where q is the number of queries, n the number of records, m the total number of matches
+     * and p the parallelism.
+     */
+    public Result<ListOfCrimes> findPointsInRange(double[][] lowerLefts, double[][] upperRights) {
+        int count = lowerLefts.length;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = (lowerLefts[i][0] + upperRights[i][0]) / 2;
+            ys[i] = (lowerLefts[i][1] + upperRights[i][1]) / 2;
+        }
+        ListOfCrimes[] results = new ListOfCrimes[count];
+        long start = System.nanoTime();
+        run(xs, ys, results, i -> tree.findPointsInRange(lowerLefts[i], upperRights[i]));
+        long elapsed = System.nanoTime() - start;
+        long matches = 0;
+        for (ListOfCrimes crimes : results) {
+            matches += crimes.size();
+        }
+        return new Result<>(results, stats("range", count, matches, elapsed));
+    }
+
+    /**
+     * Answers every query of a batch in the pool and stores each result at the index of its query.
+     *
+     * @param xs      The x coordinate representing each query on the Z-order curve.
+     * @param ys      The y coordinate representing each query on the Z-order curve.
+     * @param results The array receiving the result of query i at index i.
+     * @param query   Answers the query with the given index.
+     *                <p>
+     *                Preconditions: xs, ys and results must have the same length.
+     *                Postconditions: results[i] holds the answer to query i for every i.
+     *                Time complexity: O(q log q) to order q queries, plus the queries themselves divided over the pool.
+     */
+    private <T> void run(double[] xs, double[] ys, T[] results, IntFunction<T> query) {
+        if (results.length == 0) {
+            return;
+        }
+        int[] order = spatialOrder ? curveOrder(xs, ys) : identity(results.length);
+        pool.invoke(new QueryTask<>(order, 0, order.length, results, query));
+    }
+
+    /**
+     * Returns the indexes of a batch of queries in their input order.
+     *
+     * @param count The number of queries.
+     * @return The indexes 0 to count - 1.
+     * <p>
+     * Preconditions: count must be non-negative.
+     * Postconditions: None.
+     * Time complexity: O(q), where q is count.
+     */
+    private static int[] identity(int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Orders a batch of query points along a Z-order curve over their bounding box.
+     * Each point is scaled to a grid of 2^CURVE_BITS cells per axis and the bits of its cell coordinates are interleaved;
+     * the curve position and the query index are packed into one long so that a primitive sort orders both.
+     *
+     * @param xs The x coordinate of each query.
+     * @param ys The y coordinate of each query.
+     * @return The query indexes in curve order; queries in the same cell keep their input order.
+     * <p>
+     * Preconditions: xs and ys must have the same non-zero length and hold no NaN values.
+     * Postconditions: None.
+     * Time complexity: O(q log q), where q is the number of queries.
+     */
+    static int[] curveOrder(double[] xs, double[] ys) {
+        int count = xs.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int cells = (1 << CURVE_BITS) - 1;
+        double scaleX = maxX > minX ? cells / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? cells / (maxY - minY) : 0;
+
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int cellX = (int) ((xs[i] - minX) * scaleX);
+            int cellY = (int) ((ys[i] - minY) * scaleY);
+            // 32 bits of curve position above 31 bits of query index
+            keys[i] = ((spreadBits(cellX) | spreadBits(cellY) << 1) << 31) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+        return order;
+    }
+
+    /**
+     * Spreads the low 16 bits of a value to the even bit positions of a long, so that two spread values can be interleaved.
+     *
+     * @param value The value, between 0 and 65,535.
+     * @return The value with a zero bit inserted above each of its bits.
+     * <p>
+     * Preconditions: 0 <= value < 2^16.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static long spreadBits(int value) {
+        long bits = value;
+        bits = (bits | bits << 8) & 0x00FF00FFL;
+        bits = (bits | bits << 4) & 0x0F0F0F0FL;
+        bits = (bits | bits << 2) & 0x33333333L;
+        bits = (bits | bits << 1) & 0x55555555L;
+        return bits;
+    }
+
+    /**
+     * Builds and logs the statistics of a finished batch.
+     *
+     * @param kind         The kind of query, for the log message.
+     * @param queries      The number of queries in the batch.
+     * @param matches      The number of crime records returned by the batch.
+     * @param elapsedNanos The wall-clock time of the batch in nanoseconds.
+     * @return The statistics.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The statistics are logged.
+     * Time complexity: O(1).
+     */
+    private Stats stats(String kind, int queries, long matches, long elapsedNanos) {
+        Stats stats = new Stats(queries, matches, elapsedNanos, pool.getParallelism(), spatialOrder);
+        logger.info("Answered " + queries + " " + kind + " queries in " + elapsedNanos / 1_000_000 + " ms (" + (long) stats.queriesPerSecond()
+                + " queries/s, " + matches + " records, parallelism " + stats.parallelism() + ", spatial order " + spatialOrder + ")");
+        return stats;
+    }
+
+    /**
+     * The Stats record holds the throughput statistics of one batch.
+     *
+     * @param queries          The number of queries in the batch.
+     * @param matches          The number of crime records returned: non-empty nearest neighbors, or records within the rectangles.
+     * @param elapsedNanos     The wall-clock time of the batch in nanoseconds, including ordering the queries.
+     * @param parallelism      The parallelism of the pool that ran the batch.
+     * @param spatiallyOrdered Whether the queries were ordered along the Z-order curve.
+     */
+    public record Stats(int queries, long matches, long elapsedNanos, int parallelism, boolean spatiallyOrdered) {
+
+        /**
+         * Returns the throughput of the batch.
+         *
+         * @return The number of queries answered per second, or 0 if no time was measured.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        public double queriesPerSecond() {
+            return elapsedNanos == 0 ? 0 : queries * 1e9 / elapsedNanos;
+        }
+    }
+
+    /**
+     * The Result record holds the results of one batch, in input order, together with its statistics.
+     *
+     * @param results The result of query i at index i.
+     * @param stats   The statistics of the batch.
+     * @param <T>     The type of a single result.
+     */
+    public record Result<T>(T[] results, Stats stats) {
+    }
+
+    /**
+     * The QueryTask class answers a run of consecutive queries in the batch order, splitting it in halves with fork-join
+     * until a run is short enough to answer on the current thread. Tasks are never serialized, although ForkJoinTask is Serializable.
+     *
+     * @param <T> The type of a single result.
+     */
+    @SuppressWarnings("serial")
+    private static class QueryTask<T> extends RecursiveAction {
+        private final int[] order; // The query indexes in the order they are answered
+        private final int from; // The position in order of the first query of the run (inclusive)
+        private final int to; // The position in order after the last query of the run (exclusive)
+        private final T[] results; // The results, indexed by query
+        private final IntFunction<T> query; // Answers the query with the given index
+
+        /**
+         * Constructor to create a task answering a run of queries.
+         *
+         * @param order   The query indexes in the order they are answered.
+         * @param from    The position of the first query of the run (inclusive).
+         * @param to      The position after the last query of the run (exclusive).
+         * @param results The array receiving the results.
+         * @param query   Answers the query with the given index.
+         *                <p>
+         *                Preconditions: 0 <= from <= to <= order.length.
+         *                Postconditions: A new QueryTask is created.
+         *                Time complexity: O(1), as it only sets the instance variables.
+         */
+        QueryTask(int[] order, int from, int to, T[] results, IntFunction<T> query) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.query = query;
+        }
+
+        /**
+         * Answers the run, either directly or by forking a task for each half.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: The result of every query in the run is stored at its index.
+         * Time complexity: O(r) queries, where r is the length of the run.
+         */
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[order[i]] = query.apply(order[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new QueryTask<>(order, from, middle, results, query), new QueryTask<>(order, middle, to, results, query));
+        }
+    }
+}
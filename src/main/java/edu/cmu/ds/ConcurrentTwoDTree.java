@@ -0,0 +1,323 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The ConcurrentTwoDTree class lets any number of threads query a 2D tree while other threads insert new crime records.
+ * Readers never lock: they work on the current version, an immutable TwoDTree read from a volatile field.
+ * Writers take a lock, build the next version by path copying (only the nodes on the path to each new node are copied,
+ * every other subtree is shared with the previous version) and publish it with a single volatile write.
+ * A reader therefore sees either the version before an insert or the one after it, never a half-inserted node,
+ * and a version it holds stays unchanged however many records are inserted afterwards.
+ * <p>
+ * The records are appended to one CrimeStore owned by this class; each version reads them through a read-only
+ * snapshot of that store (see CrimeStore.snapshot), so publishing a version does not copy any record.
+ * <p>
+ * Deletes publish a version in which the record has left its node, and a node left without records is a tombstone. Rebuilding
+ * subtrees inline, as TwoDTree.delete does, would hold up other writers, so once tombstones make up more than
+ * TwoDTree.COMPACTION_THRESHOLD of the tree it is compacted in the background instead: a compacted copy of one version is built
+ * without holding the lock, then the writes made meanwhile are replayed onto it and the result is published.
+ */
+public class ConcurrentTwoDTree {
+
+    private final Object writeLock = new Object(); // Held by the thread building the next version
+    private final CrimeStore records; // The store writers append to, guarded by writeLock
+    private volatile TwoDTree current; // The published version, never modified once published
+    private CompletableFuture<Void> compaction; // The running background compaction, or null, guarded by writeLock
+    private int[] pendingWrites = new int[16]; // Writes made during the compaction, in order: r for an insert of record r, -(r + 1) for a delete, guarded by writeLock
+    private int pendingCount; // Number of writes in pendingWrites, guarded by writeLock
+
+    /**
+     * Constructor to create an empty concurrent 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new ConcurrentTwoDTree is created whose current version is empty.
+     * Time complexity: O(1).
+     */
+    public ConcurrentTwoDTree() {
+        this(new TwoDTree());
+    }
+
+    /**
+     * Constructor to create a concurrent 2D tree starting from the records of an existing tree, for example one that was just bulk loaded.
+     * The concurrent tree takes over the tree and its store.
+     *
+     * @param tree The tree holding the initial records.
+     *             <p>
+     *             Preconditions: tree must be non-null, and neither it nor its store may be used by the caller afterwards.
+     *             Postconditions: A new ConcurrentTwoDTree is created whose current version holds the records of the tree.
+     *             Time complexity: O(1).
+     */
+    public ConcurrentTwoDTree(TwoDTree tree) {
+        records = tree.getStore();
+        current = tree.withStore(records.snapshot());
+    }
+
+    /**
+     * Returns the current version of the tree, on which any number of queries can be run without locking.
+     * The version is read-only: its insert, delete, update, compact and bulkLoad methods throw UnsupportedOperationException.
+     *
+     * @return The current version.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The returned version never changes, even if records are inserted afterwards.
+     * Time complexity: O(1).
+     */
+    public TwoDTree snapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the number of crime records in the current version.
+     *
+     * @return The number of records.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Finds all crime records within the given range of coordinates in the current version.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return A list of crime records within the given range.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: Returns the matches of one version, even if records are inserted during the query.
+     * Time complexity: O(sqrt(n) + m) for a balanced tree, where n is the number of records and m the number of matches.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight) {
+        return current.findPointsInRange(lowerLeft, upperRight);
+    }
+
+    /**
+     * Finds the nearest crime record to the given point in the current version.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @return The nearest neighbor, or a neighbor with a null record if the tree is empty.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest record of one version, even if records are inserted during the query.
+     * Time complexity: O(log n) on average, where n is the number of records.
+     */
+    public Neighbor nearestNeighbor(double[] coordinates) {
+        return current.nearestNeighbor(coordinates);
+    }
+
+    /**
+     * Inserts a crime record and publishes the version holding it.
+     *
+     * @param coordinates The x and y coordinates of the crime record.
+     * @param crimeRecord The crime record to be inserted.
+     *                    <p>
+     *                    Preconditions: coordinates and crimeRecord must be non-null.
+     *                    Postconditions: The current version holds the record; versions obtained earlier are unchanged.
+     *                    Time complexity: O(h), where h is the height of the tree, plus the wait for other writers.
+     */
+    public void insert(double[] coordinates, CrimeRecord crimeRecord) {
+        synchronized (writeLock) {
+            int record = records.add(crimeRecord);
+            current = current.withInserted(coordinates, record, records.snapshot());
+            logWrite(record);
+        }
+    }
+
+    /**
+     * Inserts a batch of crime records and publishes a single version holding all of them, so readers see either none or all of the batch.
+     *
+     * @param crimeRecords The crime records to insert, at their x and y coordinates.
+     *                     <p>
+     *                     Preconditions: crimeRecords must be non-null and hold no null records.
+     *                     Postconditions: The current version holds the records; versions obtained earlier are unchanged.
+     *                     Time complexity: O(b h), where b is the number of records and h the height of the tree, plus the wait for other writers.
+     */
+    public void insertAll(CrimeRecord[] crimeRecords) {
+        synchronized (writeLock) {
+            int first = records.size();
+            for (CrimeRecord crimeRecord : crimeRecords) {
+                records.add(crimeRecord);
+            }
+            CrimeStore crimeStore = records.snapshot();
+            TwoDTree next = current;
+            for (int i = 0; i < crimeRecords.length; i++) {
+                next = next.withInserted(new double[]{crimeRecords[i].x(), crimeRecords[i].y()}, first + i, crimeStore);
+                logWrite(first + i);
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * Deletes a crime record and publishes the version without it, starting a background compaction if tombstones have piled up.
+     *
+     * @param crimeRecord The crime record to delete, equal to a record in the tree.
+     * @return True if a matching record was found and deleted, false if the current version holds no equal record.
+     * <p>
+     * Preconditions: crimeRecord must be non-null.
+     * Postconditions: The current version no longer holds the record; versions obtained earlier are unchanged.
+     * Time complexity: O(h), where h is the height of the tree, plus the wait for other writers.
+     */
+    public boolean delete(CrimeRecord crimeRecord) {
+        boolean compact;
+        synchronized (writeLock) {
+            int record = current.find(crimeRecord);
+            if (record < 0) {
+                return false;
+            }
+            current = current.withDeleted(record, current.getStore(), false);
+            logWrite(-(record + 1));
+            compact = needsCompaction();
+        }
+        if (compact) {
+            compactAsync();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces a crime record with a corrected one and publishes a single version holding the change,
+     * so readers see either the old record or the new one, never both or neither.
+     *
+     * @param oldRecord The crime record to replace, equal to a record in the tree.
+     * @param newRecord The corrected crime record, inserted at its own coordinates.
+     * @return True if the old record was found and replaced, false if the current version holds no equal record, in which case nothing is inserted.
+     * <p>
+     * Preconditions: oldRecord and newRecord must be non-null.
+     * Postconditions: The current version holds newRecord instead of oldRecord; versions obtained earlier are unchanged.
+     * Time complexity: O(h), where h is the height of the tree, plus the wait for other writers.
+     */
+    public boolean update(CrimeRecord oldRecord, CrimeRecord newRecord) {
+        boolean compact;
+        synchronized (writeLock) {
+            int oldIndex = current.find(oldRecord);
+            if (oldIndex < 0) {
+                return false;
+            }
+            int newIndex = records.add(newRecord);
+            CrimeStore crimeStore = records.snapshot();
+            current = current.withDeleted(oldIndex, crimeStore, false).withInserted(new double[]{newRecord.x(), newRecord.y()}, newIndex, crimeStore);
+            logWrite(-(oldIndex + 1));
+            logWrite(newIndex);
+            compact = needsCompaction();
+        }
+        if (compact) {
+            compactAsync();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of nodes of the current version whose records have all been deleted, still present as tombstones.
+     *
+     * @return The number of tombstones.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int deletedCount() {
+        return current.deletedCount();
+    }
+
+    /**
+     * Compacts the tree in the background, removing the tombstones of the current version. Readers and writers carry on meanwhile;
+     * writes made during the compaction are replayed onto the compacted tree before it is published.
+     *
+     * @return A future that completes once the compacted version has been published; the running one if a compaction is already under way.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Once the future completes, the current version holds no tombstone older than the compaction.
+     * Time complexity: O(1) for the caller; the compaction takes O(n log n) in the background, where n is the number of live records.
+     */
+    public CompletableFuture<Void> compactAsync() {
+        synchronized (writeLock) {
+            if (compaction != null) {
+                return compaction;
+            }
+            TwoDTree base = current;
+            pendingCount = 0;
+            // The task publishes under writeLock, so it cannot finish before compaction is assigned below
+            compaction = CompletableFuture.runAsync(() -> {
+                TwoDTree compacted = null;
+                try {
+                    compacted = base.compacted(true);
+                } finally {
+                    publishCompacted(compacted);
+                }
+            });
+            return compaction;
+        }
+    }
+
+    /**
+     * Replays the writes made during a compaction onto the compacted tree and publishes the result.
+     *
+     * @param compacted The compacted copy of the version the compaction started from, or null if building it failed.
+     *                  <p>
+     *                  Preconditions: Called once per compaction, from the compaction task.
+     *                  Postconditions: The compacted tree with the pending writes is the current version, unless building it failed;
+     *                  no compaction is running.
+     *                  Time complexity: O(w h), where w is the number of pending writes and h the height of the tree.
+     */
+    private void publishCompacted(TwoDTree compacted) {
+        synchronized (writeLock) {
+            if (compacted != null) {
+                CrimeStore crimeStore = records.snapshot();
+                TwoDTree next = compacted.withStore(crimeStore);
+                for (int i = 0; i < pendingCount; i++) {
+                    int write = pendingWrites[i];
+                    if (write >= 0) {
+                        next = next.withInserted(new double[]{crimeStore.x(write), crimeStore.y(write)}, write, crimeStore);
+                    } else {
+                        next = next.withDeleted(-write - 1, crimeStore, false);
+                    }
+                }
+                current = next;
+            }
+            pendingCount = 0;
+            compaction = null;
+        }
+    }
+
+    /**
+     * Records a write for replay if a compaction is running.
+     *
+     * @param write The record index of an insert, or -(index + 1) for a delete.
+     *              <p>
+     *              Preconditions: The caller must hold writeLock.
+     *              Postconditions: The write is appended to pendingWrites while a compaction runs.
+     *              Time complexity: O(1) amortized.
+     */
+    private void logWrite(int write) {
+        if (compaction == null) {
+            return;
+        }
+        if (pendingCount == pendingWrites.length) {
+            int[] grown = new int[pendingWrites.length * 2];
+            System.arraycopy(pendingWrites, 0, grown, 0, pendingCount);
+            pendingWrites = grown;
+        }
+        pendingWrites[pendingCount++] = write;
+    }
+
+    /**
+     * Checks whether the current version holds enough tombstones to be compacted and no compaction is running.
+     *
+     * @return True if more than TwoDTree.COMPACTION_THRESHOLD of the nodes of the current version are tombstones.
+     * <p>
+     * Preconditions: The caller must hold writeLock.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private boolean needsCompaction() {
+        int dead = current.deletedCount();
+        return compaction == null && dead > TwoDTree.COMPACTION_THRESHOLD * current.nodeCount();
+    }
+}
@@ -0,0 +1,512 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Checksum;
+
+/**
+ * The CrimeCsvLoader class reads a crime data CSV file at high throughput.
+ * The file is memory-mapped and cut into chunks that each start at the beginning of a line; the chunks are parsed in
+ * parallel on the common fork-join pool and their records concatenated in file order.
+ * <p>
+ * Each line is copied once into a reusable byte buffer and parsed in place: the numeric columns are read straight from
+ * the bytes without creating a String, and only the text columns become Strings. Each chunk is parsed into its own
+ * columnar CrimeStore, so a String only survives parsing if it is the first occurrence of its value in the chunk. Lines may end in CR (as in
+ * CrimeLatLonXY.csv), LF or CRLF. The first line is a header and is skipped; empty lines are ignored and lines with
+ * fewer than nine fields or unparseable numbers are skipped with a warning, as TwoDTree always has.
+ */
+public class CrimeCsvLoader {
+
+    private static final Logger logger = LoggerUtil.getLogger(CrimeCsvLoader.class);
+    private static final int FIELD_COUNT = 9; // x, y, time, street, offense, date, tract, latitude, longitude
+    private static final long MIN_CHUNK_SIZE = 64 * 1024; // Smallest chunk worth handing to another thread
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024; // Largest chunk mapped at once (a mapping is limited to 2 GB)
+    private static final double[] POWERS_OF_TEN = new double[23]; // Exactly representable powers of ten, 10^0 to 10^22
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Private constructor, as this class only has static methods.
+     */
+    private CrimeCsvLoader() {
+    }
+
+    /**
+     * Loads all crime records from a CSV file.
+     *
+     * @param path The CSV file.
+     * @return The crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns an array holding exactly the parsed records.
+     *                     Time complexity: O(n / p), where n is the size of the file and p the number of processors.
+     */
+    public static CrimeRecord[] load(Path path) throws IOException {
+        return load(path, 0);
+    }
+
+    /**
+     * Loads all crime records from a CSV file, cutting it into chunks of about the given size.
+     *
+     * @param path      The CSV file.
+     * @param chunkSize The target size of a chunk in bytes, or 0 to derive it from the file size and the number of processors.
+     * @return The crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null, chunkSize must be non-negative.
+     *                     Postconditions: Returns an array holding exactly the parsed records.
+     *                     Time complexity: O(n / p), where n is the size of the file and p the number of processors.
+     */
+    static CrimeRecord[] load(Path path, long chunkSize) throws IOException {
+        return loadStore(path, chunkSize).toArray();
+    }
+
+    /**
+     * Loads all crime records from a CSV file into a columnar store, without keeping a CrimeRecord per record.
+     *
+     * @param path The CSV file.
+     * @return A store holding the crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns a store holding exactly the parsed records.
+     *                     Time complexity: O(n / p), where n is the size of the file and p the number of processors.
+     */
+    public static CrimeStore loadStore(Path path) throws IOException {
+        return loadStore(path, 0);
+    }
+
+    /**
+     * Loads all crime records from a CSV file into a columnar store, cutting it into chunks of about the given size.
+     *
+     * @param path      The CSV file.
+     * @param chunkSize The target size of a chunk in bytes, or 0 to derive it from the file size and the number of processors.
+     * @return A store holding the crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null, chunkSize must be non-negative.
+     *                     Postconditions: Returns a store holding exactly the parsed records.
+     *                     Time complexity: O(n / p), where n is the size of the file and p the number of processors.
+     */
+    static CrimeStore loadStore(Path path, long chunkSize) throws IOException {
+        return loadStore(path, chunkSize, null);
+    }
+
+    /**
+     * Loads all crime records from a CSV file into a columnar store, and feeds the bytes it parsed to a checksum.
+     * The checksum reads the same mapped chunks the parser read, so it covers exactly the bytes the records came from.
+     *
+     * @param path      The CSV file.
+     * @param chunkSize The target size of a chunk in bytes, or 0 to derive it from the file size and the number of processors.
+     * @param checksum  The checksum to update with the contents of the file in order, or null for none.
+     * @return A store holding the crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null, chunkSize must be non-negative.
+     *                     Postconditions: Returns a store holding exactly the parsed records, and checksum has been updated with every byte of the file.
+     *                     Time complexity: O(n / p) to parse plus O(n) for the checksum, where n is the size of the file and p the number of processors.
+     */
+    static CrimeStore loadStore(Path path, long chunkSize, Checksum checksum) throws IOException {
+        logger.info("Starting to load crime data from: " + path);
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (chunkSize <= 0) {
+                long target = fileSize / (4L * ForkJoinPool.getCommonPoolParallelism());
+                chunkSize = Math.min(Math.max(target, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE);
+            }
+            long[] boundaries = chunkBoundaries(channel, fileSize, Math.min(chunkSize, MAX_CHUNK_SIZE));
+
+            // Map the chunks, then parse them in parallel, the first one skipping the header
+            MappedByteBuffer[] buffers = new MappedByteBuffer[boundaries.length - 1];
+            List<Callable<CrimeStore>> tasks = new ArrayList<>();
+            for (int i = 0; i < buffers.length; i++) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, boundaries[i], boundaries[i + 1] - boundaries[i]);
+                boolean skipHeader = i == 0;
+                buffers[i] = buffer;
+                tasks.add(() -> parseChunk(buffer, skipHeader));
+            }
+            List<Future<CrimeStore>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+            if (checksum != null) {
+                for (MappedByteBuffer buffer : buffers) {
+                    checksum.update(buffer.duplicate().clear());
+                }
+            }
+
+            // Concatenate the chunks in file order, merging their dictionaries
+            CrimeStore[] chunks = new CrimeStore[results.size()];
+            int total = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = getChunk(results.get(i));
+                total += chunks[i].size();
+            }
+            CrimeStore store;
+            if (chunks.length == 1) {
+                store = chunks[0];
+            } else {
+                store = new CrimeStore(total);
+                for (int i = 0; i < chunks.length; i++) {
+                    store.addAll(chunks[i]);
+                    chunks[i] = null;
+                }
+            }
+
+            long elapsedNanos = Math.max(System.nanoTime() - start, 1);
+            long recordsPerSecond = (long) (total * 1e9 / elapsedNanos);
+            double megabytesPerSecond = fileSize / 1048576.0 * 1e9 / elapsedNanos;
+            logger.info("Loaded " + total + " records from " + path + " in " + elapsedNanos / 1_000_000 + " ms using " + chunks.length
+                    + " chunks (" + recordsPerSecond + " records/s, " + String.format("%.1f", megabytesPerSecond) + " MB/s)");
+            return store;
+        }
+    }
+
+    /**
+     * Waits for a chunk to be parsed, unwrapping the exception of a failed parse.
+     *
+     * @param future The pending chunk.
+     * @return The parsed chunk.
+     * @throws IOException If the chunk could not be read.
+     *                     <p>
+     *                     Preconditions: future must be non-null.
+     *                     Postconditions: None.
+     *                     Time complexity: O(1) once the chunk is parsed.
+     */
+    private static CrimeStore getChunk(Future<CrimeStore> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading crime data", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load crime data", e.getCause());
+        }
+    }
+
+    /**
+     * Cuts a file into chunks of about the given size, moving each cut forward to just after a line terminator.
+     *
+     * @param channel   The open file.
+     * @param fileSize  The size of the file in bytes.
+     * @param chunkSize The target size of a chunk in bytes.
+     * @return The chunk boundaries: the first is 0, the last is fileSize, and each chunk is [boundaries[i], boundaries[i + 1]).
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: chunkSize must be positive.
+     *                     Postconditions: Every boundary except the first and last is at the start of a line.
+     *                     Time complexity: O(c * l), where c is the number of chunks and l the length of a line.
+     */
+    private static long[] chunkBoundaries(FileChannel channel, long fileSize, long chunkSize) throws IOException {
+        long[] boundaries = new long[(int) (fileSize / chunkSize) + 2];
+        int count = 0;
+        boundaries[count++] = 0;
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < fileSize) {
+            // Scan forward to the end of the line the tentative cut falls in
+            long cut = fileSize;
+            long scan = position;
+            search:
+            while (scan < fileSize) {
+                window.clear();
+                int read = channel.read(window, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = window.get(i);
+                    if (b == '\r' || b == '\n') {
+                        cut = scan + i + 1;
+                        break search;
+                    }
+                }
+                scan += read;
+            }
+            if (cut > boundaries[count - 1] && cut < fileSize) {
+                boundaries[count++] = cut;
+            }
+            position = Math.max(cut, position) + chunkSize;
+        }
+        boundaries[count++] = fileSize;
+        long[] trimmed = new long[count];
+        System.arraycopy(boundaries, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * Parses the lines of one chunk of the file.
+     *
+     * @param buffer     The mapped chunk.
+     * @param skipHeader Whether the first line of the chunk is the header of the file.
+     * @return A store holding the records parsed from the chunk.
+     * <p>
+     * Preconditions: The chunk starts at the start of the file or of a line.
+     * Postconditions: Returns the records of the complete lines in the chunk, in order; the position of buffer is not changed.
+     * Time complexity: O(k), where k is the size of the chunk.
+     */
+    private static CrimeStore parseChunk(MappedByteBuffer buffer, boolean skipHeader) {
+        int limit = buffer.limit();
+        CrimeStore chunk = new CrimeStore(Math.max(16, limit / 80));
+        byte[] line = new byte[256]; // The current line, reused for every line of the chunk
+        int[] fieldEnds = new int[FIELD_COUNT]; // The offset in line after the last byte of each field
+
+        int position = 0;
+        boolean header = skipHeader;
+        while (position < limit) {
+            // Find the end of the line
+            int end = position;
+            while (end < limit) {
+                byte b = buffer.get(end);
+                if (b == '\r' || b == '\n') {
+                    break;
+                }
+                end++;
+            }
+            int length = end - position;
+            if (header) {
+                header = false;
+            } else if (length > 0) {
+                if (length > line.length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                buffer.get(position, line, 0, length);
+                parseLine(line, length, fieldEnds, chunk);
+            }
+            position = end + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses one line of the file into a crime record and appends it to a store.
+     *
+     * @param line      The bytes of the line, without the terminator.
+     * @param length    The number of bytes of the line.
+     * @param fieldEnds Scratch space for the end offset of each field.
+     * @param store     The store receiving the record.
+     * <p>
+     * Preconditions: length must be positive, fieldEnds must hold FIELD_COUNT ints.
+     * Postconditions: The record is appended to the store, or a warning is logged for a malformed line.
+     * Time complexity: O(k), where k is the length of the line.
+     */
+    private static void parseLine(byte[] line, int length, int[] fieldEnds, CrimeStore store) {
+        // Locate the first nine fields; like String.split, anything after the ninth comma is ignored
+        int fields = 0;
+        for (int i = 0; i < length && fields < FIELD_COUNT; i++) {
+            if (line[i] == ',') {
+                fieldEnds[fields++] = i;
+            }
+        }
+        if (fields < FIELD_COUNT) {
+            if (fields == FIELD_COUNT - 1) {
+                fieldEnds[fields++] = length;
+            } else {
+                logger.warn("Skipping malformed line: " + new String(line, 0, length, StandardCharsets.UTF_8));
+                return;
+            }
+        }
+
+        try {
+            double x = parseDouble(line, 0, fieldEnds[0]);
+            double y = parseDouble(line, fieldEnds[0] + 1, fieldEnds[1]);
+            int time = parseInt(line, fieldEnds[1] + 1, fieldEnds[2]);
+            // Latitude and longitude are stored as doubles; only text that Double.toString would not reproduce becomes a String
+            double latitude = canonicalDecimal(line, fieldEnds[6] + 1, fieldEnds[7]);
+            double longitude = canonicalDecimal(line, fieldEnds[7] + 1, fieldEnds[8]);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                store.add(x, y, time, text(line, fieldEnds, 3), text(line, fieldEnds, 4), text(line, fieldEnds, 5),
+                        text(line, fieldEnds, 6), text(line, fieldEnds, 7), text(line, fieldEnds, 8));
+            } else {
+                store.add(x, y, time, text(line, fieldEnds, 3), text(line, fieldEnds, 4), text(line, fieldEnds, 5),
+                        text(line, fieldEnds, 6), latitude, longitude);
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Failed to parse crime record: " + new String(line, 0, length, StandardCharsets.UTF_8), e);
+        }
+    }
+
+    /**
+     * Returns a text field of a line as a String.
+     *
+     * @param line      The bytes of the line.
+     * @param fieldEnds The end offset of each field.
+     * @param field     The index of the field, at least 1.
+     * @return The field as a String.
+     * <p>
+     * Preconditions: fieldEnds must be filled in for the field.
+     * Postconditions: None.
+     * Time complexity: O(k), where k is the length of the field.
+     */
+    private static String text(byte[] line, int[] fieldEnds, int field) {
+        int from = fieldEnds[field - 1] + 1;
+        return new String(line, from, fieldEnds[field] - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a decimal number from bytes if Double.toString of the number gives back exactly the same text.
+     * That holds for plain decimals such as -79.9760891 with at most 15 significant digits, an integer part without
+     * leading zeros, at least one fraction digit and no trailing zeros after the first, and a magnitude in [10^-3, 10^7)
+     * (where Double.toString does not use an exponent): at most 15 digits identify a double uniquely, so its shortest
+     * representation is the text itself.
+     *
+     * @param bytes The bytes holding the number.
+     * @param from  The offset of the first byte (inclusive).
+     * @param to    The offset after the last byte (exclusive).
+     * @return The number, or NaN if the text is not in this canonical form.
+     * <p>
+     * Preconditions: 0 <= from <= to <= bytes.length.
+     * Postconditions: If the result is not NaN, Double.toString of it equals the text.
+     * Time complexity: O(k), where k is the number of bytes.
+     */
+    static double canonicalDecimal(byte[] bytes, int from, int to) {
+        int i = from;
+        if (i < to && bytes[i] == '-') {
+            i++;
+        }
+        int integerStart = i;
+        while (i < to && bytes[i] >= '0' && bytes[i] <= '9') i++;
+        int integerDigits = i - integerStart;
+        if (integerDigits == 0 || (integerDigits > 1 && bytes[integerStart] == '0') || i == to || bytes[i] != '.') {
+            return Double.NaN;
+        }
+        int fractionStart = ++i;
+        while (i < to && bytes[i] >= '0' && bytes[i] <= '9') i++;
+        int fractionDigits = i - fractionStart;
+        if (i != to || fractionDigits == 0 || (fractionDigits > 1 && bytes[to - 1] == '0')) {
+            return Double.NaN;
+        }
+
+        // Count the digits from the first non-zero one
+        int significantDigits = 0;
+        boolean leadingZero = true;
+        for (int j = integerStart; j < to; j++) {
+            if (bytes[j] == '.' || (leadingZero && bytes[j] == '0')) {
+                continue;
+            }
+            leadingZero = false;
+            significantDigits++;
+        }
+        if (significantDigits > 15) {
+            return Double.NaN;
+        }
+        double value = parseDouble(bytes, from, to);
+        double magnitude = Math.abs(value);
+        return magnitude >= 1e-3 && magnitude < 1e7 ? value : Double.NaN;
+    }
+
+    /**
+     * Parses a decimal number from bytes without creating a String.
+     * Plain decimals with at most 15 significant digits (every coordinate in the crime data) are computed exactly as one
+     * division of two exactly representable doubles, which is correctly rounded; anything else (exponents, longer
+     * mantissas, NaN) falls back to Double.parseDouble.
+     *
+     * @param bytes The bytes holding the number.
+     * @param from  The offset of the first byte (inclusive).
+     * @param to    The offset after the last byte (exclusive).
+     * @return The parsed number.
+     * @throws NumberFormatException If the bytes do not hold a number.
+     *                               <p>
+     *                               Preconditions: 0 <= from <= to <= bytes.length.
+     *                               Postconditions: Returns the same value as Double.parseDouble on the trimmed text.
+     *                               Time complexity: O(k), where k is the number of bytes.
+     */
+    static double parseDouble(byte[] bytes, int from, int to) {
+        // Trim surrounding spaces, as Double.parseDouble does
+        while (from < to && bytes[from] == ' ') from++;
+        while (to > from && bytes[to - 1] == ' ') to--;
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0; // Significant digits, not counting leading zeros
+        int fractionDigits = -1; // -1 until the decimal point is seen
+        boolean sawDigit = false;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == to && sawDigit && digits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Parses a decimal integer from bytes without creating a String.
+     *
+     * @param bytes The bytes holding the number.
+     * @param from  The offset of the first byte (inclusive).
+     * @param to    The offset after the last byte (exclusive).
+     * @return The parsed number.
+     * @throws NumberFormatException If the bytes do not hold an int.
+     *                               <p>
+     *                               Preconditions: 0 <= from <= to <= bytes.length.
+     *                               Postconditions: Returns the same value as Integer.parseInt.
+     *                               Time complexity: O(k), where k is the number of bytes.
+     */
+    static int parseInt(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        // Up to nine digits cannot overflow an int
+        if (i < to && to - i <= 9) {
+            int value = 0;
+            for (; i < to; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            if (i == to) {
+                return negative ? -value : value;
+            }
+        }
+        return Integer.parseInt(new String(bytes, from, to - from, StandardCharsets.US_ASCII));
+    }
+}
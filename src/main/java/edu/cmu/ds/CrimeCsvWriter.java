@@ -0,0 +1,242 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The CrimeCsvWriter class streams crime records to a CSV file in the 9-column format of CrimeLatLonXY.csv, so that a dump
+ * can be loaded again with CrimeCsvLoader. The header row is written when the writer is created.
+ * <p>
+ * Each line is built in one reused character buffer and handed to a large write buffer, so writing a record creates no
+ * strings. Records written from a CrimeStore by index, as TwoDTree.dump does, do not even create a CrimeRecord.
+ * It is also a CrimeVisitor, so the results of a query or traversal can be written as they are found:
+ * <pre>
+ * try (CrimeCsvWriter csv = CrimeCsvWriter.toFile(Path.of("dump.csv"))) {
+ *     tree.dump(TraversalOrder.LEVEL_ORDER, csv);
+ * }
+ * </pre>
+ */
+public class CrimeCsvWriter implements CrimeVisitor, Closeable {
+
+    static final String HEADER = "X,Y,Time,Street,Offense,Date,Tract,Lat,Long"; // The header row
+    private static final int BUFFER_SIZE = 256 * 1024; // Size of the character buffer in front of the destination
+    private static final int MAX_FRACTION_DIGITS = 8; // Most fraction digits appendDouble writes itself before leaving it to StringBuilder
+
+    private final Writer out; // The buffered destination of the file
+    private final StringBuilder line = new StringBuilder(160); // The line being built, reused for every record
+    private char[] chars = new char[160]; // The characters of the line, copied out of the builder, reused for every record
+    private long recordCount; // Number of records written so far
+    private boolean closed; // Whether the destination has been closed
+
+    /**
+     * Constructor to create a CSV writer on the given destination, writing the header row immediately.
+     *
+     * @param out The destination of the file. It is buffered unless it already is.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: out must be non-null.
+     *                     Postconditions: A new CrimeCsvWriter is created and the header has been written to its buffer.
+     *                     Time complexity: O(1).
+     */
+    public CrimeCsvWriter(Writer out) throws IOException {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+        this.out.write(HEADER);
+        this.out.write('\n');
+    }
+
+    /**
+     * Creates a CSV writer on an output stream, encoding the file as UTF-8.
+     *
+     * @param outputStream The destination stream, closed when the writer is closed.
+     * @return A new CrimeCsvWriter.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: outputStream must be non-null.
+     *                     Postconditions: Returns a CrimeCsvWriter on the stream.
+     *                     Time complexity: O(1).
+     */
+    public static CrimeCsvWriter toStream(OutputStream outputStream) throws IOException {
+        return new CrimeCsvWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a CSV writer on a file, replacing it if it exists.
+     *
+     * @param path The file to write.
+     * @return A new CrimeCsvWriter.
+     * @throws IOException If the file cannot be opened or the header cannot be written.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns a CrimeCsvWriter on the file.
+     *                     Time complexity: O(1).
+     */
+    public static CrimeCsvWriter toFile(Path path) throws IOException {
+        return toStream(Files.newOutputStream(path));
+    }
+
+    /**
+     * Writes a crime record as a CSV line, in the same form as CrimeRecord.toString.
+     *
+     * @param crime The crime record.
+     * @throws IOException If the line cannot be written.
+     *                     <p>
+     *                     Preconditions: crime must be non-null and the writer must not be closed.
+     *                     Postconditions: The line is written to the buffer, which is flushed to the destination when full.
+     *                     Time complexity: O(1), as a record has a fixed number of fields.
+     */
+    public void write(CrimeRecord crime) throws IOException {
+        line.setLength(0);
+        appendDouble(line, crime.x());
+        line.append(',');
+        appendDouble(line, crime.y());
+        line.append(',').append(crime.time()).append(',')
+                .append(crime.street()).append(',').append(crime.offense()).append(',').append(crime.date()).append(',')
+                .append(crime.tract()).append(',').append(crime.latitude()).append(',').append(crime.longitude());
+        writeLine();
+    }
+
+    /**
+     * Writes a record of a store as a CSV line straight from its columns, without creating a CrimeRecord.
+     *
+     * @param store The store holding the record.
+     * @param index The index of the record in the store.
+     * @throws IOException If the line cannot be written.
+     *                     <p>
+     *                     Preconditions: store must be non-null, 0 <= index < store.size(), and the writer must not be closed.
+     *                     Postconditions: The same line as write(store.get(index)) is written to the buffer.
+     *                     Time complexity: O(1).
+     */
+    public void write(CrimeStore store, int index) throws IOException {
+        line.setLength(0);
+        store.appendCsv(index, line);
+        writeLine();
+    }
+
+    /**
+     * Appends a double exactly as Double.toString writes it. StringBuilder.append(double) creates a string for every value,
+     * so values between 0.001 and 10^7 with at most 8 fraction digits, which covers the coordinates of the CSV, are written
+     * digit by digit instead: the fewest fraction digits that give back the value are the digits Double.toString chooses,
+     * as a decimal of at most 15 significant digits is the only one of its length that rounds to the value.
+     *
+     * @param line  The builder to append to.
+     * @param value The value.
+     *              <p>
+     *              Preconditions: line must be non-null.
+     *              Postconditions: line ends with Double.toString(value).
+     *              Time complexity: O(1), as a double has a bounded number of digits.
+     */
+    static void appendDouble(StringBuilder line, double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            double scale = 1;
+            long power = 1;
+            for (int digits = 0; digits <= MAX_FRACTION_DIGITS; digits++) {
+                long scaled = Math.round(magnitude * scale);
+                if (scaled / scale == magnitude) {
+                    if (value < 0) {
+                        line.append('-');
+                    }
+                    line.append(scaled / power).append('.');
+                    long fraction = scaled % power;
+                    if (digits == 0) {
+                        line.append('0');
+                        return;
+                    }
+                    // Pad the fraction with its leading zeros
+                    for (long place = power / 10; place > fraction; place /= 10) {
+                        line.append('0');
+                    }
+                    line.append(fraction);
+                    return;
+                }
+                scale *= 10;
+                power *= 10;
+            }
+        }
+        line.append(value);
+    }
+
+    /**
+     * Ends the line in the builder and copies it into the write buffer.
+     *
+     * @throws IOException If the line cannot be written.
+     *                     <p>
+     *                     Preconditions: line holds one record.
+     *                     Postconditions: The line and its line break are written, and the record is counted.
+     *                     Time complexity: O(k), where k is the length of the line.
+     */
+    private void writeLine() throws IOException {
+        line.append('\n');
+        int length = line.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        line.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        recordCount++;
+    }
+
+    /**
+     * Writes a crime record received from a query or traversal.
+     *
+     * @param x           The x coordinate of the record.
+     * @param y           The y coordinate of the record.
+     * @param crimeRecord The crime record.
+     * @return True, so that the query or traversal continues.
+     * @throws UncheckedIOException If the line cannot be written.
+     *                              <p>
+     *                              Preconditions: The writer must not be closed.
+     *                              Postconditions: The line is written.
+     *                              Time complexity: O(1).
+     */
+    @Override
+    public boolean visit(double x, double y, CrimeRecord crimeRecord) {
+        try {
+            write(crimeRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of records written so far.
+     *
+     * @return The number of records written, not counting the header.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Flushes the file and closes the destination.
+     *
+     * @throws IOException If the buffer cannot be flushed or the destination cannot be closed.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The file is complete and the destination is closed. Further calls have no effect.
+     *                     Time complexity: O(1).
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.close();
+    }
+}
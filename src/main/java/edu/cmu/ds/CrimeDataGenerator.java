@@ -0,0 +1,294 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * The CrimeDataGenerator class produces synthetic crime records in the 9-column format of CrimeLatLonXY.csv
+ * (X, Y, Time, Street, Offense, Date, Tract, Lat, Long), at any size, for scale and stress testing.
+ * <p>
+ * The records are modelled on the real file:
+ * <ul>
+ * <li>Crimes happen at addresses, and most addresses lie around a hundred or so hot spots, themselves gathered around downtown,
+ * with the rest spread over the city.
+ * Some addresses are far more popular than others, so many records share the exact same coordinates.</li>
+ * <li>Records come in date order, from 1/1/90 to 12/31/01, with the Time column holding the same day as a serial number.</li>
+ * <li>Offenses follow the mix of the real file, and tracts are cells of a grid laid over the city.</li>
+ * </ul>
+ * Records are produced one at a time and written as they are produced; only the pool of addresses, at most MAX_ADDRESSES of
+ * them, is kept in memory. Generation is seeded: the same seed and row count always produce the same file.
+ */
+public class CrimeDataGenerator {
+    private static final Logger logger = LoggerUtil.getLogger(CrimeDataGenerator.class);
+
+    static final double MIN_X = 1_315_000; // The smallest x coordinate of a generated record
+    static final double MAX_X = 1_380_000; // The largest x coordinate of a generated record
+    static final double MIN_Y = 382_000; // The smallest y coordinate of a generated record
+    static final double MAX_Y = 433_000; // The largest y coordinate of a generated record
+
+    static final int MAX_ADDRESSES = 1 << 20; // The largest number of distinct addresses, whatever the number of rows
+    static final int FIRST_DAY = 32874; // Serial number of 1/1/90, the day of the first record
+    static final int DAYS = 4383; // Number of days from 1/1/90 to 12/31/01
+
+    private static final String[] OFFENSES = {"ROBBERY", "AGGRAVATED ASSAULT", "RAPE", "MURDER/MANSLAUGHTER"};
+    private static final double[] OFFENSE_SHARES = {0.6335, 0.9140, 0.9890, 1.0}; // Cumulative share of each offense in the real file
+    private static final String[] STREET_NAMES = {"PENN", "LIBERTY", "FORBES", "FIFTH", "BAUM", "CENTRE", "WYLIE", "CARSON",
+            "BROWNSVILLE", "WEST LIBERTY", "OHIO RIVER", "CALIFORNIA", "FEDERAL", "EAST OHIO", "BUTLER", "MURRAY", "HAMILTON",
+            "FRANKSTOWN", "LINCOLN", "WASHINGTON", "SAW MILL RUN", "ARLINGTON", "SMITHFIELD", "GRANT", "BEDFORD", "CHARTIERS",
+            "NEGLEY", "HIGHLAND", "STANTON", "PERRYSVILLE", "BROADWAY", "SHADY", "HOMEWOOD", "KELLY", "MELLON", "BRIGHTON"};
+    private static final String[] STREET_SUFFIXES = {"ST", "AV", "RD", "WAY", "PL", "BLVD", "DR"};
+    private static final double CENTER_X = 1_352_000; // The x coordinate the hot spots are centred on, near downtown
+    private static final double CENTER_Y = 412_000; // The y coordinate the hot spots are centred on
+    private static final double CENTER_SPREAD_X = 10_000; // Standard deviation of the x distance of a hot spot from the centre, in feet
+    private static final double CENTER_SPREAD_Y = 6_000; // Standard deviation of the y distance of a hot spot from the centre, in feet
+    private static final int HOT_SPOTS = 120; // Number of clusters most addresses lie around
+    private static final double HOT_SPOT_SPREAD = 600; // Standard deviation of the distance of an address from its hot spot, in feet
+    private static final double BACKGROUND_SHARE = 0.05; // Share of addresses spread uniformly over the city
+    private static final int TRACT_COLUMNS = 14; // Columns of the grid of tracts
+    private static final int TRACT_ROWS = 10; // Rows of the grid of tracts
+
+    private final long seed; // The seed every generation starts from
+
+    /**
+     * Constructor to create a generator with the given seed.
+     *
+     * @param seed The seed of the generator.
+     *             <p>
+     *             Preconditions: None.
+     *             Postconditions: A new CrimeDataGenerator is created.
+     *             Time complexity: O(1).
+     */
+    public CrimeDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes a CSV file of generated records.
+     *
+     * @param rows The number of records.
+     * @param path The file to write; it is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     *                     <p>
+     *                     Preconditions: rows must be non-negative, path must be non-null.
+     *                     Postconditions: The file holds a header row and rows records in date order.
+     *                     Time complexity: O(n), where n is rows; memory is O(min(n, MAX_ADDRESSES)).
+     */
+    public void write(long rows, Path path) throws IOException {
+        logger.info("Generating " + rows + " crime records into " + path);
+        long start = System.nanoTime();
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            write(rows, out);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Generated " + rows + " crime records in " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Writes generated records as CSV to a writer, one line at a time.
+     *
+     * @param rows The number of records.
+     * @param out  The destination. It is buffered unless it already is, and flushed but not closed.
+     * @throws IOException If the records cannot be written.
+     *                     <p>
+     *                     Preconditions: rows must be non-negative, out must be non-null.
+     *                     Postconditions: out holds a header row and rows records in date order.
+     *                     Time complexity: O(n), where n is rows.
+     */
+    public void write(long rows, Writer out) throws IOException {
+        Writer buffered = out instanceof BufferedWriter ? out : new BufferedWriter(out, 64 * 1024);
+        buffered.write(CrimeCsvWriter.HEADER);
+        buffered.write('\n');
+        StringBuilder line = new StringBuilder(128);
+        generate(rows, (x, y, time, street, offense, date, tract, latitude, longitude) -> {
+            line.setLength(0);
+            line.append(x).append(',').append(y).append(',').append(time).append(',').append(street).append(',')
+                    .append(offense).append(',').append(date).append(',').append(tract).append(',')
+                    .append(latitude).append(',').append(longitude).append('\n');
+            buffered.append(line);
+        });
+        buffered.flush();
+    }
+
+    /**
+     * Generates records straight into a columnar store, without writing or parsing a file.
+     *
+     * @param rows The number of records.
+     * @return A store holding the records, in the order write would write them.
+     * <p>
+     * Preconditions: rows must be non-negative.
+     * Postconditions: The store holds the same records write produces with the same seed.
+     * Time complexity: O(n), where n is rows.
+     */
+    public CrimeStore generate(int rows) {
+        CrimeStore store = new CrimeStore(rows);
+        try {
+            generate(rows, store::add);
+        } catch (IOException e) {
+            // A store does no I/O
+            throw new IllegalStateException(e);
+        }
+        return store;
+    }
+
+    /**
+     * Generates records in date order and hands each one to a sink.
+     *
+     * @param rows The number of records.
+     * @param sink Receives the records.
+     * @throws IOException If the sink fails.
+     *                     <p>
+     *                     Preconditions: rows must be non-negative, sink must be non-null.
+     *                     Postconditions: The sink has received rows records.
+     *                     Time complexity: O(n), where n is rows.
+     */
+    private void generate(long rows, RowSink sink) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        int addresses = (int) Math.max(1, Math.min(MAX_ADDRESSES, rows / 2));
+
+        // Lay out the addresses: around hot spots or anywhere in the city, rounded like the surveyed coordinates of the real file
+        double[] spotX = new double[HOT_SPOTS];
+        double[] spotY = new double[HOT_SPOTS];
+        for (int i = 0; i < HOT_SPOTS; i++) {
+            spotX[i] = clamp(CENTER_X + random.nextGaussian() * CENTER_SPREAD_X, MIN_X, MAX_X);
+            spotY[i] = clamp(CENTER_Y + random.nextGaussian() * CENTER_SPREAD_Y, MIN_Y, MAX_Y);
+        }
+        double[] xs = new double[addresses];
+        double[] ys = new double[addresses];
+        int[] streets = new int[addresses];
+        for (int i = 0; i < addresses; i++) {
+            double x;
+            double y;
+            if (random.nextDouble() < BACKGROUND_SHARE) {
+                x = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+                y = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+            } else {
+                int spot = random.nextInt(HOT_SPOTS);
+                x = clamp(spotX[spot] + random.nextGaussian() * HOT_SPOT_SPREAD, MIN_X, MAX_X);
+                y = clamp(spotY[spot] + random.nextGaussian() * HOT_SPOT_SPREAD, MIN_Y, MAX_Y);
+            }
+            xs[i] = Math.round(x * 1000) / 1000.0;
+            ys[i] = Math.round(y * 1000) / 1000.0;
+            streets[i] = random.nextInt(STREET_NAMES.length * STREET_SUFFIXES.length);
+        }
+
+        // Emit the records day by day, spreading the rows evenly over the days
+        LocalDate firstDate = LocalDate.of(1990, 1, 1);
+        for (int day = 0; day < DAYS; day++) {
+            long dayRows = (day + 1) * rows / DAYS - day * rows / DAYS;
+            if (dayRows == 0) {
+                continue;
+            }
+            LocalDate date = firstDate.plusDays(day);
+            String dateText = date.getMonthValue() + "/" + date.getDayOfMonth() + "/" + String.format("%02d", date.getYear() % 100);
+            for (long r = 0; r < dayRows; r++) {
+                // Squaring skews the choice towards the first addresses, which become the repeat locations
+                double u = random.nextDouble();
+                int address = (int) (u * u * addresses);
+                double x = xs[address];
+                double y = ys[address];
+                String street = (100 + address % 49 * 100 + address / 49 % 100) + " " + STREET_NAMES[streets[address] % STREET_NAMES.length]
+                        + " " + STREET_SUFFIXES[streets[address] / STREET_NAMES.length];
+                sink.row(x, y, FIRST_DAY + day, street, offense(random), dateText, tract(x, y), latitude(y), longitude(x));
+            }
+        }
+    }
+
+    /**
+     * Draws an offense in the proportions of the real file.
+     *
+     * @param random The random number generator.
+     * @return The offense.
+     * <p>
+     * Preconditions: random must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static String offense(SplittableRandom random) {
+        double share = random.nextDouble();
+        int offense = 0;
+        while (share > OFFENSE_SHARES[offense]) {
+            offense++;
+        }
+        return OFFENSES[offense];
+    }
+
+    /**
+     * Returns the census tract of a point: the number of the grid cell it lies in, formatted like the tracts of the real file.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The tract.
+     * <p>
+     * Preconditions: The point must lie within the bounds.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static String tract(double x, double y) {
+        int column = (int) Math.min(TRACT_COLUMNS - 1, (x - MIN_X) / (MAX_X - MIN_X) * TRACT_COLUMNS);
+        int row = (int) Math.min(TRACT_ROWS - 1, (y - MIN_Y) / (MAX_Y - MIN_Y) * TRACT_ROWS);
+        return String.valueOf((column + 1) * 10_000 + (row + 1) * 100);
+    }
+
+    /**
+     * Converts a y coordinate to a latitude, by the linear fit of the coordinates of the real file.
+     *
+     * @param y The y coordinate, in feet.
+     * @return The latitude, rounded to 8 decimals.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    static double latitude(double y) {
+        return Math.round((40.40865518 + (y - 399_538.5342) * 2.789e-6) * 1e8) / 1e8;
+    }
+
+    /**
+     * Converts an x coordinate to a longitude, by the linear fit of the coordinates of the real file.
+     *
+     * @param x The x coordinate, in feet.
+     * @return The longitude, rounded to 8 decimals.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    static double longitude(double x) {
+        return Math.round((-79.9760891 + (x - 1_348_656.471) * 3.456e-6) * 1e8) / 1e8;
+    }
+
+    /**
+     * Clamps a value to a range.
+     *
+     * @param value The value.
+     * @param min   The lower bound.
+     * @param max   The upper bound.
+     * @return The value, moved into the range if it lies outside.
+     * <p>
+     * Preconditions: min <= max.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static double clamp(double value, double min, double max) {
+        return Math.min(max, Math.max(min, value));
+    }
+
+    /**
+     * Receives generated records one at a time, column by column.
+     */
+    @FunctionalInterface
+    private interface RowSink {
+        void row(double x, double y, int time, String street, String offense, String date, String tract, double latitude, double longitude)
+                throws IOException;
+    }
+}
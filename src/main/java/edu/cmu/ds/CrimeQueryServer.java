@@ -0,0 +1,413 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The CrimeQueryServer class serves queries against a loaded 2D tree over HTTP, so a map front end can query the tree
+ * instead of one person at the keyboard of TwoDTreeDriver. It uses the HTTP server built into the JDK and handles each
+ * request on its own virtual thread; queries only read the tree, so any number of them run at the same time.
+ * <p>
+ * All endpoints take GET requests with query parameters and answer with status 400 and a one-line message if a parameter is missing or invalid:
+ * <ul>
+ *     <li>/range?x1=&amp;y1=&amp;x2=&amp;y2= returns the crime records in the rectangle as CSV lines, streamed while the tree is searched.
+ *     Optional parameters: offense (repeatable), from and to (ISO dates, both required for a date window) and limit.</li>
+ *     <li>/count?x1=&amp;y1=&amp;x2=&amp;y2= returns the number of crime records in the rectangle.</li>
+ *     <li>/nearest?x=&amp;y= returns the nearest crime record as a CSV line preceded by its distance. Optional parameters: k and offense (repeatable).</li>
+ *     <li>/kml?x1=&amp;y1=&amp;x2=&amp;y2= returns the crime records in the rectangle as a KML document, or as KMZ with kmz=true.
+ *     Optional parameter: offense (repeatable).</li>
+ * </ul>
+ */
+public class CrimeQueryServer {
+
+    private static final Logger logger = LoggerUtil.getLogger(CrimeQueryServer.class);
+    private static final int BACKLOG = 4096; // Connections the operating system queues before the server accepts them
+    private static final String CSV_TYPE = "text/csv; charset=utf-8";
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+
+    private final TwoDTree tree; // The tree the queries are answered from
+    private final HttpServer server; // The JDK HTTP server
+    private final ExecutorService executor; // Runs each request on a new virtual thread
+
+    /**
+     * Constructor to create a server for a tree, bound to the given address but not yet started.
+     *
+     * @param tree    The tree to query.
+     * @param address The address and port to listen on; port 0 picks a free port.
+     * @throws IOException If the address cannot be bound.
+     *                     <p>
+     *                     Preconditions: tree and address must be non-null, and the tree must not be modified while the server runs
+     *                     (a version published by ConcurrentTwoDTree never is).
+     *                     Postconditions: A new CrimeQueryServer is created and bound.
+     *                     Time complexity: O(1).
+     */
+    public CrimeQueryServer(TwoDTree tree, InetSocketAddress address) throws IOException {
+        this.tree = tree;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/range", handler(this::range));
+        server.createContext("/count", handler(this::count));
+        server.createContext("/nearest", handler(this::nearest));
+        server.createContext("/kml", handler(this::kml));
+    }
+
+    /**
+     * Starts serving requests in the background, and publishes the query metrics over JMX so the load on the tree can be watched.
+     * <p>
+     * Preconditions: The server must not have been started or stopped before.
+     * Postconditions: Requests are accepted on getPort().
+     * Time complexity: O(1).
+     */
+    public void start() {
+        QueryMetrics.registerMBeans();
+        server.start();
+        logger.info("Serving " + tree.size() + " crime records at http://" + server.getAddress().getHostString() + ":" + getPort() + "/");
+    }
+
+    /**
+     * Stops the server, letting requests in progress finish for up to the given time.
+     *
+     * @param delaySeconds The longest time to wait for requests in progress.
+     *                     <p>
+     *                     Preconditions: delaySeconds must be non-negative.
+     *                     Postconditions: No more requests are accepted.
+     *                     Time complexity: O(1), plus the wait.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port, also when port 0 was requested.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Answers /range by streaming the matching crime records as CSV lines.
+     *
+     * @param exchange   The request and its response.
+     * @param parameters The query parameters of the request.
+     * @throws IOException If the response cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The response has been sent.
+     *                     Time complexity: O(sqrt(n) + m), where n is the number of records and m the number of matches.
+     */
+    private void range(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException {
+        double[] lowerLeft = {number(parameters, "x1"), number(parameters, "y1")};
+        double[] upperRight = {number(parameters, "x2"), number(parameters, "y2")};
+        String[] offenses = offenses(parameters);
+        long limit = parameters.containsKey("limit") ? (long) number(parameters, "limit") : Long.MAX_VALUE;
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        LocalDate fromDate = date(parameters, "from");
+        LocalDate toDate = date(parameters, "to");
+        if ((fromDate == null) != (toDate == null)) {
+            throw new IllegalArgumentException("Both from and to are needed for a date window");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", CSV_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            long[] written = new long[1];
+            CrimeVisitor visitor = (x, y, crimeRecord) -> {
+                if (written[0] >= limit) {
+                    return false;
+                }
+                try {
+                    out.write(crimeRecord.toString());
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return ++written[0] < limit;
+            };
+            if (fromDate != null) {
+                tree.visitPointsInRange(lowerLeft, upperRight, fromDate, toDate, visitor, offenses);
+            } else if (offenses.length > 0) {
+                tree.visitPointsInRange(lowerLeft, upperRight, visitor, offenses);
+            } else {
+                tree.visitPointsInRange(lowerLeft, upperRight, visitor);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Answers /count with the number of crime records in a rectangle.
+     *
+     * @param exchange   The request and its response.
+     * @param parameters The query parameters of the request.
+     * @throws IOException If the response cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The response has been sent.
+     *                     Time complexity: O(sqrt(n)), where n is the number of records.
+     */
+    private void count(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException {
+        double[] lowerLeft = {number(parameters, "x1"), number(parameters, "y1")};
+        double[] upperRight = {number(parameters, "x2"), number(parameters, "y2")};
+        send(exchange, 200, TEXT_TYPE, tree.countInRange(lowerLeft, upperRight) + "\n");
+    }
+
+    /**
+     * Answers /nearest with the k nearest crime records, one CSV line each, preceded by their distance.
+     *
+     * @param exchange   The request and its response.
+     * @param parameters The query parameters of the request.
+     * @throws IOException If the response cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The response has been sent; its body is empty if the tree holds no matching record.
+     *                     Time complexity: O(k log n) on average, where n is the number of records.
+     */
+    private void nearest(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException {
+        double[] point = {number(parameters, "x"), number(parameters, "y")};
+        int k = parameters.containsKey("k") ? (int) number(parameters, "k") : 1;
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        String[] offenses = offenses(parameters);
+        Neighbor[] neighbors = offenses.length > 0 ? tree.kNearest(point, k, offenses) : tree.kNearest(point, k);
+        StringBuilder body = new StringBuilder();
+        for (Neighbor neighbor : neighbors) {
+            body.append(neighbor.getDistance()).append(',').append(neighbor.getCrimeDetails()).append('\n');
+        }
+        send(exchange, 200, CSV_TYPE, body.toString());
+    }
+
+    /**
+     * Answers /kml by streaming the crime records in a rectangle as a KML or KMZ document.
+     *
+     * @param exchange   The request and its response.
+     * @param parameters The query parameters of the request.
+     * @throws IOException If the response cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The response has been sent.
+     *                     Time complexity: O(sqrt(n) + m), where n is the number of records and m the number of matches.
+     */
+    private void kml(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException {
+        double[] lowerLeft = {number(parameters, "x1"), number(parameters, "y1")};
+        double[] upperRight = {number(parameters, "x2"), number(parameters, "y2")};
+        String[] offenses = offenses(parameters);
+        boolean kmz = parameters.containsKey("kmz") && Boolean.parseBoolean(parameters.get("kmz").get(0));
+
+        exchange.getResponseHeaders().set("Content-Type", kmz ? "application/vnd.google-earth.kmz" : "application/vnd.google-earth.kml+xml");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        try (KmlWriter kml = kmz ? KmlWriter.toKmz(body) : KmlWriter.toStream(body)) {
+            if (offenses.length > 0) {
+                tree.visitPointsInRange(lowerLeft, upperRight, kml, offenses);
+            } else {
+                tree.visitPointsInRange(lowerLeft, upperRight, kml);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps an endpoint into an HttpHandler that parses the query parameters, rejects other methods than GET
+     * and turns invalid parameters into a 400 response.
+     *
+     * @param endpoint The endpoint.
+     * @return The handler.
+     * <p>
+     * Preconditions: endpoint must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    send(exchange, 405, TEXT_TYPE, "Only GET is supported\n");
+                    return;
+                }
+                Map<String, List<String>> parameters;
+                try {
+                    parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, TEXT_TYPE, "Malformed query string\n");
+                    return;
+                }
+                try {
+                    endpoint.answer(exchange, parameters);
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    // Thrown while reading the parameters, before any response header is sent
+                    send(exchange, 400, TEXT_TYPE, e.getMessage() + "\n");
+                }
+            } catch (IOException e) {
+                // The client has usually gone away; nothing more can be sent
+                logger.debug("Could not answer " + exchange.getRequestURI() + ": " + e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Sends a complete response.
+     *
+     * @param exchange    The request and its response.
+     * @param status      The HTTP status code.
+     * @param contentType The content type of the body.
+     * @param body        The body.
+     * @throws IOException If the response cannot be written.
+     *                     <p>
+     *                     Preconditions: No response header may have been sent yet.
+     *                     Postconditions: The response has been sent.
+     *                     Time complexity: O(b), where b is the length of the body.
+     */
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    /**
+     * Splits a raw query string into decoded parameters; a parameter given several times keeps all its values in order.
+     *
+     * @param rawQuery The query string of the request URI, or null.
+     * @return The values of each parameter name.
+     * @throws IllegalArgumentException If the query string holds an invalid percent escape.
+     *                                  <p>
+     *                                  Preconditions: None.
+     *                                  Postconditions: None.
+     *                                  Time complexity: O(l), where l is the length of the query string.
+     */
+    static Map<String, List<String>> parseQuery(String rawQuery) {
+        Map<String, List<String>> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads a required numeric parameter.
+     *
+     * @param parameters The query parameters.
+     * @param name       The name of the parameter.
+     * @return The first value of the parameter.
+     * @throws IllegalArgumentException If the parameter is missing or not a finite number.
+     *                                  <p>
+     *                                  Preconditions: None.
+     *                                  Postconditions: None.
+     *                                  Time complexity: O(1).
+     */
+    private static double number(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        if (values == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        try {
+            double value = Double.parseDouble(values.get(0));
+            if (Double.isFinite(value)) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Parameter " + name + " must be a number");
+    }
+
+    /**
+     * Reads an optional ISO date parameter.
+     *
+     * @param parameters The query parameters.
+     * @param name       The name of the parameter.
+     * @return The date, or null if the parameter is missing.
+     * @throws DateTimeParseException If the value is not an ISO date such as 1991-03-01.
+     *                                <p>
+     *                                Preconditions: None.
+     *                                Postconditions: None.
+     *                                Time complexity: O(1).
+     */
+    private static LocalDate date(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        return values == null ? null : LocalDate.parse(values.get(0));
+    }
+
+    /**
+     * Reads the offense filter of a request.
+     *
+     * @param parameters The query parameters.
+     * @return Every value of the offense parameter, or an empty array if there is none.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(v), where v is the number of values.
+     */
+    private static String[] offenses(Map<String, List<String>> parameters) {
+        List<String> values = parameters.get("offense");
+        return values == null ? new String[0] : values.toArray(new String[0]);
+    }
+
+    /**
+     * The Endpoint interface answers one kind of request.
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+
+        /**
+         * Answers a request.
+         *
+         * @param exchange   The request and its response.
+         * @param parameters The decoded query parameters.
+         * @throws IOException If the response cannot be written.
+         *                     <p>
+         *                     Preconditions: The request method is GET.
+         *                     Postconditions: The response has been sent, unless IllegalArgumentException or DateTimeParseException
+         *                     was thrown for an invalid parameter before any header was sent.
+         *                     Time complexity: Defined by the endpoint.
+         */
+        void answer(HttpExchange exchange, Map<String, List<String>> parameters) throws IOException;
+    }
+}
@@ -0,0 +1,941 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The CrimeStore class holds crime records column by column instead of as one object per record.
+ * Each record is identified by its index, and each attribute lives in its own primitive array:
+ * <ul>
+ * <li>x, y, latitude and longitude as doubles and time as an int;</li>
+ * <li>street, offense, date and tract as ids into a StringDictionary, so each distinct value is stored once;</li>
+ * <li>every distinct date is also parsed once into an epoch day, so dates can be compared as ints.</li>
+ * </ul>
+ * A record costs 52 bytes of column data plus its share of the dictionaries, instead of a CrimeRecord and six Strings.
+ * CrimeRecord objects are only created when get is called, and carry the shared dictionary Strings.
+ * <p>
+ * Latitude and longitude are reproduced with Double.toString, which gives back the text of the CSV for every value in
+ * CrimeLatLonXY.csv. Text that does not survive this round trip (trailing zeros, exponents, non-numbers, null) is kept
+ * as is in a small side table, so get always returns the record that was added.
+ * <p>
+ * Records can only be appended. A store is not safe for concurrent modification, but snapshot gives a read-only view of
+ * its current records that stays valid, and can be read from other threads, while further records are appended:
+ * the view shares the columns and dictionaries, and appending never changes an entry that already exists.
+ */
+public class CrimeStore {
+
+    static final int NO_DATE = Integer.MIN_VALUE; // Epoch day of a date that cannot be parsed
+    private static final String NULL_TEXT = new String("null"); // Stands for a null coordinate text in the side tables, compared by identity
+
+    private double[] xs; // The x coordinate of each record
+    private double[] ys; // The y coordinate of each record
+    private int[] times; // The time of each record
+    private int[] streetIds; // The street of each record, as an id in streets
+    private int[] offenseIds; // The offense of each record, as an id in offenses
+    private int[] dateIds; // The date of each record, as an id in dates
+    private int[] tractIds; // The tract of each record, as an id in tracts
+    private double[] latitudes; // The latitude of each record
+    private double[] longitudes; // The longitude of each record
+    private int size; // Number of records in the store
+
+    private final StringDictionary streets; // Distinct street names
+    private final StringDictionary offenses; // Distinct offense types
+    private final StringDictionary dates; // Distinct dates as written in the CSV
+    private final StringDictionary tracts; // Distinct census tracts
+    private int[] dateEpochDays = new int[16]; // The epoch day of each entry of dates, or NO_DATE
+    private final Map<Integer, String> latitudeTexts; // Latitude text of records whose double does not reproduce it, shared with snapshots
+    private final Map<Integer, String> longitudeTexts; // Longitude text of records whose double does not reproduce it, shared with snapshots
+    private final boolean readOnly; // Whether this store is a snapshot, which must not be appended to
+
+    /**
+     * Constructor to create an empty store.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new empty CrimeStore is created.
+     * Time complexity: O(1).
+     */
+    public CrimeStore() {
+        this(16);
+    }
+
+    /**
+     * Constructor to create an empty store with room for the given number of records before its columns grow.
+     *
+     * @param initialCapacity The number of records the store can hold before growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new empty CrimeStore is created.
+     *                        Time complexity: O(c), where c is initialCapacity.
+     */
+    public CrimeStore(int initialCapacity) {
+        allocate(Math.max(initialCapacity, 1));
+        streets = new StringDictionary();
+        offenses = new StringDictionary();
+        dates = new StringDictionary();
+        tracts = new StringDictionary();
+        latitudeTexts = new ConcurrentHashMap<>();
+        longitudeTexts = new ConcurrentHashMap<>();
+        readOnly = false;
+    }
+
+    /**
+     * Constructor to create a read-only snapshot of another store.
+     *
+     * @param other The store to take the snapshot of.
+     *              <p>
+     *              Preconditions: other must be non-null.
+     *              Postconditions: The snapshot holds the current records of other; records appended to other later are not visible in it.
+     *              Time complexity: O(1).
+     */
+    private CrimeStore(CrimeStore other) {
+        xs = other.xs;
+        ys = other.ys;
+        times = other.times;
+        streetIds = other.streetIds;
+        offenseIds = other.offenseIds;
+        dateIds = other.dateIds;
+        tractIds = other.tractIds;
+        latitudes = other.latitudes;
+        longitudes = other.longitudes;
+        size = other.size;
+        streets = other.streets.snapshot();
+        offenses = other.offenses.snapshot();
+        dates = other.dates.snapshot();
+        tracts = other.tracts.snapshot();
+        dateEpochDays = other.dateEpochDays;
+        latitudeTexts = other.latitudeTexts;
+        longitudeTexts = other.longitudeTexts;
+        readOnly = true;
+    }
+
+    /**
+     * Returns a read-only view of the current records of the store.
+     * The view shares the columns, dictionaries and side tables of this store instead of copying them: records appended
+     * here later go into entries the view never reads, or into new arrays when a column grows, so the view stays valid.
+     * Once the view has been safely published (for example through a volatile field), any number of threads may read it
+     * while one thread keeps appending to this store.
+     *
+     * @return A store holding the current records, which throws UnsupportedOperationException on every attempt to append.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    CrimeStore snapshot() {
+        return new CrimeStore(this);
+    }
+
+    /**
+     * Checks whether the store is a read-only snapshot.
+     *
+     * @return True if records cannot be appended to the store.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Throws if the store is a read-only snapshot.
+     *
+     * @throws UnsupportedOperationException If the store is a snapshot.
+     *                                       <p>
+     *                                       Preconditions: None.
+     *                                       Postconditions: None.
+     *                                       Time complexity: O(1).
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("A snapshot of a crime store is read-only");
+        }
+    }
+
+    /**
+     * Appends a crime record.
+     *
+     * @param crimeRecord The crime record.
+     * @return The index of the record in the store.
+     * <p>
+     * Preconditions: crimeRecord must be non-null.
+     * Postconditions: get of the returned index returns a record equal to crimeRecord.
+     * Time complexity: O(k) amortized, where k is the length of the text fields.
+     */
+    public int add(CrimeRecord crimeRecord) {
+        return add(crimeRecord.x(), crimeRecord.y(), crimeRecord.time(), crimeRecord.street(), crimeRecord.offense(), crimeRecord.date(),
+                crimeRecord.tract(), crimeRecord.latitude(), crimeRecord.longitude());
+    }
+
+    /**
+     * Appends a crime record given by its fields.
+     *
+     * @param x         X coordinate of the crime location.
+     * @param y         Y coordinate of the crime location.
+     * @param time      Time of the crime occurrence.
+     * @param street    Street where the crime occurred.
+     * @param offense   Type of offense.
+     * @param date      Date of the crime.
+     * @param tract     Census tract information.
+     * @param latitude  Latitude of the crime location.
+     * @param longitude Longitude of the crime location.
+     * @return The index of the record in the store.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: get of the returned index returns a record with exactly these fields.
+     * Time complexity: O(k) amortized, where k is the length of the text fields.
+     */
+    public int add(double x, double y, int time, String street, String offense, String date, String tract, String latitude, String longitude) {
+        checkWritable();
+        int index = size;
+        double latitudeValue = encodeCoordinate(latitude, latitudeTexts, index);
+        double longitudeValue = encodeCoordinate(longitude, longitudeTexts, index);
+        return addEncoded(x, y, time, streets.idOf(street), offenses.idOf(offense), dateId(date), tracts.idOf(tract), latitudeValue, longitudeValue);
+    }
+
+    /**
+     * Appends a crime record whose latitude and longitude are given as numbers, written as Double.toString gives them.
+     *
+     * @param x         X coordinate of the crime location.
+     * @param y         Y coordinate of the crime location.
+     * @param time      Time of the crime occurrence.
+     * @param street    Street where the crime occurred.
+     * @param offense   Type of offense.
+     * @param date      Date of the crime.
+     * @param tract     Census tract information.
+     * @param latitude  Latitude of the crime location.
+     * @param longitude Longitude of the crime location.
+     * @return The index of the record in the store.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: get of the returned index returns a record with these fields and Double.toString of the coordinates.
+     * Time complexity: O(k) amortized, where k is the length of the text fields.
+     */
+    public int add(double x, double y, int time, String street, String offense, String date, String tract, double latitude, double longitude) {
+        checkWritable();
+        return addEncoded(x, y, time, streets.idOf(street), offenses.idOf(offense), dateId(date), tracts.idOf(tract), latitude, longitude);
+    }
+
+    /**
+     * Appends a record whose text fields are already encoded as dictionary ids of this store.
+     *
+     * @param x         X coordinate of the crime location.
+     * @param y         Y coordinate of the crime location.
+     * @param time      Time of the crime occurrence.
+     * @param streetId  Id of the street in the street dictionary.
+     * @param offenseId Id of the offense in the offense dictionary.
+     * @param dateId    Id of the date in the date dictionary.
+     * @param tractId   Id of the tract in the tract dictionary.
+     * @param latitude  Latitude of the crime location.
+     * @param longitude Longitude of the crime location.
+     * @return The index of the record in the store.
+     * <p>
+     * Preconditions: The ids must be valid in the dictionaries of this store.
+     * Postconditions: The record is appended.
+     * Time complexity: O(1) amortized.
+     */
+    int addEncoded(double x, double y, int time, int streetId, int offenseId, int dateId, int tractId, double latitude, double longitude) {
+        checkWritable();
+        if (size == xs.length) {
+            grow(size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        times[size] = time;
+        streetIds[size] = streetId;
+        offenseIds[size] = offenseId;
+        dateIds[size] = dateId;
+        tractIds[size] = tractId;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        return size++;
+    }
+
+    /**
+     * Appends all records of another store, translating its dictionary ids into ids of this store.
+     *
+     * @param other The store to append.
+     *              <p>
+     *              Preconditions: other must be non-null and not this store.
+     *              Postconditions: The records of other follow the records of this store, in the same order.
+     *              Time complexity: O(m + d), where m is the number of records and d the number of distinct values in other.
+     */
+    void addAll(CrimeStore other) {
+        checkWritable();
+        int[] streetMap = translate(other.streets, streets, false);
+        int[] offenseMap = translate(other.offenses, offenses, false);
+        int[] dateMap = translate(other.dates, dates, true);
+        int[] tractMap = translate(other.tracts, tracts, false);
+        if (size + other.size > xs.length) {
+            grow(Math.max(size + other.size, xs.length * 2));
+        }
+        int offset = size;
+        for (int i = 0; i < other.size; i++) {
+            addEncoded(other.xs[i], other.ys[i], other.times[i], streetMap[other.streetIds[i]], offenseMap[other.offenseIds[i]],
+                    dateMap[other.dateIds[i]], tractMap[other.tractIds[i]], other.latitudes[i], other.longitudes[i]);
+        }
+        for (Map.Entry<Integer, String> entry : other.latitudeTexts.entrySet()) {
+            latitudeTexts.put(entry.getKey() + offset, entry.getValue());
+        }
+        for (Map.Entry<Integer, String> entry : other.longitudeTexts.entrySet()) {
+            longitudeTexts.put(entry.getKey() + offset, entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of records in the store.
+     *
+     * @return The number of records.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the crime record at an index, creating a CrimeRecord view of its columns.
+     *
+     * @param index The index of the record.
+     * @return A new CrimeRecord equal to the record that was added at the index.
+     * @throws IndexOutOfBoundsException If the index is not in [0, size()).
+     *                                   <p>
+     *                                   Preconditions: None.
+     *                                   Postconditions: None.
+     *                                   Time complexity: O(1), or O(k) to format latitude and longitude of k digits.
+     */
+    public CrimeRecord get(int index) {
+        Objects.checkIndex(index, size);
+        return new CrimeRecord(xs[index], ys[index], times[index], streets.get(streetIds[index]), offenses.get(offenseIds[index]),
+                dates.get(dateIds[index]), tracts.get(tractIds[index]), latitudeText(index), longitudeText(index));
+    }
+
+    /**
+     * Returns all records of the store as CrimeRecord objects.
+     *
+     * @return A new array holding a CrimeRecord for each record, in index order.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is the number of records.
+     */
+    public CrimeRecord[] toArray() {
+        CrimeRecord[] records = new CrimeRecord[size];
+        for (int i = 0; i < size; i++) {
+            records[i] = get(i);
+        }
+        return records;
+    }
+
+    /**
+     * Returns the x coordinate of a record.
+     *
+     * @param index The index of the record.
+     * @return The x coordinate.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public double x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * Returns the y coordinate of a record.
+     *
+     * @param index The index of the record.
+     * @return The y coordinate.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public double y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Returns the time of a record.
+     *
+     * @param index The index of the record.
+     * @return The time of the crime occurrence.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int time(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns the street of a record.
+     *
+     * @param index The index of the record.
+     * @return The street, shared with every record on the same street.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public String street(int index) {
+        return streets.get(streetIds[index]);
+    }
+
+    /**
+     * Returns the offense of a record.
+     *
+     * @param index The index of the record.
+     * @return The offense type, shared with every record of the same offense.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public String offense(int index) {
+        return offenses.get(offenseIds[index]);
+    }
+
+    /**
+     * Returns the offense id of a record, which is the same for records with the same offense.
+     *
+     * @param index The index of the record.
+     * @return The offense id, in [0, offenseCount()).
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int offenseId(int index) {
+        return offenseIds[index];
+    }
+
+    /**
+     * Returns the number of distinct offense types in the store.
+     *
+     * @return The number of offense ids in use.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int offenseCount() {
+        return offenses.size();
+    }
+
+    /**
+     * Returns the id of an offense type.
+     *
+     * @param offense The offense type, as written in the CSV.
+     * @return The offense id, or -1 if no record has the offense.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(k) expected, where k is the length of the offense.
+     */
+    public int findOffense(String offense) {
+        return offenses.find(offense);
+    }
+
+    /**
+     * Returns the offense type of an offense id.
+     *
+     * @param offenseId The offense id.
+     * @return The offense type.
+     * <p>
+     * Preconditions: 0 <= offenseId < offenseCount().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public String offenseName(int offenseId) {
+        return offenses.get(offenseId);
+    }
+
+    /**
+     * Returns the date of a record as written in the CSV.
+     *
+     * @param index The index of the record.
+     * @return The date text, shared with every record on the same date.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public String date(int index) {
+        return dates.get(dateIds[index]);
+    }
+
+    /**
+     * Returns the date of a record as a day count, so that dates can be compared and subtracted as ints.
+     *
+     * @param index The index of the record.
+     * @return The number of days since 1970-01-01 (LocalDate.toEpochDay), or Integer.MIN_VALUE if the date cannot be parsed.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1), as each distinct date is parsed once when it is first added.
+     */
+    public int epochDay(int index) {
+        return dateEpochDays[dateIds[index]];
+    }
+
+    /**
+     * Returns the census tract of a record.
+     *
+     * @param index The index of the record.
+     * @return The tract, shared with every record in the same tract.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public String tract(int index) {
+        return tracts.get(tractIds[index]);
+    }
+
+    /**
+     * Returns the latitude of a record as a number.
+     *
+     * @param index The index of the record.
+     * @return The latitude, or NaN if the CSV text is not a number.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public double latitude(int index) {
+        return latitudes[index];
+    }
+
+    /**
+     * Returns the longitude of a record as a number.
+     *
+     * @param index The index of the record.
+     * @return The longitude, or NaN if the CSV text is not a number.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public double longitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * Returns the latitude of a record as written in the CSV.
+     *
+     * @param index The index of the record.
+     * @return The latitude text.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(k), where k is the number of digits.
+     */
+    public String latitudeText(int index) {
+        return coordinateText(latitudes[index], latitudeTexts, index);
+    }
+
+    /**
+     * Returns the longitude of a record as written in the CSV.
+     *
+     * @param index The index of the record.
+     * @return The longitude text.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(k), where k is the number of digits.
+     */
+    public String longitudeText(int index) {
+        return coordinateText(longitudes[index], longitudeTexts, index);
+    }
+
+    /**
+     * Appends a record as a CSV line, in the same form as CrimeRecord.toString, without creating any string.
+     *
+     * @param index The index of the record.
+     * @param line  The builder to append to.
+     *              <p>
+     *              Preconditions: 0 <= index < size(), line must be non-null.
+     *              Postconditions: line ends with get(index).toString().
+     *              Time complexity: O(k), where k is the length of the line.
+     */
+    void appendCsv(int index, StringBuilder line) {
+        CrimeCsvWriter.appendDouble(line, xs[index]);
+        line.append(',');
+        CrimeCsvWriter.appendDouble(line, ys[index]);
+        line.append(',').append(time(index)).append(',')
+                .append(street(index)).append(',').append(offense(index)).append(',').append(date(index)).append(',')
+                .append(tract(index)).append(',');
+        appendCoordinate(line, latitudes[index], latitudeTexts, index);
+        line.append(',');
+        appendCoordinate(line, longitudes[index], longitudeTexts, index);
+    }
+
+    /**
+     * Appends the text of a latitude or longitude, as coordinateText returns it.
+     *
+     * @param line  The builder to append to.
+     * @param value The encoded coordinate.
+     * @param texts The side table of the coordinate column.
+     * @param index The index of the record.
+     *              <p>
+     *              Preconditions: line and texts must be non-null.
+     *              Postconditions: line ends with coordinateText(value, texts, index), or "null" for a missing value.
+     *              Time complexity: O(k), where k is the number of digits.
+     */
+    private static void appendCoordinate(StringBuilder line, double value, Map<Integer, String> texts, int index) {
+        if (!texts.isEmpty()) {
+            String text = texts.get(index);
+            if (text != null) {
+                line.append(text == NULL_TEXT ? null : text);
+                return;
+            }
+        }
+        CrimeCsvWriter.appendDouble(line, value);
+    }
+
+    /**
+     * Estimates the heap footprint of the store: 52 bytes of column data per slot of capacity plus the dictionaries
+     * and the side table of coordinate text, assuming a 64-bit JVM with compressed oops.
+     *
+     * @return The estimated number of bytes used by the store.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(d), where d is the number of distinct text values.
+     */
+    public long estimatedFootprintBytes() {
+        long bytes = 9 * 16L + 52L * xs.length + 4L * dateEpochDays.length;
+        bytes += streets.estimatedFootprintBytes() + offenses.estimatedFootprintBytes() + dates.estimatedFootprintBytes() + tracts.estimatedFootprintBytes();
+        bytes += 96L * (latitudeTexts.size() + longitudeTexts.size());
+        return bytes;
+    }
+
+    /**
+     * Returns the id in the date dictionary of a date, adding it and parsing its epoch day if it is new.
+     *
+     * @param date The date text.
+     * @return The id of the date.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The date and its epoch day are in the dictionary.
+     * Time complexity: O(k) expected, where k is the length of the date.
+     */
+    int dateId(String date) {
+        checkWritable();
+        int count = dates.size();
+        int id = dates.idOf(date);
+        if (id == count) {
+            if (id == dateEpochDays.length) {
+                int[] grown = new int[dateEpochDays.length * 2];
+                System.arraycopy(dateEpochDays, 0, grown, 0, id);
+                dateEpochDays = grown;
+            }
+            dateEpochDays[id] = parseEpochDay(date);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the street dictionary, for writing the store to a snapshot.
+     *
+     * @return The street dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    StringDictionary streets() {
+        return streets;
+    }
+
+    /**
+     * Returns the offense dictionary, for writing the store to a snapshot.
+     *
+     * @return The offense dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    StringDictionary offenses() {
+        return offenses;
+    }
+
+    /**
+     * Returns the date dictionary, for writing the store to a snapshot.
+     *
+     * @return The date dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    StringDictionary dates() {
+        return dates;
+    }
+
+    /**
+     * Returns the tract dictionary, for writing the store to a snapshot.
+     *
+     * @return The tract dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    StringDictionary tracts() {
+        return tracts;
+    }
+
+    /**
+     * Returns the street id of a record.
+     *
+     * @param index The index of the record.
+     * @return The id of the street in the street dictionary.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    int streetId(int index) {
+        return streetIds[index];
+    }
+
+    /**
+     * Returns the date id of a record.
+     *
+     * @param index The index of the record.
+     * @return The id of the date in the date dictionary.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    int dateId(int index) {
+        return dateIds[index];
+    }
+
+    /**
+     * Returns the tract id of a record.
+     *
+     * @param index The index of the record.
+     * @return The id of the tract in the tract dictionary.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    int tractId(int index) {
+        return tractIds[index];
+    }
+
+    /**
+     * Checks whether the latitude and longitude text of a record are reproduced by Double.toString of their values.
+     *
+     * @param index The index of the record.
+     * @return True if neither coordinate is kept as text in the side table.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1) expected.
+     */
+    boolean hasCanonicalCoordinates(int index) {
+        return !latitudeTexts.containsKey(index) && !longitudeTexts.containsKey(index);
+    }
+
+    /**
+     * Sets the latitude and longitude text of a record, keeping it in the side table if its value does not reproduce it.
+     *
+     * @param index     The index of the record.
+     * @param latitude  The latitude text.
+     * @param longitude The longitude text.
+     *                  <p>
+     *                  Preconditions: 0 <= index < size().
+     *                  Postconditions: latitudeText and longitudeText of the record return the given text.
+     *                  Time complexity: O(k), where k is the length of the text.
+     */
+    void setCoordinateTexts(int index, String latitude, String longitude) {
+        checkWritable();
+        latitudes[index] = encodeCoordinate(latitude, latitudeTexts, index);
+        longitudes[index] = encodeCoordinate(longitude, longitudeTexts, index);
+    }
+
+    /**
+     * Parses a date of the forms M/d/yy, M/d/yyyy or yyyy-MM-dd into an epoch day.
+     * Two-digit years from 50 onwards are taken to be 19xx and earlier ones 20xx.
+     *
+     * @param date The date text.
+     * @return The number of days since 1970-01-01, or NO_DATE if the text is not a valid date in one of the forms.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(k), where k is the length of the text.
+     */
+    static int parseEpochDay(String date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        String[] parts;
+        int year;
+        int month;
+        int day;
+        try {
+            if (date.indexOf('/') >= 0) {
+                parts = date.trim().split("/");
+                if (parts.length != 3) {
+                    return NO_DATE;
+                }
+                month = Integer.parseInt(parts[0]);
+                day = Integer.parseInt(parts[1]);
+                year = Integer.parseInt(parts[2]);
+                if (parts[2].length() <= 2) {
+                    year += year >= 50 ? 1900 : 2000;
+                }
+            } else {
+                parts = date.trim().split("-");
+                if (parts.length != 3) {
+                    return NO_DATE;
+                }
+                year = Integer.parseInt(parts[0]);
+                month = Integer.parseInt(parts[1]);
+                day = Integer.parseInt(parts[2]);
+            }
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (NumberFormatException | DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    /**
+     * Converts the text of a coordinate to a double, keeping the text in a side table if Double.toString does not reproduce it.
+     *
+     * @param text     The coordinate text.
+     * @param texts    The side table of the column.
+     * @param index    The index of the record.
+     * @return The value of the coordinate, or NaN if the text is not a number.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: coordinateText of the returned value and the side table gives back the text.
+     * Time complexity: O(k), where k is the length of the text.
+     */
+    private static double encodeCoordinate(String text, Map<Integer, String> texts, int index) {
+        double value = Double.NaN;
+        if (text != null) {
+            try {
+                value = Double.parseDouble(text);
+                if (Double.toString(value).equals(text)) {
+                    texts.remove(index);
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+            }
+        }
+        texts.put(index, text == null ? NULL_TEXT : text);
+        return value;
+    }
+
+    /**
+     * Returns the text of a coordinate, from the side table if it is there and from its value otherwise.
+     *
+     * @param value The value of the coordinate.
+     * @param texts The side table of the column.
+     * @param index The index of the record.
+     * @return The coordinate text.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(k), where k is the number of digits.
+     */
+    private static String coordinateText(double value, Map<Integer, String> texts, int index) {
+        if (!texts.isEmpty()) {
+            String text = texts.get(index);
+            if (text != null) {
+                return text == NULL_TEXT ? null : text;
+            }
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * Translates every id of one dictionary into the id of the same value in another, adding missing values.
+     *
+     * @param from  The dictionary whose ids are translated.
+     * @param to    The dictionary of this store.
+     * @param dates Whether the dictionaries hold dates, whose epoch days must be parsed for new values.
+     * @return The id in to of each id in from.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Every value of from is in to.
+     * Time complexity: O(d), where d is the number of values in from.
+     */
+    private int[] translate(StringDictionary from, StringDictionary to, boolean dates) {
+        int[] map = new int[from.size()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = dates ? dateId(from.get(i)) : to.idOf(from.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * Allocates the columns with the given capacity.
+     *
+     * @param capacity The number of records the columns can hold.
+     *                 <p>
+     *                 Preconditions: capacity must be positive.
+     *                 Postconditions: Every column has the given length.
+     *                 Time complexity: O(c), where c is capacity.
+     */
+    private void allocate(int capacity) {
+        xs = new double[capacity];
+        ys = new double[capacity];
+        times = new int[capacity];
+        streetIds = new int[capacity];
+        offenseIds = new int[capacity];
+        dateIds = new int[capacity];
+        tractIds = new int[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+    }
+
+    /**
+     * Grows every column to the given capacity, keeping the records.
+     *
+     * @param capacity The new capacity.
+     *                 <p>
+     *                 Preconditions: capacity must be at least size.
+     *                 Postconditions: Every column has the given length and the records are unchanged.
+     *                 Time complexity: O(c), where c is capacity.
+     */
+    private void grow(int capacity) {
+        double[] oldXs = xs;
+        double[] oldYs = ys;
+        int[] oldTimes = times;
+        int[] oldStreetIds = streetIds;
+        int[] oldOffenseIds = offenseIds;
+        int[] oldDateIds = dateIds;
+        int[] oldTractIds = tractIds;
+        double[] oldLatitudes = latitudes;
+        double[] oldLongitudes = longitudes;
+        allocate(capacity);
+        System.arraycopy(oldXs, 0, xs, 0, size);
+        System.arraycopy(oldYs, 0, ys, 0, size);
+        System.arraycopy(oldTimes, 0, times, 0, size);
+        System.arraycopy(oldStreetIds, 0, streetIds, 0, size);
+        System.arraycopy(oldOffenseIds, 0, offenseIds, 0, size);
+        System.arraycopy(oldDateIds, 0, dateIds, 0, size);
+        System.arraycopy(oldTractIds, 0, tractIds, 0, size);
+        System.arraycopy(oldLatitudes, 0, latitudes, 0, size);
+        System.arraycopy(oldLongitudes, 0, longitudes, 0, size);
+    }
+}
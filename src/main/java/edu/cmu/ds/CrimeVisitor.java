@@ -0,0 +1,26 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+/**
+ * The CrimeVisitor interface receives crime records one at a time from a query or traversal of a 2D tree,
+ * so results can be streamed to their destination without being collected into a ListOfCrimes first.
+ * The coordinates are passed as primitives so that a visitor that only needs them does not have to read the record.
+ */
+@FunctionalInterface
+public interface CrimeVisitor {
+
+    /**
+     * Receives one crime record.
+     *
+     * @param x           The x coordinate of the record.
+     * @param y           The y coordinate of the record.
+     * @param crimeRecord The crime record.
+     * @return True to continue with the next record, false to stop the query or traversal early.
+     * <p>
+     * Preconditions: crimeRecord is non-null.
+     * Postconditions: None.
+     * Time complexity: Defined by the implementation.
+     */
+    boolean visit(double x, double y, CrimeRecord crimeRecord);
+}
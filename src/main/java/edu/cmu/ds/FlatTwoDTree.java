@@ -0,0 +1,506 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * The FlatTwoDTree class is an array-backed 2D tree that answers the same range and nearest neighbor queries as TwoDTree.
+ * Instead of one TreeNode object per record it keeps the tree in three flat arrays (x coordinates, y coordinates and
+ * record indices) laid out implicitly: the root of every range [from, to) of the arrays is its middle element, its left
+ * subtree is [from, middle) and its right subtree is [middle + 1, to), so no child links are stored at all.
+ * Ranges of at most LEAF_SIZE points are left unsplit and scanned linearly, which keeps the last levels of a query
+ * inside a few cache lines.
+ * <p>
+ * The tree is immutable once built; records cannot be inserted after construction.
+ */
+public final class FlatTwoDTree {
+
+    private static final Logger logger = LoggerUtil.getLogger(FlatTwoDTree.class);
+    private static final int LEAF_SIZE = 8; // Ranges of at most this many points are scanned instead of split
+
+    private final double[] xs; // The x coordinate of each point, in tree layout
+    private final double[] ys; // The y coordinate of each point, in tree layout
+    private final int[] recordIndex; // The index in store of the crime record of each point, in tree layout
+    private final CrimeStore store; // The crime records, in the order they were given
+    private final int size; // Number of points in the tree
+
+    /**
+     * Constructor to build a flat 2D tree from the given crime records.
+     *
+     * @param crimeRecords The crime records to index. The array is not modified.
+     * @param count        The number of records at the start of the array to index.
+     *                     <p>
+     *                     Preconditions: crimeRecords must be non-null and hold at least count non-null records.
+     *                     Postconditions: A new FlatTwoDTree is created holding the given records.
+     *                     Time complexity: O(n log n), where n is count, as each level partitions its points around a median.
+     */
+    public FlatTwoDTree(CrimeRecord[] crimeRecords, int count) {
+        this(toStore(crimeRecords, count));
+    }
+
+    /**
+     * Constructor to build a flat 2D tree over all records of a store.
+     *
+     * @param crimeStore The crime records to index. Record indexes passed to a PointVisitor are indexes in this store.
+     *                   <p>
+     *                   Preconditions: crimeStore must be non-null and must not be modified afterwards.
+     *                   Postconditions: A new FlatTwoDTree is created holding the records of the store.
+     *                   Time complexity: O(n log n), where n is the number of records, as each level partitions its points around a median.
+     */
+    public FlatTwoDTree(CrimeStore crimeStore) {
+        long start = System.nanoTime();
+        int count = crimeStore.size();
+        store = crimeStore;
+        size = count;
+        xs = new double[count];
+        ys = new double[count];
+        recordIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = crimeStore.x(i);
+            ys[i] = crimeStore.y(i);
+            recordIndex[i] = i;
+        }
+        build(0, count, 0);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Built flat 2D tree with " + count + " records in " + elapsedMillis + " ms (" + estimatedFootprintBytes() + " bytes, "
+                + (count == 0 ? 0 : estimatedFootprintBytes() / count) + " bytes per point)");
+    }
+
+    /**
+     * Loads crime data from the given file location into a new flat 2D tree.
+     *
+     * @param crimeDataLocation The location of the crime data file.
+     * @return A flat 2D tree holding the records of the file.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: crimeDataLocation must be a valid file path.
+     *                     Postconditions: Returns a new FlatTwoDTree holding the records of the file.
+     *                     Time complexity: O(n log n), where n is the number of crime records in the file.
+     */
+    public static FlatTwoDTree load(String crimeDataLocation) throws IOException {
+        return new FlatTwoDTree(TwoDTree.readCrimeStore(crimeDataLocation));
+    }
+
+    /**
+     * Copies crime records into a new columnar store.
+     *
+     * @param crimeRecords The crime records.
+     * @param count        The number of records at the start of the array to copy.
+     * @return A store holding the records in array order.
+     * <p>
+     * Preconditions: crimeRecords must hold at least count non-null records.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is count.
+     */
+    private static CrimeStore toStore(CrimeRecord[] crimeRecords, int count) {
+        CrimeStore crimeStore = new CrimeStore(count);
+        for (int i = 0; i < count; i++) {
+            crimeStore.add(crimeRecords[i]);
+        }
+        return crimeStore;
+    }
+
+    /**
+     * Recursive helper method to arrange a range of the arrays into the implicit tree layout.
+     *
+     * @param from  The index of the first point of the range (inclusive).
+     * @param to    The index after the last point of the range (exclusive).
+     * @param depth The depth of the range root in the tree.
+     *              <p>
+     *              Preconditions: 0 <= from <= to <= size.
+     *              Postconditions: The middle point of the range is the median in the current dimension, with smaller or equal values before it
+     *              and greater or equal values after it, and both halves are arranged the same way.
+     *              Time complexity: O(n log n), where n is the size of the range.
+     */
+    private void build(int from, int to, int depth) {
+        if (to - from <= LEAF_SIZE) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(from, to - 1, median, depth % 2 == 0 ? xs : ys);
+        build(from, median, depth + 1);
+        build(median + 1, to, depth + 1);
+    }
+
+    /**
+     * Partially sorts a range of the arrays so that the point at index k is the one that would be there if the range were sorted by keys.
+     *
+     * @param left  The index of the first point of the range (inclusive).
+     * @param right The index of the last point of the range (inclusive).
+     * @param k     The index to select.
+     * @param keys  The coordinate array to compare, either xs or ys.
+     *              <p>
+     *              Preconditions: left <= k <= right.
+     *              Postconditions: The range is partitioned around index k.
+     *              Time complexity: O(n) expected, where n is the size of the range (quickselect with a median-of-three pivot).
+     */
+    private void select(int left, int right, int k, double[] keys) {
+        while (right > left) {
+            int middle = (left + right) >>> 1;
+            if (keys[middle] < keys[left]) swap(left, middle);
+            if (keys[right] < keys[left]) swap(left, right);
+            if (keys[right] < keys[middle]) swap(middle, right);
+            double pivot = keys[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swaps two points in all three arrays.
+     *
+     * @param i The index of the first point.
+     * @param j The index of the second point.
+     *          <p>
+     *          Preconditions: i and j must be valid indices.
+     *          Postconditions: The points at i and j are exchanged.
+     *          Time complexity: O(1).
+     */
+    private void swap(int i, int j) {
+        double tempX = xs[i];
+        xs[i] = xs[j];
+        xs[j] = tempX;
+        double tempY = ys[i];
+        ys[i] = ys[j];
+        ys[j] = tempY;
+        int tempIndex = recordIndex[i];
+        recordIndex[i] = recordIndex[j];
+        recordIndex[j] = tempIndex;
+    }
+
+    /**
+     * Returns the number of crime records in the tree.
+     *
+     * @return The number of points in the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the heap footprint of the tree structure, not counting the crime records themselves.
+     * Each point costs two doubles and one int in the flat arrays (20 bytes), plus one array header per array.
+     *
+     * @return The estimated number of bytes used by the arrays of the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public long estimatedFootprintBytes() {
+        return 3 * 16 + (long) size * (8 + 8 + 4);
+    }
+
+    /**
+     * Finds all crime records within the given range of coordinates.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return A list of crime records within the given range.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: Returns a list of crime records within the given range (boundaries included).
+     * Time complexity: O(sqrt(n) + m), where n is the number of points in the tree and m the number of matches.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight) {
+        ListOfCrimes crimesInRange = new ListOfCrimes();
+        visitPointsInRange(lowerLeft, upperRight, (x, y, index) -> {
+            crimesInRange.addCrime(store.get(index));
+            return true;
+        });
+        return crimesInRange;
+    }
+
+    /**
+     * Passes the coordinates and record index of every point within the given range to a visitor, stopping early if the visitor returns false.
+     * No crime record is read unless the visitor asks for it with getRecord.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param visitor    The visitor receiving each match.
+     * @return True if every match was visited, false if the visitor stopped the query early.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, visitor must be non-null.
+     * Postconditions: The visitor has received the matches until it returned false.
+     * Time complexity: O(sqrt(n) + m), where n is the number of points in the tree and m the number of matches.
+     */
+    public boolean visitPointsInRange(double[] lowerLeft, double[] upperRight, PointVisitor visitor) {
+        double minX = lowerLeft[0];
+        double minY = lowerLeft[1];
+        double maxX = upperRight[0];
+        double maxY = upperRight[1];
+        long start = QueryMetrics.start();
+        int visited = 0; // Points examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int results = 0; // Points passed to the visitor, for the query metrics
+
+        // Each stack frame is a range of the arrays: from, to and depth
+        int[] stack = new int[3 * (64 + 1)];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size;
+        stack[top++] = 0;
+
+        try {
+            while (top > 0) {
+                int depth = stack[--top];
+                int to = stack[--top];
+                int from = stack[--top];
+
+                // Scan small ranges linearly
+                if (to - from <= LEAF_SIZE) {
+                    visited += to - from;
+                    for (int i = from; i < to; i++) {
+                        if (xs[i] >= minX && xs[i] <= maxX && ys[i] >= minY && ys[i] <= maxY) {
+                            results++;
+                            if (!visitor.visit(xs[i], ys[i], recordIndex[i])) {
+                                return false;
+                            }
+                        }
+                    }
+                    continue;
+                }
+
+                int median = (from + to) >>> 1;
+                visited++;
+                double x = xs[median];
+                double y = ys[median];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    results++;
+                    if (!visitor.visit(x, y, recordIndex[median])) {
+                        return false;
+                    }
+                }
+
+                double split = depth % 2 == 0 ? x : y;
+                double min = depth % 2 == 0 ? minX : minY;
+                double max = depth % 2 == 0 ? maxX : maxY;
+                if (split <= max) {
+                    stack[top++] = median + 1;
+                    stack[top++] = to;
+                    stack[top++] = depth + 1;
+                } else {
+                    pruned++;
+                }
+                if (split >= min) {
+                    stack[top++] = from;
+                    stack[top++] = median;
+                    stack[top++] = depth + 1;
+                } else {
+                    pruned++;
+                }
+            }
+        } finally {
+            QueryMetrics.record(QueryMetrics.Query.RANGE, start, visited, pruned, results);
+        }
+        return true;
+    }
+
+    /**
+     * Passes the coordinates and record index of every point to a visitor level by level from the root, stopping early if the
+     * visitor returns false. The root of a range is the median of its parent's half, so any prefix of the walk is a sample
+     * spread over the whole area, coarse first; the points of an unsplit leaf range are visited together in array order.
+     * The ranges waiting to be visited are kept in an IntQueue, so the walk allocates nothing per point.
+     *
+     * @param visitor The visitor receiving each point.
+     * @return True if every point was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the points in level order until it returned false.
+     * Time complexity: O(n), where n is the number of points in the tree; the queue holds at most one level, O(n) in the worst case.
+     */
+    public boolean visitLevelOrder(PointVisitor visitor) {
+        // Each queue entry is a range of the arrays: from and to
+        IntQueue queue = new IntQueue();
+        queue.enqueue(0);
+        queue.enqueue(size);
+        while (!queue.isEmpty()) {
+            int from = queue.dequeue();
+            int to = queue.dequeue();
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    if (!visitor.visit(xs[i], ys[i], recordIndex[i])) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+            int median = (from + to) >>> 1;
+            if (!visitor.visit(xs[median], ys[median], recordIndex[median])) {
+                return false;
+            }
+            queue.enqueue(from);
+            queue.enqueue(median);
+            queue.enqueue(median + 1);
+            queue.enqueue(to);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the crime record with the given record index, as passed to a PointVisitor.
+     *
+     * @param index The record index.
+     * @return The crime record.
+     * <p>
+     * Preconditions: 0 <= index < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public CrimeRecord getRecord(int index) {
+        return store.get(index);
+    }
+
+    /**
+     * Finds the nearest neighbor to the given point in the tree.
+     * Distances are compared squared and a subtree is only searched if the squared distance from the query point
+     * to its splitting line is less than the squared distance to the nearest point found so far.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @return The nearest neighbor to the query point, or a neighbor with a null record if the tree is empty.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest neighbor to the query point.
+     * Time complexity: O(log n) on average, where n is the number of points in the tree.
+     */
+    public Neighbor nearestNeighbor(double[] coordinates) {
+        double queryX = coordinates[0];
+        double queryY = coordinates[1];
+        int nearestIndex = -1;
+        double nearestDistance = Double.MAX_VALUE; // Squared distance to the nearest point found so far
+        long start = QueryMetrics.start();
+        int visited = 0; // Points examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+
+        // Each stack frame is a range of the arrays (from, to, depth) plus the squared distance to its splitting line
+        int[] stack = new int[3 * (2 * 64 + 1)];
+        double[] bounds = new double[2 * 64 + 1];
+        int top = 0;
+        stack[0] = 0;
+        stack[1] = size;
+        stack[2] = 0;
+        bounds[0] = 0;
+        top++;
+
+        while (top > 0) {
+            top--;
+            if (bounds[top] >= nearestDistance) {
+                pruned++;
+                continue;
+            }
+            int from = stack[3 * top];
+            int to = stack[3 * top + 1];
+            int depth = stack[3 * top + 2];
+
+            // Scan small ranges linearly
+            if (to - from <= LEAF_SIZE) {
+                visited += to - from;
+                for (int i = from; i < to; i++) {
+                    double dx = xs[i] - queryX;
+                    double dy = ys[i] - queryY;
+                    double distance = dx * dx + dy * dy;
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearestIndex = i;
+                    }
+                }
+                continue;
+            }
+
+            int median = (from + to) >>> 1;
+            visited++;
+            double dx = xs[median] - queryX;
+            double dy = ys[median] - queryY;
+            double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearestIndex = median;
+            }
+
+            double gap = depth % 2 == 0 ? queryX - xs[median] : queryY - ys[median];
+            double gapSquared = gap * gap;
+            // Push the far side first so that the near side is searched first
+            if (gap < 0) {
+                push(stack, bounds, top++, median + 1, to, depth + 1, gapSquared);
+                push(stack, bounds, top++, from, median, depth + 1, 0);
+            } else {
+                push(stack, bounds, top++, from, median, depth + 1, gapSquared);
+                push(stack, bounds, top++, median + 1, to, depth + 1, 0);
+            }
+        }
+
+        QueryMetrics.record(QueryMetrics.Query.NEAREST, start, visited, pruned, nearestIndex < 0 ? 0 : 1);
+        if (nearestIndex < 0) {
+            return new Neighbor(null, Double.MAX_VALUE);
+        }
+        return new Neighbor(store.get(recordIndex[nearestIndex]), Math.sqrt(nearestDistance));
+    }
+
+    /**
+     * Pushes a range onto the nearest neighbor search stack.
+     *
+     * @param stack  The range stack, three ints per frame.
+     * @param bounds The squared distance lower bound of each frame.
+     * @param top    The index of the frame to write.
+     * @param from   The index of the first point of the range (inclusive).
+     * @param to     The index after the last point of the range (exclusive).
+     * @param depth  The depth of the range root in the tree.
+     * @param bound  The squared distance from the query point to the range, or a lower bound of it.
+     *               <p>
+     *               Preconditions: top must be a valid frame index.
+     *               Postconditions: The frame at top holds the range.
+     *               Time complexity: O(1).
+     */
+    private static void push(int[] stack, double[] bounds, int top, int from, int to, int depth, double bound) {
+        stack[3 * top] = from;
+        stack[3 * top + 1] = to;
+        stack[3 * top + 2] = depth;
+        bounds[top] = bound;
+    }
+
+    /**
+     * The PointVisitor interface receives the points of a FlatTwoDTree query as primitives: the coordinates and the index of the record.
+     */
+    @FunctionalInterface
+    public interface PointVisitor {
+
+        /**
+         * Receives one point.
+         *
+         * @param x     The x coordinate of the point.
+         * @param y     The y coordinate of the point.
+         * @param index The record index of the point, to be resolved with getRecord if needed.
+         * @return True to continue with the next point, false to stop the query early.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: Defined by the implementation.
+         */
+        boolean visit(double x, double y, int index);
+    }
+}
@@ -0,0 +1,157 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The IntQueue class is a queue of primitive ints with the same operations as Queue, for breadth-first walks of
+ * array-based trees such as FlatTwoDTree by index. The ints are kept in a ring buffer that doubles when full, so no value
+ * is ever boxed. As an int has no null, dequeue and peek throw NoSuchElementException on an empty queue.
+ */
+public class IntQueue {
+
+    private static final int DEFAULT_CAPACITY = 16; // Capacity of a queue created without one
+
+    private int[] elements; // The ring buffer; its length is a power of two
+    private int head; // Index of the first element in the queue
+    private int size; // Number of elements in the queue
+
+    /**
+     * Constructor to create an empty queue.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new IntQueue is created with room for 16 elements and size set to 0.
+     * Time complexity: O(1), as it only allocates a small array.
+     */
+    public IntQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to create an empty queue with room for the given number of elements before it grows.
+     *
+     * @param initialCapacity The number of elements the queue holds without growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new IntQueue is created with room for at least initialCapacity elements and size set to 0.
+     *                        Time complexity: O(c), where c is initialCapacity, to allocate the array.
+     */
+    public IntQueue(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative: " + initialCapacity);
+        }
+        elements = new int[Queue.capacityFor(initialCapacity)];
+    }
+
+    /**
+     * Adds a new element to the end of the queue.
+     *
+     * @param value Element to be added to the queue.
+     *              <p>
+     *              Preconditions: None.
+     *              Postconditions: The element is stored at the end of the queue, and the array has doubled if it was full.
+     *              Time complexity: O(1) amortized, as the array doubles when full.
+     */
+    public void enqueue(int value) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * Removes and returns the element at the front of the queue.
+     *
+     * @return The element at the front of the queue.
+     * @throws NoSuchElementException If the queue is empty.
+     *                                <p>
+     *                                Preconditions: The queue is not empty.
+     *                                Postconditions: The element at the front of the queue is removed and returned.
+     *                                Time complexity: O(1), as it directly removes the element from the front of the queue.
+     */
+    public int dequeue() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Returns the element at the front of the queue without removing it.
+     *
+     * @return The element at the front of the queue.
+     * @throws NoSuchElementException If the queue is empty.
+     *                                <p>
+     *                                Preconditions: The queue is not empty.
+     *                                Postconditions: Returns the element at the front of the queue without removing it.
+     *                                Time complexity: O(1), as it directly returns the element at the front of the queue.
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("Queue is empty");
+        }
+        return elements[head];
+    }
+
+    /**
+     * Returns the number of elements in the queue.
+     *
+     * @return The number of elements in the queue.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Returns the size of the queue.
+     * Time complexity: O(1), as it directly returns the size of the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the queue is empty.
+     *
+     * @return True if the queue is empty, false otherwise.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Returns true if the queue is empty, false otherwise.
+     * Time complexity: O(1), as it directly checks the size of the queue.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every element, keeping the array so that the queue can be reused without allocating.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The queue is empty and keeps its capacity.
+     * Time complexity: O(1).
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Doubles the array, copying the elements to its start in queue order.
+     * <p>
+     * Preconditions: The array is full.
+     * Postconditions: The array has twice the length, the first element is at index 0, and the order is unchanged.
+     * Time complexity: O(n), where n is the number of elements in the queue.
+     */
+    private void grow() {
+        if (elements.length == 1 << 30) {
+            throw new IllegalStateException("Queue cannot hold more than " + elements.length + " elements");
+        }
+        int[] larger = new int[elements.length * 2];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, larger, 0, firstPart);
+        System.arraycopy(elements, 0, larger, firstPart, head);
+        elements = larger;
+        head = 0;
+    }
+}
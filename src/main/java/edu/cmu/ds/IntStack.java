@@ -0,0 +1,152 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * The IntStack class is a stack of primitive ints with the same operations as Stack, for walking array-based trees such as
+ * FlatTwoDTree by index. The ints are kept in an array that doubles when full, so no value is ever boxed.
+ * As an int has no null, pop and peek throw NoSuchElementException on an empty stack.
+ */
+public class IntStack {
+
+    private static final int DEFAULT_CAPACITY = 16; // Capacity of a stack created without one
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8; // Largest array length the JVM reliably allocates
+
+    private int[] elements; // The elements, bottom of the stack first
+    private int size; // Number of elements in the stack
+
+    /**
+     * Constructor to create an empty stack.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new IntStack is created with room for 16 elements and size set to 0.
+     * Time complexity: O(1), as it only allocates a small array.
+     */
+    public IntStack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to create an empty stack with room for the given number of elements before it grows.
+     *
+     * @param initialCapacity The number of elements the stack holds without growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new IntStack is created with room for initialCapacity elements and size set to 0.
+     *                        Time complexity: O(c), where c is initialCapacity, to allocate the array.
+     */
+    public IntStack(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative: " + initialCapacity);
+        }
+        elements = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Adds a new element to the top of the stack.
+     *
+     * @param value Element to be added to the stack.
+     *              <p>
+     *              Preconditions: None.
+     *              Postconditions: The element is stored on top of the stack, and the array has doubled if it was full.
+     *              Time complexity: O(1) amortized, as the array doubles when full.
+     */
+    public void push(int value) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, grownCapacity(elements.length));
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Removes and returns the element at the top of the stack.
+     *
+     * @return The element at the top of the stack.
+     * @throws NoSuchElementException If the stack is empty.
+     *                                <p>
+     *                                Preconditions: The stack is not empty.
+     *                                Postconditions: The top element is removed from the stack and returned.
+     *                                Time complexity: O(1), as it directly removes the top element.
+     */
+    public int pop() {
+        if (size == 0) {
+            throw new NoSuchElementException("Stack is empty");
+        }
+        return elements[--size];
+    }
+
+    /**
+     * Returns the element at the top of the stack without removing it.
+     *
+     * @return The element at the top of the stack.
+     * @throws NoSuchElementException If the stack is empty.
+     *                                <p>
+     *                                Preconditions: The stack is not empty.
+     *                                Postconditions: Returns the top element without removing it.
+     *                                Time complexity: O(1), as it directly returns the top element.
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("Stack is empty");
+        }
+        return elements[size - 1];
+    }
+
+    /**
+     * Returns the number of elements in the stack.
+     *
+     * @return Number of elements in the stack.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Returns the size of the stack.
+     * Time complexity: O(1), as it directly returns the size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the stack is empty.
+     *
+     * @return True if the stack is empty, false otherwise.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: Returns true if the stack is empty, false otherwise.
+     * Time complexity: O(1), as it directly checks the size.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every element, keeping the array so that the stack can be reused without allocating.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The stack is empty and keeps its capacity.
+     * Time complexity: O(1).
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the length to grow a full array of a stack to: double its length, up to the largest array the JVM allocates.
+     *
+     * @param length The length of the full array.
+     * @return The new length.
+     * @throws IllegalStateException If the array cannot grow any more.
+     *                               <p>
+     *                               Preconditions: length must be positive.
+     *                               Postconditions: None.
+     *                               Time complexity: O(1).
+     */
+    static int grownCapacity(int length) {
+        if (length >= MAX_CAPACITY) {
+            throw new IllegalStateException("Stack cannot hold more than " + MAX_CAPACITY + " elements");
+        }
+        return (int) Math.min(2L * length, MAX_CAPACITY);
+    }
+}
@@ -0,0 +1,272 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The KmlWriter class streams crime records to a KML document one Placemark at a time, so the size of the document
+ * never has to fit in memory. It writes the same document as ListOfCrimes.toKML: the header is written when the writer
+ * is created and the closing tags when it is closed.
+ * <p>
+ * It is also a CrimeVisitor, so a range query can write its matches straight to a file, stream or channel:
+ * <pre>
+ * try (KmlWriter kml = KmlWriter.toFile(Path.of("PGHCrimes.kml"))) {
+ *     tree.visitPointsInRange(lowerLeft, upperRight, kml);
+ * }
+ * </pre>
+ */
+public class KmlWriter implements CrimeVisitor, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024; // Size of the character buffer in front of the destination
+    private static final String KMZ_ENTRY = "doc.kml"; // Name of the KML document inside a KMZ archive
+
+    private final Writer out; // The buffered destination of the document
+    private final ZipOutputStream zip; // The KMZ archive being written, or null for plain KML
+    private long placemarkCount; // Number of placemarks written so far
+    private boolean closed; // Whether the closing tags have been written
+
+    /**
+     * Constructor to create a KML writer on the given destination, writing the document header immediately.
+     *
+     * @param out The destination of the document. It is buffered unless it already is.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: out must be non-null.
+     *                     Postconditions: A new KmlWriter is created and the document header has been written to its buffer.
+     *                     Time complexity: O(1).
+     */
+    public KmlWriter(Writer out) throws IOException {
+        this(out, null);
+    }
+
+    /**
+     * Constructor to create a KML writer on a destination that may be the single entry of a KMZ archive.
+     *
+     * @param out The destination of the document.
+     * @param zip The KMZ archive out writes into, or null for plain KML.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: out must be non-null.
+     *                     Postconditions: A new KmlWriter is created and the document header has been written to its buffer.
+     *                     Time complexity: O(1).
+     */
+    private KmlWriter(Writer out, ZipOutputStream zip) throws IOException {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, BUFFER_SIZE);
+        this.zip = zip;
+        this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+        this.out.write("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n");
+        this.out.write("<Document>\n");
+    }
+
+    /**
+     * Creates a KML writer on an output stream, encoding the document as UTF-8.
+     *
+     * @param outputStream The destination stream, closed when the writer is closed.
+     * @return A new KmlWriter.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: outputStream must be non-null.
+     *                     Postconditions: Returns a KmlWriter on the stream.
+     *                     Time complexity: O(1).
+     */
+    public static KmlWriter toStream(OutputStream outputStream) throws IOException {
+        return new KmlWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a KML writer on a file, replacing it if it exists.
+     *
+     * @param path The file to write.
+     * @return A new KmlWriter.
+     * @throws IOException If the file cannot be opened or the header cannot be written.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns a KmlWriter on the file.
+     *                     Time complexity: O(1).
+     */
+    public static KmlWriter toFile(Path path) throws IOException {
+        return toStream(Files.newOutputStream(path));
+    }
+
+    /**
+     * Creates a KML writer on an NIO channel, encoding the document as UTF-8.
+     *
+     * @param channel The destination channel, closed when the writer is closed.
+     * @return A new KmlWriter.
+     * @throws IOException If the header cannot be written.
+     *                     <p>
+     *                     Preconditions: channel must be non-null and open.
+     *                     Postconditions: Returns a KmlWriter on the channel.
+     *                     Time complexity: O(1).
+     */
+    public static KmlWriter toChannel(WritableByteChannel channel) throws IOException {
+        return new KmlWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a writer producing a compressed KMZ archive on an output stream, holding the document as its single entry doc.kml.
+     *
+     * @param outputStream The destination stream, closed when the writer is closed.
+     * @return A new KmlWriter.
+     * @throws IOException If the archive entry or the header cannot be written.
+     *                     <p>
+     *                     Preconditions: outputStream must be non-null.
+     *                     Postconditions: Returns a KmlWriter on a new KMZ archive.
+     *                     Time complexity: O(1).
+     */
+    public static KmlWriter toKmz(OutputStream outputStream) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        zip.putNextEntry(new ZipEntry(KMZ_ENTRY));
+        return new KmlWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8), zip);
+    }
+
+    /**
+     * Creates a writer producing a compressed KMZ file, replacing it if it exists.
+     *
+     * @param path The file to write.
+     * @return A new KmlWriter.
+     * @throws IOException If the file cannot be opened or the header cannot be written.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns a KmlWriter on a new KMZ file.
+     *                     Time complexity: O(1).
+     */
+    public static KmlWriter toKmzFile(Path path) throws IOException {
+        return toKmz(Files.newOutputStream(path));
+    }
+
+    /**
+     * Writes a Placemark for a crime record.
+     *
+     * @param crime The crime record.
+     * @throws IOException If the placemark cannot be written.
+     *                     <p>
+     *                     Preconditions: crime must be non-null and the writer must not be closed.
+     *                     Postconditions: The placemark is written to the buffer, which is flushed to the destination when full.
+     *                     Time complexity: O(1), as a placemark has a fixed number of fields.
+     */
+    public void write(CrimeRecord crime) throws IOException {
+        out.write("<Placemark>\n<name>");
+        writeEscaped(crime.offense());
+        out.write("</name>\n<description>");
+        writeEscaped(crime.street());
+        out.write("</description>\n<Point>\n<coordinates>");
+        writeEscaped(crime.longitude());
+        out.write(',');
+        writeEscaped(crime.latitude());
+        out.write(",0</coordinates>\n</Point>\n</Placemark>\n");
+        placemarkCount++;
+    }
+
+    /**
+     * Writes a Placemark for a crime record received from a query or traversal.
+     *
+     * @param x           The x coordinate of the record.
+     * @param y           The y coordinate of the record.
+     * @param crimeRecord The crime record.
+     * @return True, so that the query continues.
+     * @throws UncheckedIOException If the placemark cannot be written.
+     *                              <p>
+     *                              Preconditions: The writer must not be closed.
+     *                              Postconditions: The placemark is written.
+     *                              Time complexity: O(1).
+     */
+    @Override
+    public boolean visit(double x, double y, CrimeRecord crimeRecord) {
+        try {
+            write(crimeRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of placemarks written so far.
+     *
+     * @return The number of placemarks written.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public long getPlacemarkCount() {
+        return placemarkCount;
+    }
+
+    /**
+     * Writes the closing tags of the document, flushes it and closes the destination.
+     *
+     * @throws IOException If the document cannot be completed or the destination cannot be closed.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The document is complete and the destination is closed. Further calls have no effect.
+     *                     Time complexity: O(1).
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.write("</Document>\n");
+        out.write("</kml>");
+        out.flush();
+        if (zip != null) {
+            zip.closeEntry();
+        }
+        out.close();
+    }
+
+    /**
+     * Writes a text value, escaping the characters that are special in XML.
+     *
+     * @param text The text to write, or null to write "null" as ListOfCrimes.toKML does.
+     * @throws IOException If the text cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The escaped text is written to the buffer.
+     *                     Time complexity: O(k), where k is the length of the text.
+     */
+    private void writeEscaped(String text) throws IOException {
+        if (text == null) {
+            out.write("null");
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity;
+            switch (text.charAt(i)) {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                default:
+                    continue;
+            }
+            out.write(text, start, i - start);
+            out.write(entity);
+            start = i + 1;
+        }
+        out.write(text, start, text.length() - start);
+    }
+}
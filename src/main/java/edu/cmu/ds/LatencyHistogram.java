@@ -0,0 +1,151 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in nanoseconds in log-linear buckets, from which percentiles are read.
+ * Durations below 16 ns have a bucket each; above that every power of two is split into 8 buckets, so a percentile is
+ * reported within 12.5% of the true value whatever the scale, from nanoseconds to hours, in under 500 buckets.
+ * <p>
+ * Recording is a single LongAdder increment, so any number of threads can record at once without contending.
+ * Percentiles read while other threads record are approximate, as the buckets are not read atomically together.
+ */
+class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16; // Durations below this have a bucket of their own
+    private static final int SUB_BUCKET_BITS = 3; // Each power of two above LINEAR_BUCKETS is split into 2^SUB_BUCKET_BITS buckets
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Number of buckets per power of two
+    private static final int FIRST_EXPONENT = 4; // log2(LINEAR_BUCKETS), the first power of two split into sub-buckets
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - FIRST_EXPONENT) * SUB_BUCKETS; // Enough for any non-negative long
+
+    private final LongAdder[] buckets; // Number of durations recorded in each bucket
+
+    /**
+     * Constructor to create an empty histogram.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new LatencyHistogram is created with every bucket at zero.
+     * Time complexity: O(b), where b is the number of buckets.
+     */
+    LatencyHistogram() {
+        buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds; negative durations count as zero.
+     *              <p>
+     *              Preconditions: None.
+     *              Postconditions: The bucket holding the duration is one higher.
+     *              Time complexity: O(1).
+     */
+    void record(long nanos) {
+        buckets[bucket(Math.max(0, nanos))].increment();
+    }
+
+    /**
+     * Returns the bucket of a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     * @return The index of its bucket.
+     * <p>
+     * Preconditions: nanos must be non-negative.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    static int bucket(long nanos) {
+        if (nanos < LINEAR_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest duration that falls into a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The upper edge of the bucket in nanoseconds.
+     * <p>
+     * Preconditions: 0 <= bucket < BUCKETS.
+     * Postconditions: bucket(upperBound(b)) == b.
+     * Time complexity: O(1).
+     */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Returns the duration at or below which the given share of the recorded durations lie.
+     *
+     * @param quantile The share, for example 0.99 for the 99th percentile.
+     * @return The upper edge of the bucket holding the percentile, in nanoseconds, or 0 if nothing has been recorded.
+     * <p>
+     * Preconditions: 0 <= quantile <= 1.
+     * Postconditions: None.
+     * Time complexity: O(b), where b is the number of buckets.
+     */
+    long percentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return The sum of the buckets.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(b), where b is the number of buckets.
+     */
+    long count() {
+        long total = 0;
+        for (LongAdder bucket : buckets) {
+            total += bucket.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Sets every bucket back to zero.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The histogram is empty, apart from durations recorded concurrently with the reset.
+     * Time complexity: O(b), where b is the number of buckets.
+     */
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+    }
+}
@@ -2,24 +2,47 @@
 
 package edu.cmu.ds;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
- * The ListOfCrimes class is a linked list data structure that holds multiple CrimeRecord objects.
- * It supports operations to add new crimes, retrieve crimes by index, convert the list to a string,
+ * The ListOfCrimes class is a growable array that holds multiple CrimeRecord objects.
+ * It supports operations to add new crimes, retrieve crimes by index, iterate over the crimes, convert the list to a string,
  * and generate a KML file for visualizing the crime locations in Google Earth.
  */
-public class ListOfCrimes {
+public class ListOfCrimes implements Iterable<CrimeRecord> {
+
+    private static final int DEFAULT_CAPACITY = 16; // Initial capacity of an empty list
 
-    private CrimeNode head; // Reference to the first node in the list
+    private CrimeRecord[] crimes; // The crime records, in insertion order
+    private int size; // Number of crime records in the list
 
     /**
      * Constructor to create an empty list of crimes.
      * <p>
      * Preconditions: None.
-     * Postconditions: A new ListOfCrimes object is created with head set to null.
-     * Time complexity: O(1), as it only initializes the head pointer.
+     * Postconditions: A new ListOfCrimes object is created with no crimes.
+     * Time complexity: O(1), as it only allocates the initial array.
      */
     public ListOfCrimes() {
-        head = null;
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to create an empty list of crimes with room for the given number of crimes before it has to grow.
+     *
+     * @param initialCapacity The number of crimes the list can hold before growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new ListOfCrimes object is created with no crimes.
+     *                        Time complexity: O(c), where c is the initial capacity, to allocate the array.
+     */
+    public ListOfCrimes(int initialCapacity) {
+        crimes = new CrimeRecord[Math.max(initialCapacity, 1)];
+        size = 0;
     }
 
     /**
@@ -28,20 +51,16 @@ public class ListOfCrimes {
      * @param crime CrimeRecord to be added to the list.
      *              <p>
      *              Preconditions: crime must be non-null.
-     *              Postconditions: A new CrimeNode is created with the given crime and added to the end of the list.
-     *              Time complexity: O(n), where n is the number of nodes in the list, as it traverses the list to find the end.
+     *              Postconditions: The crime is added to the end of the list.
+     *              Time complexity: O(1) amortized, as the array doubles in size when it is full.
      */
     public void addCrime(CrimeRecord crime) {
-        CrimeNode newNode = new CrimeNode(crime);
-        if (head == null) {
-            head = newNode;
-        } else {
-            CrimeNode current = head;
-            while (current.next != null) {
-                current = current.next;
-            }
-            current.next = newNode;
+        if (size == crimes.length) {
+            CrimeRecord[] grown = new CrimeRecord[crimes.length * 2];
+            System.arraycopy(crimes, 0, grown, 0, size);
+            crimes = grown;
         }
+        crimes[size++] = crime;
     }
 
     /**
@@ -52,26 +71,43 @@ public class ListOfCrimes {
      * <p>
      * Preconditions: None.
      * Postconditions: Returns the CrimeRecord at the specified index, or null if index is out of bounds.
-     * Time complexity: O(n), where n is the index, as it traverses the list to find the node at the given index.
+     * Time complexity: O(1), as it reads the array directly.
      */
     public CrimeRecord getCrime(int index) {
         // Check if index is out of bounds
-        if (index < 0) {
+        if (index < 0 || index >= size) {
             return null;
         }
-        // Traverse the list to find the node at the given index
-        CrimeNode current = head;
-        for (int i = 0; i < index; i++) {
-            if (current == null) {
-                return null;
+        return crimes[index];
+    }
+
+    /**
+     * Returns an iterator over the crime records in the list, in insertion order.
+     *
+     * @return An iterator over the crime records.
+     * <p>
+     * Preconditions: The list must not be modified while the iterator is in use.
+     * Postconditions: None.
+     * Time complexity: O(1) to create, and O(1) per element.
+     */
+    @Override
+    public Iterator<CrimeRecord> iterator() {
+        return new Iterator<CrimeRecord>() {
+            private int next = 0; // Index of the next crime record to return
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
             }
-            current = current.next;
-        }
-        // Return the crime record at the specified index
-        if (current == null) {
-            return null;
-        }
-        return current.crime;
+
+            @Override
+            public CrimeRecord next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return crimes[next++];
+            }
+        };
     }
 
     /**
@@ -81,19 +117,16 @@ public class ListOfCrimes {
      * <p>
      * Preconditions: None.
      * Postconditions: Returns a string containing all the crime records in the list.
-     * Time complexity: O(n), where n is the number of nodes in the list, as it traverses the list to build the string.
+     * Time complexity: O(n), where n is the number of crimes in the list, as it visits each crime to build the string.
      */
     @Override
     public String toString() {
         // Build a string with all the crime records
         StringBuilder sb = new StringBuilder();
-        CrimeNode current = head;
-        // Traverse the list and append each crime record to the string
-        while (current != null) {
-            sb.append(current.crime);
+        // Append each crime record to the string, one per line
+        for (int i = 0; i < size; i++) {
+            sb.append(crimes[i]);
             sb.append("\n");
-            current = current.next;
-            // Add a separator between records
         }
         // Return the string representation of the list
         return sb.toString();
@@ -101,41 +134,26 @@ public class ListOfCrimes {
 
     /**
      * Generates a KML file containing the crime locations for visualization in Google Earth.
+     * To write a large document without holding it in memory, use KmlWriter instead.
      *
      * @return KML-formatted string representing the crime locations.
      * <p>
      * Preconditions: None.
      * Postconditions: Returns a KML-formatted string with Placemark elements for each crime record.
-     * Time complexity: O(n), where n is the number of nodes in the list, as it traverses the list to build the KML string.
+     * Time complexity: O(n), where n is the number of crimes in the list, as it visits each crime to build the KML string.
      */
     public String toKML() {
         // Build a KML string with Placemark elements for each crime record
-        StringBuilder kml = new StringBuilder();
-        kml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
-        kml.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\">\n");
-        kml.append("<Document>\n");
-        // Traverse the list and add a Placemark for each crime record
-        CrimeNode current = head;
-        while (current != null) {
-            String offense = current.crime.offense();
-            String description = current.crime.street();
-            String lat = current.crime.latitude();
-            String lon = current.crime.longitude();
-
-            kml.append("<Placemark>\n");
-            kml.append("<name>").append(offense).append("</name>\n");
-            kml.append("<description>").append(description).append("</description>\n");
-            kml.append("<Point>\n");
-            kml.append("<coordinates>").append(lon).append(",").append(lat).append(",0</coordinates>\n");
-            kml.append("</Point>\n");
-            kml.append("</Placemark>\n");
-
-            current = current.next;
-            // Add a Placemark for each crime record
+        StringWriter kml = new StringWriter();
+        try (KmlWriter writer = new KmlWriter(kml)) {
+            for (int i = 0; i < size; i++) {
+                writer.write(crimes[i]);
+            }
+        } catch (IOException e) {
+            // A StringWriter never fails
+            throw new UncheckedIOException(e);
         }
         // Return the KML-formatted string
-        kml.append("</Document>\n");
-        kml.append("</kml>");
         return kml.toString();
     }
 
@@ -146,38 +164,10 @@ public class ListOfCrimes {
      * <p>
      * Preconditions: None.
      * Postconditions: Returns the number of crime records in the list.
-     * Time complexity: O(n), where n is the number of nodes in the list, as it traverses the list to count the nodes.
+     * Time complexity: O(1), as the size is kept up to date by addCrime.
      */
     public int size() {
-        int count = 0;
-        CrimeNode current = head;
-        while (current != null) {
-            count++;
-            current = current.next;
-        }
-        return count;
-    }
-
-    /**
-     * The CrimeNode class is a linked list node that holds a CrimeRecord object and a reference to the next node.
-     */
-    private static class CrimeNode {
-        private final CrimeRecord crime; // The crime record
-        private CrimeNode next; // Reference to the next node
-
-        /**
-         * Constructor to create a new node with the given CrimeRecord.
-         *
-         * @param crime CrimeRecord to be stored in the node.
-         *              <p>
-         *              Preconditions: crime must be non-null.
-         *              Postconditions: A new CrimeNode is created with the given crime and null next pointer.
-         *              Time complexity: O(1), as it only sets two instance variables.
-         */
-        public CrimeNode(CrimeRecord crime) {
-            this.crime = crime;
-            this.next = null;
-        }
+        return size;
     }
 
 }
@@ -0,0 +1,142 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+/**
+ * The NeighborHeap class is a bounded max-heap of crime records, held as their indexes in a CrimeStore and keyed by their squared distance from a query point.
+ * It keeps the k closest records offered to it: once full, a new record only enters by replacing the farthest one,
+ * and the squared distance of that farthest record is the pruning bound of a k-nearest-neighbor search.
+ * Distances stay squared until the neighbors are extracted, when a single square root is taken per result.
+ */
+class NeighborHeap {
+
+    private final int[] records; // The store indexes of the records in the heap, in heap order
+    private final double[] distances; // The squared distance of each record, in heap order
+    private int size; // Number of records in the heap
+
+    /**
+     * Constructor to create an empty heap holding at most capacity records.
+     *
+     * @param capacity The number of closest records to keep.
+     *                 <p>
+     *                 Preconditions: capacity must be positive.
+     *                 Postconditions: A new empty NeighborHeap is created.
+     *                 Time complexity: O(k), where k is the capacity, to allocate the arrays.
+     */
+    NeighborHeap(int capacity) {
+        records = new int[capacity];
+        distances = new double[capacity];
+        size = 0;
+    }
+
+    /**
+     * Offers a record to the heap, keeping it if it is among the closest records seen so far.
+     *
+     * @param record          The index of the crime record in the store.
+     * @param squaredDistance The squared distance of the record from the query point.
+     *                        <p>
+     *                        Preconditions: None.
+     *                        Postconditions: The heap holds the closest min(k, offered) records seen so far.
+     *                        Time complexity: O(log k), where k is the capacity.
+     */
+    void offer(int record, double squaredDistance) {
+        if (size < records.length) {
+            // Append at the end and sift up
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= squaredDistance) {
+                    break;
+                }
+                records[i] = records[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            records[i] = record;
+            distances[i] = squaredDistance;
+        } else if (squaredDistance < distances[0]) {
+            // Replace the farthest record and sift down
+            siftDown(record, squaredDistance);
+        }
+    }
+
+    /**
+     * Places a record at the root of the heap and moves it down to restore the heap order.
+     *
+     * @param record          The index of the crime record in the store.
+     * @param squaredDistance The squared distance of the record from the query point.
+     *                        <p>
+     *                        Preconditions: The heap must not be empty.
+     *                        Postconditions: The previous root is discarded and the heap order holds.
+     *                        Time complexity: O(log k), where k is the number of records in the heap.
+     */
+    private void siftDown(int record, double squaredDistance) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (squaredDistance >= distances[child]) {
+                break;
+            }
+            records[i] = records[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        records[i] = record;
+        distances[i] = squaredDistance;
+    }
+
+    /**
+     * Returns the squared distance a record must beat to enter the heap.
+     *
+     * @return The squared distance of the farthest record if the heap is full, or positive infinity otherwise.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    double bound() {
+        return size < records.length ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Returns the number of records in the heap.
+     *
+     * @return The number of records in the heap.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap into an array of neighbors ordered from the closest to the farthest.
+     *
+     * @param store The store holding the crime records, from which a CrimeRecord is created for each neighbor.
+     * @return The neighbors in the heap, closest first, with their distances (not squared).
+     * <p>
+     * Preconditions: store must hold the records offered to the heap.
+     * Postconditions: The heap is empty.
+     * Time complexity: O(k log k), where k is the number of records in the heap.
+     */
+    Neighbor[] toSortedNeighbors(CrimeStore store) {
+        Neighbor[] neighbors = new Neighbor[size];
+        // Repeatedly remove the farthest record, filling the result from the back
+        while (size > 0) {
+            int farthest = records[0];
+            double farthestDistance = distances[0];
+            size--;
+            if (size > 0) {
+                siftDown(records[size], distances[size]);
+            }
+            neighbors[size] = new Neighbor(store.get(farthest), Math.sqrt(farthestDistance));
+        }
+        return neighbors;
+    }
+}
@@ -0,0 +1,355 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The QueryCache class remembers the results of range and nearest neighbor queries, so that the rectangles a map view sends
+ * over and over are answered without walking the tree again. Entries are evicted least recently used first, once the cache
+ * holds more than maxEntries results or more than maxRecords crime records across all results.
+ * <p>
+ * Every lookup first checks that the tree is still the one the cached results were computed from: the same TwoDTree at the
+ * same version(), or for a ConcurrentTwoDTree the same published version. After any insert, delete or other change all entries
+ * are dropped, so a cached result is never stale.
+ * <p>
+ * The cache may be shared by any number of threads. Lookups hold a lock only to read or update the map; a miss runs the query
+ * without it, so two threads missing on the same key at once both run the query.
+ */
+public class QueryCache {
+
+    private final Supplier<TwoDTree> source; // Supplies the tree the queries run against, possibly a new version each time
+    private final int maxEntries; // The largest number of results kept
+    private final long maxRecords; // The largest number of crime records kept across all results
+    private final LinkedHashMap<Object, Object> entries; // The cached results by query key, least recently used first, guarded by this
+    private TwoDTree cachedTree; // The tree the cached results were computed from, guarded by this
+    private long cachedVersion; // The version of cachedTree the results were computed at, guarded by this
+    private long cachedRecords; // Number of crime records across the cached results, guarded by this
+    private long hits; // Lookups answered from the cache, guarded by this
+    private long misses; // Lookups that ran the query, guarded by this
+    private long evictions; // Entries dropped to stay within the bounds, guarded by this
+    private long invalidations; // Times the cache was emptied because the tree changed, guarded by this
+
+    /**
+     * Constructor to create a cache of queries against a tree.
+     *
+     * @param tree       The tree to query.
+     * @param maxEntries The largest number of results kept.
+     * @param maxRecords The largest number of crime records kept across all results; larger results are never cached.
+     *                   <p>
+     *                   Preconditions: tree must be non-null, maxEntries and maxRecords must be positive.
+     *                   Postconditions: A new empty QueryCache is created.
+     *                   Time complexity: O(1).
+     */
+    public QueryCache(TwoDTree tree, int maxEntries, long maxRecords) {
+        this(() -> tree, maxEntries, maxRecords);
+    }
+
+    /**
+     * Constructor to create a cache of queries against the current version of a concurrent tree.
+     * Publishing a new version, by any insert or delete, invalidates the cache.
+     *
+     * @param tree       The concurrent tree to query.
+     * @param maxEntries The largest number of results kept.
+     * @param maxRecords The largest number of crime records kept across all results; larger results are never cached.
+     *                   <p>
+     *                   Preconditions: tree must be non-null, maxEntries and maxRecords must be positive.
+     *                   Postconditions: A new empty QueryCache is created.
+     *                   Time complexity: O(1).
+     */
+    public QueryCache(ConcurrentTwoDTree tree, int maxEntries, long maxRecords) {
+        this(tree::snapshot, maxEntries, maxRecords);
+    }
+
+    /**
+     * Constructor to create a cache of queries against the tree a supplier returns.
+     *
+     * @param source     Supplies the tree to query.
+     * @param maxEntries The largest number of results kept.
+     * @param maxRecords The largest number of crime records kept across all results.
+     *                   <p>
+     *                   Preconditions: source must be non-null and never return null, maxEntries and maxRecords must be positive.
+     *                   Postconditions: A new empty QueryCache is created.
+     *                   Time complexity: O(1).
+     */
+    private QueryCache(Supplier<TwoDTree> source, int maxEntries, long maxRecords) {
+        this.source = source;
+        this.maxEntries = maxEntries;
+        this.maxRecords = maxRecords;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Finds all crime records within the given range of coordinates, from the cache if the same rectangle was queried before.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return The records within the range, in the order of TwoDTree.findPointsInRange. The list may be shared with other callers
+     * and must not be modified.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: The result is cached if it holds at most maxRecords records.
+     * Time complexity: O(1) on a hit; O(sqrt(n) + m) on a miss, where n is the number of records and m the number of matches.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight) {
+        RangeKey key = new RangeKey(normalize(lowerLeft[0]), normalize(lowerLeft[1]), normalize(upperRight[0]), normalize(upperRight[1]));
+        TwoDTree tree = source.get();
+        long version = tree.version();
+        ListOfCrimes cached = (ListOfCrimes) lookup(tree, version, key);
+        if (cached != null) {
+            return cached;
+        }
+        ListOfCrimes crimesInRange = tree.findPointsInRange(lowerLeft, upperRight);
+        store(tree, version, key, crimesInRange, crimesInRange.size());
+        return crimesInRange;
+    }
+
+    /**
+     * Finds the nearest crime record to the given point, from the cache if the same point was queried before.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @return The nearest neighbor, or a neighbor with a null record if the tree is empty.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: The result is cached.
+     * Time complexity: O(1) on a hit; O(log n) on average on a miss, where n is the number of records.
+     */
+    public Neighbor nearestNeighbor(double[] coordinates) {
+        PointKey key = new PointKey(normalize(coordinates[0]), normalize(coordinates[1]));
+        TwoDTree tree = source.get();
+        long version = tree.version();
+        Neighbor cached = (Neighbor) lookup(tree, version, key);
+        if (cached != null) {
+            return cached;
+        }
+        Neighbor nearest = tree.nearestNeighbor(coordinates);
+        store(tree, version, key, nearest, 1);
+        return nearest;
+    }
+
+    /**
+     * Maps -0.0 to 0.0, which compare equal as coordinates but not as record components.
+     *
+     * @param coordinate The coordinate.
+     * @return The coordinate, with negative zero replaced by zero.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static double normalize(double coordinate) {
+        return coordinate + 0.0;
+    }
+
+    /**
+     * Looks up a cached result, emptying the cache first if the tree has changed since the results were computed.
+     *
+     * @param tree    The tree the query runs against.
+     * @param version The version of the tree, read before the lookup.
+     * @param key     The query key.
+     * @return The cached result, or null on a miss.
+     * <p>
+     * Preconditions: tree and key must be non-null.
+     * Postconditions: The hit or miss is counted, and a hit becomes the most recently used entry.
+     * Time complexity: O(1), or O(e) to empty a cache of e entries.
+     */
+    private synchronized Object lookup(TwoDTree tree, long version, Object key) {
+        validate(tree, version);
+        Object result = entries.get(key);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches a result computed against a tree, unless the cache has moved on to another tree or version in the meantime or the
+     * result is too large, and evicts the least recently used entries until the cache is within its bounds again.
+     *
+     * @param tree    The tree the result was computed against.
+     * @param version The version of the tree, read before the query ran.
+     * @param key     The query key.
+     * @param result  The result.
+     * @param records The number of crime records in the result.
+     *                <p>
+     *                Preconditions: tree, key and result must be non-null.
+     *                Postconditions: The cache holds at most maxEntries results and maxRecords records.
+     *                Time complexity: O(1) amortized.
+     */
+    private synchronized void store(TwoDTree tree, long version, Object key, Object result, long records) {
+        if (tree != cachedTree || version != cachedVersion || tree.version() != version || records > maxRecords) {
+            // The tree changed while the query ran, or the result alone would exceed the bound
+            return;
+        }
+        Object previous = entries.put(key, result);
+        if (previous != null) {
+            cachedRecords -= weight(previous);
+        }
+        cachedRecords += records;
+        Iterator<Map.Entry<Object, Object>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || cachedRecords > maxRecords) {
+            Object evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedRecords -= weight(evicted);
+            evictions++;
+        }
+    }
+
+    /**
+     * Empties the cache if the given tree is not the one, at the same version, that the cached results were computed from.
+     *
+     * @param tree    The tree of the current query.
+     * @param version The version of the tree.
+     *                <p>
+     *                Preconditions: The caller must hold the lock of this cache.
+     *                Postconditions: The cached results, if any, belong to the given tree at the given version.
+     *                Time complexity: O(1), or O(e) to empty a cache of e entries.
+     */
+    private void validate(TwoDTree tree, long version) {
+        if (tree == cachedTree && version == cachedVersion) {
+            return;
+        }
+        if (!entries.isEmpty()) {
+            entries.clear();
+            invalidations++;
+        }
+        cachedRecords = 0;
+        cachedTree = tree;
+        cachedVersion = version;
+    }
+
+    /**
+     * Returns the number of crime records a cached result counts against maxRecords.
+     *
+     * @param result A cached ListOfCrimes or Neighbor.
+     * @return The size of a list, or 1 for a neighbor.
+     * <p>
+     * Preconditions: result must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static long weight(Object result) {
+        return result instanceof ListOfCrimes crimes ? crimes.size() : 1;
+    }
+
+    /**
+     * Removes every cached result; the counters are kept.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The cache is empty.
+     * Time complexity: O(e), where e is the number of entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        cachedRecords = 0;
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return The number of entries.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of crime records held across all cached results.
+     *
+     * @return The total size of the cached results, counting a nearest neighbor as one.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized long cachedRecords() {
+        return cachedRecords;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return The number of hits.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that had to run the query.
+     *
+     * @return The number of misses.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of results evicted to keep the cache within maxEntries and maxRecords.
+     *
+     * @return The number of evictions.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of times the cache was emptied because the tree changed.
+     *
+     * @return The number of invalidations.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Returns the share of lookups answered from the cache.
+     *
+     * @return hits / (hits + misses), or 0 before the first lookup.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * The key of a range query: the corners of the rectangle.
+     */
+    private record RangeKey(double x1, double y1, double x2, double y2) {
+    }
+
+    /**
+     * The key of a nearest neighbor query: the query point.
+     */
+    private record PointKey(double x, double y) {
+    }
+}
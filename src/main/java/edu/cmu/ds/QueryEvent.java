@@ -0,0 +1,40 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The QueryEvent class is the JDK Flight Recorder event committed by QueryMetrics for every recorded query while a recording
+ * with the event enabled is running, for example with -XX:StartFlightRecording or jcmd &lt;pid&gt; JFR.start.
+ * Stack traces are off, so an event costs no more than its fields.
+ */
+@Name("edu.cmu.ds.Query")
+@Label("2D Tree Query")
+@Category("Crime Data Analysis")
+@Description("A query against a 2D tree of crime records")
+@StackTrace(false)
+class QueryEvent extends Event {
+
+    @Label("Query")
+    String query; // The kind of query, one of QueryMetrics.Query
+
+    @Label("Nodes Visited")
+    long nodesVisited; // Number of tree nodes the query examined
+
+    @Label("Subtrees Pruned")
+    long subtreesPruned; // Number of subtrees the query skipped
+
+    @Label("Results")
+    long results; // Number of records the query returned or counted
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency; // Wall time of the query
+}
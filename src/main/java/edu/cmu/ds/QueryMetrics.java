@@ -0,0 +1,324 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The QueryMetrics class records how much work every query does: the tree nodes it examined, the subtrees it skipped, the
+ * records it returned and its wall time. Each kind of query has its own counters and latency histogram, readable here,
+ * over JMX once registerMBeans has been called, and as a JDK Flight Recorder QueryEvent per query while a recording is on.
+ * <p>
+ * Recording costs two clock reads and a handful of uncontended LongAdder increments per query, so it can stay on under load.
+ * It is on by default and can be switched off entirely with setEnabled(false), over JMX, or by starting the JVM with
+ * -Dedu.cmu.ds.queryMetrics=false; switched off, a query does not even read the clock.
+ */
+public final class QueryMetrics {
+    private static final Logger logger = LoggerUtil.getLogger(QueryMetrics.class);
+
+    static final long NOT_RECORDED = Long.MIN_VALUE; // The start time of a query begun while recording was off
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("edu.cmu.ds.queryMetrics", "true")); // Whether queries are recorded
+    private static final Map<Query, Recorder> RECORDERS = new EnumMap<>(Query.class); // The metrics of each kind of query
+    private static boolean registered; // Whether the MXBeans have been registered, guarded by the class
+
+    static {
+        for (Query query : Query.values()) {
+            RECORDERS.put(query, new Recorder(query));
+        }
+    }
+
+    /**
+     * The kinds of query whose metrics are kept apart.
+     */
+    public enum Query {
+        RANGE, // findPointsInRange and visitPointsInRange, with or without an offense filter
+        COUNT, // countInRange
+        NEAREST, // nearestNeighbor without an offense filter
+        K_NEAREST, // kNearest, and nearestNeighbor with an offense filter
+        RADIUS, // withinRadius
+        DATE_WINDOW // findPointsInRange with a date window
+    }
+
+    /**
+     * Private constructor, as the class only has static methods.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private QueryMetrics() {
+    }
+
+    /**
+     * Returns whether queries are being recorded.
+     *
+     * @return True if recording is on.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording of queries on or off. Queries already running when it is turned on are not recorded.
+     *
+     * @param on True to record queries, false to stop recording.
+     *           <p>
+     *           Preconditions: None.
+     *           Postconditions: Queries started from now on are recorded if and only if on is true.
+     *           Time complexity: O(1).
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns the metrics of a kind of query.
+     *
+     * @param query The kind of query.
+     * @return Its live metrics, the same object that is registered over JMX.
+     * <p>
+     * Preconditions: query must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public static Recorder of(Query query) {
+        return RECORDERS.get(query);
+    }
+
+    /**
+     * Sets the metrics of every kind of query back to zero.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: All counters and histograms are empty, apart from queries recorded concurrently with the reset.
+     * Time complexity: O(b), where b is the number of histogram buckets.
+     */
+    public static void reset() {
+        for (Recorder recorder : RECORDERS.values()) {
+            recorder.reset();
+        }
+    }
+
+    /**
+     * Registers the metrics of each kind of query with the platform MBean server as edu.cmu.ds:type=QueryMetrics,name=&lt;query&gt;.
+     * Calling it again does nothing.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The MXBeans are visible to JMX clients such as JConsole, unless registration failed, which is logged.
+     * Time complexity: O(q), where q is the number of kinds of query.
+     */
+    public static synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Recorder recorder : RECORDERS.values()) {
+                ObjectName name = new ObjectName("edu.cmu.ds:type=QueryMetrics,name=" + recorder.query.name());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(recorder, name);
+                }
+            }
+            registered = true;
+        } catch (JMException e) {
+            logger.warn("Could not register query metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Marks the start of a query.
+     *
+     * @return The current time in nanoseconds, or NOT_RECORDED if recording is off.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : NOT_RECORDED;
+    }
+
+    /**
+     * Records a finished query.
+     *
+     * @param query          The kind of query.
+     * @param start          The value start returned when the query began.
+     * @param nodesVisited   The number of tree nodes the query examined.
+     * @param subtreesPruned The number of subtrees the query skipped.
+     * @param results        The number of records the query returned or counted.
+     *                       <p>
+     *                       Preconditions: query must be non-null.
+     *                       Postconditions: The query is counted, unless recording was off when it started or is off now.
+     *                       Time complexity: O(1).
+     */
+    static void record(Query query, long start, long nodesVisited, long subtreesPruned, long results) {
+        if (start == NOT_RECORDED || !enabled) {
+            return;
+        }
+        long latency = System.nanoTime() - start;
+        RECORDERS.get(query).record(latency, nodesVisited, subtreesPruned, results);
+
+        QueryEvent event = new QueryEvent();
+        if (event.shouldCommit()) {
+            event.query = query.name();
+            event.nodesVisited = nodesVisited;
+            event.subtreesPruned = subtreesPruned;
+            event.results = results;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * The Recorder class holds the counters and latency histogram of one kind of query.
+     */
+    public static final class Recorder implements QueryMetricsMXBean {
+        private final Query query; // The kind of query recorded
+        private final LongAdder queries = new LongAdder(); // Number of queries recorded
+        private final LongAdder nodesVisited = new LongAdder(); // Total of nodes examined
+        private final LongAdder subtreesPruned = new LongAdder(); // Total of subtrees skipped
+        private final LongAdder results = new LongAdder(); // Total of records returned or counted
+        private final LongAdder latencyNanos = new LongAdder(); // Total wall time in nanoseconds
+        private final LatencyHistogram latencies = new LatencyHistogram(); // Distribution of the wall time
+
+        /**
+         * Constructor to create empty metrics for a kind of query.
+         *
+         * @param query The kind of query.
+         *              <p>
+         *              Preconditions: query must be non-null.
+         *              Postconditions: A new Recorder is created with every counter at zero.
+         *              Time complexity: O(b), where b is the number of histogram buckets.
+         */
+        private Recorder(Query query) {
+            this.query = query;
+        }
+
+        /**
+         * Adds a query to the counters and histogram.
+         *
+         * @param latency        The wall time of the query in nanoseconds.
+         * @param nodesVisited   The number of tree nodes the query examined.
+         * @param subtreesPruned The number of subtrees the query skipped.
+         * @param results        The number of records the query returned or counted.
+         *                       <p>
+         *                       Preconditions: None.
+         *                       Postconditions: The query is counted.
+         *                       Time complexity: O(1).
+         */
+        private void record(long latency, long nodesVisited, long subtreesPruned, long results) {
+            queries.increment();
+            this.nodesVisited.add(nodesVisited);
+            this.subtreesPruned.add(subtreesPruned);
+            this.results.add(results);
+            latencyNanos.add(latency);
+            latencies.record(latency);
+        }
+
+        /**
+         * Returns the kind of query recorded.
+         *
+         * @return The kind of query.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        public Query query() {
+            return query;
+        }
+
+        @Override
+        public long getQueries() {
+            return queries.sum();
+        }
+
+        @Override
+        public long getNodesVisited() {
+            return nodesVisited.sum();
+        }
+
+        @Override
+        public long getSubtreesPruned() {
+            return subtreesPruned.sum();
+        }
+
+        @Override
+        public long getResults() {
+            return results.sum();
+        }
+
+        @Override
+        public double getMeanNodesVisited() {
+            long count = queries.sum();
+            return count == 0 ? 0 : (double) nodesVisited.sum() / count;
+        }
+
+        @Override
+        public double getPruningRatio() {
+            long pruned = subtreesPruned.sum();
+            long reached = nodesVisited.sum() + pruned;
+            return reached == 0 ? 0 : (double) pruned / reached;
+        }
+
+        @Override
+        public double getMeanLatencyMicros() {
+            long count = queries.sum();
+            return count == 0 ? 0 : latencyNanos.sum() / 1000.0 / count;
+        }
+
+        @Override
+        public double getP50LatencyMicros() {
+            return latencies.percentile(0.5) / 1000.0;
+        }
+
+        @Override
+        public double getP99LatencyMicros() {
+            return latencies.percentile(0.99) / 1000.0;
+        }
+
+        @Override
+        public double getP999LatencyMicros() {
+            return latencies.percentile(0.999) / 1000.0;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return QueryMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            QueryMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public void reset() {
+            queries.reset();
+            nodesVisited.reset();
+            subtreesPruned.reset();
+            results.reset();
+            latencyNanos.reset();
+            latencies.reset();
+        }
+
+        @Override
+        public String toString() {
+            return query + ": " + getQueries() + " queries, " + String.format("%.1f", getMeanNodesVisited()) + " nodes visited per query, pruning ratio "
+                    + String.format("%.3f", getPruningRatio()) + ", latency p50 " + getP50LatencyMicros() + " us, p99 " + getP99LatencyMicros()
+                    + " us, p999 " + getP999LatencyMicros() + " us";
+        }
+    }
+}
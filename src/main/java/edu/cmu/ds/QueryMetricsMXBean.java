@@ -0,0 +1,99 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+/**
+ * The QueryMetricsMXBean interface is the JMX view of the metrics of one kind of query, registered by QueryMetrics.registerMBeans
+ * as edu.cmu.ds:type=QueryMetrics,name=&lt;query&gt;. Latencies are in microseconds, read from a log-linear histogram.
+ */
+public interface QueryMetricsMXBean {
+
+    /**
+     * Returns the number of queries recorded.
+     *
+     * @return The number of queries.
+     */
+    long getQueries();
+
+    /**
+     * Returns the number of tree nodes the queries examined.
+     *
+     * @return The total of nodes visited.
+     */
+    long getNodesVisited();
+
+    /**
+     * Returns the number of subtrees the queries skipped without examining them.
+     *
+     * @return The total of subtrees pruned.
+     */
+    long getSubtreesPruned();
+
+    /**
+     * Returns the number of records the queries returned, or counted for range counts.
+     *
+     * @return The total of results.
+     */
+    long getResults();
+
+    /**
+     * Returns the average number of nodes a query examined.
+     *
+     * @return Nodes visited per query, or 0 before the first query.
+     */
+    double getMeanNodesVisited();
+
+    /**
+     * Returns the share of the subtrees reached that were skipped rather than examined.
+     *
+     * @return subtrees pruned / (nodes visited + subtrees pruned), or 0 before the first query.
+     */
+    double getPruningRatio();
+
+    /**
+     * Returns the average latency of a query.
+     *
+     * @return The mean wall time in microseconds, or 0 before the first query.
+     */
+    double getMeanLatencyMicros();
+
+    /**
+     * Returns the median latency of a query.
+     *
+     * @return The 50th percentile of the wall time in microseconds.
+     */
+    double getP50LatencyMicros();
+
+    /**
+     * Returns the 99th percentile of the latency of a query.
+     *
+     * @return The 99th percentile of the wall time in microseconds.
+     */
+    double getP99LatencyMicros();
+
+    /**
+     * Returns the 99.9th percentile of the latency of a query.
+     *
+     * @return The 99.9th percentile of the wall time in microseconds.
+     */
+    double getP999LatencyMicros();
+
+    /**
+     * Returns whether queries are being recorded. The switch is shared by every kind of query.
+     *
+     * @return True if recording is on.
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns recording of every kind of query on or off.
+     *
+     * @param enabled True to record queries, false to stop recording.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Sets the counters and histogram of this kind of query back to zero.
+     */
+    void reset();
+}
@@ -4,26 +4,44 @@ package edu.cmu.ds;
 
 /**
  * The Queue class is a generic queue data structure that supports operations like enqueue, dequeue, peek, size, and isEmpty.
- * It is implemented using a linked list.
+ * It is implemented as a ring buffer over an array that doubles when full, so enqueue and dequeue allocate nothing
+ * apart from the occasional larger array, and a level order traversal creates no garbage per node.
  *
  * @param <T> The type of elements stored in the queue.
  */
 public class Queue<T> {
 
-    private Node<T> head; // Reference to the first node in the queue
-    private Node<T> tail; // Reference to the last node in the queue
+    private static final int DEFAULT_CAPACITY = 16; // Capacity of a queue created without one
+
+    private Object[] elements; // The ring buffer; its length is a power of two
+    private int head; // Index of the first element in the queue
     private int size; // Number of elements in the queue
+
     /**
      * Constructor to create an empty queue.
      * <p>
      * Preconditions: None.
-     * Postconditions: A new Queue object is created with head and tail set to null, and size set to 0.
-     * Time complexity: O(1), as it only initializes the head, tail, and size.
+     * Postconditions: A new Queue object is created with room for 16 elements and size set to 0.
+     * Time complexity: O(1), as it only allocates a small array.
      */
     public Queue() {
-        head = null;
-        tail = null;
-        size = 0;
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to create an empty queue with room for the given number of elements before it grows.
+     *
+     * @param initialCapacity The number of elements the queue holds without growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new Queue object is created with room for at least initialCapacity elements and size set to 0.
+     *                        Time complexity: O(c), where c is initialCapacity, to allocate the array.
+     */
+    public Queue(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative: " + initialCapacity);
+        }
+        elements = new Object[capacityFor(initialCapacity)];
     }
 
     /**
@@ -32,20 +50,14 @@ public class Queue<T> {
      * @param data Element to be added to the queue.
      *             <p>
      *             Preconditions: None.
-     *             Postconditions: A new Node is created with the given data and added to the end of the queue.
-     *             Time complexity: O(1), as it directly adds the element to the end of the queue.
+     *             Postconditions: The element is stored at the end of the queue, and the array has doubled if it was full.
+     *             Time complexity: O(1) amortized, as the array doubles when full.
      */
     public void enqueue(T data) {
-        Node<T> newNode = new Node<T>(data);
-        // If the queue is empty, set both head and tail to the new node
-        if (head == null) {
-            head = newNode;
-            tail = newNode;
-        } else {
-            // Otherwise, add the new node to the end of the queue
-            tail.next = newNode;
-            tail = newNode;
+        if (size == elements.length) {
+            grow();
         }
+        elements[(head + size) & (elements.length - 1)] = data;
         // Increment the size of the queue
         size++;
     }
@@ -56,15 +68,18 @@ public class Queue<T> {
      * @return The element at the front of the queue, or null if the queue is empty.
      * <p>
      * Preconditions: None.
-     * Postconditions: The element at the front of the queue is removed and returned.
+     * Postconditions: The element at the front of the queue is removed and returned, and its slot no longer references it.
      * Time complexity: O(1), as it directly removes the element from the front of the queue.
      */
+    @SuppressWarnings("unchecked")
     public T dequeue() {
-        if (head == null) {
+        if (size == 0) {
             return null;
         }
-        T data = head.data;
-        head = head.next;
+        T data = (T) elements[head];
+        // Clear the slot so that the queue does not keep the element alive
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
         size--;
         return data;
     }
@@ -78,11 +93,12 @@ public class Queue<T> {
      * Postconditions: Returns the element at the front of the queue without removing it.
      * Time complexity: O(1), as it directly returns the element at the front of the queue.
      */
+    @SuppressWarnings("unchecked")
     public T peek() {
-        if (head == null) {
+        if (size == 0) {
             return null;
         }
-        return head.data;
+        return (T) elements[head];
     }
 
     /**
@@ -112,29 +128,38 @@ public class Queue<T> {
     }
 
     /**
-     * The Node class represents a node in the linked list used to implement the queue.
-     * It contains the data and a reference to the next node.
-     *
-     * @param <T> The type of data stored in the node.
+     * Doubles the array, copying the elements to its start in queue order.
+     * <p>
+     * Preconditions: The array is full.
+     * Postconditions: The array has twice the length, the first element is at index 0, and the order is unchanged.
+     * Time complexity: O(n), where n is the number of elements in the queue.
      */
-    private static class Node<T> {
-        T data; // The data stored in the node
-        Node<T> next; // Reference to the next node
-
-        /**
-         * Constructor to create a new node with the given data.
-         *
-         * @param data Data to be stored in the node.
-         *             <p>
-         *             Preconditions: None.
-         *             Postconditions: A new Node is created with the given data and null next pointer.
-         *             Time complexity: O(1), as it only sets two instance variables.
-         */
-        public Node(T data) {
-            this.data = data;
-            this.next = null;
+    private void grow() {
+        if (elements.length == 1 << 30) {
+            throw new IllegalStateException("Queue cannot hold more than " + elements.length + " elements");
         }
+        Object[] larger = new Object[elements.length * 2];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, larger, 0, firstPart);
+        System.arraycopy(elements, 0, larger, firstPart, head);
+        elements = larger;
+        head = 0;
     }
 
-
+    /**
+     * Returns the smallest power of two that is at least the given capacity, and at least 1.
+     *
+     * @param capacity The number of elements to hold.
+     * @return The length of the array.
+     * <p>
+     * Preconditions: 0 <= capacity <= 2^30.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    static int capacityFor(int capacity) {
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity is too large: " + capacity);
+        }
+        return capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    }
 }
@@ -0,0 +1,363 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.time.LocalDate;
+
+/**
+ * The SpatioTemporalTree class is an array-backed 3D tree over the x coordinate, the y coordinate and the date of each crime record,
+ * answering range queries restricted to a window of dates. It generalises the layout of FlatTwoDTree to three dimensions:
+ * the root of every range [from, to) of the arrays is its middle element, split on x, y and date in turn (depth % 3),
+ * so a narrow date window prunes whole subtrees the same way a narrow rectangle does.
+ * <p>
+ * Dates are compared as the epoch days the CrimeStore parsed once at load time. Records whose date could not be parsed
+ * are indexed but never match a date window.
+ * The tree is immutable once built; records added to the store afterwards are not indexed.
+ */
+public final class SpatioTemporalTree {
+
+    private static final Logger logger = LoggerUtil.getLogger(SpatioTemporalTree.class);
+    private static final int LEAF_SIZE = 8; // Ranges of at most this many points are scanned instead of split
+
+    private final double[] xs; // The x coordinate of each point, in tree layout
+    private final double[] ys; // The y coordinate of each point, in tree layout
+    private final double[] days; // The epoch day of each point, in tree layout, as a double so all three dimensions share one selection routine
+    private final int[] recordIndex; // The index in store of the crime record of each point, in tree layout
+    private final CrimeStore store; // The crime records
+    private final int size; // Number of points in the tree
+
+    /**
+     * Constructor to build a spatio-temporal tree over all records currently in a store.
+     *
+     * @param crimeStore The crime records to index. Record indexes passed to a PointVisitor are indexes in this store.
+     *                   <p>
+     *                   Preconditions: crimeStore must be non-null. Records may be appended to it later, but they are not indexed.
+     *                   Postconditions: A new SpatioTemporalTree is created holding the current records of the store.
+     *                   Time complexity: O(n log n), where n is the number of records, as each level partitions its points around a median.
+     */
+    public SpatioTemporalTree(CrimeStore crimeStore) {
+        this(crimeStore, allRecords(crimeStore));
+    }
+
+    /**
+     * Constructor to build a spatio-temporal tree over some of the records of a store, for example the live records of a 2D tree.
+     *
+     * @param crimeStore The store holding the crime records.
+     * @param records    The indexes in the store of the records to index. The array is not kept.
+     *                   <p>
+     *                   Preconditions: crimeStore and records must be non-null, and every index in records must be valid in the store.
+     *                   Postconditions: A new SpatioTemporalTree is created holding the given records.
+     *                   Time complexity: O(n log n), where n is the number of records.
+     */
+    SpatioTemporalTree(CrimeStore crimeStore, int[] records) {
+        long start = System.nanoTime();
+        int count = records.length;
+        store = crimeStore;
+        size = count;
+        xs = new double[count];
+        ys = new double[count];
+        days = new double[count];
+        recordIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            int record = records[i];
+            xs[i] = crimeStore.x(record);
+            ys[i] = crimeStore.y(record);
+            days[i] = crimeStore.epochDay(record);
+            recordIndex[i] = record;
+        }
+        build(0, count, 0);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        logger.info("Built spatio-temporal tree with " + count + " records in " + elapsedMillis + " ms (" + estimatedFootprintBytes() + " bytes)");
+    }
+
+    /**
+     * Returns the indexes of all records of a store.
+     *
+     * @param crimeStore The store.
+     * @return The indexes 0 to crimeStore.size() - 1.
+     * <p>
+     * Preconditions: crimeStore must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is the number of records.
+     */
+    private static int[] allRecords(CrimeStore crimeStore) {
+        int[] records = new int[crimeStore.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = i;
+        }
+        return records;
+    }
+
+    /**
+     * Recursive helper method to arrange a range of the arrays into the implicit tree layout.
+     *
+     * @param from  The index of the first point of the range (inclusive).
+     * @param to    The index after the last point of the range (exclusive).
+     * @param depth The depth of the range root in the tree.
+     *              <p>
+     *              Preconditions: 0 <= from <= to <= size.
+     *              Postconditions: The middle point of the range is the median in the current dimension, with smaller or equal values before it
+     *              and greater or equal values after it, and both halves are arranged the same way.
+     *              Time complexity: O(n log n), where n is the size of the range.
+     */
+    private void build(int from, int to, int depth) {
+        if (to - from <= LEAF_SIZE) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(from, to - 1, median, keys(depth));
+        build(from, median, depth + 1);
+        build(median + 1, to, depth + 1);
+    }
+
+    /**
+     * Returns the array holding the dimension a range root at the given depth is split on.
+     *
+     * @param depth The depth of the range root.
+     * @return xs, ys or days.
+     * <p>
+     * Preconditions: depth must be non-negative.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private double[] keys(int depth) {
+        switch (depth % 3) {
+            case 0:
+                return xs;
+            case 1:
+                return ys;
+            default:
+                return days;
+        }
+    }
+
+    /**
+     * Partially sorts a range of the arrays so that the point at index k is the one that would be there if the range were sorted by keys.
+     *
+     * @param left  The index of the first point of the range (inclusive).
+     * @param right The index of the last point of the range (inclusive).
+     * @param k     The index to select.
+     * @param keys  The array to compare: xs, ys or days.
+     *              <p>
+     *              Preconditions: left <= k <= right.
+     *              Postconditions: The range is partitioned around index k.
+     *              Time complexity: O(n) expected, where n is the size of the range (quickselect with a median-of-three pivot).
+     */
+    private void select(int left, int right, int k, double[] keys) {
+        while (right > left) {
+            int middle = (left + right) >>> 1;
+            if (keys[middle] < keys[left]) swap(left, middle);
+            if (keys[right] < keys[left]) swap(left, right);
+            if (keys[right] < keys[middle]) swap(middle, right);
+            double pivot = keys[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swaps two points in all four arrays.
+     *
+     * @param i The index of the first point.
+     * @param j The index of the second point.
+     *          <p>
+     *          Preconditions: i and j must be valid indices.
+     *          Postconditions: The points at i and j are exchanged.
+     *          Time complexity: O(1).
+     */
+    private void swap(int i, int j) {
+        double tempX = xs[i];
+        xs[i] = xs[j];
+        xs[j] = tempX;
+        double tempY = ys[i];
+        ys[i] = ys[j];
+        ys[j] = tempY;
+        double tempDay = days[i];
+        days[i] = days[j];
+        days[j] = tempDay;
+        int tempIndex = recordIndex[i];
+        recordIndex[i] = recordIndex[j];
+        recordIndex[j] = tempIndex;
+    }
+
+    /**
+     * Returns the number of crime records in the tree.
+     *
+     * @return The number of points in the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the heap footprint of the tree structure, not counting the crime records themselves.
+     * Each point costs three doubles and one int in the flat arrays (28 bytes), plus one array header per array.
+     *
+     * @return The estimated number of bytes used by the arrays of the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public long estimatedFootprintBytes() {
+        return 4 * 16 + (long) size * (8 + 8 + 8 + 4);
+    }
+
+    /**
+     * Finds all crime records within the given range of coordinates whose date lies within the given window.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param fromDate   The first date of the window (inclusive).
+     * @param toDate     The last date of the window (inclusive).
+     * @return A list of the matching crime records, in tree order.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, fromDate and toDate must be non-null.
+     * Postconditions: Returns the records within the range and the window (boundaries included).
+     * Time complexity: O(n^(2/3) + m), where n is the number of points in the tree and m the number of matches.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate) {
+        ListOfCrimes crimesInRange = new ListOfCrimes();
+        visitPointsInRange(lowerLeft, upperRight, fromDate, toDate, (x, y, index) -> {
+            crimesInRange.addCrime(store.get(index));
+            return true;
+        });
+        return crimesInRange;
+    }
+
+    /**
+     * Passes the coordinates and record index of every point within the given range and date window to a visitor,
+     * stopping early if the visitor returns false. No crime record is read unless the visitor asks for it with getRecord.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param fromDate   The first date of the window (inclusive).
+     * @param toDate     The last date of the window (inclusive).
+     * @param visitor    The visitor receiving each match.
+     * @return True if every match was visited, false if the visitor stopped the query early.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, fromDate, toDate and visitor must be non-null.
+     * Postconditions: The visitor has received the matches until it returned false.
+     * Time complexity: O(n^(2/3) + m), where n is the number of points in the tree and m the number of matches.
+     */
+    public boolean visitPointsInRange(double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate, FlatTwoDTree.PointVisitor visitor) {
+        double[] min = {lowerLeft[0], lowerLeft[1], Math.max(fromDate.toEpochDay(), CrimeStore.NO_DATE + 1L)};
+        double[] max = {upperRight[0], upperRight[1], toDate.toEpochDay()};
+        long start = QueryMetrics.start();
+        int visited = 0; // Points examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int results = 0; // Points passed to the visitor, for the query metrics
+
+        // Each stack frame is a range of the arrays: from, to and depth
+        int[] stack = new int[3 * (64 + 1)];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size;
+        stack[top++] = 0;
+
+        try {
+            while (top > 0) {
+                int depth = stack[--top];
+                int to = stack[--top];
+                int from = stack[--top];
+
+                // Scan small ranges linearly
+                if (to - from <= LEAF_SIZE) {
+                    visited += to - from;
+                    for (int i = from; i < to; i++) {
+                        if (contains(i, min, max)) {
+                            results++;
+                            if (!visitor.visit(xs[i], ys[i], recordIndex[i])) {
+                                return false;
+                            }
+                        }
+                    }
+                    continue;
+                }
+
+                int median = (from + to) >>> 1;
+                visited++;
+                if (contains(median, min, max)) {
+                    results++;
+                    if (!visitor.visit(xs[median], ys[median], recordIndex[median])) {
+                        return false;
+                    }
+                }
+
+                int dimension = depth % 3;
+                double split = keys(depth)[median];
+                if (split <= max[dimension]) {
+                    stack[top++] = median + 1;
+                    stack[top++] = to;
+                    stack[top++] = depth + 1;
+                } else {
+                    pruned++;
+                }
+                if (split >= min[dimension]) {
+                    stack[top++] = from;
+                    stack[top++] = median;
+                    stack[top++] = depth + 1;
+                } else {
+                    pruned++;
+                }
+            }
+        } finally {
+            QueryMetrics.record(QueryMetrics.Query.DATE_WINDOW, start, visited, pruned, results);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a point lies within a query box.
+     *
+     * @param i   The index of the point in the arrays.
+     * @param min The lower bounds of the box: x, y and epoch day.
+     * @param max The upper bounds of the box: x, y and epoch day.
+     * @return True if the point is inside the box (boundaries included).
+     * <p>
+     * Preconditions: i must be a valid index.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private boolean contains(int i, double[] min, double[] max) {
+        return xs[i] >= min[0] && xs[i] <= max[0] && ys[i] >= min[1] && ys[i] <= max[1] && days[i] >= min[2] && days[i] <= max[2];
+    }
+
+    /**
+     * Returns the crime record with the given record index, as passed to a PointVisitor.
+     *
+     * @param index The record index.
+     * @return The crime record.
+     * <p>
+     * Preconditions: index must be a record index passed to a PointVisitor.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public CrimeRecord getRecord(int index) {
+        return store.get(index);
+    }
+}
@@ -2,26 +2,47 @@
 
 package edu.cmu.ds;
 
+import java.util.Arrays;
+
 /**
  * The Stack class is a generic stack data structure that supports operations like push, pop, peek, size, and isEmpty.
- * It is implemented using a linked list.
+ * It is implemented over an array that doubles when full, so push and pop allocate nothing apart from the occasional
+ * larger array, and a reverse level order traversal creates no garbage per node.
  *
  * @param <T> The type of elements stored in the stack.
  */
 public class Stack<T> {
 
-    private Node<T> top; // Reference to the top node in the stack
+    private static final int DEFAULT_CAPACITY = 16; // Capacity of a stack created without one
+
+    private Object[] elements; // The elements, bottom of the stack first
     private int size; // Number of elements in the stack
+
     /**
      * Constructor to create an empty stack.
      * <p>
      * Preconditions: None.
-     * Postconditions: A new Stack object is created with top set to null, and size set to 0.
-     * Time complexity: O(1), as it only initializes the top and size.
+     * Postconditions: A new Stack object is created with room for 16 elements and size set to 0.
+     * Time complexity: O(1), as it only allocates a small array.
      */
     public Stack() {
-        top = null;
-        size = 0;
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor to create an empty stack with room for the given number of elements before it grows.
+     *
+     * @param initialCapacity The number of elements the stack holds without growing.
+     *                        <p>
+     *                        Preconditions: initialCapacity must be non-negative.
+     *                        Postconditions: A new Stack object is created with room for initialCapacity elements and size set to 0.
+     *                        Time complexity: O(c), where c is initialCapacity, to allocate the array.
+     */
+    public Stack(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must be non-negative: " + initialCapacity);
+        }
+        elements = new Object[Math.max(1, initialCapacity)];
     }
 
     /**
@@ -30,14 +51,14 @@ public class Stack<T> {
      * @param data Element to be added to the stack.
      *             <p>
      *             Preconditions: None.
-     *             Postconditions: A new Node is created with the given data and added to the top of the stack.
-     *             Time complexity: O(1), as it directly adds a new node to the top.
+     *             Postconditions: The element is stored on top of the stack, and the array has doubled if it was full.
+     *             Time complexity: O(1) amortized, as the array doubles when full.
      */
     public void push(T data) {
-        Node<T> newNode = new Node<T>(data);
-        newNode.next = top;
-        top = newNode;
-        size++;
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, IntStack.grownCapacity(elements.length));
+        }
+        elements[size++] = data;
     }
 
     /**
@@ -46,16 +67,17 @@ public class Stack<T> {
      * @return The element at the top of the stack, or null if the stack is empty.
      * <p>
      * Preconditions: None.
-     * Postconditions: The top element is removed from the stack and returned.
+     * Postconditions: The top element is removed from the stack and returned, and its slot no longer references it.
      * Time complexity: O(1), as it directly removes the top element.
      */
+    @SuppressWarnings("unchecked")
     public T pop() {
-        if (top == null) {
+        if (size == 0) {
             return null;
         }
-        T data = top.data;
-        top = top.next;
-        size--;
+        T data = (T) elements[--size];
+        // Clear the slot so that the stack does not keep the element alive
+        elements[size] = null;
         return data;
     }
 
@@ -68,11 +90,12 @@ public class Stack<T> {
      * Postconditions: Returns the top element without removing it.
      * Time complexity: O(1), as it directly returns the top element.
      */
+    @SuppressWarnings("unchecked")
     public T peek() {
-        if (top == null) {
+        if (size == 0) {
             return null;
         }
-        return top.data;
+        return (T) elements[size - 1];
     }
 
     /**
@@ -100,29 +123,4 @@ public class Stack<T> {
     public boolean isEmpty() {
         return size == 0;
     }
-
-    /**
-     * The Node class represents a node in the linked list used to implement the stack.
-     * It contains the data and a reference to the next node.
-     *
-     * @param <T> The type of data stored in the node.
-     */
-    private static class Node<T> {
-        private final T data; // The data stored in the node
-        private Node<T> next; // Reference to the next node
-
-        /**
-         * Constructor to create a new node with the given data.
-         *
-         * @param data Data to be stored in the node.
-         *             <p>
-         *             Preconditions: None.
-         *             Postconditions: A new Node is created with the given data and null next pointer.
-         *             Time complexity: O(1), as it only sets two instance variables.
-         */
-        public Node(T data) {
-            this.data = data;
-        }
-    }
-
 }
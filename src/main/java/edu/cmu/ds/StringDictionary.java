@@ -0,0 +1,157 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The StringDictionary class assigns a dense int id to each distinct string it is given, in order of first appearance,
+ * so that a column of repetitive text can be stored as an int per record and each distinct value kept once.
+ * Null is a valid value and gets an id like any other string.
+ * <p>
+ * Values can only be added, so a snapshot (see CrimeStore.snapshot) can share the id map and the value array with the
+ * dictionary it was taken from: it only reads ids below its own size, which the original never changes again.
+ * The id map is concurrent so that a snapshot can look values up while the original adds new ones.
+ */
+class StringDictionary {
+
+    private final Map<String, Integer> ids; // The id of each non-null value, shared with snapshots
+    private String[] values; // The value of each id
+    private int size; // Number of distinct values
+    private int nullId = -1; // The id of null, or -1 if null has not been added
+
+    /**
+     * Constructor to create an empty dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: A new empty StringDictionary is created.
+     * Time complexity: O(1).
+     */
+    StringDictionary() {
+        ids = new ConcurrentHashMap<>();
+        values = new String[16];
+    }
+
+    /**
+     * Constructor to create a snapshot of another dictionary.
+     *
+     * @param other The dictionary to take the snapshot of.
+     *              <p>
+     *              Preconditions: other must be non-null.
+     *              Postconditions: The snapshot holds the current values of other; values added to other later are not visible in it.
+     *              Time complexity: O(1).
+     */
+    private StringDictionary(StringDictionary other) {
+        ids = other.ids;
+        values = other.values;
+        size = other.size;
+        nullId = other.nullId;
+    }
+
+    /**
+     * Returns a snapshot of the dictionary, which must not be modified.
+     *
+     * @return A dictionary sharing the current values of this one.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    StringDictionary snapshot() {
+        return new StringDictionary(this);
+    }
+
+    /**
+     * Returns the id of a value, adding it to the dictionary if it is new.
+     *
+     * @param value The value, possibly null.
+     * @return The id of the value.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The value is in the dictionary; a new value gets the id size() - 1.
+     * Time complexity: O(k) expected, where k is the length of the value.
+     */
+    int idOf(String value) {
+        int id = find(value);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == values.length) {
+            String[] grown = new String[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, size);
+            values = grown;
+        }
+        values[size] = value;
+        if (value == null) {
+            nullId = size;
+        } else {
+            ids.put(value, size);
+        }
+        return size++;
+    }
+
+    /**
+     * Returns the id of a value without adding it.
+     *
+     * @param value The value, possibly null.
+     * @return The id of the value, or -1 if it is not in the dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(k) expected, where k is the length of the value.
+     */
+    int find(String value) {
+        if (value == null) {
+            return nullId;
+        }
+        Integer id = ids.get(value);
+        // Ids at or above size were added to the dictionary this snapshot was taken from, after the snapshot
+        return id == null || id >= size ? -1 : id;
+    }
+
+    /**
+     * Returns the value of an id.
+     *
+     * @param id The id.
+     * @return The value the id was assigned to.
+     * <p>
+     * Preconditions: 0 <= id < size().
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    String get(int id) {
+        return values[id];
+    }
+
+    /**
+     * Returns the number of distinct values in the dictionary.
+     *
+     * @return The number of values.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Estimates the heap footprint of the dictionary: the values (a 40 byte String object and array per value plus one byte
+     * per character, assuming Latin-1 compact strings) and a 48 byte hash map entry and boxed id per value.
+     *
+     * @return The estimated number of bytes used by the dictionary.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(d), where d is the number of distinct values.
+     */
+    long estimatedFootprintBytes() {
+        long bytes = 16L + 4L * values.length;
+        for (int i = 0; i < size; i++) {
+            bytes += 88 + (values[i] == null ? 0 : values[i].length());
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,14 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+/**
+ * The TraversalOrder enum names the orders in which TwoDTree.traverse, stream and dump walk the whole tree.
+ */
+public enum TraversalOrder {
+    INORDER, // Left subtree, node, right subtree
+    PREORDER, // Node, left subtree, right subtree
+    POSTORDER, // Left subtree, right subtree, node
+    LEVEL_ORDER, // Level by level from the root, left to right
+    REVERSE_LEVEL_ORDER // Level by level from the deepest level up, left to right
+}
@@ -0,0 +1,468 @@
+//Author: Manjunath K P
+
+package edu.cmu.ds;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * The TreeSnapshot class saves a built TwoDTree to a compact binary file and loads it back without parsing the CSV or
+ * rebuilding the tree, so that startup costs one sequential read of the snapshot.
+ * <p>
+ * A snapshot mirrors the columnar CrimeStore of the tree, in big-endian order:
+ * <pre>
+ * int    magic ("2DTS") and int format version
+ * long   size, long modification time (milliseconds since the epoch) and long CRC32C checksum of the CSV file the tree was built from
+ * int    number of records
+ * dict   the street, offense, date and tract dictionaries, each an int count followed by each value as an int byte
+ *        length (-1 for null) and its UTF-8 bytes, in id order
+ * record each record in preorder, the records of a node one after the other: byte shape (bit 0 left child, bit 1
+ *        right child, both only on the first record of a node; bit 2 on every other record of a node), double x,
+ *        double y, int time, int street, offense, date and tract ids, double latitude and double longitude
+ * int    number of records whose coordinate text is not reproduced by their doubles, then for each its int position
+ *        in preorder and its latitude and longitude text, encoded like dictionary values
+ * </pre>
+ * Records are written in preorder, so the loaded store holds the i-th record of the preorder at index i. Snapshots are read through a
+ * memory-mapped buffer, which limits a snapshot to 2 GB. A snapshot whose format version or source size does not match, or whose
+ * source modification time and checksum both differ, is stale; loadOrBuild then rebuilds the tree from the CSV and replaces the snapshot.
+ * The checksum is only computed when the size matches but the modification time does not, so an unchanged CSV file is never read
+ * at startup; a change that keeps both the size and the modification time goes unnoticed.
+ */
+public class TreeSnapshot {
+
+    private static final Logger logger = LoggerUtil.getLogger(TreeSnapshot.class);
+    private static final int MAGIC = 0x32445453; // "2DTS"
+    static final int FORMAT_VERSION = 4; // Bumped whenever the layout of a snapshot changes
+    private static final int MODIFIED_OFFSET = 16; // Position of the source modification time in a snapshot
+    private static final int BUFFER_SIZE = 64 * 1024; // Size of the write buffer
+    private static final long CHECKSUM_CHUNK = 256L * 1024 * 1024; // Largest part of the CSV mapped at once for the checksum
+
+    /**
+     * Private constructor, as this class only has static methods.
+     */
+    private TreeSnapshot() {
+    }
+
+    /**
+     * Loads a tree from its snapshot if the snapshot is current, and otherwise builds it from the CSV file and writes a new snapshot.
+     *
+     * @param csvPath      The crime data CSV file.
+     * @param snapshotPath The snapshot file, which need not exist.
+     * @return The tree of the CSV file.
+     * @throws IOException If the CSV file cannot be read. Failures to read or write the snapshot are logged and the tree is built from the CSV.
+     *                     <p>
+     *                     Preconditions: csvPath and snapshotPath must be non-null.
+     *                     Postconditions: Returns a tree holding the records of the CSV file, and snapshotPath holds a current snapshot unless it could not be written
+     *                     or the CSV file changed while it was loaded.
+     *                     Time complexity: O(n) to read a current snapshot, plus O(s) to checksum a CSV file of s bytes whose modification time changed,
+     *                     O(n log n) to rebuild, where n is the number of records.
+     */
+    public static TwoDTree loadOrBuild(Path csvPath, Path snapshotPath) throws IOException {
+        if (Files.exists(snapshotPath)) {
+            try {
+                TwoDTree tree = read(snapshotPath, csvPath);
+                if (tree != null) {
+                    return tree;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not read snapshot " + snapshotPath + ", rebuilding: " + e.getMessage());
+            }
+        }
+
+        // Checksum the bytes the loader parses, and only save the tree if the file did not change while it was read
+        long sourceSize = Files.size(csvPath);
+        long sourceModified = modified(csvPath);
+        CRC32C sourceChecksum = new CRC32C();
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(CrimeCsvLoader.loadStore(csvPath, 0, sourceChecksum), true);
+        if (Files.size(csvPath) != sourceSize || modified(csvPath) != sourceModified) {
+            logger.warn("CSV file " + csvPath + " changed while it was loaded, not writing snapshot " + snapshotPath);
+            return tree;
+        }
+        try {
+            write(tree, snapshotPath, sourceSize, sourceModified, sourceChecksum.getValue());
+        } catch (IOException e) {
+            logger.warn("Could not write snapshot " + snapshotPath + ": " + e.getMessage());
+        }
+        return tree;
+    }
+
+    /**
+     * Writes a snapshot of a tree, replacing any existing file atomically where the file system allows it.
+     *
+     * @param tree           The tree to save.
+     * @param snapshotPath   The snapshot file.
+     * @param sourceSize     The size of the CSV file the tree was built from.
+     * @param sourceModified The modification time of that CSV file, as returned by modified.
+     * @param sourceChecksum The checksum of that CSV file, as computed by checksum.
+     * @throws IOException If the snapshot cannot be written.
+     *                     <p>
+     *                     Preconditions: tree and snapshotPath must be non-null.
+     *                     Postconditions: snapshotPath holds a snapshot of the live records of the tree.
+     *                     Time complexity: O(n + d), where n is the number of records in the tree and d the number of distinct text values.
+     */
+    public static void write(TwoDTree tree, Path snapshotPath, long sourceSize, long sourceModified, long sourceChecksum) throws IOException {
+        long startTime = System.nanoTime();
+        if (tree.deletedCount() > 0) {
+            // The snapshot stores the shape of the tree, which must not hold tombstones
+            tree = tree.compacted(false);
+        }
+        int n = tree.size();
+        int[] records = new int[n];
+        byte[] shape = new byte[n];
+        tree.toPreorder(records, shape);
+        CrimeStore store = tree.getStore();
+
+        Path parent = snapshotPath.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, snapshotPath.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeLong(sourceChecksum);
+                out.writeInt(n);
+                writeDictionary(out, store.streets());
+                writeDictionary(out, store.offenses());
+                writeDictionary(out, store.dates());
+                writeDictionary(out, store.tracts());
+
+                int irregular = 0;
+                for (int i = 0; i < n; i++) {
+                    int record = records[i];
+                    out.writeByte(shape[i]);
+                    out.writeDouble(store.x(record));
+                    out.writeDouble(store.y(record));
+                    out.writeInt(store.time(record));
+                    out.writeInt(store.streetId(record));
+                    out.writeInt(store.offenseId(record));
+                    out.writeInt(store.dateId(record));
+                    out.writeInt(store.tractId(record));
+                    out.writeDouble(store.latitude(record));
+                    out.writeDouble(store.longitude(record));
+                    if (!store.hasCanonicalCoordinates(record)) {
+                        irregular++;
+                    }
+                }
+
+                out.writeInt(irregular);
+                for (int i = 0; i < n && irregular > 0; i++) {
+                    if (!store.hasCanonicalCoordinates(records[i])) {
+                        out.writeInt(i);
+                        writeString(out, store.latitudeText(records[i]));
+                        writeString(out, store.longitudeText(records[i]));
+                        irregular--;
+                    }
+                }
+            }
+            try {
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        logger.info("Wrote snapshot of " + n + " records to " + snapshotPath + " (" + Files.size(snapshotPath) + " bytes) in "
+                + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Reads a snapshot if it was built from the given CSV file by the current format version.
+     * The CSV file is only read to compute its checksum if its size matches the snapshot but its modification time does not;
+     * if the checksum then matches too, the snapshot is given the new modification time so the next call need not read the CSV file.
+     *
+     * @param snapshotPath The snapshot file.
+     * @param csvPath      The CSV file the tree should be built from.
+     * @return The tree saved in the snapshot, or null if the snapshot is stale.
+     * @throws IOException If the snapshot or the attributes of the CSV file cannot be read, or the snapshot is not a valid snapshot.
+     *                     <p>
+     *                     Preconditions: snapshotPath and csvPath must be non-null.
+     *                     Postconditions: Returns a tree with the same structure and records as the saved tree, or null.
+     *                     Time complexity: O(n + d), where n is the number of records in the snapshot and d the number of distinct text values,
+     *                     plus O(s) for a CSV file of s bytes whose modification time changed.
+     */
+    public static TwoDTree read(Path snapshotPath, Path csvPath) throws IOException {
+        return read(snapshotPath, Files.size(csvPath), modified(csvPath), () -> checksum(csvPath));
+    }
+
+    /**
+     * Reads a snapshot if it was built from a CSV file of the given size and either modification time or checksum by the current format version.
+     *
+     * @param snapshotPath   The snapshot file.
+     * @param sourceSize     The size of the CSV file the tree should be built from.
+     * @param sourceModified The modification time of that CSV file, as returned by modified.
+     * @param sourceChecksum The checksum of that CSV file, as computed by checksum.
+     * @return The tree saved in the snapshot, or null if the snapshot is stale.
+     * @throws IOException If the snapshot cannot be read or is not a valid snapshot.
+     *                     <p>
+     *                     Preconditions: snapshotPath must be non-null.
+     *                     Postconditions: Returns a tree with the same structure and records as the saved tree, or null.
+     *                     Time complexity: O(n + d), where n is the number of records in the snapshot and d the number of distinct text values.
+     */
+    public static TwoDTree read(Path snapshotPath, long sourceSize, long sourceModified, long sourceChecksum) throws IOException {
+        return read(snapshotPath, sourceSize, sourceModified, () -> sourceChecksum);
+    }
+
+    /**
+     * Reads a snapshot if it was built from a CSV file of the given size and either modification time or checksum by the current format version,
+     * computing the checksum only if the modification times differ, and then storing the new modification time in the snapshot if it is current.
+     *
+     * @param snapshotPath   The snapshot file.
+     * @param sourceSize     The size of the CSV file the tree should be built from.
+     * @param sourceModified The modification time of that CSV file, as returned by modified.
+     * @param sourceChecksum Computes the checksum of that CSV file.
+     * @return The tree saved in the snapshot, or null if the snapshot is stale.
+     * @throws IOException If the snapshot cannot be read or is not a valid snapshot, or the checksum cannot be computed.
+     *                     <p>
+     *                     Preconditions: snapshotPath and sourceChecksum must be non-null.
+     *                     Postconditions: Returns a tree with the same structure and records as the saved tree, or null.
+     *                     Time complexity: O(n + d), where n is the number of records in the snapshot and d the number of distinct text values,
+     *                     plus the checksum if it is computed.
+     */
+    private static TwoDTree read(Path snapshotPath, long sourceSize, long sourceModified, SourceChecksum sourceChecksum) throws IOException {
+        long startTime = System.nanoTime();
+        TwoDTree tree;
+        boolean touched; // Whether the CSV file was only touched since the snapshot was written
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is larger than 2 GB");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a tree snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                logger.info("Snapshot " + snapshotPath + " has format version " + version + ", expected " + FORMAT_VERSION);
+                return null;
+            }
+            long size = buffer.getLong();
+            long modified = buffer.getLong();
+            long checksum = buffer.getLong();
+            touched = modified != sourceModified;
+            if (size != sourceSize || (touched && checksum != sourceChecksum.compute())) {
+                logger.info("Snapshot " + snapshotPath + " was built from a different version of the CSV file");
+                return null;
+            }
+
+            int n = buffer.getInt();
+            if (n < 0) {
+                throw new IOException("Snapshot " + snapshotPath + " has a negative record count");
+            }
+            CrimeStore store = new CrimeStore(n);
+            byte[] scratch = new byte[256];
+            int streetCount = readDictionary(buffer, store, 0, scratch);
+            int offenseCount = readDictionary(buffer, store, 1, scratch);
+            int dateCount = readDictionary(buffer, store, 2, scratch);
+            int tractCount = readDictionary(buffer, store, 3, scratch);
+
+            byte[] shape = new byte[n];
+            for (int i = 0; i < n; i++) {
+                shape[i] = buffer.get();
+                double x = buffer.getDouble();
+                double y = buffer.getDouble();
+                int time = buffer.getInt();
+                int streetId = checkId(buffer.getInt(), streetCount);
+                int offenseId = checkId(buffer.getInt(), offenseCount);
+                int dateId = checkId(buffer.getInt(), dateCount);
+                int tractId = checkId(buffer.getInt(), tractCount);
+                store.addEncoded(x, y, time, streetId, offenseId, dateId, tractId, buffer.getDouble(), buffer.getDouble());
+            }
+
+            int irregular = buffer.getInt();
+            for (int i = 0; i < irregular; i++) {
+                int position = checkId(buffer.getInt(), n);
+                store.setCoordinateTexts(position, readString(buffer, scratch), readString(buffer, scratch));
+            }
+
+            tree = TwoDTree.fromPreorder(store, shape);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot " + snapshotPath + " is truncated or corrupt", e);
+        }
+        if (touched) {
+            // Written once the mapping is closed, as some platforms refuse to write a file that is mapped
+            try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, sourceModified), MODIFIED_OFFSET);
+            } catch (IOException e) {
+                logger.warn("Could not update the source modification time in snapshot " + snapshotPath + ": " + e.getMessage());
+            }
+        }
+        logger.info("Loaded " + tree.size() + " records from snapshot " + snapshotPath + " in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        return tree;
+    }
+
+    /**
+     * Writes the values of a dictionary in id order.
+     *
+     * @param out        The snapshot being written.
+     * @param dictionary The dictionary.
+     * @throws IOException If the dictionary cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The count and values of the dictionary are written.
+     *                     Time complexity: O(d), where d is the total length of the values.
+     */
+    private static void writeDictionary(DataOutputStream out, StringDictionary dictionary) throws IOException {
+        out.writeInt(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) {
+            writeString(out, dictionary.get(i));
+        }
+    }
+
+    /**
+     * Writes a string as its int UTF-8 byte length, or -1 for null, followed by its bytes.
+     *
+     * @param out  The snapshot being written.
+     * @param text The string, possibly null.
+     * @throws IOException If the string cannot be written.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The string is written.
+     *                     Time complexity: O(k), where k is the length of the string.
+     */
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a dictionary into a store, checking that every value gets the id it was written with.
+     *
+     * @param buffer  The snapshot being read.
+     * @param store   The store receiving the dictionary.
+     * @param column  0 for streets, 1 for offenses, 2 for dates and 3 for tracts.
+     * @param scratch A buffer for the bytes of each value.
+     * @return The number of values in the dictionary.
+     * @throws IOException If the dictionary is corrupt.
+     *                     <p>
+     *                     Preconditions: The dictionary of the column must be empty.
+     *                     Postconditions: The dictionary holds the values in their original id order; dates have their epoch days.
+     *                     Time complexity: O(d), where d is the total length of the values.
+     */
+    private static int readDictionary(MappedByteBuffer buffer, CrimeStore store, int column, byte[] scratch) throws IOException {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            String value = readString(buffer, scratch);
+            int id = switch (column) {
+                case 0 -> store.streets().idOf(value);
+                case 1 -> store.offenses().idOf(value);
+                case 2 -> store.dateId(value);
+                default -> store.tracts().idOf(value);
+            };
+            if (id != i) {
+                throw new IOException("Snapshot dictionary holds a duplicate value: " + value);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a string written by writeString.
+     *
+     * @param buffer  The snapshot being read.
+     * @param scratch A buffer for the bytes of the string, used if it is large enough.
+     * @return The string, possibly null.
+     * @throws IOException If the length of the string is invalid.
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: The buffer is positioned after the string.
+     *                     Time complexity: O(k), where k is the length of the string.
+     */
+    private static String readString(MappedByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < -1 || length > buffer.remaining()) {
+            throw new IOException("Snapshot holds a string of invalid length " + length);
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks that an id read from a snapshot is within its range.
+     *
+     * @param id    The id.
+     * @param count The number of valid ids.
+     * @return The id.
+     * @throws IOException If the id is not in [0, count).
+     *                     <p>
+     *                     Preconditions: None.
+     *                     Postconditions: None.
+     *                     Time complexity: O(1).
+     */
+    private static int checkId(int id, int count) throws IOException {
+        if (id < 0 || id >= count) {
+            throw new IOException("Snapshot holds an id " + id + " outside [0, " + count + ")");
+        }
+        return id;
+    }
+
+    /**
+     * Computes the CRC32C checksum of a file, reading it through memory-mapped chunks.
+     *
+     * @param path The file.
+     * @return The checksum of the contents of the file.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: Returns the same value for files with the same contents.
+     *                     Time complexity: O(n), where n is the size of the file.
+     */
+    public static long checksum(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += CHECKSUM_CHUNK) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHECKSUM_CHUNK, size - position)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Returns the modification time of a file as stored in a snapshot.
+     *
+     * @param path The file.
+     * @return The modification time in milliseconds since the epoch.
+     * @throws IOException If the attributes of the file cannot be read.
+     *                     <p>
+     *                     Preconditions: path must be non-null.
+     *                     Postconditions: None.
+     *                     Time complexity: O(1).
+     */
+    public static long modified(Path path) throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Computes the checksum of the CSV file a snapshot should be built from, only when it is needed.
+     */
+    @FunctionalInterface
+    private interface SourceChecksum {
+        long compute() throws IOException;
+    }
+}
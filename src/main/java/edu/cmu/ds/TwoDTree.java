@@ -4,14 +4,40 @@ package edu.cmu.ds;
 
 import org.slf4j.Logger;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The TwoDTree class represents a 2D tree data structure that stores crime records.
  * It supports operations like insertion, inorder, preorder, postorder, level order, and reverse level order traversal.
  * It also supports finding points within a given range and finding the nearest neighbor to a given point.
+ * <p>
+ * The records themselves live column by column in a CrimeStore; each node refers to its record by index, and
+ * CrimeRecord objects are only created for the records a query or traversal hands out.
+ * <p>
+ * All records at exactly the same coordinates share one node, which keeps them in a small bucket of record indexes, so repeated
+ * addresses add no depth to the tree and every query examines each location once.
+ * <p>
+ * Records are deleted by taking them out of the bucket of their node; once a node has no records left it becomes a tombstone,
+ * which every query skips, and a subtree is rebuilt from its live nodes once more than COMPACTION_THRESHOLD of its nodes are
+ * tombstones. Deleted records stay in the store.
+ * <p>
+ * A TwoDTree is not safe for concurrent modification; ConcurrentTwoDTree publishes immutable versions of it instead.
  */
 public class TwoDTree {
 
@@ -21,7 +47,18 @@ public class TwoDTree {
      */
 
     private static final Logger logger = LoggerUtil.getLogger(TwoDTree.class);
+    private static final int PARALLEL_BUILD_THRESHOLD = 8192; // Subtrees smaller than this are built on the calling thread
+    private static final double BALANCE_ALPHA = 0.7; // Inserts keep the height within log base 1/BALANCE_ALPHA of the size, about 1.94 log2 n
+    static final double COMPACTION_THRESHOLD = 0.25; // A subtree is rebuilt once more than this fraction of its nodes are tombstones
+    static final int TEMPORAL_PATCH_MINIMUM = 1024; // Inserts and deletes a date-window index absorbs before it is rebuilt, at the least (see TemporalIndex)
+    static final int STACK_POOL_SIZE = Math.max(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1); // Traversal stacks kept for reuse, four per core rounded up to a power of two, at least 16
+    private static final AtomicReferenceArray<TraversalStack> STACKS = new AtomicReferenceArray<>(STACK_POOL_SIZE); // Free traversal stacks shared by all threads, null in a slot that holds none
+    private static final LongAdder ALLOCATED_STACKS = new LongAdder(); // Number of traversal stacks created because the pool was empty
     private TreeNode root; // Reference to the root node of the 2D tree
+    private int size; // Number of live records in the 2D tree, not counting tombstones
+    private CrimeStore store; // The crime records of the nodes
+    private volatile long version; // Incremented by every change to the records of the tree, so caches can tell their results are stale
+    private volatile TemporalIndex temporalIndex; // Index over x, y and date with the changes made since it was built, built on the first date-constrained query, null until then or once too many changes have piled up
 
     /**
      * Constructor to create an empty 2D tree.
@@ -30,427 +67,2994 @@ public class TwoDTree {
      * Postconditions: A new TwoDTree object is created with root set to null.
      * Time complexity: O(1), as it only initializes the root pointer.
      */
-    public TwoDTree(String crimeDataLocation) {
+    public TwoDTree() {
         root = null;
+        size = 0;
+        store = new CrimeStore();
+    }
+
+    /**
+     * Constructor to create a 2D tree from existing nodes, for the versions published by ConcurrentTwoDTree.
+     *
+     * @param root       The root node, possibly shared with other trees.
+     * @param size       The number of live records.
+     * @param crimeStore The store holding the crime records of the nodes.
+     *                   <p>
+     *                   Preconditions: The nodes must describe a valid 2D tree over records of crimeStore.
+     *                   Postconditions: A new TwoDTree is created over the given nodes.
+     *                   Time complexity: O(1).
+     */
+    private TwoDTree(TreeNode root, int size, CrimeStore crimeStore) {
+        this.root = root;
+        this.size = size;
+        this.store = crimeStore;
+    }
+
+    /**
+     * Constructor to create a 2D tree from the crime data file, built sequentially as a balanced tree.
+     *
+     * @param crimeDataLocation The location of the crime data file.
+     *                          <p>
+     *                          Preconditions: None.
+     *                          Postconditions: A new TwoDTree object is created holding the records of the file, or an empty tree if the file cannot be read.
+     *                          Time complexity: O(n log n), where n is the number of crime records in the file.
+     */
+    public TwoDTree(String crimeDataLocation) {
+        this(crimeDataLocation, false);
+    }
+
+    /**
+     * Constructor to create a 2D tree from the crime data file, built as a balanced tree.
+     *
+     * @param crimeDataLocation The location of the crime data file.
+     * @param parallelBuild     Whether the left and right halves of the tree are built in parallel using fork-join.
+     *                          <p>
+     *                          Preconditions: None.
+     *                          Postconditions: A new TwoDTree object is created holding the records of the file, or an empty tree if the file cannot be read.
+     *                          Time complexity: O(n log n), where n is the number of crime records in the file.
+     */
+    public TwoDTree(String crimeDataLocation, boolean parallelBuild) {
+        this();
         try {
-            loadCrimeData(crimeDataLocation);
+            loadCrimeData(crimeDataLocation, parallelBuild);
         } catch (Exception e) {
             logger.error("Error while loading crime data from " + crimeDataLocation, e.getMessage());
         }
     }
 
     /**
-     * Loads crime data from the given file location and inserts it into the 2D tree.
+     * Loads crime data from the given file location and bulk-loads it into the 2D tree.
      *
      * @param crimeDataLocation The location of the crime data file.
+     * @param parallelBuild     Whether the tree is built in parallel using fork-join.
      *                          <p>
      *                          Preconditions: crimeDataLocation must be a valid file path.
-     *                          Postconditions: Crime records from the file are loaded into the 2D tree.
-     *                          Time complexity: O(n), where n is the number of crime records in the file, as it reads each record from the file.
+     *                          Postconditions: Crime records from the file are loaded into a balanced 2D tree.
+     *                          Time complexity: O(n log n), where n is the number of crime records in the file, as it reads each record and then builds the tree by median splits.
+     */
+    private void loadCrimeData(String crimeDataLocation, boolean parallelBuild) throws IOException {
+        CrimeStore crimeStore = readCrimeStore(crimeDataLocation);
+        load(crimeStore, parallelBuild);
+        logger.info("Crime file loaded into 2D tree with " + crimeStore.size() + " records.");
+    }
+
+    /**
+     * Reads all crime records from the given file location, skipping the header row, empty lines and malformed lines.
+     * The file is memory-mapped and parsed in parallel by CrimeCsvLoader.
+     *
+     * @param crimeDataLocation The location of the crime data file.
+     * @return A store holding the crime records of the file, in file order.
+     * @throws IOException If the file cannot be read.
+     *                     <p>
+     *                     Preconditions: crimeDataLocation must be a valid file path.
+     *                     Postconditions: Returns a store holding exactly the parsed records.
+     *                     Time complexity: O(n / p), where n is the number of crime records in the file and p the number of processors.
+     */
+    static CrimeStore readCrimeStore(String crimeDataLocation) throws IOException {
+        return CrimeCsvLoader.loadStore(Path.of(crimeDataLocation));
+    }
+
+    /**
+     * Replaces the contents of the 2D tree with a balanced tree built from the given crime records.
+     * Records at exactly the same coordinates are first gathered into one node, then each level splits the nodes at the median
+     * of the current dimension, alternating between x and y as insert does, so the height of the tree is ceil(log2(m + 1))
+     * for m distinct locations regardless of the order of the records.
+     *
+     * @param crimeRecords The crime records to load. The array is not modified.
+     * @param count        The number of records at the start of the array to load.
+     * @param parallel     Whether the left and right halves are built in parallel using fork-join.
+     *                     <p>
+     *                     Preconditions: crimeRecords must be non-null and hold at least count non-null records.
+     *                     Postconditions: The tree holds exactly the given records, every left subtree holds values less than or equal to its parent
+     *                     in the split dimension and every right subtree holds values greater than or equal to it.
+     *                     Time complexity: O(n log n), where n is count, as each level partitions its records around a median in linear expected time.
      */
-    private void loadCrimeData(String crimeDataLocation) throws IOException {
-        logger.info("Starting to load crime data from: " + crimeDataLocation);
+    public void bulkLoad(CrimeRecord[] crimeRecords, int count, boolean parallel) {
+        CrimeStore crimeStore = new CrimeStore(count);
+        for (int i = 0; i < count; i++) {
+            crimeStore.add(crimeRecords[i]);
+        }
+        bulkLoad(crimeStore, parallel);
+    }
 
-        BufferedReader br = new BufferedReader(new FileReader(crimeDataLocation));
-        String line;
-        int recordCount = 0;  // To keep track of how many records are loaded
+    /**
+     * Replaces the contents of the 2D tree with a balanced tree built from all records of a store, as bulkLoad of an array does.
+     * The tree takes over the store: records inserted later are appended to it.
+     *
+     * @param crimeStore The crime records to load.
+     * @param parallel   Whether the left and right halves are built in parallel using fork-join.
+     *                   <p>
+     *                   Preconditions: crimeStore must be non-null and must not be modified by the caller afterwards.
+     *                   Postconditions: The tree holds exactly the records of the store.
+     *                   Time complexity: O(n log n), where n is the number of records in the store.
+     */
+    public void bulkLoad(CrimeStore crimeStore, boolean parallel) {
+        load(crimeStore, parallel);
+    }
 
-        // Read each line from the file
-        while ((line = br.readLine()) != null) {
+    /**
+     * Replaces the contents of the 2D tree with a balanced tree built from all records of a store, for bulkLoad and the constructors,
+     * which must not call a method a subclass could override.
+     *
+     * @param crimeStore The crime records to load.
+     * @param parallel   Whether the left and right halves are built in parallel using fork-join.
+     *                   <p>
+     *                   Preconditions: crimeStore must be non-null and must not be modified by the caller afterwards.
+     *                   Postconditions: The tree holds exactly the records of the store.
+     *                   Time complexity: O(n log n), where n is the number of records in the store.
+     */
+    private void load(CrimeStore crimeStore, boolean parallel) {
+        checkWritable();
+        long start = System.nanoTime();
+        int count = crimeStore.size();
+        TreeNode[] nodes = groupByCoordinates(crimeStore);
+        root = build(crimeStore, nodes, parallel);
+        store = crimeStore;
+        size = count;
+        temporalIndex = null;
+        version++;
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        // A tree built by median splits over m nodes has height ceil(log2(m + 1)), so it is not walked to find it
+        logger.info("Built balanced 2D tree with " + count + " records in " + nodes.length + " nodes in " + elapsedMillis + " ms (height " + (32 - Integer.numberOfLeadingZeros(nodes.length)) + ", parallel " + parallel + ")");
+    }
 
-            //Skip first line
-            if (recordCount == 0) {
-                recordCount++;
-                continue;
+    /**
+     * Creates one node for every distinct location of the records of a store, holding all records at that location.
+     * Records are gathered with an open-addressing hash table keyed on their exact coordinates, so each record is hashed once.
+     *
+     * @param store The store holding the crime records.
+     * @return The new nodes, without children, in the order of the first record at each location.
+     * <p>
+     * Preconditions: store must be non-null.
+     * Postconditions: Every record of the store is in exactly one node, the records of a node are in store order, and no two nodes share coordinates.
+     * Time complexity: O(n) expected, where n is the number of records in the store.
+     */
+    private static TreeNode[] groupByCoordinates(CrimeStore store) {
+        int n = store.size();
+        int mask = Queue.capacityFor(Math.max(2 * n, 2)) - 1;
+        int[] slots = new int[mask + 1]; // For each slot of the table, 1 plus the index of the location it holds, or 0 if it is empty
+        int[] locations = new int[n]; // The index of the location of each record
+        int[] recordCounts = new int[n]; // The number of records at each location, then the number placed in its node
+        TreeNode[] nodes = new TreeNode[n];
+        int locationCount = 0;
+        for (int record = 0; record < n; record++) {
+            double x = store.x(record);
+            double y = store.y(record);
+            int slot = coordinateHash(x, y) & mask;
+            while (true) {
+                int location = slots[slot] - 1;
+                if (location < 0) {
+                    // First record at this location
+                    location = locationCount++;
+                    slots[slot] = location + 1;
+                    nodes[location] = new TreeNode(new double[]{x, y}, record);
+                } else if (nodes[location].coordinates[0] != x || nodes[location].coordinates[1] != y) {
+                    slot = (slot + 1) & mask;
+                    continue;
+                }
+                locations[record] = location;
+                recordCounts[location]++;
+                break;
             }
-
-            // Split the line by comma
-            if (!line.trim().isEmpty()) {  // Skip empty lines
-                String[] fields = line.split(",");
-                if (fields.length >= 9) {  // Ensure that we have all necessary fields
-                    try {
-                        // Create a new CrimeRecord object from the fields
-                        CrimeRecord crimeRecord = new CrimeRecord(Double.parseDouble(fields[0]), Double.parseDouble(fields[1]), Integer.parseInt(fields[2]), fields[3], fields[4], fields[5], fields[6], fields[7], fields[8]);
-                        double[] coordinates = new double[]{crimeRecord.x(), crimeRecord.y()};
-                        insert(coordinates, crimeRecord);
-                        recordCount++;  // Increment count for each successfully loaded record
-                    } catch (NumberFormatException e) {
-                        logger.warn("Failed to parse crime record: " + line, e);
-                    }
-                } else {
-                    // Log a warning for malformed lines
-                    logger.warn("Skipping malformed line: " + line);
+        }
+        for (int record = 0; record < n; record++) {
+            int location = locations[record];
+            TreeNode node = nodes[location];
+            if (node.record == record) {
+                if (recordCounts[location] > 1) {
+                    node.duplicates = new int[recordCounts[location] - 1];
+                    node.duplicateCount = node.duplicates.length;
                 }
+                recordCounts[location] = 0;
+            } else {
+                node.duplicates[recordCounts[location]++] = record;
             }
         }
-        recordCount--;  // Decrement count to exclude header
-        br.close();
-        logger.info("Crime file loaded into 2D tree with " + recordCount + " records.");
+        return Arrays.copyOf(nodes, locationCount);
     }
 
     /**
-     * Inserts a new crime record into the 2D tree.
+     * Returns a hash of a pair of coordinates, equal for coordinates that compare equal, with well mixed low bits.
      *
-     * @param coordinates The x and y coordinates of the crime record.
-     * @param crimeRecord The crime record to be inserted.
-     *                    <p>
-     *                    Preconditions: coordinates and crimeRecord must be non-null.
-     *                    Postconditions: A new TreeNode is created with the given coordinates and crime record and inserted into the 2D tree.
-     *                    Time complexity: O(log n), where n is the number of nodes in the tree, as it traverses the tree to find the correct position.
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The hash.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
      */
-    void insert(double[] coordinates, CrimeRecord crimeRecord) {
-        root = insertRec(root, coordinates, crimeRecord, 0);
+    private static int coordinateHash(double x, double y) {
+        // Adding 0.0 turns -0.0 into 0.0, which compares equal to it
+        long hash = Double.doubleToLongBits(x + 0.0) * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(y + 0.0);
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash >>> 32);
     }
 
     /**
-     * Recursive helper method to insert a new crime record into the 2D tree.
+     * Builds a balanced tree from nodes.
      *
-     * @param root        The root of the current subtree.
-     * @param coordinates The x and y coordinates of the crime record.
-     * @param crimeRecord The crime record to be inserted.
-     * @param depth       The depth of the current node in the tree.
-     * @return The root of the updated subtree.
+     * @param store    The store holding the crime records.
+     * @param nodes    The nodes, without children, reordered in place.
+     * @param parallel Whether the left and right halves are built in parallel using fork-join.
+     * @return The root of the built tree, or null if there are no nodes.
      * <p>
-     * Preconditions: coordinates and crimeRecord must be non-null.
-     * Postconditions: A new TreeNode is created with the given coordinates and crime record and inserted into the subtree rooted at root.
-     * Time complexity: O(log n), where n is the number of nodes in the subtree, as it traverses the subtree to find the correct position.
+     * Preconditions: The nodes must be live, hold records of store and have no children.
+     * Postconditions: The returned tree consists of exactly the given nodes.
+     * Time complexity: O(m log m + n), where m is the number of nodes and n the number of records they hold.
      */
-    private TreeNode insertRec(TreeNode root, double[] coordinates, CrimeRecord crimeRecord, int depth) {
-        // If the tree is empty, create a new node
-        if (root == null) {
-            return new TreeNode(coordinates, crimeRecord);
+    private static TreeNode build(CrimeStore store, TreeNode[] nodes, boolean parallel) {
+        if (parallel && nodes.length >= PARALLEL_BUILD_THRESHOLD) {
+            return ForkJoinPool.commonPool().invoke(new BuildTask(store, nodes, 0, nodes.length, 0));
         }
-        // Calculate the current dimension based on the depth
-        int currentDimension = depth % 2;
-        // Compare the current dimension of the node with the given coordinates
-        if (coordinates[currentDimension] < root.coordinates[currentDimension]) {
-            root.left = insertRec(root.left, coordinates, crimeRecord, depth + 1);
-        } else {
-            // If the coordinates are greater or equal, insert into the right subtree
-            root.right = insertRec(root.right, coordinates, crimeRecord, depth + 1);
+        return buildBalanced(store, nodes, 0, nodes.length, 0);
+    }
+
+    /**
+     * Throws if the tree is a published version of a ConcurrentTwoDTree, whose store is read-only.
+     *
+     * @throws UnsupportedOperationException If the tree must not be modified.
+     *                                       <p>
+     *                                       Preconditions: None.
+     *                                       Postconditions: None.
+     *                                       Time complexity: O(1).
+     */
+    private void checkWritable() {
+        if (store.isReadOnly()) {
+            throw new UnsupportedOperationException("A published version of a concurrent 2D tree is read-only");
         }
-        return root;
     }
 
     /**
-     * Performs an inorder traversal of the 2D tree.
+     * Recursive helper method to build a balanced subtree from a range of nodes.
+     *
+     * @param store The store holding the crime records.
+     * @param nodes The nodes, without children, reordered in place.
+     * @param from  The index of the first node of the range (inclusive).
+     * @param to    The index after the last node of the range (exclusive).
+     * @param depth The depth of the subtree root in the tree.
+     * @return The root of the built subtree, or null if the range is empty.
      * <p>
-     * Preconditions: None.
-     * Postconditions: The crime records in the tree are printed in inorder traversal.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * Preconditions: 0 <= from <= to <= nodes.length.
+     * Postconditions: The nodes of the range are reordered so that the median in the current dimension sits in the middle.
+     * Time complexity: O(m log m + n), where m is the size of the range and n the number of records its nodes hold.
      */
-    public void inorder() {
-        logger.info("Inorder traversal of the tree:");
-        inorderRec(root);
+    private static TreeNode buildBalanced(CrimeStore store, TreeNode[] nodes, int from, int to, int depth) {
+        if (from >= to) {
+            return null;
+        }
+        int median = (from + to) >>> 1;
+        selectMedian(nodes, from, to - 1, median, depth % 2);
+        TreeNode node = nodes[median];
+        node.left = buildBalanced(store, nodes, from, median, depth + 1);
+        node.right = buildBalanced(store, nodes, median + 1, to, depth + 1);
+        node.updateSummary(store);
+        return node;
     }
 
     /**
-     * Recursive helper method to perform an inorder traversal of the 2D tree.
+     * Partially sorts a range of nodes so that the node at index k is the one that would be there if the range were sorted
+     * in the given dimension, all nodes before it are less than or equal to it, and all nodes after it are greater than or equal to it.
      *
-     * @param root The root of the current subtree.
-     *             <p>
-     *             Preconditions: None.
-     *             Postconditions: The crime records in the subtree rooted at root are printed in inorder traversal.
-     *             Time complexity: O(n), where n is the number of nodes in the subtree, as it visits each node exactly once.
+     * @param nodes     The nodes, reordered in place.
+     * @param left      The index of the first node of the range (inclusive).
+     * @param right     The index of the last node of the range (inclusive).
+     * @param k         The index to select.
+     * @param dimension 0 to compare x coordinates, 1 to compare y coordinates.
+     *                  <p>
+     *                  Preconditions: left <= k <= right.
+     *                  Postconditions: The range is partitioned around index k.
+     *                  Time complexity: O(n) expected, where n is the size of the range (quickselect with a median-of-three pivot).
      */
-    private void inorderRec(TreeNode root) {
-        if (root != null) {
-            inorderRec(root.left);
-            logger.info("Crime: " + root.crimeRecord + " at (" + root.coordinates[0] + ", " + root.coordinates[1] + ")");
-            inorderRec(root.right);
+    private static void selectMedian(TreeNode[] nodes, int left, int right, int k, int dimension) {
+        while (right > left) {
+            // Median-of-three pivot keeps sorted input (the CSV is sorted by date) from degrading to quadratic time
+            int middle = (left + right) >>> 1;
+            if (nodes[middle].coordinates[dimension] < nodes[left].coordinates[dimension]) swap(nodes, left, middle);
+            if (nodes[right].coordinates[dimension] < nodes[left].coordinates[dimension]) swap(nodes, left, right);
+            if (nodes[right].coordinates[dimension] < nodes[middle].coordinates[dimension]) swap(nodes, middle, right);
+            double pivot = nodes[middle].coordinates[dimension];
+
+            // Hoare partition around the pivot value
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (nodes[i].coordinates[dimension] < pivot) i++;
+                while (nodes[j].coordinates[dimension] > pivot) j--;
+                if (i <= j) {
+                    swap(nodes, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // Continue in the part that holds k
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
         }
     }
 
     /**
-     * Performs a preorder traversal of the 2D tree.
+     * Swaps two nodes in an array.
+     *
+     * @param nodes The nodes.
+     * @param i     The index of the first node.
+     * @param j     The index of the second node.
+     *              <p>
+     *              Preconditions: i and j must be valid indices.
+     *              Postconditions: The nodes at i and j are exchanged.
+     *              Time complexity: O(1).
+     */
+    private static void swap(TreeNode[] nodes, int i, int j) {
+        TreeNode temp = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = temp;
+    }
+
+    /**
+     * Creates a 2D tree from a store whose records are in preorder and the shape of each node, as written by toPreorder.
+     *
+     * @param crimeStore The crime records of the nodes, in preorder, the records of a node one after the other. The tree takes over the store.
+     * @param shape      For the first record of each node, bit 0 set if the node has a left child and bit 1 set if it has a right child;
+     *                   for the other records of a node, only bit 2.
+     * @return A 2D tree with exactly the given structure.
      * <p>
-     * Preconditions: None.
-     * Postconditions: The crime records in the tree are printed in preorder traversal.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * Preconditions: shape must have one entry per record of the store and describe a valid tree in preorder.
+     * Postconditions: Returns a tree whose preorder traversal yields the records in store order, with subtree counts and bounding boxes computed.
+     * Time complexity: O(n), where n is the number of records.
      */
-    public void preorder() {
-        logger.info("Preorder traversal of the tree:");
-        preorderRec(root);
+    static TwoDTree fromPreorder(CrimeStore crimeStore, byte[] shape) {
+        TwoDTree tree = new TwoDTree();
+        tree.store = crimeStore;
+        int n = crimeStore.size();
+        TreeNode[] nodes = new TreeNode[n]; // The node starting at each record, null for the other records of a node
+        TreeNode[] parents = new TreeNode[Math.max(n, 1)]; // Nodes still waiting for a child
+        byte[] pending = new byte[Math.max(n, 1)]; // The children each waiting node is still missing
+        int top = 0;
+        for (int i = 0; i < n; i++) {
+            TreeNode node = new TreeNode(new double[]{crimeStore.x(i), crimeStore.y(i)}, i);
+            nodes[i] = node;
+            // The records marked with bit 2 that follow belong to the same node
+            int end = i + 1;
+            while (end < n && (shape[end] & 4) != 0) {
+                end++;
+            }
+            if (end > i + 1) {
+                node.duplicates = new int[end - i - 1];
+                node.duplicateCount = node.duplicates.length;
+                for (int j = 0; j < node.duplicateCount; j++) {
+                    node.duplicates[j] = i + 1 + j;
+                }
+            }
+            if (i == 0) {
+                tree.root = node;
+            } else {
+                // In preorder a node is the left child of the nearest waiting node if it still misses one, its right child otherwise
+                if ((pending[top - 1] & 1) != 0) {
+                    parents[top - 1].left = node;
+                    pending[top - 1] &= ~1;
+                } else {
+                    parents[top - 1].right = node;
+                    pending[top - 1] &= ~2;
+                }
+                if (pending[top - 1] == 0) {
+                    parents[--top] = null;
+                }
+            }
+            if ((shape[i] & 3) != 0) {
+                parents[top] = node;
+                pending[top] = (byte) (shape[i] & 3);
+                top++;
+            }
+            i = end - 1;
+        }
+        // Every descendant comes after its ancestors in preorder, so walking backwards computes children before parents
+        for (int i = n - 1; i >= 0; i--) {
+            if (nodes[i] != null) {
+                nodes[i].updateSummary(crimeStore);
+            }
+        }
+        tree.size = n;
+        return tree;
     }
 
     /**
-     * Recursive helper method to perform a preorder traversal of the 2D tree.
+     * Writes the record indexes of the tree in preorder together with the shape of each node, so that fromPreorder can rebuild the same tree.
      *
-     * @param root The root of the current subtree.
-     *             <p>
-     *             Preconditions: None.
-     *             Postconditions: The crime records in the subtree rooted at root are printed in preorder traversal.
-     *             Time complexity: O(n), where n is the number of nodes in the subtree, as it visits each node exactly once.
+     * @param records Receives the indexes in the store of the crime records of each node, in preorder, the records of a node one after the other.
+     * @param shape   Receives, for the first record of each node, bit 0 set if the node has a left child and bit 1 set if it has a right child,
+     *                and for the other records of a node, bit 2 to mark that they share the node of the record before them.
+     *                <p>
+     *                Preconditions: records and shape must hold at least size() elements, and the tree must hold no tombstones (see compacted).
+     *                Postconditions: The first size() elements of both arrays describe the tree.
+     *                Time complexity: O(n), where n is the number of records in the tree.
      */
-    private void preorderRec(TreeNode root) {
-        if (root != null) {
-            logger.info("Crime: " + root.crimeRecord.toString() + " at (" + root.coordinates[0] + ", " + root.coordinates[1] + ")");
-            preorderRec(root.left);
-            preorderRec(root.right);
+    void toPreorder(int[] records, byte[] shape) {
+        int i = 0;
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                records[i] = current.record;
+                shape[i] = (byte) ((current.left != null ? 1 : 0) | (current.right != null ? 2 : 0));
+                i++;
+                for (int j = 0; j < current.duplicateCount; j++) {
+                    records[i] = current.duplicates[j];
+                    shape[i] = 4;
+                    i++;
+                }
+                if (current.right != null) {
+                    stack.push(current.right, 0, 0);
+                }
+                if (current.left != null) {
+                    stack.push(current.left, 0, 0);
+                }
+            }
+        } finally {
+            releaseStack(stack);
         }
     }
 
     /**
-     * Performs a postorder traversal of the 2D tree.
+     * Returns the number of crime records in the 2D tree.
+     *
+     * @return The number of live records in the tree, not counting deleted ones.
      * <p>
      * Preconditions: None.
-     * Postconditions: The crime records in the tree are printed in postorder traversal.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * Postconditions: None.
+     * Time complexity: O(1), as the size is maintained on insert, delete and bulk load.
      */
-    public void postorder() {
-        logger.info("Postorder traversal of the tree:");
-        postorderRec(root);
+    public int size() {
+        return size;
     }
 
     /**
-     * Recursive helper method to perform a postorder traversal of the 2D tree.
+     * Returns the version of the tree, which changes whenever records are inserted, deleted or bulk loaded, or the tree is compacted.
+     * Query results computed at one version stay valid as long as the version is unchanged.
      *
-     * @param root The root of the current subtree.
-     *             <p>
-     *             Preconditions: None.
-     *             Postconditions: The crime records in the subtree rooted at root are printed in postorder traversal.
-     *             Time complexity: O(n), where n is the number of nodes in the subtree, as it visits each node exactly once.
+     * @return The number of changes made to the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
      */
-    private void postorderRec(TreeNode root) {
-        if (root != null) {
-            postorderRec(root.left);
-            postorderRec(root.right);
-            logger.info("Crime: " + root.crimeRecord.toString() + " at (" + root.coordinates[0] + ", " + root.coordinates[1] + ")");
-        }
+    public long version() {
+        return version;
     }
 
     /**
-     * Performs a level order traversal of the 2D tree.
+     * Returns the number of nodes whose records have all been deleted and that are still in the tree as tombstones.
+     *
+     * @return The number of tombstones.
      * <p>
      * Preconditions: None.
-     * Postconditions: The crime records in the tree are printed in level order traversal.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * Postconditions: None.
+     * Time complexity: O(1).
      */
+    public int deletedCount() {
+        return root == null ? 0 : root.deadCount;
+    }
+
     /**
-     * Time complexity analysis:
-     * The levelOrderPrint method performs a level order traversal of the 2D tree.
-     * It uses a queue to store the nodes and processes each node in the queue.
-     * The method enqueues the root node and then dequeues each node, printing its crime record and enqueuing its children if they exist.
-     * This process continues until the queue is empty, ensuring that each node is visited exactly once.
-     * Therefore, the time complexity of the levelOrderPrint method is O(n), where n is the number of nodes in the tree.
-     * This is because the method visits each node exactly once during the traversal.
-     * The space complexity of the levelOrderPrint method is also O(n) in the worst case.
+     * Returns the number of nodes in the tree, tombstones included.
+     * Records at the same coordinates share a node, so on data with repeated addresses this is well below size().
+     *
+     * @return The number of nodes.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
      */
-    public void levelOrderPrint() {
-        logger.info("Level order traversal of the tree:");
-
-        // If the tree is empty, return
-        if (root == null) {
-            return;
-        }
+    public int nodeCount() {
+        return root == null ? 0 : root.count;
+    }
 
-        // Create a queue to store the nodes
-        Queue<TreeNode> queue = new Queue<TreeNode>();
-        queue.enqueue(root);
+    /**
+     * Returns the store holding the crime records of the tree.
+     *
+     * @return The crime store of the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public CrimeStore getStore() {
+        return store;
+    }
 
-        // Process each node in the queue
-        while (!queue.isEmpty()) {
-            // Dequeue the current node
-            TreeNode current = queue.dequeue();
-            logger.info("Crime: " + current.crimeRecord.toString() + " at (" + current.coordinates[0] + ", " + current.coordinates[1] + ")");
+    /**
+     * Estimates the heap footprint of the tree structure, not counting the crime records themselves (see CrimeStore.estimatedFootprintBytes).
+     * Each node, tombstones included, is a TreeNode object (12 byte header, four compressed references, the record index, the duplicate,
+     * subtree, tombstone and live record counts, the deleted flag, the offense mask and four bounding box doubles, 96 bytes after padding)
+     * plus its coordinates array (16 byte header and two doubles, 32 bytes), assuming a 64-bit JVM with compressed oops. Every further record
+     * at the coordinates of a node takes 4 bytes of the duplicates array of the node, or up to 8 once in-place inserts have doubled it;
+     * counting 24 bytes per such record also covers the header and padding of the array, so that part is an upper bound.
+     *
+     * @return The estimated number of bytes used by the nodes of the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    public long estimatedFootprintBytes() {
+        long duplicates = size - (nodeCount() - deletedCount());
+        return (long) nodeCount() * 128 + duplicates * 24;
+    }
 
-            // Enqueue the left child if it exists
-            if (current.left != null) {
-                queue.enqueue(current.left);
+    /**
+     * Returns the height of the 2D tree, which is the number of nodes on the longest path from the root to a leaf.
+     *
+     * @return The height of the tree, or 0 if the tree is empty.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once on an explicit stack.
+     */
+    public int height() {
+        int height = 0;
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 1, 0);
             }
-
-            // Enqueue the right child if it exists
-            if (current.right != null) {
-                queue.enqueue(current.right);
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                height = Math.max(height, depth);
+                if (current.left != null) {
+                    stack.push(current.left, depth + 1, 0);
+                }
+                if (current.right != null) {
+                    stack.push(current.right, depth + 1, 0);
+                }
             }
+        } finally {
+            releaseStack(stack);
         }
+        return height;
     }
 
     /**
-     * Performs a reverse level order traversal of the 2D tree.
+     * Returns how far the tree is from perfectly balanced: its height divided by the smallest possible height of a tree of the same size.
+     * Bulk loaded trees have a ratio of 1; inserts keep it below about 1.94 (see insert).
+     *
+     * @return height() / ceil(log2(n + 1)), where n is the number of nodes including tombstones, or 1 if the tree is empty.
      * <p>
      * Preconditions: None.
-     * Postconditions: The crime records in the tree are printed in reverse level order traversal.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it computes the height.
      */
-    public void reverseLevelOrderPrint() {
-        logger.info("Reverse level order traversal of the tree:");
-
-        // If the tree is empty, return
+    public double balanceRatio() {
         if (root == null) {
-            return;
-        }
-
-        Stack<TreeNode> stack = new Stack<TreeNode>();
-        Queue<TreeNode> queue = new Queue<TreeNode>();
-        queue.enqueue(root);
-
-        // Process each node in the queue
-        while (!queue.isEmpty()) {
-            TreeNode current = queue.dequeue();
-            stack.push(current);
-
-            // Enqueue the right child if it exists
-            if (current.right != null) {
-                queue.enqueue(current.right);
-            }
-
-            // Enqueue the left child if it exists
-            if (current.left != null) {
-                queue.enqueue(current.left);
-            }
-        }
-
-        // Pop and print the nodes from the stack
-        while (!stack.isEmpty()) {
-            TreeNode current = stack.pop();
-            logger.info("Crime: " + current.crimeRecord.toString() + " at (" + current.coordinates[0] + ", " + current.coordinates[1] + ")");
+            return 1.0;
         }
+        int minimalHeight = 32 - Integer.numberOfLeadingZeros(root.count);
+        return (double) height() / minimalHeight;
     }
 
     /**
-     * Finds all crime records within the given range of coordinates.
+     * Inserts a new crime record into the 2D tree.
+     * If a live node already sits at the coordinates of the record, the record joins that node and the shape of the tree is unchanged.
+     * Otherwise a new node is added, and the tree stays balanced in the manner of a scapegoat tree: when the new node lands deeper than
+     * log base 1/BALANCE_ALPHA of the size, the lowest ancestor whose subtree is too deep for its own size is rebuilt as a balanced subtree,
+     * so clustered or sorted inserts cannot make the tree degenerate.
      *
-     * @param lowerLeft  The lower left corner of the range.
-     * @param upperRight The upper right corner of the range.
-     * @return A list of crime records within the given range.
-     * <p>
-     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
-     * Postconditions: Returns a list of crime records within the given range.
-     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     * @param coordinates The x and y coordinates of the crime record.
+     * @param crimeRecord The crime record to be inserted.
+     *                    <p>
+     *                    Preconditions: coordinates and crimeRecord must be non-null, and coordinates must be the x and y of the record.
+     *                    Postconditions: The crime record is appended to the store and referred to by the node at its coordinates,
+     *                    the counts and bounding box of every node on its path are updated, and the height is at most log base 1/BALANCE_ALPHA of the size plus one.
+     *                    Time complexity: O(log n) amortized, where n is the number of nodes in the tree, as it walks down from the root without recursion
+     *                    and the cost of the occasional rebuild is spread over the inserts that unbalanced the subtree, plus O(d) to copy the records
+     *                    of a node that already holds d records.
      */
-    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight) {
-        ListOfCrimes crimesInRange = new ListOfCrimes();
-        findPointsInRangeRec(root, lowerLeft, upperRight, 0, crimesInRange);
-        return crimesInRange;
+    void insert(double[] coordinates, CrimeRecord crimeRecord) {
+        int record = store.add(crimeRecord);
+        size++;
+        root = insertRecord(root, coordinates, record, false, store);
+        temporalIndex = TemporalIndex.patched(temporalIndex, record, false);
+        version++;
     }
 
     /**
-     * Recursive helper method to find all crime records within the given range of coordinates.
+     * Deletes a crime record from the 2D tree.
+     * The record is taken out of its node; if it was the last record of the node, the node becomes a tombstone that every query skips
+     * from then on. If that brings the share of tombstones in a subtree on its path above COMPACTION_THRESHOLD, the highest such subtree
+     * is rebuilt from its live nodes, so tombstones never make up more than that share of the tree.
      *
-     * @param root          The root of the current subtree.
-     * @param lowerLeft     The lower left corner of the range.
-     * @param upperRight    The upper right corner of the range.
-     * @param depth         The depth of the current node in the tree.
-     * @param crimesInRange The list of crime records within the range.
-     *                      <p>
-     *                      Preconditions: lowerLeft and upperRight must be valid coordinate arrays, crimesInRange must be non-null.
-     *                      Postconditions: Adds the crime records within the range to the list crimesInRange.
-     *                      Time complexity: O(n), where n is the number of nodes in the subtree, as it visits each node exactly once.
+     * @param crimeRecord The crime record to delete, equal to a record in the tree.
+     * @return True if a matching record was found and deleted, false if the tree holds no equal live record.
+     * <p>
+     * Preconditions: crimeRecord must be non-null.
+     * Postconditions: One record equal to crimeRecord is no longer returned by any query; the store still holds it.
+     * Time complexity: O(log n) amortized for a balanced tree, where n is the number of nodes, plus the records sharing its coordinates.
      */
-    private void findPointsInRangeRec(TreeNode root, double[] lowerLeft, double[] upperRight, int depth, ListOfCrimes crimesInRange) {
-        if (root == null) {
-            return;
-        }
-
-        int currentDimension = depth % 2;
-
-        // If the current node is within the range, add it to the list
-        if (root.coordinates[0] >= lowerLeft[0] && root.coordinates[0] <= upperRight[0] && root.coordinates[1] >= lowerLeft[1] && root.coordinates[1] <= upperRight[1]) {
-            crimesInRange.addCrime(root.crimeRecord);
+    public boolean delete(CrimeRecord crimeRecord) {
+        checkWritable();
+        RecordPath found = pathTo(root, crimeRecord.x(), crimeRecord.y(), record -> store.get(record).equals(crimeRecord));
+        if (found == null) {
+            return false;
         }
+        root = deleteRecord(found, false, true, store);
+        size--;
+        temporalIndex = TemporalIndex.patched(temporalIndex, found.record(), true);
+        version++;
+        return true;
+    }
 
-        // Check if the current dimension is within the range
-        if (root.coordinates[currentDimension] >= lowerLeft[currentDimension]) {
-            findPointsInRangeRec(root.left, lowerLeft, upperRight, depth + 1, crimesInRange);
+    /**
+     * Replaces a crime record with a corrected one, for example after an incident has been reclassified.
+     * The old record is deleted and the new one inserted at its own coordinates.
+     *
+     * @param oldRecord The crime record to replace, equal to a record in the tree.
+     * @param newRecord The corrected crime record.
+     * @return True if the old record was found and replaced, false if the tree holds no equal live record, in which case nothing is inserted.
+     * <p>
+     * Preconditions: oldRecord and newRecord must be non-null.
+     * Postconditions: Queries return newRecord instead of oldRecord.
+     * Time complexity: O(log n) amortized for a balanced tree, where n is the number of nodes.
+     */
+    public boolean update(CrimeRecord oldRecord, CrimeRecord newRecord) {
+        if (!delete(oldRecord)) {
+            return false;
         }
+        insert(new double[]{newRecord.x(), newRecord.y()}, newRecord);
+        return true;
+    }
 
-        // Check if the current dimension is within the range
-        if (root.coordinates[currentDimension] <= upperRight[currentDimension]) {
-            findPointsInRangeRec(root.right, lowerLeft, upperRight, depth + 1, crimesInRange);
-        }
+    /**
+     * Rebuilds the whole tree from its live records, removing every tombstone.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: deletedCount() is 0 and the tree is balanced; queries return the same records as before.
+     * Time complexity: O(n log n), where n is the number of live records.
+     */
+    public void compact() {
+        checkWritable();
+        // The live records are unchanged, so the date-window index stays valid
+        root = compacted(true).root;
+        version++;
     }
 
     /**
-     * Finds the nearest neighbor to the given point in the 2D tree.
+     * Returns a balanced tree of the live records of this tree, sharing its store, leaving this tree unchanged.
      *
-     * @param coordinates The x and y coordinates of the query point.
-     * @return The nearest neighbor to the query point.
+     * @param parallel Whether the halves are built in parallel using fork-join.
+     * @return A tree without tombstones holding the same live records.
      * <p>
-     * Preconditions: coordinates must be a valid coordinate array.
-     * Postconditions: Returns the nearest neighbor to the query point.
-     * Time complexity: O(log n), where n is the number of nodes in the tree, as it traverses the tree to find the nearest neighbor.
+     * Preconditions: This tree must not be modified during the call.
+     * Postconditions: None.
+     * Time complexity: O(n log n), where n is the number of live records.
      */
-    public Neighbor nearestNeighbor(double[] coordinates) {
-        logger.info("Finding nearest neighbor to point (" + coordinates[0] + ", " + coordinates[1] + ")");
-        Neighbor nearest = new Neighbor(null, Double.MAX_VALUE);
-        nearestNeighborRec(root, coordinates, 0, nearest);
-        return nearest;
+    TwoDTree compacted(boolean parallel) {
+        TwoDTree compacted = new TwoDTree(build(store, liveNodes(root), parallel), size, store);
+        compacted.temporalIndex = temporalIndex;
+        return compacted;
     }
 
     /**
-     * Recursive helper method to find the nearest neighbor to the given point in the 2D tree.
+     * Returns new copies of the live nodes of a subtree, without children, sharing the coordinates and records of the originals.
+     *
+     * @param subtreeRoot The root of the subtree, possibly null.
+     * @return An array of the copies, in preorder.
+     * <p>
+     * Preconditions: The counts of the subtree must be up to date.
+     * Postconditions: The subtree is unchanged, so it may still be shared with other versions of the tree.
+     * Time complexity: O(m), where m is the number of nodes in the subtree.
+     */
+    private static TreeNode[] liveNodes(TreeNode subtreeRoot) {
+        if (subtreeRoot == null) {
+            return new TreeNode[0];
+        }
+        TreeNode[] nodes = new TreeNode[subtreeRoot.count - subtreeRoot.deadCount];
+        int count = 0;
+        TraversalStack stack = acquireStack();
+        try {
+            stack.push(subtreeRoot, 0, 0);
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                if (current.deadCount == current.count) {
+                    continue;
+                }
+                if (!current.deleted) {
+                    TreeNode copy = new TreeNode(current.coordinates, current.record);
+                    copy.duplicates = current.duplicates;
+                    copy.duplicateCount = current.duplicateCount;
+                    nodes[count++] = copy;
+                }
+                if (current.right != null) {
+                    stack.push(current.right, 0, 0);
+                }
+                if (current.left != null) {
+                    stack.push(current.left, 0, 0);
+                }
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the store indexes of the live records of the tree, in preorder, the records of a node one after the other.
+     *
+     * @return An array of size() record indexes.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: None.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    private int[] liveRecords() {
+        int[] records = new int[size];
+        int count = 0;
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                if (current.deadCount == current.count) {
+                    continue;
+                }
+                for (int i = 0, n = current.recordCount(); i < n; i++) {
+                    records[count++] = current.recordAt(i);
+                }
+                if (current.right != null) {
+                    stack.push(current.right, 0, 0);
+                }
+                if (current.left != null) {
+                    stack.push(current.left, 0, 0);
+                }
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        return records;
+    }
+
+    /**
+     * Returns the store index of a live record equal to the given one.
+     *
+     * @param crimeRecord The crime record to look for.
+     * @return The index in the store of an equal live record, or -1 if there is none.
+     * <p>
+     * Preconditions: crimeRecord must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(log n) for a balanced tree, where n is the number of nodes, plus the records sharing its coordinates.
+     */
+    int find(CrimeRecord crimeRecord) {
+        RecordPath found = pathTo(root, crimeRecord.x(), crimeRecord.y(), record -> store.get(record).equals(crimeRecord));
+        return found == null ? -1 : found.record();
+    }
+
+    /**
+     * Returns a new version of the tree without a record, leaving this tree unchanged.
+     * The nodes on the path to the record are copied and the copy of its node loses the record, becoming a tombstone if it was the last one;
+     * all other subtrees are shared with this tree.
+     *
+     * @param record     The index of the record in the store.
+     * @param crimeStore The store of the new version.
+     * @param compact    Whether to rebuild a subtree whose share of tombstones passes COMPACTION_THRESHOLD, as delete does.
+     * @return The new version, or this tree if it holds no live node for the record.
+     * <p>
+     * Preconditions: crimeStore must hold every record of this tree at the same index.
+     * Postconditions: This tree is unchanged.
+     * Time complexity: O(log n) for a balanced tree, where n is the number of nodes, plus the cost of a rebuild if compact is set.
+     */
+    TwoDTree withDeleted(int record, CrimeStore crimeStore, boolean compact) {
+        RecordPath found = pathTo(root, crimeStore.x(record), crimeStore.y(record), candidate -> candidate == record);
+        if (found == null) {
+            return this;
+        }
+        TwoDTree next = new TwoDTree(deleteRecord(found, true, compact, crimeStore), size - 1, crimeStore);
+        next.temporalIndex = TemporalIndex.patched(temporalIndex, record, true);
+        return next;
+    }
+
+    /**
+     * Finds the path from the root to the live node at the given coordinates and a record of that node matching a predicate.
+     * Nodes with the same coordinate as a node in its split dimension can be in either of its subtrees, so both are searched;
+     * as no two live nodes share coordinates, the search ends at the first live node at the point.
+     *
+     * @param treeRoot The root of the tree, possibly null.
+     * @param x        The x coordinate of the node.
+     * @param y        The y coordinate of the node.
+     * @param matches  The test the record must pass.
+     * @return The nodes from the root down to the node and the first of its records that passes the test, or null if there is none.
+     * <p>
+     * Preconditions: matches must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(h + e + d), where h is the height of the tree, e the number of nodes sharing a split coordinate with the point
+     * and d the number of records at the point.
+     */
+    private static RecordPath pathTo(TreeNode treeRoot, double x, double y, IntPredicate matches) {
+        if (treeRoot == null) {
+            return null;
+        }
+        double[] point = {x, y};
+        TreeNode[] path = new TreeNode[64]; // path[d] is the node at depth d of the current search path
+        byte[] tried = new byte[64]; // For each node on the path, 0 if it has just been entered, 1 once its left side is done, 2 once both sides are done
+        path[0] = treeRoot;
+        int depth = 0;
+        while (depth >= 0) {
+            TreeNode node = path[depth];
+            int currentDimension = depth % 2;
+            TreeNode next = null;
+            if (tried[depth] == 0) {
+                tried[depth] = 1;
+                // Skip subtrees without live nodes or whose bounding box misses the point
+                if (node.deadCount == node.count || x < node.minX || x > node.maxX || y < node.minY || y > node.maxY) {
+                    depth--;
+                    continue;
+                }
+                if (!node.deleted && node.coordinates[0] == x && node.coordinates[1] == y) {
+                    for (int i = 0, n = node.recordCount(); i < n; i++) {
+                        if (matches.test(node.recordAt(i))) {
+                            TreeNode[] found = new TreeNode[depth + 1];
+                            System.arraycopy(path, 0, found, 0, depth + 1);
+                            return new RecordPath(found, node.recordAt(i));
+                        }
+                    }
+                    return null;
+                }
+                if (point[currentDimension] <= node.coordinates[currentDimension]) {
+                    next = node.left;
+                }
+            }
+            if (next == null && tried[depth] == 1) {
+                tried[depth] = 2;
+                if (point[currentDimension] >= node.coordinates[currentDimension]) {
+                    next = node.right;
+                }
+            }
+            if (next == null) {
+                if (tried[depth] == 2) {
+                    depth--;
+                }
+                continue;
+            }
+            depth++;
+            if (depth == path.length) {
+                TreeNode[] grownPath = new TreeNode[path.length * 2];
+                byte[] grownTried = new byte[tried.length * 2];
+                System.arraycopy(path, 0, grownPath, 0, depth);
+                System.arraycopy(tried, 0, grownTried, 0, depth);
+                path = grownPath;
+                tried = grownTried;
+            }
+            path[depth] = next;
+            tried[depth] = 0;
+        }
+        return null;
+    }
+
+    /**
+     * Takes a record out of the last node of a path, either in place or on copies of the path. If it was the last record of the node,
+     * the node becomes a tombstone and the highest subtree on the path whose share of tombstones passes COMPACTION_THRESHOLD is rebuilt.
+     *
+     * @param found    The nodes from the root down to the node of the record and the record itself, as returned by pathTo.
+     *                 The nodes are replaced by the copies if copyPath is set.
+     * @param copyPath Whether the nodes on the path are copied instead of modified, leaving the original tree unchanged.
+     * @param compact  Whether a subtree that passes the threshold is rebuilt.
+     * @param store    The store holding the crime records, for rebuilding.
+     * @return The root of the tree after the delete.
+     * <p>
+     * Preconditions: The last node of the path must be live and hold the record.
+     * Postconditions: The live record count of every node on the path excludes the record, and the tombstone count includes the node if it became one.
+     * Time complexity: O(h + d) for a path of length h to a node of d records, plus O(m log m) to rebuild a subtree of m nodes.
+     */
+    private static TreeNode deleteRecord(RecordPath found, boolean copyPath, boolean compact, CrimeStore store) {
+        TreeNode[] path = found.nodes();
+        if (copyPath) {
+            replaceWithCopies(path);
+        }
+        for (TreeNode node : path) {
+            node.liveCount--;
+        }
+        TreeNode last = path[path.length - 1];
+        if (last.duplicateCount > 0) {
+            // The node keeps its other records; the offense bit of the record may stay in the masks, which only makes them prune less
+            removeRecord(last, found.record());
+            return path[0];
+        }
+        for (TreeNode node : path) {
+            node.deadCount++;
+        }
+        last.deleted = true;
+        if (compact) {
+            for (int i = 0; i < path.length; i++) {
+                if (path[i].deadCount > COMPACTION_THRESHOLD * path[i].count) {
+                    return replaceSubtree(path, i, rebuild(path[i], i, store));
+                }
+            }
+        }
+        return path[0];
+    }
+
+    /**
+     * Replaces the nodes of a path from the root with copies, linking each copy to the copy of its parent, so the path can be modified
+     * without changing the tree it was found in.
+     *
+     * @param path The nodes from the root down, replaced by their copies.
+     *             <p>
+     *             Preconditions: Each node of the path must be a child of the one before it.
+     *             Postconditions: The path holds copies linked to one another, sharing every other subtree with the original.
+     *             Time complexity: O(h), where h is the length of the path.
+     */
+    private static void replaceWithCopies(TreeNode[] path) {
+        for (int i = 0; i < path.length; i++) {
+            TreeNode copy = new TreeNode(path[i]);
+            if (i > 0) {
+                if (path[i - 1].left == path[i]) {
+                    path[i - 1].left = copy;
+                } else {
+                    path[i - 1].right = copy;
+                }
+            }
+            path[i] = copy;
+        }
+    }
+
+    /**
+     * Takes one record out of a node that holds several, keeping the others in store order. The duplicates array is replaced
+     * rather than modified, as other versions of the tree may share it.
+     *
+     * @param node   The node.
+     * @param record The index in the store of the record to take out.
+     *               <p>
+     *               Preconditions: node must hold record and at least one other record.
+     *               Postconditions: node holds its other records; record is the first of them and duplicates is null if only one is left.
+     *               Time complexity: O(d), where d is the number of records of the node.
+     */
+    private static void removeRecord(TreeNode node, int record) {
+        int[] remaining = new int[node.duplicateCount - 1];
+        int first = -1;
+        int kept = 0;
+        for (int i = 0, n = node.recordCount(); i < n; i++) {
+            int candidate = node.recordAt(i);
+            if (candidate == record) {
+                continue;
+            }
+            if (first < 0) {
+                first = candidate;
+            } else {
+                remaining[kept++] = candidate;
+            }
+        }
+        node.record = first;
+        node.duplicates = remaining.length == 0 ? null : remaining;
+        node.duplicateCount = remaining.length;
+    }
+
+    /**
+     * Replaces the subtree rooted at a node of a path with a rebuilt one holding its live records, and takes the removed tombstones off the
+     * counts of the ancestors.
+     *
+     * @param path    The nodes from the root down to at least the replaced node.
+     * @param index   The position of the replaced node in the path.
+     * @param rebuilt The rebuilt subtree, or null if the subtree had no live records.
+     * @return The root of the tree after the replacement.
+     * <p>
+     * Preconditions: The nodes of the path before index may be modified.
+     * Postconditions: The counts of the ancestors describe their subtrees.
+     * Time complexity: O(h), where h is index.
+     */
+    private static TreeNode replaceSubtree(TreeNode[] path, int index, TreeNode rebuilt) {
+        TreeNode replaced = path[index];
+        int removed = replaced.count - (rebuilt == null ? 0 : rebuilt.count);
+        for (int i = 0; i < index; i++) {
+            path[i].count -= removed;
+            path[i].deadCount -= removed;
+        }
+        if (index == 0) {
+            return rebuilt;
+        }
+        TreeNode parent = path[index - 1];
+        if (parent.left == replaced) {
+            parent.left = rebuilt;
+        } else {
+            parent.right = rebuilt;
+        }
+        return path[0];
+    }
+
+    /**
+     * Returns a new version of the tree with one more record, leaving this tree unchanged.
+     * Only the nodes on the path from the root to the node of the record are copied, and a subtree rebuilt to keep the tree balanced
+     * consists of new nodes; all other subtrees are shared with this tree, so both trees can be read concurrently as long as neither is modified.
+     *
+     * @param coordinates The x and y coordinates of the crime record.
+     * @param record      The index of the crime record in crimeStore.
+     * @param crimeStore  The store of the new version, holding the records of this tree and the new one.
+     * @return The new version.
+     * <p>
+     * Preconditions: crimeStore must hold every record of this tree at the same index, and the new record.
+     * Postconditions: This tree is unchanged.
+     * Time complexity: O(log n) amortized, where n is the number of nodes in the tree, plus the records at the coordinates.
+     */
+    TwoDTree withInserted(double[] coordinates, int record, CrimeStore crimeStore) {
+        TwoDTree next = new TwoDTree(insertRecord(root, coordinates, record, true, crimeStore), size + 1, crimeStore);
+        next.temporalIndex = TemporalIndex.patched(temporalIndex, record, false);
+        return next;
+    }
+
+    /**
+     * Returns a tree sharing the nodes of this tree but reading its records from another store.
+     *
+     * @param crimeStore The store, holding every record of this tree at the same index.
+     * @return A tree over the same nodes.
+     * <p>
+     * Preconditions: Neither tree may be modified while the other is read.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    TwoDTree withStore(CrimeStore crimeStore) {
+        TwoDTree tree = new TwoDTree(root, size, crimeStore);
+        tree.temporalIndex = temporalIndex;
+        return tree;
+    }
+
+    /**
+     * Adds a record to a tree, either in place or by copying the nodes on its path: to the live node at its coordinates if there is one,
+     * as a new node otherwise.
+     *
+     * @param treeRoot    The root of the tree, possibly null.
+     * @param coordinates The x and y coordinates of the record.
+     * @param record      The index of the record in the store.
+     * @param copyPath    Whether the nodes on the path are copied instead of modified, leaving the original tree unchanged.
+     * @param store       The store holding the crime records of the tree and the new one.
+     * @return The root of the tree with the record added.
+     * <p>
+     * Preconditions: coordinates must be the x and y of the record.
+     * Postconditions: The live record count, bounding box and offense mask of every node on the path include the record.
+     * Time complexity: O(log n) amortized, where n is the number of nodes in the tree, plus O(d) if the path is copied and the node at the
+     * coordinates holds d records; in place the records of a node grow geometrically, so that part is O(1) amortized.
+     */
+    private static TreeNode insertRecord(TreeNode treeRoot, double[] coordinates, int record, boolean copyPath, CrimeStore store) {
+        RecordPath found = pathTo(treeRoot, coordinates[0], coordinates[1], candidate -> true);
+        if (found == null) {
+            TreeNode newNode = new TreeNode(coordinates, record);
+            newNode.updateSummary(store);
+            return insertNode(treeRoot, newNode, copyPath, (treeRoot == null ? 0 : treeRoot.count) + 1, store);
+        }
+        TreeNode[] path = found.nodes();
+        if (copyPath) {
+            replaceWithCopies(path);
+        }
+        TreeNode node = path[path.length - 1];
+        if (copyPath) {
+            // A longer copy rather than a modified array, as other versions of the tree share the old one
+            int[] duplicates = node.duplicates == null ? new int[1] : Arrays.copyOf(node.duplicates, node.duplicateCount + 1);
+            duplicates[node.duplicateCount] = record;
+            node.duplicates = duplicates;
+        } else {
+            // Grow geometrically, so that d inserts at the same coordinates take O(d) rather than O(d^2)
+            if (node.duplicates == null) {
+                node.duplicates = new int[2];
+            } else if (node.duplicateCount == node.duplicates.length) {
+                node.duplicates = Arrays.copyOf(node.duplicates, 2 * node.duplicateCount);
+            }
+            node.duplicates[node.duplicateCount] = record;
+        }
+        node.duplicateCount++;
+        long offense = offenseBit(store.offenseId(record));
+        for (TreeNode ancestor : path) {
+            ancestor.liveCount++;
+            ancestor.offenseMask |= offense;
+        }
+        return path[0];
+    }
+
+    /**
+     * Inserts a node into a tree, either in place or by copying the nodes on its path, and rebuilds the scapegoat subtree if the node lands too deep.
+     *
+     * @param treeRoot The root of the tree, possibly null.
+     * @param newNode  The node to insert, with its summary already computed.
+     * @param copyPath Whether the nodes on the path are copied instead of modified, leaving the original tree unchanged.
+     * @param treeSize The number of nodes in the tree including the new one and any tombstones.
+     * @param store    The store holding the crime records of the tree, for rebuilding.
+     * @return The root of the tree with the node inserted: newNode if the tree was empty, a copy of treeRoot if copyPath is set,
+     * a rebuilt root if the whole tree was rebuilt, treeRoot otherwise.
+     * <p>
+     * Preconditions: treeSize must be the size of the tree after the insert.
+     * Postconditions: The counts, bounding box and offense mask of every node on the path include the new node.
+     * Time complexity: O(log n) amortized, where n is treeSize.
+     */
+    private static TreeNode insertNode(TreeNode treeRoot, TreeNode newNode, boolean copyPath, int treeSize, CrimeStore store) {
+        // If the tree is empty, the new node becomes the root
+        if (treeRoot == null) {
+            return newNode;
+        }
+        double[] coordinates = newNode.coordinates;
+        TreeNode top = copyPath ? new TreeNode(treeRoot) : treeRoot;
+        TreeNode[] path = new TreeNode[64]; // The ancestors of the new node, path[d] at depth d
+        TreeNode current = top;
+        int depth = 0;
+        while (true) {
+            if (depth == path.length) {
+                TreeNode[] grown = new TreeNode[path.length * 2];
+                System.arraycopy(path, 0, grown, 0, depth);
+                path = grown;
+            }
+            path[depth] = current;
+            // The new node ends up below the current node, so it counts towards its subtree
+            current.count++;
+            current.liveCount++;
+            current.include(coordinates[0], coordinates[1]);
+            current.offenseMask |= newNode.offenseMask;
+            // Calculate the current dimension based on the depth
+            int currentDimension = depth % 2;
+            TreeNode next;
+            // Compare the current dimension of the node with the given coordinates
+            if (coordinates[currentDimension] < current.coordinates[currentDimension]) {
+                if (current.left == null) {
+                    current.left = newNode;
+                    break;
+                }
+                if (copyPath) {
+                    current.left = new TreeNode(current.left);
+                }
+                next = current.left;
+            } else {
+                // If the coordinates are greater or equal, insert into the right subtree
+                if (current.right == null) {
+                    current.right = newNode;
+                    break;
+                }
+                if (copyPath) {
+                    current.right = new TreeNode(current.right);
+                }
+                next = current.right;
+            }
+            current = next;
+            depth++;
+        }
+
+        // The new node is at depth + 1; if that is too deep for the tree, some ancestor is too deep for its own subtree size
+        int newDepth = depth + 1;
+        if (newDepth <= maxBalancedHeight(treeSize)) {
+            return top;
+        }
+        for (int i = depth; i >= 0; i--) {
+            TreeNode scapegoat = path[i];
+            if (newDepth - i > maxBalancedHeight(scapegoat.count)) {
+                return replaceSubtree(path, i, rebuild(scapegoat, i, store));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Returns the greatest depth a node may have in a balanced tree of the given size, log base 1/BALANCE_ALPHA of the size.
+     *
+     * @param count The number of nodes.
+     * @return The depth limit.
+     * <p>
+     * Preconditions: count must be positive.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static int maxBalancedHeight(int count) {
+        return (int) Math.floor(Math.log(count) / Math.log(1 / BALANCE_ALPHA));
+    }
+
+    /**
+     * Builds a balanced subtree of the live nodes of a subtree, made of new nodes; tombstones are dropped.
+     *
+     * @param subtreeRoot The root of the subtree.
+     * @param depth       The depth of the subtree root in the tree, which decides the dimension each level splits on.
+     * @param store       The store holding the crime records.
+     * @return The root of the rebuilt subtree, or null if the subtree has no live records.
+     * <p>
+     * Preconditions: The counts of the subtree must be up to date.
+     * Postconditions: The original subtree is unchanged, so it may still be shared with other versions of the tree.
+     * Time complexity: O(m log m), where m is the number of nodes in the subtree.
+     */
+    private static TreeNode rebuild(TreeNode subtreeRoot, int depth, CrimeStore store) {
+        TreeNode[] nodes = liveNodes(subtreeRoot);
+        return buildBalanced(store, nodes, 0, nodes.length, depth);
+    }
+
+    /**
+     * Performs an inorder traversal of the 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The crime records in the tree are printed in inorder traversal.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     */
+    public void inorder() {
+        logger.info("Inorder traversal of the tree:");
+        logTraversal(TraversalOrder.INORDER);
+    }
+
+    /**
+     * Logs the crime records of the tree in the given order, skipping the walk when info logging is off.
+     *
+     * @param order The order of the traversal.
+     *              <p>
+     *              Preconditions: order must be non-null.
+     *              Postconditions: Every live record and its coordinates are logged in order.
+     *              Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    private void logTraversal(TraversalOrder order) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        walk(order, record -> {
+            logger.info("Crime: " + store.get(record) + " at (" + store.x(record) + ", " + store.y(record) + ")");
+            return true;
+        });
+    }
+
+    /**
+     * Performs a preorder traversal of the 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The crime records in the tree are printed in preorder traversal.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     */
+    public void preorder() {
+        logger.info("Preorder traversal of the tree:");
+        logTraversal(TraversalOrder.PREORDER);
+    }
+
+    /**
+     * Performs a postorder traversal of the 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The crime records in the tree are printed in postorder traversal.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     */
+    public void postorder() {
+        logger.info("Postorder traversal of the tree:");
+        logTraversal(TraversalOrder.POSTORDER);
+    }
+
+    /**
+     * Performs a level order traversal of the 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The crime records in the tree are printed in level order traversal.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     */
+    /**
+     * Time complexity analysis:
+     * The levelOrderPrint method performs a level order traversal of the 2D tree.
+     * It uses a queue to store the nodes and processes each node in the queue.
+     * The method enqueues the root node and then dequeues each node, printing its crime record and enqueuing its children if they exist.
+     * This process continues until the queue is empty, ensuring that each node is visited exactly once.
+     * Therefore, the time complexity of the levelOrderPrint method is O(n), where n is the number of nodes in the tree.
+     * This is because the method visits each node exactly once during the traversal.
+     * The space complexity of the levelOrderPrint method is also O(n) in the worst case.
+     */
+    public void levelOrderPrint() {
+        logger.info("Level order traversal of the tree:");
+        logTraversal(TraversalOrder.LEVEL_ORDER);
+    }
+
+    /**
+     * Performs a reverse level order traversal of the 2D tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The crime records in the tree are printed in reverse level order traversal.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once.
+     */
+    public void reverseLevelOrderPrint() {
+        logger.info("Reverse level order traversal of the tree:");
+        logTraversal(TraversalOrder.REVERSE_LEVEL_ORDER);
+    }
+
+    /**
+     * Passes every crime record of the tree to a visitor in the given order, stopping early if the visitor returns false.
+     * Nothing is logged, so a full traversal costs only the walk and the visitor.
+     *
+     * @param order   The order of the traversal.
+     * @param visitor The visitor receiving the coordinates and crime record of each live record.
+     * @return True if every record was visited, false if the visitor stopped the traversal early.
+     * <p>
+     * Preconditions: order and visitor must be non-null.
+     * Postconditions: The visitor has received the live records in order until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    public boolean traverse(TraversalOrder order, CrimeVisitor visitor) {
+        return walk(order, record -> visitor.visit(store.x(record), store.y(record), store.get(record)));
+    }
+
+    /**
+     * Returns the crime records of the tree in the given order as a sequential stream.
+     * The order is fixed when the stream is created, at the cost of one int per record; crime records are created as the stream is consumed.
+     *
+     * @param order The order of the traversal.
+     * @return A stream of the live records in order.
+     * <p>
+     * Preconditions: order must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(n) to create, where n is the number of nodes in the tree; O(1) per record consumed.
+     */
+    public Stream<CrimeRecord> stream(TraversalOrder order) {
+        int[] records = new int[size];
+        int[] count = new int[1];
+        walk(order, record -> {
+            records[count[0]++] = record;
+            return true;
+        });
+        CrimeStore crimeStore = store;
+        return Arrays.stream(records, 0, count[0]).mapToObj(crimeStore::get);
+    }
+
+    /**
+     * Writes every crime record of the tree in the given order to a CSV writer, straight from the store's columns.
+     *
+     * @param order  The order of the traversal.
+     * @param writer The writer receiving the records. It is not closed.
+     * @return The number of records written.
+     * @throws IOException If the records cannot be written.
+     *                     <p>
+     *                     Preconditions: order and writer must be non-null, and writer must not be closed.
+     *                     Postconditions: The writer holds a line for every live record, in order.
+     *                     Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    public long dump(TraversalOrder order, CrimeCsvWriter writer) throws IOException {
+        long before = writer.getRecordCount();
+        try {
+            walk(order, record -> {
+                try {
+                    writer.write(store, record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return writer.getRecordCount() - before;
+    }
+
+    /**
+     * Writes every crime record of the tree in the given order to a CSV file, which CrimeCsvLoader can load again.
+     *
+     * @param order The order of the traversal.
+     * @param path  The file to write; it is replaced if it exists.
+     * @return The number of records written.
+     * @throws IOException If the file cannot be written.
+     *                     <p>
+     *                     Preconditions: order and path must be non-null.
+     *                     Postconditions: The file holds a header and a line for every live record, in order.
+     *                     Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    public long dump(TraversalOrder order, Path path) throws IOException {
+        long start = System.nanoTime();
+        long written;
+        try (CrimeCsvWriter writer = CrimeCsvWriter.toFile(path)) {
+            written = dump(order, writer);
+        }
+        logger.info("Dumped " + written + " crime records to " + path + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return written;
+    }
+
+    /**
+     * Walks the tree in the given order, passing every live record to a visitor, the records of a node one after the other.
+     *
+     * @param order   The order of the traversal.
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: order and visitor must be non-null.
+     * Postconditions: The visitor has received the live records in order until it returned false.
+     * Time complexity: O(n), where n is the number of records in the tree, as it visits each node exactly once.
+     */
+    private boolean walk(TraversalOrder order, IntPredicate visitor) {
+        switch (order) {
+            case INORDER:
+                return walkInorder(visitor);
+            case PREORDER:
+                return walkPreorder(visitor);
+            case POSTORDER:
+                return walkPostorder(visitor);
+            case LEVEL_ORDER:
+                return walkLevelOrder(visitor);
+            default:
+                return walkReverseLevelOrder(visitor);
+        }
+    }
+
+    /**
+     * Passes the live records of a node to a visitor, stopping early if the visitor returns false.
+     *
+     * @param node    The node.
+     * @param visitor The visitor receiving the index in the store of each record.
+     * @return True if every record of the node was visited, false if the visitor stopped early.
+     * <p>
+     * Preconditions: node and visitor must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(d), where d is the number of records of the node.
+     */
+    private static boolean visitRecords(TreeNode node, IntPredicate visitor) {
+        for (int i = 0, n = node.recordCount(); i < n; i++) {
+            if (!visitor.test(node.recordAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree in order: left subtree, node, right subtree.
+     *
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the live records in inorder until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    private boolean walkInorder(IntPredicate visitor) {
+        TraversalStack stack = acquireStack();
+        try {
+            TreeNode current = root;
+            while (current != null || !stack.isEmpty()) {
+                // Descend to the leftmost node of the current subtree
+                while (current != null) {
+                    stack.push(current, 0, 0);
+                    current = current.left;
+                }
+                current = stack.pop();
+                if (!visitRecords(current, visitor)) {
+                    return false;
+                }
+                current = current.right;
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree in preorder: node, left subtree, right subtree.
+     *
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the live records in preorder until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    private boolean walkPreorder(IntPredicate visitor) {
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                if (!visitRecords(current, visitor)) {
+                    return false;
+                }
+                // Push the right child first so that the left subtree is visited first
+                if (current.right != null) {
+                    stack.push(current.right, 0, 0);
+                }
+                if (current.left != null) {
+                    stack.push(current.left, 0, 0);
+                }
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree in postorder: left subtree, right subtree, node.
+     *
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the live records in postorder until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree.
+     */
+    private boolean walkPostorder(IntPredicate visitor) {
+        TraversalStack stack = acquireStack();
+        try {
+            TreeNode current = root;
+            TreeNode lastVisited = null;
+            while (current != null || !stack.isEmpty()) {
+                // Descend to the leftmost node of the current subtree
+                while (current != null) {
+                    stack.push(current, 0, 0);
+                    current = current.left;
+                }
+                TreeNode top = stack.peek();
+                if (top.right != null && top.right != lastVisited) {
+                    // Visit the right subtree before the node itself
+                    current = top.right;
+                } else {
+                    stack.pop();
+                    if (!visitRecords(top, visitor)) {
+                        return false;
+                    }
+                    lastVisited = top;
+                }
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree level by level from the root, each level left to right, using a queue of the nodes still to visit.
+     *
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the live records in level order until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree; the queue holds at most one level, O(n) in the worst case.
+     */
+    private boolean walkLevelOrder(IntPredicate visitor) {
+        // If the tree is empty, return
+        if (root == null) {
+            return true;
+        }
+
+        // Create a queue to store the nodes
+        Queue<TreeNode> queue = new Queue<TreeNode>();
+        queue.enqueue(root);
+
+        // Process each node in the queue
+        while (!queue.isEmpty()) {
+            // Dequeue the current node
+            TreeNode current = queue.dequeue();
+            if (!visitRecords(current, visitor)) {
+                return false;
+            }
+
+            // Enqueue the left child if it exists
+            if (current.left != null) {
+                queue.enqueue(current.left);
+            }
+
+            // Enqueue the right child if it exists
+            if (current.right != null) {
+                queue.enqueue(current.right);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree level by level from the deepest level up, each level left to right.
+     * The levels are collected right to left from the root onto a stack, which then hands them back in the reverse order.
+     *
+     * @param visitor The visitor receiving the index in the store of each live record.
+     * @return True if every record was visited, false if the visitor stopped the walk early.
+     * <p>
+     * Preconditions: visitor must be non-null.
+     * Postconditions: The visitor has received the live records in reverse level order until it returned false.
+     * Time complexity: O(n), where n is the number of nodes in the tree; the stack holds every node, O(n).
+     */
+    private boolean walkReverseLevelOrder(IntPredicate visitor) {
+        // If the tree is empty, return
+        if (root == null) {
+            return true;
+        }
+
+        // The stack ends up holding every node, so it is sized for all of them up front
+        Stack<TreeNode> stack = new Stack<TreeNode>(nodeCount());
+        Queue<TreeNode> queue = new Queue<TreeNode>();
+        queue.enqueue(root);
+
+        // Process each node in the queue
+        while (!queue.isEmpty()) {
+            TreeNode current = queue.dequeue();
+            stack.push(current);
+
+            // Enqueue the right child if it exists
+            if (current.right != null) {
+                queue.enqueue(current.right);
+            }
+
+            // Enqueue the left child if it exists
+            if (current.left != null) {
+                queue.enqueue(current.left);
+            }
+        }
+
+        // Pop the nodes from the stack, deepest level first
+        while (!stack.isEmpty()) {
+            TreeNode current = stack.pop();
+            if (!visitRecords(current, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds all crime records within the given range of coordinates.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return A list of crime records within the given range.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: Returns a list of crime records within the given range.
+     * Time complexity: O(n), where n is the number of nodes in the tree, as it visits each node exactly once in the worst case.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight) {
+        ListOfCrimes crimesInRange = new ListOfCrimes();
+        visitPointsInRange(lowerLeft, upperRight, (x, y, crimeRecord) -> {
+            crimesInRange.addCrime(crimeRecord);
+            return true;
+        });
+        return crimesInRange;
+    }
+
+    /**
+     * Passes every crime record within the given range of coordinates to a consumer, without collecting them.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param consumer   The consumer receiving each crime record in the range.
+     *                   <p>
+     *                   Preconditions: lowerLeft and upperRight must be valid coordinate arrays, consumer must be non-null.
+     *                   Postconditions: The consumer has received every crime record in the range, in the same order as findPointsInRange.
+     *                   Time complexity: O(sqrt(n) + m) for a balanced tree, where n is the number of nodes in the tree and m the number of matches.
+     */
+    public void findPointsInRange(double[] lowerLeft, double[] upperRight, Consumer<CrimeRecord> consumer) {
+        visitPointsInRange(lowerLeft, upperRight, (x, y, crimeRecord) -> {
+            consumer.accept(crimeRecord);
+            return true;
+        });
+    }
+
+    /**
+     * Passes every crime record within the given range of coordinates to a visitor, stopping early if the visitor returns false.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param visitor    The visitor receiving the coordinates and crime record of each match.
+     * @return True if every match was visited, false if the visitor stopped the query early.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, visitor must be non-null.
+     * Postconditions: The visitor has received the matches in preorder until it returned false.
+     * Time complexity: O(sqrt(n) + m) for a balanced tree, where n is the number of nodes in the tree and m the number of matches.
+     */
+    public boolean visitPointsInRange(double[] lowerLeft, double[] upperRight, CrimeVisitor visitor) {
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int results = 0; // Records passed to the visitor, for the query metrics
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                visited++;
+
+                // If the current node is live and within the range, pass its records to the visitor
+                if (!current.deleted && current.coordinates[0] >= lowerLeft[0] && current.coordinates[0] <= upperRight[0] && current.coordinates[1] >= lowerLeft[1] && current.coordinates[1] <= upperRight[1]) {
+                    for (int i = 0, n = current.recordCount(); i < n; i++) {
+                        results++;
+                        if (!visitor.visit(current.coordinates[0], current.coordinates[1], store.get(current.recordAt(i)))) {
+                            return false;
+                        }
+                    }
+                }
+
+                pruned += pushRangeChildren(stack, current, depth, lowerLeft, upperRight);
+            }
+        } finally {
+            releaseStack(stack);
+            QueryMetrics.record(QueryMetrics.Query.RANGE, start, visited, pruned, results);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a lazy iterator over the crime records within the given range of coordinates.
+     * The tree is walked one match at a time as next is called, so the caller can stop at any point without the remaining matches being visited.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return An iterator over the crime records in the range, in the same order as findPointsInRange.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays. The tree must not be modified while the iterator is in use.
+     * Postconditions: None.
+     * Time complexity: O(1) to create; iterating all matches costs the same as findPointsInRange.
+     */
+    public Iterator<CrimeRecord> rangeIterator(double[] lowerLeft, double[] upperRight) {
+        return new RangeIterator(root, store, lowerLeft.clone(), upperRight.clone());
+    }
+
+    /**
+     * Returns a lazy sequential stream of the crime records within the given range of coordinates.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return A stream of the crime records in the range, in the same order as findPointsInRange.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays. The tree must not be modified while the stream is in use.
+     * Postconditions: None.
+     * Time complexity: O(1) to create; consuming all matches costs the same as findPointsInRange.
+     */
+    public Stream<CrimeRecord> rangeStream(double[] lowerLeft, double[] upperRight) {
+        Spliterator<CrimeRecord> spliterator = Spliterators.spliteratorUnknownSize(rangeIterator(lowerLeft, upperRight), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Pushes the children of a node that can hold records within a range, the right child first so that the left subtree is visited first.
+     *
+     * @param stack      The traversal stack.
+     * @param node       The node whose children are pushed.
+     * @param depth      The depth of the node in the tree.
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return The number of children left out because their side of the split misses the range.
+     * <p>
+     * Preconditions: stack and node must be non-null.
+     * Postconditions: The children whose side of the split overlaps the range are on the stack.
+     * Time complexity: O(1) amortized.
+     */
+    private static int pushRangeChildren(TraversalStack stack, TreeNode node, int depth, double[] lowerLeft, double[] upperRight) {
+        int currentDimension = depth % 2;
+        int pruned = 0;
+        if (node.right != null) {
+            if (node.coordinates[currentDimension] <= upperRight[currentDimension]) {
+                stack.push(node.right, depth + 1, 0);
+            } else {
+                pruned++;
+            }
+        }
+        if (node.left != null) {
+            if (node.coordinates[currentDimension] >= lowerLeft[currentDimension]) {
+                stack.push(node.left, depth + 1, 0);
+            } else {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Counts the crime records within the given range of coordinates without collecting them.
+     * Every node knows the number of records in its subtree and their bounding box, so a subtree whose box lies
+     * entirely inside the range is counted in one step and a subtree whose box misses the range is skipped.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @return The number of crime records within the given range.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: Returns the same number as findPointsInRange(lowerLeft, upperRight).size().
+     * Time complexity: O(sqrt(n)) for a balanced tree, where n is the number of nodes in the tree, as only subtrees crossing the border of the range are opened.
+     */
+    public int countInRange(double[] lowerLeft, double[] upperRight) {
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int count = 0;
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+
+                // Skip subtrees entirely outside the range
+                if (current.maxX < lowerLeft[0] || current.minX > upperRight[0] || current.maxY < lowerLeft[1] || current.minY > upperRight[1]) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
+                // Count subtrees entirely inside the range in one step
+                if (current.minX >= lowerLeft[0] && current.maxX <= upperRight[0] && current.minY >= lowerLeft[1] && current.maxY <= upperRight[1]) {
+                    count += current.liveCount;
+                    continue;
+                }
+
+                if (current.coordinates[0] >= lowerLeft[0] && current.coordinates[0] <= upperRight[0] && current.coordinates[1] >= lowerLeft[1] && current.coordinates[1] <= upperRight[1]) {
+                    count += current.recordCount();
+                }
+                if (current.right != null) {
+                    stack.push(current.right, 0, 0);
+                }
+                if (current.left != null) {
+                    stack.push(current.left, 0, 0);
+                }
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        QueryMetrics.record(QueryMetrics.Query.COUNT, start, visited, pruned, count);
+        return count;
+    }
+
+    /**
+     * Finds the nearest neighbor to the given point in the 2D tree.
+     * Distances are compared squared, and the far side of a split is only searched if the squared distance from the
+     * query point to the splitting line is less than the squared distance to the nearest record found so far.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @return The nearest neighbor to the query point.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest neighbor to the query point.
+     * Time complexity: O(log n), where n is the number of nodes in the tree, as it traverses the tree to find the nearest neighbor.
+     */
+    public Neighbor nearestNeighbor(double[] coordinates) {
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int nearestRecord = -1;
+        double nearestDistance = Double.MAX_VALUE; // Squared distance to the nearest record found so far
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                // The far side of a split is only searched once the near side is done, if it can still hold a closer point
+                if (stack.poppedBound >= nearestDistance) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
+
+                // Calculate the squared distance between the current node and the query point
+                double dx = coordinates[0] - current.coordinates[0];
+                double dy = coordinates[1] - current.coordinates[1];
+                double currentDistance = dx * dx + dy * dy;
+
+                // If the current node is live and closer to the query point, update the nearest neighbor
+                if (!current.deleted && currentDistance < nearestDistance) {
+                    nearestDistance = currentDistance;
+                    nearestRecord = current.record;
+                }
+
+                pushChildren(stack, current, depth, coordinates);
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        QueryMetrics.record(QueryMetrics.Query.NEAREST, start, visited, pruned, nearestRecord < 0 ? 0 : 1);
+        if (nearestRecord < 0) {
+            return new Neighbor(null, Double.MAX_VALUE);
+        }
+        return new Neighbor(store.get(nearestRecord), Math.sqrt(nearestDistance));
+    }
+
+    /**
+     * Finds the k nearest neighbors to the given point in the 2D tree.
+     * The k closest records found so far are kept in a bounded max-heap, and a subtree is pruned as soon as the squared
+     * distance to its splitting line is no less than the squared distance to the k-th closest record.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @param k           The number of neighbors to find.
+     * @return The min(k, n) nearest neighbors, closest first, or an empty array if k is not positive.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest neighbors to the query point, ordered by distance.
+     * Time complexity: O(k log k + log n) on average, where n is the number of nodes in the tree.
+     */
+    public Neighbor[] kNearest(double[] coordinates, int k) {
+        if (k <= 0) {
+            return new Neighbor[0];
+        }
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        NeighborHeap heap = new NeighborHeap(Math.min(k, Math.max(size, 1)));
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                if (stack.poppedBound >= heap.bound()) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
+
+                if (!current.deleted) {
+                    double dx = coordinates[0] - current.coordinates[0];
+                    double dy = coordinates[1] - current.coordinates[1];
+                    double distance = dx * dx + dy * dy;
+                    // The records of a node are equally far, so none of them can enter the heap once the distance reaches its bound
+                    for (int i = 0, n = current.recordCount(); i < n && distance < heap.bound(); i++) {
+                        heap.offer(current.recordAt(i), distance);
+                    }
+                }
+
+                pushChildren(stack, current, depth, coordinates);
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        Neighbor[] nearest = heap.toSortedNeighbors(store);
+        QueryMetrics.record(QueryMetrics.Query.K_NEAREST, start, visited, pruned, nearest.length);
+        return nearest;
+    }
+
+    /**
+     * Finds all crime records within the given distance of a point.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @param radius      The maximum distance from the query point (inclusive).
+     * @return A list of crime records within the radius of the query point.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns every record whose distance from the query point is at most radius.
+     * Time complexity: O(sqrt(n) + m), where n is the number of nodes in the tree and m the number of matches.
+     */
+    public ListOfCrimes withinRadius(double[] coordinates, double radius) {
+        ListOfCrimes crimesInRadius = new ListOfCrimes();
+        if (radius < 0) {
+            return crimesInRadius;
+        }
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        double squaredRadius = radius * radius;
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                if (stack.poppedBound > squaredRadius) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
+
+                double dx = coordinates[0] - current.coordinates[0];
+                double dy = coordinates[1] - current.coordinates[1];
+                if (!current.deleted && dx * dx + dy * dy <= squaredRadius) {
+                    for (int i = 0, n = current.recordCount(); i < n; i++) {
+                        crimesInRadius.addCrime(store.get(current.recordAt(i)));
+                    }
+                }
+
+                pushChildren(stack, current, depth, coordinates);
+            }
+        } finally {
+            releaseStack(stack);
+        }
+        QueryMetrics.record(QueryMetrics.Query.RADIUS, start, visited, pruned, crimesInRadius.size());
+        return crimesInRadius;
+    }
+
+    /**
+     * Finds the crime records within the given range of coordinates whose date lies within the given window,
+     * for example all crimes in an area during March 1991.
+     * These queries are answered by a SpatioTemporalTree over x, y and date, which is built from the live records on the first
+     * date-constrained query. Inserts and deletes after that, also those building new versions, are recorded next to the index rather
+     * than discarding it: matches of deleted records are skipped and inserted records are checked one by one, until the changes
+     * outnumber TEMPORAL_PATCH_MINIMUM and n^(2/3), when the next such query rebuilds the index.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param fromDate   The first date of the window (inclusive).
+     * @param toDate     The last date of the window (inclusive).
+     * @return A list of the matching crime records, in no particular order. Records with an unparseable date never match.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, fromDate and toDate must be non-null.
+     * Postconditions: Returns the records of findPointsInRange whose date lies within the window.
+     * Time complexity: O(n^(2/3) + c + m), where n is the number of records in the tree, c the number of changes since the index was built
+     * and m the number of matches, plus O(c log c) on the first query after a change, or O(n log n) on the first query at all and after
+     * the changes have outgrown the index.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate) {
+        ListOfCrimes crimesInRange = new ListOfCrimes();
+        temporalIndex().visitPointsInRange(store, lowerLeft, upperRight, fromDate, toDate, (x, y, record) -> {
+            crimesInRange.addCrime(store.get(record));
+            return true;
+        });
+        return crimesInRange;
+    }
+
+    /**
+     * Passes every crime record of the given offense types within the given range of coordinates and date window to a visitor,
+     * stopping early if the visitor returns false. With no offenses given, records of every offense are visited.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param fromDate   The first date of the window (inclusive).
+     * @param toDate     The last date of the window (inclusive).
+     * @param visitor    The visitor receiving the coordinates and crime record of each match.
+     * @param offenses   The offense types to find, as written in the CSV.
+     * @return True if every match was visited, false if the visitor stopped the query early.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, fromDate, toDate and visitor must be non-null.
+     * Postconditions: The visitor has received the matches, in no particular order, until it returned false.
+     * Time complexity: O(n^(2/3) + m), where n is the number of nodes in the tree and m the number of records examined,
+     * plus the cost of bringing the index up to date as for findPointsInRange with a date window.
+     */
+    public boolean visitPointsInRange(double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate, CrimeVisitor visitor, String... offenses) {
+        OffenseFilter filter = offenses.length > 0 ? new OffenseFilter(store, offenses) : null;
+        if (filter != null && filter.mask == 0) {
+            return true;
+        }
+        return temporalIndex().visitPointsInRange(store, lowerLeft, upperRight, fromDate, toDate,
+                (x, y, record) -> (filter != null && !filter.accepts(store.offenseId(record))) || visitor.visit(x, y, store.get(record)));
+    }
+
+    /**
+     * Returns the spatio-temporal index over the live records, building it if there is none or the changes have outgrown it.
+     *
+     * @return A TemporalIndex over the live records of the tree.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: temporalIndex indexes the live records of the tree.
+     * Time complexity: O(1) if there is an index, O(n log n) otherwise, where n is the number of records in the tree.
+     */
+    private TemporalIndex temporalIndex() {
+        TemporalIndex index = temporalIndex;
+        if (index == null) {
+            index = new TemporalIndex(new SpatioTemporalTree(store, liveRecords()));
+            temporalIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Finds the crime records of the given offense types within the given range of coordinates.
+     * Every node knows which offenses occur in its subtree, so subtrees without any of the requested offenses are skipped whole,
+     * as are subtrees whose bounding box misses the range.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param offenses   The offense types to find, as written in the CSV (for example "ROBBERY").
+     * @return A list of the crime records in the range whose offense is one of the given ones.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+     * Postconditions: Returns the same records as filtering findPointsInRange by offense, in the same order.
+     * Time complexity: O(sqrt(n) + m) for a balanced tree, where n is the number of nodes in the tree and m the number of matches,
+     * and much less when the offenses are rare.
+     */
+    public ListOfCrimes findPointsInRange(double[] lowerLeft, double[] upperRight, String... offenses) {
+        ListOfCrimes crimesInRange = new ListOfCrimes();
+        visitPointsInRange(lowerLeft, upperRight, (x, y, crimeRecord) -> {
+            crimesInRange.addCrime(crimeRecord);
+            return true;
+        }, offenses);
+        return crimesInRange;
+    }
+
+    /**
+     * Passes every crime record of the given offense types within the given range of coordinates to a visitor, stopping early if the visitor returns false.
+     *
+     * @param lowerLeft  The lower left corner of the range.
+     * @param upperRight The upper right corner of the range.
+     * @param visitor    The visitor receiving the coordinates and crime record of each match.
+     * @param offenses   The offense types to find, as written in the CSV.
+     * @return True if every match was visited, false if the visitor stopped the query early.
+     * <p>
+     * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, visitor must be non-null.
+     * Postconditions: The visitor has received the matches in preorder until it returned false.
+     * Time complexity: O(sqrt(n) + m) for a balanced tree, where n is the number of nodes in the tree and m the number of matches.
+     */
+    public boolean visitPointsInRange(double[] lowerLeft, double[] upperRight, CrimeVisitor visitor, String... offenses) {
+        OffenseFilter filter = new OffenseFilter(store, offenses);
+        if (filter.mask == 0) {
+            return true;
+        }
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        int results = 0; // Records passed to the visitor, for the query metrics
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                // Skip subtrees without a requested offense or entirely outside the range
+                if ((current.offenseMask & filter.mask) == 0
+                        || current.maxX < lowerLeft[0] || current.minX > upperRight[0] || current.maxY < lowerLeft[1] || current.minY > upperRight[1]) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
+
+                if (current.coordinates[0] >= lowerLeft[0] && current.coordinates[0] <= upperRight[0] && current.coordinates[1] >= lowerLeft[1] && current.coordinates[1] <= upperRight[1]) {
+                    for (int i = 0, n = current.recordCount(); i < n; i++) {
+                        int record = current.recordAt(i);
+                        if (filter.accepts(store.offenseId(record))) {
+                            results++;
+                            if (!visitor.visit(current.coordinates[0], current.coordinates[1], store.get(record))) {
+                                return false;
+                            }
+                        }
+                    }
+                }
+
+                pruned += pushRangeChildren(stack, current, depth, lowerLeft, upperRight);
+            }
+        } finally {
+            releaseStack(stack);
+            QueryMetrics.record(QueryMetrics.Query.RANGE, start, visited, pruned, results);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the nearest crime record of the given offense types to the given point.
+     * Subtrees without any of the requested offenses are skipped whole, and a subtree is only searched if its bounding box
+     * is closer to the query point than the nearest match found so far.
      *
-     * @param root        The root of the current subtree.
      * @param coordinates The x and y coordinates of the query point.
-     * @param depth       The depth of the current node in the tree.
-     * @param nearest     The nearest neighbor found so far.
-     *                    <p>
-     *                    Preconditions: coordinates must be a valid coordinate array, nearest must be non-null.
-     *                    Postconditions: Updates the nearest neighbor based on the query point.
-     *                    Time complexity: O(log n), where n is the number of nodes in the tree, as it traverses the tree to find the nearest neighbor.
+     * @param offenses    The offense types to consider, as written in the CSV.
+     * @return The nearest record with one of the offenses, or a Neighbor with a null record and Double.MAX_VALUE distance if there is none.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest matching record, which is not necessarily the nearest record overall.
+     * Time complexity: O(log n) on average for common offenses, where n is the number of nodes in the tree.
      */
-    private void nearestNeighborRec(TreeNode root, double[] coordinates, int depth, Neighbor nearest) {
-        // If the tree is empty, return
-        if (root == null) {
-            return;
+    public Neighbor nearestNeighbor(double[] coordinates, String... offenses) {
+        Neighbor[] nearest = kNearest(coordinates, 1, offenses);
+        return nearest.length == 0 ? new Neighbor(null, Double.MAX_VALUE) : nearest[0];
+    }
+
+    /**
+     * Finds the k nearest crime records of the given offense types to the given point.
+     *
+     * @param coordinates The x and y coordinates of the query point.
+     * @param k           The number of neighbors to find.
+     * @param offenses    The offense types to consider, as written in the CSV.
+     * @return The min(k, m) nearest matching records, closest first, where m is the number of records with one of the offenses.
+     * <p>
+     * Preconditions: coordinates must be a valid coordinate array.
+     * Postconditions: Returns the nearest matching records, ordered by distance.
+     * Time complexity: O(k log k + log n) on average for common offenses, where n is the number of nodes in the tree.
+     */
+    public Neighbor[] kNearest(double[] coordinates, int k, String... offenses) {
+        OffenseFilter filter = new OffenseFilter(store, offenses);
+        if (k <= 0 || filter.mask == 0) {
+            return new Neighbor[0];
         }
+        long start = QueryMetrics.start();
+        int visited = 0; // Nodes examined, for the query metrics
+        int pruned = 0; // Subtrees skipped, for the query metrics
+        NeighborHeap heap = new NeighborHeap(Math.min(k, Math.max(size, 1)));
+        TraversalStack stack = acquireStack();
+        try {
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+            while (!stack.isEmpty()) {
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                if ((current.offenseMask & filter.mask) == 0 || squaredDistanceToBox(current, coordinates) >= heap.bound()) {
+                    pruned++;
+                    continue;
+                }
+                visited++;
 
-        // Calculate the distance between the current node and the query point
-        double currentDistance = Math.sqrt(Math.pow(coordinates[0] - root.coordinates[0], 2) + Math.pow(coordinates[1] - root.coordinates[1], 2));
+                double dx = coordinates[0] - current.coordinates[0];
+                double dy = coordinates[1] - current.coordinates[1];
+                double distance = dx * dx + dy * dy;
+                for (int i = 0, n = current.recordCount(); i < n && distance < heap.bound(); i++) {
+                    int record = current.recordAt(i);
+                    if (filter.accepts(store.offenseId(record))) {
+                        heap.offer(record, distance);
+                    }
+                }
 
-        // If the current node is closer to the query point, update the nearest neighbor
-        if (currentDistance < nearest.distance) {
-            nearest.distance = currentDistance;
-            nearest.crimeDetails = root.crimeRecord;
+                pushChildren(stack, current, depth, coordinates);
+            }
+        } finally {
+            releaseStack(stack);
         }
+        Neighbor[] nearest = heap.toSortedNeighbors(store);
+        QueryMetrics.record(QueryMetrics.Query.K_NEAREST, start, visited, pruned, nearest.length);
+        return nearest;
+    }
+
+    /**
+     * Returns the bit of an offense id in the offense mask of a node.
+     * Ids 0 to 62 have their own bit; all higher ids share bit 63, so a subtree holding one of them is never skipped by mistake.
+     *
+     * @param offenseId The offense id in the store.
+     * @return The bit of the offense.
+     * <p>
+     * Preconditions: offenseId must be non-negative.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static long offenseBit(int offenseId) {
+        return offenseId < 63 ? 1L << offenseId : 1L << 63;
+    }
+
+    /**
+     * Returns the squared distance from a point to the bounding box of the subtree rooted at a node.
+     *
+     * @param node        The node.
+     * @param coordinates The x and y coordinates of the point.
+     * @return The squared distance, 0 if the point is inside the box.
+     * <p>
+     * Preconditions: node must be non-null.
+     * Postconditions: None.
+     * Time complexity: O(1).
+     */
+    private static double squaredDistanceToBox(TreeNode node, double[] coordinates) {
+        double dx = Math.max(0, Math.max(node.minX - coordinates[0], coordinates[0] - node.maxX));
+        double dy = Math.max(0, Math.max(node.minY - coordinates[1], coordinates[1] - node.maxY));
+        return dx * dx + dy * dy;
+    }
 
-        // Calculate the current dimension
+    /**
+     * Pushes the children of a node for a distance search, the far child first so that the near child is searched first.
+     * The far child carries the squared distance from the query point to the splitting line as its bound; the near child carries 0.
+     *
+     * @param stack       The traversal stack.
+     * @param node        The node whose children are pushed.
+     * @param depth       The depth of the node in the tree.
+     * @param coordinates The x and y coordinates of the query point.
+     *                    <p>
+     *                    Preconditions: stack and node must be non-null.
+     *                    Postconditions: The non-null children of the node are on the stack.
+     *                    Time complexity: O(1) amortized.
+     */
+    private static void pushChildren(TraversalStack stack, TreeNode node, int depth, double[] coordinates) {
         int currentDimension = depth % 2;
+        double gap = coordinates[currentDimension] - node.coordinates[currentDimension];
+        double splitDistance = gap * gap;
+        if (gap < 0) {
+            if (node.right != null) {
+                stack.push(node.right, depth + 1, splitDistance);
+            }
+            if (node.left != null) {
+                stack.push(node.left, depth + 1, 0);
+            }
+        } else {
+            if (node.left != null) {
+                stack.push(node.left, depth + 1, splitDistance);
+            }
+            if (node.right != null) {
+                stack.push(node.right, depth + 1, 0);
+            }
+        }
+    }
+
+    /**
+     * Takes a free traversal stack from the shared pool, or creates one if the pool is empty.
+     * The scan starts at a slot picked by the thread id, so threads running at the same time mostly probe different slots.
+     *
+     * @return An empty traversal stack reserved for the caller.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The returned stack must be handed back with releaseStack.
+     * Time complexity: O(STACK_POOL_SIZE) in the worst case, O(1) when the first probed slot holds a stack.
+     */
+    private static TraversalStack acquireStack() {
+        int mask = STACK_POOL_SIZE - 1;
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < STACK_POOL_SIZE; i++) {
+            int slot = (start + i) & mask;
+            if (STACKS.get(slot) != null) {
+                TraversalStack stack = STACKS.getAndSet(slot, null);
+                if (stack != null) {
+                    return stack;
+                }
+            }
+        }
+        ALLOCATED_STACKS.increment();
+        return new TraversalStack();
+    }
+
+    /**
+     * Hands a traversal stack back to the shared pool after a query or traversal, emptying it.
+     * If every slot is already taken the stack is dropped, so the pool never holds more than STACK_POOL_SIZE stacks.
+     *
+     * @param stack The stack returned by acquireStack.
+     *              <p>
+     *              Preconditions: stack must have been returned by acquireStack and not released since.
+     *              Postconditions: The stack is empty and can be reused by any thread.
+     *              Time complexity: O(k + STACK_POOL_SIZE), where k is the number of frames still on the stack.
+     */
+    private static void releaseStack(TraversalStack stack) {
+        stack.clear();
+        int mask = STACK_POOL_SIZE - 1;
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < STACK_POOL_SIZE; i++) {
+            int slot = (start + i) & mask;
+            if (STACKS.get(slot) == null && STACKS.compareAndSet(slot, null, stack)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of traversal stacks created so far because the shared pool had none free.
+     *
+     * @return The number of traversal stacks allocated by acquireStack.
+     * <p>
+     * Preconditions: None.
+     * Postconditions: The pool is not changed.
+     * Time complexity: O(c), where c is the number of cells of the counter.
+     */
+    static long stacksAllocated() {
+        return ALLOCATED_STACKS.sum();
+    }
+
+    /**
+     * The TraversalStack class is a growable array-backed stack of tree nodes used by the queries and traversals in place of recursion,
+     * so the depth of the tree is bounded only by the heap and not by the thread stack.
+     * Each frame holds a node, its depth and a squared distance bound used to prune nearest neighbor searches.
+     * Stacks are kept in a small pool shared by all threads, so a query allocates nothing once a pooled stack has grown to the tree height,
+     * even when every query runs on a new virtual thread.
+     */
+    private static class TraversalStack {
+        private TreeNode[] nodes = new TreeNode[64]; // The node of each frame
+        private int[] depths = new int[64]; // The depth of each frame
+        private double[] bounds = new double[64]; // The distance bound of each frame
+        private int size; // Number of frames on the stack
+        int poppedDepth; // The depth of the frame last removed by pop
+        double poppedBound; // The distance bound of the frame last removed by pop
+
+        /**
+         * Adds a frame to the top of the stack, doubling the arrays when they are full.
+         *
+         * @param node  The tree node.
+         * @param depth The depth of the node in the tree.
+         * @param bound The distance bound of the node.
+         *              <p>
+         *              Preconditions: node must be non-null.
+         *              Postconditions: The frame is on top of the stack.
+         *              Time complexity: O(1) amortized.
+         */
+        void push(TreeNode node, int depth, double bound) {
+            if (size == nodes.length) {
+                int capacity = nodes.length * 2;
+                TreeNode[] grownNodes = new TreeNode[capacity];
+                int[] grownDepths = new int[capacity];
+                double[] grownBounds = new double[capacity];
+                System.arraycopy(nodes, 0, grownNodes, 0, size);
+                System.arraycopy(depths, 0, grownDepths, 0, size);
+                System.arraycopy(bounds, 0, grownBounds, 0, size);
+                nodes = grownNodes;
+                depths = grownDepths;
+                bounds = grownBounds;
+            }
+            nodes[size] = node;
+            depths[size] = depth;
+            bounds[size] = bound;
+            size++;
+        }
+
+        /**
+         * Removes the top frame of the stack, making its depth and bound available in poppedDepth and poppedBound.
+         *
+         * @return The node of the removed frame.
+         * <p>
+         * Preconditions: The stack must not be empty.
+         * Postconditions: The top frame is removed.
+         * Time complexity: O(1).
+         */
+        TreeNode pop() {
+            size--;
+            TreeNode node = nodes[size];
+            nodes[size] = null;
+            poppedDepth = depths[size];
+            poppedBound = bounds[size];
+            return node;
+        }
+
+        /**
+         * Returns the node of the top frame without removing it.
+         *
+         * @return The node of the top frame.
+         * <p>
+         * Preconditions: The stack must not be empty.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        TreeNode peek() {
+            return nodes[size - 1];
+        }
+
+        /**
+         * Checks if the stack is empty.
+         *
+         * @return True if the stack holds no frames, false otherwise.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Removes all frames from the stack.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: The stack is empty and holds no node references.
+         * Time complexity: O(k), where k is the number of frames on the stack.
+         */
+        void clear() {
+            while (size > 0) {
+                nodes[--size] = null;
+            }
+        }
+    }
+
+    /**
+     * The RangeIterator class walks the 2D tree lazily, stopping at each crime record within a range.
+     * It owns its traversal stack, as it may outlive the call that created it.
+     */
+    private static class RangeIterator implements Iterator<CrimeRecord> {
+        private final TraversalStack stack = new TraversalStack(); // Nodes still to be examined
+        private final CrimeStore store; // The store holding the crime records of the tree
+        private final double[] lowerLeft; // The lower left corner of the range
+        private final double[] upperRight; // The upper right corner of the range
+        private CrimeRecord next; // The next match to return, or null if it has not been found yet
+        private TreeNode matchedNode; // The node in the range whose records are being returned, or null between nodes
+        private int matchedIndex; // The position in matchedNode of the next of its records to return
+
+        /**
+         * Constructor to create an iterator over the records of a subtree within a range.
+         *
+         * @param root       The root of the tree.
+         * @param store      The store holding the crime records of the tree.
+         * @param lowerLeft  The lower left corner of the range.
+         * @param upperRight The upper right corner of the range.
+         *                   <p>
+         *                   Preconditions: lowerLeft and upperRight must be valid coordinate arrays.
+         *                   Postconditions: A new RangeIterator positioned before the first match is created.
+         *                   Time complexity: O(1).
+         */
+        RangeIterator(TreeNode root, CrimeStore store, double[] lowerLeft, double[] upperRight) {
+            this.store = store;
+            this.lowerLeft = lowerLeft;
+            this.upperRight = upperRight;
+            if (root != null) {
+                stack.push(root, 0, 0);
+            }
+        }
+
+        /**
+         * Checks whether another match exists, walking the tree up to it if it has not been found yet.
+         *
+         * @return True if there is another crime record in the range, false otherwise.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: The next match, if any, is held until next is called.
+         * Time complexity: O(k), where k is the number of nodes examined before the next match.
+         */
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (matchedNode != null) {
+                    if (matchedIndex < matchedNode.recordCount()) {
+                        next = store.get(matchedNode.recordAt(matchedIndex++));
+                        break;
+                    }
+                    matchedNode = null;
+                }
+                if (stack.isEmpty()) {
+                    break;
+                }
+                TreeNode current = stack.pop();
+                int depth = stack.poppedDepth;
+                pushRangeChildren(stack, current, depth, lowerLeft, upperRight);
+                if (!current.deleted && current.coordinates[0] >= lowerLeft[0] && current.coordinates[0] <= upperRight[0] && current.coordinates[1] >= lowerLeft[1] && current.coordinates[1] <= upperRight[1]) {
+                    matchedNode = current;
+                    matchedIndex = 0;
+                }
+            }
+            return next != null;
+        }
+
+        /**
+         * Returns the next crime record in the range.
+         *
+         * @return The next crime record in the range.
+         * @throws NoSuchElementException If there are no more matches.
+         *                                <p>
+         *                                Preconditions: None.
+         *                                Postconditions: The iterator advances past the returned record.
+         *                                Time complexity: O(k), where k is the number of nodes examined before the next match.
+         */
+        @Override
+        public CrimeRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CrimeRecord result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * The nodes from the root down to the node holding a record, and the record itself, as found by pathTo.
+     */
+    private record RecordPath(TreeNode[] nodes, int record) {
+    }
+
+    /**
+     * The BuildTask class builds a balanced subtree with fork-join, building the left and right halves in parallel
+     * until the range is small enough to build on the current thread. Tasks are never serialized, although ForkJoinTask is Serializable.
+     */
+    @SuppressWarnings("serial")
+    private static class BuildTask extends RecursiveTask<TreeNode> {
+        private final CrimeStore store; // The store holding the crime records
+        private final TreeNode[] nodes; // The nodes, without children, reordered in place
+        private final int from; // The index of the first node of the range (inclusive)
+        private final int to; // The index after the last node of the range (exclusive)
+        private final int depth; // The depth of the subtree root in the tree
+
+        /**
+         * Constructor to create a task building the subtree for a range of nodes.
+         *
+         * @param store The store holding the crime records.
+         * @param nodes The nodes, without children.
+         * @param from  The index of the first node of the range (inclusive).
+         * @param to    The index after the last node of the range (exclusive).
+         * @param depth The depth of the subtree root in the tree.
+         *              <p>
+         *              Preconditions: 0 <= from <= to <= nodes.length.
+         *              Postconditions: A new BuildTask is created.
+         *              Time complexity: O(1), as it only sets the instance variables.
+         */
+        BuildTask(CrimeStore store, TreeNode[] nodes, int from, int to, int depth) {
+            this.store = store;
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        /**
+         * Builds the subtree, forking the left half and building the right half on the current thread.
+         *
+         * @return The root of the built subtree, or null if the range is empty.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: The nodes of the range are reordered as by buildBalanced.
+         * Time complexity: O(m log m + n) total work, where m is the size of the range and n the number of records its nodes hold.
+         */
+        @Override
+        protected TreeNode compute() {
+            if (to - from < PARALLEL_BUILD_THRESHOLD) {
+                return buildBalanced(store, nodes, from, to, depth);
+            }
+            int median = (from + to) >>> 1;
+            selectMedian(nodes, from, to - 1, median, depth % 2);
+            TreeNode node = nodes[median];
+            BuildTask leftTask = new BuildTask(store, nodes, from, median, depth + 1);
+            leftTask.fork();
+            node.right = new BuildTask(store, nodes, median + 1, to, depth + 1).compute();
+            node.left = leftTask.join();
+            node.updateSummary(store);
+            return node;
+        }
+    }
+
+    /**
+     * The OffenseFilter class holds the offense types a query asks for, both as a mask to test against the offense mask of
+     * a subtree and as one flag per offense id to test a single record exactly.
+     */
+    private static class OffenseFilter {
+        private final long mask; // The bits of the requested offenses
+        private final boolean[] accepted; // Whether each offense id is requested
+
+        /**
+         * Constructor to create a filter for the given offense types.
+         *
+         * @param store    The store whose offense ids are used.
+         * @param offenses The offense types, as written in the CSV. Types that no record has are ignored.
+         *                 <p>
+         *                 Preconditions: store must be non-null.
+         *                 Postconditions: A new OffenseFilter is created; its mask is 0 if no record has any of the offenses.
+         *                 Time complexity: O(o), where o is the number of offenses.
+         */
+        OffenseFilter(CrimeStore store, String[] offenses) {
+            long requested = 0;
+            accepted = new boolean[store.offenseCount()];
+            for (String offense : offenses) {
+                int offenseId = store.findOffense(offense);
+                if (offenseId >= 0) {
+                    accepted[offenseId] = true;
+                    requested |= offenseBit(offenseId);
+                }
+            }
+            mask = requested;
+        }
+
+        /**
+         * Checks whether a record with the given offense id matches the filter.
+         *
+         * @param offenseId The offense id of the record.
+         * @return True if the offense was requested, false otherwise.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        boolean accepts(int offenseId) {
+            return offenseId < accepted.length && accepted[offenseId];
+        }
+    }
+
+    /**
+     * The TemporalIndex class is a SpatioTemporalTree over the live records of a tree at one point, together with the records inserted
+     * and deleted since, so a write does not throw the index away. Queries skip the matches of deleted records and check the inserted
+     * records one by one. The changes are a list shared by successive versions, newest first, so recording one is O(1) and leaves the
+     * index of the previous version unchanged; the first query of a version sorts them once.
+     * Once the changes outnumber both TEMPORAL_PATCH_MINIMUM and n^(2/3), about what a query of the index itself costs, patched returns
+     * null and the next date-window query rebuilds the index.
+     */
+    private static final class TemporalIndex {
+        private final SpatioTemporalTree base; // The index over the live records when it was built
+        private final Change changes; // The records inserted and deleted since, newest first, or null if there are none
+        private final int changeCount; // Number of changes in the list
+        private final int changeLimit; // Number of changes after which the index is rebuilt instead of patched
+        private volatile Patch patch; // The changes as sorted arrays, built on the first query, or null until then
+
+        /**
+         * One insert or delete made after the index was built.
+         */
+        private record Change(int record, boolean deleted, Change next) {
+        }
+
+        /**
+         * The net effect of the changes: the inserted records still live and the indexed records deleted, both sorted.
+         */
+        private record Patch(int[] inserted, int[] deleted) {
+        }
+
+        /**
+         * Constructor to create an index without changes.
+         *
+         * @param base The spatio-temporal tree over the live records.
+         *             <p>
+         *             Preconditions: base must be non-null.
+         *             Postconditions: A new TemporalIndex is created answering queries from base alone.
+         *             Time complexity: O(1).
+         */
+        TemporalIndex(SpatioTemporalTree base) {
+            this(base, null, 0);
+        }
+
+        /**
+         * Constructor to create an index with changes.
+         *
+         * @param base        The spatio-temporal tree over the live records when it was built.
+         * @param changes     The changes since, newest first.
+         * @param changeCount The number of changes.
+         *                    <p>
+         *                    Preconditions: base must be non-null.
+         *                    Postconditions: A new TemporalIndex is created.
+         *                    Time complexity: O(1).
+         */
+        private TemporalIndex(SpatioTemporalTree base, Change changes, int changeCount) {
+            this.base = base;
+            this.changes = changes;
+            this.changeCount = changeCount;
+            this.changeLimit = Math.max(TEMPORAL_PATCH_MINIMUM, (int) Math.cbrt((double) base.size() * base.size()));
+        }
+
+        /**
+         * Returns an index with one more change, or null if the index should be rebuilt instead.
+         *
+         * @param index   The index, possibly null.
+         * @param record  The index in the store of the record inserted or deleted.
+         * @param deleted Whether the record was deleted rather than inserted.
+         * @return The patched index, or null if index is null or has reached its change limit.
+         * <p>
+         * Preconditions: A record is inserted at most once and deleted at most once, after its insert.
+         * Postconditions: index is unchanged.
+         * Time complexity: O(1).
+         */
+        static TemporalIndex patched(TemporalIndex index, int record, boolean deleted) {
+            if (index == null || index.changeCount >= index.changeLimit) {
+                return null;
+            }
+            return new TemporalIndex(index.base, new Change(record, deleted, index.changes), index.changeCount + 1);
+        }
 
-        //If the query point dimension is less than the current node dimension, search the left subtree
-        if (coordinates[currentDimension] < root.coordinates[currentDimension]) {
-            nearestNeighborRec(root.left, coordinates, depth + 1, nearest);
-            // If the distance between the query point and the current node is less than the nearest distance, search the right subtree
-            if (Math.pow(coordinates[currentDimension] - root.coordinates[currentDimension], 2) < nearest.distance) {
-                nearestNeighborRec(root.right, coordinates, depth + 1, nearest);
+        /**
+         * Passes the index in the store of every live record within the given range and date window to a visitor,
+         * stopping early if the visitor returns false.
+         *
+         * @param store      The store of the tree, holding the inserted records as well as the indexed ones.
+         * @param lowerLeft  The lower left corner of the range.
+         * @param upperRight The upper right corner of the range.
+         * @param fromDate   The first date of the window (inclusive).
+         * @param toDate     The last date of the window (inclusive).
+         * @param visitor    The visitor receiving each match.
+         * @return True if every match was visited, false if the visitor stopped the query early.
+         * <p>
+         * Preconditions: lowerLeft and upperRight must be valid coordinate arrays, the other arguments must be non-null.
+         * Postconditions: The visitor has received the indexed matches and then the inserted ones, until it returned false.
+         * Time complexity: O(n^(2/3) + c + m log c), where n is the number of indexed records, c the number of changes and m the number
+         * of indexed matches, plus O(c log c) on the first call.
+         */
+        boolean visitPointsInRange(CrimeStore store, double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate,
+                                   FlatTwoDTree.PointVisitor visitor) {
+            if (changes == null) {
+                return base.visitPointsInRange(lowerLeft, upperRight, fromDate, toDate, visitor);
+            }
+            Patch current = patch();
+            int[] deleted = current.deleted();
+            FlatTwoDTree.PointVisitor live = deleted.length == 0 ? visitor
+                    : (x, y, record) -> Arrays.binarySearch(deleted, record) >= 0 || visitor.visit(x, y, record);
+            if (!base.visitPointsInRange(lowerLeft, upperRight, fromDate, toDate, live)) {
+                return false;
+            }
+            long firstDay = Math.max(fromDate.toEpochDay(), CrimeStore.NO_DATE + 1L);
+            long lastDay = toDate.toEpochDay();
+            for (int record : current.inserted()) {
+                double x = store.x(record);
+                double y = store.y(record);
+                int day = store.epochDay(record);
+                if (x >= lowerLeft[0] && x <= upperRight[0] && y >= lowerLeft[1] && y <= upperRight[1] && day >= firstDay && day <= lastDay
+                        && !visitor.visit(x, y, record)) {
+                    return false;
+                }
             }
+            return true;
         }
-        //If the query point dimension is greater than or equal to the current node dimension, search the right subtree
-        else {
-            nearestNeighborRec(root.right, coordinates, depth + 1, nearest);
-            // If the distance between the query point and the current node is less than the nearest distance, search the left subtree
-            if (Math.pow(coordinates[currentDimension] - root.coordinates[currentDimension], 2) < nearest.distance) {
-                nearestNeighborRec(root.left, coordinates, depth + 1, nearest);
+
+        /**
+         * Returns the net effect of the changes, working it out on the first call.
+         *
+         * @return The inserted records still live and the indexed records deleted, both sorted.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: patch is set.
+         * Time complexity: O(1) after the first call, O(c log c) for it, where c is the number of changes.
+         */
+        private Patch patch() {
+            Patch current = patch;
+            if (current != null) {
+                return current;
+            }
+            int[] inserted = new int[changeCount];
+            int[] deleted = new int[changeCount];
+            int insertedCount = 0;
+            int deletedCount = 0;
+            for (Change change = changes; change != null; change = change.next()) {
+                if (change.deleted()) {
+                    deleted[deletedCount++] = change.record();
+                } else {
+                    inserted[insertedCount++] = change.record();
+                }
+            }
+            Arrays.sort(inserted, 0, insertedCount);
+            Arrays.sort(deleted, 0, deletedCount);
+            // A record inserted and deleted again cancels out; every other delete removes an indexed record
+            int[] liveInserted = new int[insertedCount];
+            int[] indexedDeleted = new int[deletedCount];
+            int liveCount = 0;
+            int indexedCount = 0;
+            int i = 0;
+            int j = 0;
+            while (i < insertedCount || j < deletedCount) {
+                if (j == deletedCount || (i < insertedCount && inserted[i] < deleted[j])) {
+                    liveInserted[liveCount++] = inserted[i++];
+                } else if (i == insertedCount || deleted[j] < inserted[i]) {
+                    indexedDeleted[indexedCount++] = deleted[j++];
+                } else {
+                    i++;
+                    j++;
+                }
             }
+            current = new Patch(Arrays.copyOf(liveInserted, liveCount), Arrays.copyOf(indexedDeleted, indexedCount));
+            patch = current;
+            return current;
         }
     }
 
     /**
      * The TreeNode class represents a node in the 2D tree.
-     * It contains the coordinates, crime record, and references to the left and right child nodes.
+     * It contains the coordinates, the indexes in the store of the crime records at those coordinates, and references to the left and right child nodes.
      */
     private static class TreeNode {
         double[] coordinates; // The x and y coordinates of the node
         TreeNode left; // Reference to the left child node
         TreeNode right; // Reference to the right child node
-        CrimeRecord crimeRecord; // The crime record associated with the node
+        int record; // The index in the store of the first crime record at the coordinates of the node
+        int[] duplicates; // The indexes of the other crime records at the same coordinates in its first duplicateCount slots, or null if there are none
+        int duplicateCount; // Number of other crime records at the same coordinates; slots beyond it may be filled by in-place inserts, never those before it
+        int count; // Number of nodes in the subtree rooted at this node, tombstones included
+        int deadCount; // Number of tombstones in the subtree rooted at this node
+        int liveCount; // Number of live records in the subtree rooted at this node, duplicates included
+        boolean deleted; // Whether every record of this node has been deleted, making the node a tombstone
+        long offenseMask; // The offenses present in the subtree rooted at this node, one bit per offense id (see offenseBit)
+        double minX; // Bounding box of the coordinates in the subtree rooted at this node
+        double maxX;
+        double minY;
+        double maxY;
 
         /**
          * Constructor to create a new node with the given coordinates and crime record.
          *
          * @param coordinates The x and y coordinates of the node.
-         * @param crimeRecord The crime record associated with the node.
+         * @param record      The index in the store of the crime record associated with the node.
          *                    <p>
          *                    Preconditions: None.
          *                    Postconditions: A new TreeNode is created with the given coordinates, crime record, and null left and right child nodes.
          *                    Time complexity: O(1), as it only sets the instance variables.
          */
-        public TreeNode(double[] coordinates, CrimeRecord crimeRecord) {
+        public TreeNode(double[] coordinates, int record) {
             this.coordinates = coordinates;
-            this.crimeRecord = crimeRecord;
+            this.record = record;
             this.left = null;
             this.right = null;
+            this.count = 1;
+            this.liveCount = 1;
+            this.minX = coordinates[0];
+            this.maxX = coordinates[0];
+            this.minY = coordinates[1];
+            this.maxY = coordinates[1];
+        }
+
+        /**
+         * Constructor to create a copy of a node, sharing its coordinates and children.
+         *
+         * @param other The node to copy.
+         *              <p>
+         *              Preconditions: other must be non-null.
+         *              Postconditions: A new TreeNode is created with the same fields as other.
+         *              Time complexity: O(1).
+         */
+        TreeNode(TreeNode other) {
+            this.coordinates = other.coordinates;
+            this.record = other.record;
+            this.duplicates = other.duplicates;
+            this.duplicateCount = other.duplicateCount;
+            this.left = other.left;
+            this.right = other.right;
+            this.count = other.count;
+            this.deadCount = other.deadCount;
+            this.liveCount = other.liveCount;
+            this.deleted = other.deleted;
+            this.offenseMask = other.offenseMask;
+            this.minX = other.minX;
+            this.maxX = other.maxX;
+            this.minY = other.minY;
+            this.maxY = other.maxY;
+        }
+
+        /**
+         * Returns the number of live records of this node itself.
+         *
+         * @return 0 for a tombstone, otherwise 1 plus the number of duplicates.
+         * <p>
+         * Preconditions: None.
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        int recordCount() {
+            if (deleted) {
+                return 0;
+            }
+            return 1 + duplicateCount;
+        }
+
+        /**
+         * Returns one of the records of this node, the first record for index 0 and the duplicates after it.
+         *
+         * @param index The position of the record in the node.
+         * @return The index in the store of the record.
+         * <p>
+         * Preconditions: 0 <= index < recordCount().
+         * Postconditions: None.
+         * Time complexity: O(1).
+         */
+        int recordAt(int index) {
+            return index == 0 ? record : duplicates[index - 1];
+        }
+
+        /**
+         * Grows the bounding box of the subtree to include a point.
+         *
+         * @param x The x coordinate of the point.
+         * @param y The y coordinate of the point.
+         *          <p>
+         *          Preconditions: None.
+         *          Postconditions: The bounding box contains the point.
+         *          Time complexity: O(1).
+         */
+        void include(double x, double y) {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        /**
+         * Recomputes the subtree counts, bounding box and offense mask of this node from its own records and its children.
+         * The bounding box includes tombstones; the offense mask only live records.
+         *
+         * @param store The store holding the crime records of the node.
+         *              <p>
+         *              Preconditions: The summaries of the children must be up to date.
+         *              Postconditions: The counts, the bounding box and offenseMask describe the subtree rooted at this node.
+         *              Time complexity: O(d), where d is the number of records of the node.
+         */
+        void updateSummary(CrimeStore store) {
+            count = 1;
+            deadCount = deleted ? 1 : 0;
+            liveCount = recordCount();
+            offenseMask = 0;
+            for (int i = 0; i < liveCount; i++) {
+                offenseMask |= offenseBit(store.offenseId(recordAt(i)));
+            }
+            minX = coordinates[0];
+            maxX = coordinates[0];
+            minY = coordinates[1];
+            maxY = coordinates[1];
+            if (left != null) {
+                count += left.count;
+                deadCount += left.deadCount;
+                liveCount += left.liveCount;
+                offenseMask |= left.offenseMask;
+                include(left.minX, left.minY);
+                include(left.maxX, left.maxY);
+            }
+            if (right != null) {
+                count += right.count;
+                deadCount += right.deadCount;
+                liveCount += right.liveCount;
+                offenseMask |= right.offenseMask;
+                include(right.minX, right.minY);
+                include(right.maxX, right.maxY);
+            }
         }
     }
 
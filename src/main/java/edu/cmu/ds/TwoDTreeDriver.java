@@ -4,20 +4,57 @@ package edu.cmu.ds;
 
 import org.slf4j.Logger;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 /**
  * The TwoDTreeDriver class provides a command-line interface to interact with the TwoDTree class.
  * It allows users to perform operations like inorder, preorder, postorder, levelOrder, reverseLevelOrder, search for points within a rectangle, and search for the nearest neighbor.
+ * <p>
+ * Started with --serve [port], it serves the same queries over HTTP with a CrimeQueryServer instead of showing the menu (default port 8080).
+ * Started with --generate rows file [seed], it writes a synthetic CSV file of that many records with a CrimeDataGenerator and exits.
  */
 public class TwoDTreeDriver {
     private static final Logger logger = LoggerUtil.getLogger(TwoDTreeDriver.class);
+    private static final int DEFAULT_PORT = 8080; // Port of the query server when --serve is given without one
+    private static final long DEFAULT_SEED = 1; // Seed of the generator when --generate is given without one
 
     public static void main(String[] args) {
-        TwoDTree tree = new TwoDTree("CrimeLatLonXY.csv");
+        if (args.length > 2 && args[0].equals("--generate")) {
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+            try {
+                new CrimeDataGenerator(seed).write(Long.parseLong(args[1]), Path.of(args[2]));
+            } catch (IOException e) {
+                logger.error("Could not write generated crime data to " + args[2] + ": " + e.getMessage());
+            }
+            return;
+        }
+
+        TwoDTree tree;
+        try {
+            // Reuse the snapshot of the previous run unless the CSV file has changed since
+            tree = TreeSnapshot.loadOrBuild(Path.of("CrimeLatLonXY.csv"), Path.of("CrimeLatLonXY.snapshot"));
+        } catch (IOException e) {
+            logger.error("Error reading crime data: " + e.getMessage());
+            tree = new TwoDTree();
+        }
+
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            try {
+                CrimeQueryServer server = new CrimeQueryServer(tree, new InetSocketAddress(port));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+                server.start();
+            } catch (IOException e) {
+                logger.error("Could not start the query server on port " + port + ": " + e.getMessage());
+            }
+            return;
+        }
 
+        QueryMetrics.registerMBeans();
         Scanner scanner = new Scanner(System.in);
 
         // Loop to display the menu and get user input
@@ -62,27 +99,23 @@ public class TwoDTreeDriver {
                     double x2 = Double.parseDouble(coordinates[2]);
                     double y2 = Double.parseDouble(coordinates[3]);
 
-                    // Search for points within the given rectangle
+                    // Search for points within the given rectangle, streaming them to the log and the KML file
                     logger.info("Searching for points within (" + x1 + ", " + y1 + ") and (" + x2 + ", " + y2 + ")");
-                    ListOfCrimes crimes = tree.findPointsInRange(new double[]{x1, y1}, new double[]{x2, y2});
-                    if (crimes != null) {
-                        // Display the crimes found and write them to a KML file
-                        logger.info(crimes.toString());
-                        String kmlOutput = crimes.toKML();
-                        try {
-                            // Write the KML output to a file
-                            FileWriter writer = new FileWriter("PGHCrimes.kml");
-                            writer.write(kmlOutput);
-                            writer.close();
-                            logger.info("KML file 'PGHCrimes.kml' written successfully");
-                        } catch (IOException e) {
-                            // Log an error if writing the file fails
-                            logger.error("Error while writing KML file: {}", e.getMessage());
+                    try (KmlWriter kml = KmlWriter.toFile(Path.of("PGHCrimes.kml"))) {
+                        tree.visitPointsInRange(new double[]{x1, y1}, new double[]{x2, y2}, (x, y, crimeRecord) -> {
+                            logger.info(crimeRecord.toString());
+                            return kml.visit(x, y, crimeRecord);
+                        });
+                        if (kml.getPlacemarkCount() == 0) {
+                            // Log a message if no crimes are found
+                            logger.info("No crimes found within the given range");
                         }
-                    } else {
-                        // Log a message if no crimes are found
-                        logger.info("No crimes found within the given range");
+                    } catch (IOException | UncheckedIOException e) {
+                        // Log an error if writing the file fails
+                        logger.error("Error while writing KML file: {}", e.getMessage());
+                        break;
                     }
+                    logger.info("KML file 'PGHCrimes.kml' written successfully");
                     break;
                 case 7:
                     // Get the point from the user
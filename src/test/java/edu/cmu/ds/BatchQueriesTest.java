@@ -0,0 +1,114 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchQueriesTest {
+
+    private TwoDTree tree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(11);
+        CrimeRecord[] records = new CrimeRecord[5000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        tree = new TwoDTree();
+        tree.bulkLoad(records, records.length, false);
+    }
+
+    @Test
+    void testBatchesMatchSingleQueriesInInputOrder() {
+        Random random = new Random(13);
+        double[][] points = new double[3000][];
+        double[][] lowerLefts = new double[1000][];
+        double[][] upperRights = new double[1000][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[]{random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+        }
+        for (int i = 0; i < lowerLefts.length; i++) {
+            lowerLefts[i] = new double[]{random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            upperRights[i] = new double[]{lowerLefts[i][0] + random.nextDouble() * 1000, lowerLefts[i][1] + random.nextDouble() * 1000};
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean spatialOrder : new boolean[]{false, true}) {
+                BatchQueries batch = new BatchQueries(tree, spatialOrder, pool);
+                BatchQueries.Result<Neighbor> nearest = batch.nearestNeighbors(points);
+                long matches = 0;
+                for (int i = 0; i < points.length; i++) {
+                    Neighbor expected = tree.nearestNeighbor(points[i]);
+                    assertEquals(expected.getDistance(), nearest.results()[i].getDistance());
+                    assertEquals(expected.getCrimeDetails(), nearest.results()[i].getCrimeDetails());
+                }
+                assertEquals(points.length, nearest.stats().queries());
+                assertEquals(points.length, nearest.stats().matches());
+                assertEquals(4, nearest.stats().parallelism());
+                assertEquals(spatialOrder, nearest.stats().spatiallyOrdered());
+                assertTrue(nearest.stats().queriesPerSecond() > 0);
+
+                BatchQueries.Result<ListOfCrimes> ranges = batch.findPointsInRange(lowerLefts, upperRights);
+                for (int i = 0; i < lowerLefts.length; i++) {
+                    ListOfCrimes expected = tree.findPointsInRange(lowerLefts[i], upperRights[i]);
+                    assertEquals(expected.toString(), ranges.results()[i].toString());
+                    matches += expected.size();
+                }
+                assertEquals(matches, ranges.stats().matches());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testEmptyBatchesAndEmptyTree() {
+        BatchQueries batch = new BatchQueries(tree);
+        assertFalse(batch.nearestNeighbors(new double[0][]).stats().spatiallyOrdered());
+        assertEquals(0, batch.nearestNeighbors(new double[0][]).results().length);
+        assertEquals(0, batch.findPointsInRange(new double[0][], new double[0][]).stats().queries());
+
+        BatchQueries.Result<Neighbor> empty = new BatchQueries(new TwoDTree()).nearestNeighbors(new double[][]{{1, 2}, {3, 4}});
+        assertNull(empty.results()[1].getCrimeDetails());
+        assertEquals(0, empty.stats().matches());
+    }
+
+    @Test
+    void testCurveOrderIsAPermutationThatKeepsNeighborsTogether() {
+        // A 64 x 64 grid listed row by row: along the curve, most consecutive points are adjacent cells
+        double[] xs = new double[4096];
+        double[] ys = new double[4096];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = i % 64;
+            ys[i] = i / 64;
+        }
+        int[] order = BatchQueries.curveOrder(xs, ys);
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(i, sorted[i]);
+        }
+        // Runs of 64 points along the curve cover blocks of about 8 x 8 cells, where a row covers 64 x 1
+        int extent = 0;
+        for (int i = 0; i < order.length; i += 64) {
+            int minX = 64, maxX = 0, minY = 64, maxY = 0;
+            for (int j = i; j < i + 64; j++) {
+                minX = Math.min(minX, (int) xs[order[j]]);
+                maxX = Math.max(maxX, (int) xs[order[j]]);
+                minY = Math.min(minY, (int) ys[order[j]]);
+                maxY = Math.max(maxY, (int) ys[order[j]]);
+            }
+            extent += maxX - minX + 1 + maxY - minY + 1;
+        }
+        assertTrue(extent / 64 <= 20, "average extent " + extent / 64);
+        assertArrayEquals(new int[]{0, 1, 2}, BatchQueries.curveOrder(new double[]{5, 5, 5}, new double[]{7, 7, 7}));
+    }
+}
@@ -0,0 +1,274 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentTwoDTreeTest {
+
+    private static final double[] LOWER_LEFT = {0, 0};
+    private static final double[] UPPER_RIGHT = {10_000, 10_000};
+
+    private static CrimeRecord[] randomRecords(int count, long seed) {
+        Random random = new Random(seed);
+        CrimeRecord[] records = new CrimeRecord[count];
+        for (int i = 0; i < count; i++) {
+            // Every tenth record has a latitude that is kept as text, and the offenses and streets keep growing their dictionaries
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", "Offense " + (i % 70), "2024-09-28", "12345", i % 10 == 0 ? "40.10" : "40.1234", "-79.5678");
+        }
+        return records;
+    }
+
+    @Test
+    void testVersionsAreIsolatedFromLaterInserts() {
+        CrimeRecord[] records = randomRecords(1000, 1);
+        TwoDTree initial = new TwoDTree();
+        initial.bulkLoad(records.clone(), 500, false);
+        ConcurrentTwoDTree tree = new ConcurrentTwoDTree(initial);
+
+        TwoDTree before = tree.snapshot();
+        String beforeRange = before.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).toString();
+        for (int i = 500; i < 1000; i++) {
+            tree.insert(new double[]{records[i].x(), records[i].y()}, records[i]);
+        }
+
+        assertEquals(500, before.size());
+        assertEquals(beforeRange, before.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).toString());
+        CrimeRecord arson = new CrimeRecord(5.0, 5.0, 1300, "Elm St", "ARSON", "2024-09-28", "12345", null, "-79.5678");
+        tree.insert(new double[]{arson.x(), arson.y()}, arson);
+        assertEquals(-1, before.getStore().findOffense("ARSON"));
+        assertEquals(1, tree.snapshot().findPointsInRange(LOWER_LEFT, UPPER_RIGHT, "ARSON").size());
+        assertEquals(arson, tree.nearestNeighbor(new double[]{5.0, 5.0}).getCrimeDetails());
+        assertEquals(1001, tree.size());
+        assertEquals(1001, tree.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).size());
+        assertEquals(records[999], tree.nearestNeighbor(new double[]{records[999].x(), records[999].y()}).getCrimeDetails());
+        assertThrows(UnsupportedOperationException.class, () -> before.insert(new double[]{1, 1}, records[0]));
+        assertThrows(UnsupportedOperationException.class, () -> before.bulkLoad(records, 10, false));
+        assertEquals(500, before.size());
+    }
+
+    @Test
+    void testPathCopyingBuildsTheSameTreeAsInsert() {
+        CrimeRecord[] records = randomRecords(3000, 2);
+        TwoDTree sequential = new TwoDTree();
+        ConcurrentTwoDTree concurrent = new ConcurrentTwoDTree();
+        for (int i = 0; i < 1000; i++) {
+            sequential.insert(new double[]{records[i].x(), records[i].y()}, records[i]);
+            concurrent.insert(new double[]{records[i].x(), records[i].y()}, records[i]);
+        }
+        CrimeRecord[] batch = new CrimeRecord[2000];
+        System.arraycopy(records, 1000, batch, 0, batch.length);
+        for (CrimeRecord record : batch) {
+            sequential.insert(new double[]{record.x(), record.y()}, record);
+        }
+        concurrent.insertAll(batch);
+
+        assertEquals(sequential.height(), concurrent.snapshot().height());
+        assertEquals(sequential.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).toString(), concurrent.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).toString());
+        assertEquals(sequential.findPointsInRange(new double[]{2000, 3000}, new double[]{4000, 5000}, "Offense 3", "Offense 65").toString(),
+                concurrent.snapshot().findPointsInRange(new double[]{2000, 3000}, new double[]{4000, 5000}, "Offense 3", "Offense 65").toString());
+    }
+
+    @Test
+    void testVersionsAreIsolatedFromChangesToSharedCoordinates() {
+        ConcurrentTwoDTree tree = new ConcurrentTwoDTree();
+        double[] point = {100, 200};
+        CrimeRecord[] records = new CrimeRecord[6];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(point[0], point[1], 1300, i + " Main St", "Offense " + i, "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        for (int i = 0; i < 3; i++) {
+            tree.insert(point, records[i]);
+        }
+        TwoDTree before = tree.snapshot();
+        for (int i = 3; i < records.length; i++) {
+            tree.insert(point, records[i]);
+        }
+        assertTrue(tree.delete(records[0]));
+        assertTrue(tree.delete(records[4]));
+
+        assertEquals(1, tree.snapshot().nodeCount());
+        assertEquals(Arrays.asList(records[1], records[2], records[3], records[5]), tree.snapshot().stream(TraversalOrder.PREORDER).toList());
+        assertEquals(Arrays.asList(records[0], records[1], records[2]), before.stream(TraversalOrder.PREORDER).toList());
+        assertEquals(1, before.findPointsInRange(point, point, "Offense 0").size());
+        assertEquals(0, tree.snapshot().findPointsInRange(point, point, "Offense 0").size());
+    }
+
+    @Test
+    void testVersionsKeepTheirDateWindowResults() {
+        ConcurrentTwoDTree tree = new ConcurrentTwoDTree();
+        double[] point = {100, 200};
+        LocalDate march = LocalDate.of(1991, 3, 1);
+        CrimeRecord[] records = new CrimeRecord[4];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(point[0], point[1], 1300, i + " Main St", "Offense " + i, march.plusDays(i).toString(), "12345", "40.1234", "-79.5678");
+        }
+        tree.insert(point, records[0]);
+        tree.insert(point, records[1]);
+        TwoDTree before = tree.snapshot();
+        assertEquals(2, before.findPointsInRange(point, point, march, march.plusDays(30)).size());
+
+        // Later versions patch the index of this one instead of building their own
+        tree.insert(point, records[2]);
+        assertTrue(tree.delete(records[0]));
+        tree.update(records[1], records[3]);
+
+        assertEquals(2, before.findPointsInRange(point, point, march, march.plusDays(30)).size());
+        ListOfCrimes after = tree.snapshot().findPointsInRange(point, point, march, march.plusDays(30));
+        assertEquals(2, after.size());
+        assertEquals(records[2], after.getCrime(0));
+        assertEquals(records[3], after.getCrime(1));
+        assertEquals(1, tree.snapshot().findPointsInRange(point, point, march.plusDays(3), march.plusDays(3)).size());
+    }
+
+    @Test
+    void testReadersNeverSeeAPartialInsert() throws InterruptedException {
+        CrimeRecord[] records = randomRecords(20_000, 3);
+        ConcurrentTwoDTree tree = new ConcurrentTwoDTree();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(4);
+
+        Thread[] readers = new Thread[4];
+        int[] versionsSeen = new int[readers.length];
+        for (int r = 0; r < readers.length; r++) {
+            int reader = r;
+            readers[r] = new Thread(() -> {
+                started.countDown();
+                Random random = new Random(reader);
+                int lastSize = 0;
+                try {
+                    while (writing.get()) {
+                        TwoDTree version = tree.snapshot();
+                        int size = version.size();
+                        assertTrue(size >= lastSize, "versions must only grow");
+                        if (size != lastSize) {
+                            versionsSeen[reader]++;
+                        }
+                        lastSize = size;
+                        // Every record of the version is reachable, summarised and readable, whatever the writer does meanwhile
+                        assertEquals(size, version.countInRange(LOWER_LEFT, UPPER_RIGHT));
+                        ListOfCrimes all = version.findPointsInRange(LOWER_LEFT, UPPER_RIGHT);
+                        assertEquals(size, all.size());
+                        if (size > 0) {
+                            CrimeRecord sample = records[random.nextInt(size)];
+                            Neighbor nearest = version.nearestNeighbor(new double[]{sample.x(), sample.y()});
+                            assertEquals(0.0, nearest.getDistance());
+                            assertEquals(size, version.countInRange(LOWER_LEFT, UPPER_RIGHT));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers[r].start();
+        }
+
+        started.await();
+        for (int i = 0; i < records.length; ) {
+            if (i % 3 == 0) {
+                CrimeRecord[] batch = new CrimeRecord[Math.min(50, records.length - i)];
+                System.arraycopy(records, i, batch, 0, batch.length);
+                tree.insertAll(batch);
+                i += batch.length;
+            } else {
+                tree.insert(new double[]{records[i].x(), records[i].y()}, records[i]);
+                i++;
+            }
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get(), () -> "Reader failed: " + failure.get());
+        assertEquals(records.length, tree.size());
+        for (int seen : versionsSeen) {
+            assertTrue(seen > 1);
+        }
+        TwoDTree last = tree.snapshot();
+        for (int i = 0; i < records.length; i += 97) {
+            assertEquals(records[i], last.getStore().get(i));
+        }
+    }
+
+    @Test
+    void testDeletesAreCompactedInTheBackgroundWhileReadersAndWritersCarryOn() throws Exception {
+        CrimeRecord[] records = randomRecords(20_000, 4);
+        TwoDTree initial = new TwoDTree();
+        initial.bulkLoad(records.clone(), 10_000, false);
+        ConcurrentTwoDTree tree = new ConcurrentTwoDTree(initial);
+        TwoDTree before = tree.snapshot();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        // Each version is consistent, whether or not it has been compacted
+                        TwoDTree version = tree.snapshot();
+                        assertEquals(version.size(), version.countInRange(LOWER_LEFT, UPPER_RIGHT));
+                        assertEquals(version.size(), version.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).size());
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers[r].start();
+        }
+
+        Random random = new Random(5);
+        ArrayList<CrimeRecord> live = new ArrayList<>(Arrays.asList(records).subList(0, 10_000));
+        int maxDeleted = 0;
+        for (int i = 10_000; i < records.length; i++) {
+            CrimeRecord victim = live.remove(random.nextInt(live.size()));
+            assertTrue(tree.delete(victim));
+            if (i % 5 == 0) {
+                int index = random.nextInt(live.size());
+                CrimeRecord corrected = new CrimeRecord(records[i].x(), records[i].y(), 1400, live.get(index).street(), "Offense 71",
+                        "2024-09-29", "12345", "40.1234", "-79.5678");
+                assertTrue(tree.update(live.get(index), corrected));
+                live.set(index, corrected);
+            } else if (i % 2 == 0) {
+                tree.insert(new double[]{records[i].x(), records[i].y()}, records[i]);
+                live.add(records[i]);
+            }
+            maxDeleted = Math.max(maxDeleted, tree.deletedCount());
+        }
+        // The first call may return a compaction started by a delete, which keeps the tombstones of deletes made while it ran
+        tree.compactAsync().get();
+        tree.compactAsync().get();
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get(), () -> "Reader failed: " + failure.get());
+        // 12,000 deletes in all, but background compactions keep the tombstones to a fraction of that
+        assertTrue(maxDeleted > 0 && maxDeleted < 10_000, "tombstones " + maxDeleted);
+        assertEquals(0, tree.deletedCount());
+        assertEquals(live.size(), tree.size());
+        assertEquals(10_000, before.size());
+        assertEquals(10_000, before.findPointsInRange(LOWER_LEFT, UPPER_RIGHT).size());
+        String[] expected = live.stream().map(CrimeRecord::toString).sorted().toArray(String[]::new);
+        ArrayList<String> actual = new ArrayList<>();
+        for (CrimeRecord record : tree.findPointsInRange(LOWER_LEFT, UPPER_RIGHT)) {
+            actual.add(record.toString());
+        }
+        assertArrayEquals(expected, actual.stream().sorted().toArray(String[]::new));
+        assertFalse(tree.delete(new CrimeRecord(-1, -1, 1300, "Main St", "Offense 1", "2024-09-28", "12345", "40.1234", "-79.5678")));
+        assertThrows(UnsupportedOperationException.class, () -> tree.snapshot().delete(live.get(0)));
+        assertThrows(UnsupportedOperationException.class, () -> tree.snapshot().compact());
+    }
+}
@@ -0,0 +1,149 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrimeCsvLoaderTest {
+
+    private static final String HEADER = "X,Y,Time,Street,Offense,Date,Tract,Lat,Long";
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String content) throws IOException {
+        Path file = tempDir.resolve("crimes.csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    void testLoadsCarriageReturnLines() throws IOException {
+        Path file = write(HEADER + "\r1348656.471,399538.5342,32874,100 BONIFAY ST,ROBBERY,1/1/90,160600,40.40865518,-79.9760891\r"
+                + "1359951.481,410726.1273,32874,320 SCHENLEY RD,ROBBERY,1/1/90,140100,40.44013011,-79.93653583");
+        CrimeRecord[] records = CrimeCsvLoader.load(file);
+
+        assertEquals(2, records.length);
+        assertEquals(new CrimeRecord(1348656.471, 399538.5342, 32874, "100 BONIFAY ST", "ROBBERY", "1/1/90", "160600", "40.40865518", "-79.9760891"), records[0]);
+        assertEquals("-79.93653583", records[1].longitude());
+    }
+
+    @Test
+    void testLoadsLineFeedAndCrLfLinesAndSkipsBadLines() throws IOException {
+        Path file = write(HEADER + "\r\n10.0,20.0,1300,Main St,Robbery,2024-09-28,12345,40.1234,-79.5678\r\n"
+                + "\n"
+                + "not,enough,fields\n"
+                + "abc,20.0,1300,Main St,Robbery,2024-09-28,12345,40.1234,-79.5678\n"
+                + "15.0,25.0,1400,Elm St,Assault,2024-09-28,54321,41.1234,-80.5678,extra\n");
+        CrimeRecord[] records = CrimeCsvLoader.load(file);
+
+        assertEquals(2, records.length);
+        assertEquals("Main St", records[0].street());
+        assertEquals(15.0, records[1].x());
+        assertEquals("-80.5678", records[1].longitude());
+    }
+
+    @Test
+    void testSmallChunksMatchSingleChunk() throws IOException {
+        Random random = new Random(1);
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 5000; i++) {
+            csv.append('\r').append(1_300_000 + random.nextInt(100_000)).append('.').append(random.nextInt(1000))
+                    .append(',').append(random.nextDouble() * 500_000).append(',').append(random.nextInt(500_000))
+                    .append(",").append(i).append(" MAIN ST,ROBBERY,1/1/90,160600,40.4").append(i).append(",-79.9").append(i);
+        }
+        Path file = write(csv.toString());
+
+        CrimeRecord[] single = CrimeCsvLoader.load(file, Long.MAX_VALUE);
+        CrimeRecord[] chunked = CrimeCsvLoader.load(file, 1000);
+        assertEquals(5000, single.length);
+        assertArrayEquals(single, chunked);
+        for (int i = 0; i < single.length; i++) {
+            assertEquals(i + " MAIN ST", chunked[i].street());
+        }
+    }
+
+    @Test
+    void testChecksumCoversEveryChunk() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 2000; i++) {
+            csv.append('\r').append(1_300_000 + i).append(",400000,32874,").append(i).append(" MAIN ST,ROBBERY,1/1/90,160600,40.4,-79.9");
+        }
+        Path file = write(csv.toString());
+
+        for (long chunkSize : new long[]{Long.MAX_VALUE, 1000}) {
+            CRC32C checksum = new CRC32C();
+            assertEquals(2000, CrimeCsvLoader.loadStore(file, chunkSize, checksum).size());
+            assertEquals(TreeSnapshot.checksum(file), checksum.getValue());
+        }
+    }
+
+    @Test
+    void testEmptyAndHeaderOnlyFiles() throws IOException {
+        assertEquals(0, CrimeCsvLoader.load(write("")).length);
+        assertEquals(0, CrimeCsvLoader.load(write(HEADER)).length);
+    }
+
+    @Test
+    void testParseDoubleMatchesDoubleParseDouble() {
+        String[] values = {"1348656.471", "399538.5342", "-79.9760891", "40.40865518", "0", "-0.0", "+5", ".5", "5.", " 12.25 ",
+                "1e5", "123456789012345678.5", "0.000000000000000000000001", "9007199254740993"};
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Double.parseDouble(value), CrimeCsvLoader.parseDouble(bytes, 0, bytes.length), value);
+        }
+        byte[] bad = "-".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(NumberFormatException.class, () -> CrimeCsvLoader.parseDouble(bad, 0, bad.length));
+    }
+
+    @Test
+    void testCanonicalDecimalMatchesDoubleToString() {
+        String[] canonical = {"40.40865518", "-79.9760891", "40.0", "0.5", "-0.001", "9999999.5", "1234567.12345678"};
+        for (String value : canonical) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Double.parseDouble(value), CrimeCsvLoader.canonicalDecimal(bytes, 0, bytes.length), value);
+        }
+        String[] other = {"40.10", "40", ".5", "05.5", "+5.5", "1e5", "0.0", "0.0005", "10000000.0", "1234567890.1234567", " 40.5", "4-0.5", "abc", ""};
+        for (String value : other) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertTrue(Double.isNaN(CrimeCsvLoader.canonicalDecimal(bytes, 0, bytes.length)), value);
+        }
+
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            String value = (random.nextBoolean() ? "-" : "") + random.nextInt(1000) + "." + random.nextInt(100_000_000);
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            double parsed = CrimeCsvLoader.canonicalDecimal(bytes, 0, bytes.length);
+            if (!Double.isNaN(parsed)) {
+                assertEquals(value, Double.toString(parsed));
+            }
+        }
+    }
+
+    @Test
+    void testNonCanonicalCoordinatesKeepTheirText() throws IOException {
+        Path file = write(HEADER + "\r10.0,20.0,1300,Main St,Robbery,2024-09-28,12345,40.1230,n/a");
+        CrimeRecord[] records = CrimeCsvLoader.load(file);
+        assertEquals("40.1230", records[0].latitude());
+        assertEquals("n/a", records[0].longitude());
+    }
+
+    @Test
+    void testParseInt() {
+        String[] values = {"0", "32874", "-401453", "+7", "2147483647", "-2147483648"};
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(Integer.parseInt(value), CrimeCsvLoader.parseInt(bytes, 0, bytes.length), value);
+        }
+        byte[] bad = "12a".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(NumberFormatException.class, () -> CrimeCsvLoader.parseInt(bad, 0, bad.length));
+    }
+}
@@ -0,0 +1,92 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrimeCsvWriterTest {
+
+    @Test
+    void testWriterMatchesToString() throws IOException {
+        CrimeRecord crime1 = new CrimeRecord(1354000.5, 411000.25, 1300, "Main St", "ROBBERY", "3/15/91", "1234", "40.45", "-79.99");
+        CrimeRecord crime2 = new CrimeRecord(1353000, 412000, 1400, "Elm St", "RAPE", "3/16/91", "5678", "40.46", "-79.98");
+        StringWriter out = new StringWriter();
+        try (CrimeCsvWriter writer = new CrimeCsvWriter(out)) {
+            writer.write(crime1);
+            assertTrue(writer.visit(crime2.x(), crime2.y(), crime2));
+            assertEquals(2, writer.getRecordCount());
+        }
+        assertEquals(CrimeCsvWriter.HEADER + "\n" + crime1 + "\n" + crime2 + "\n", out.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CrimeCsvWriter writer = CrimeCsvWriter.toStream(bytes);
+        writer.close();
+        writer.close();
+        assertEquals(CrimeCsvWriter.HEADER + "\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testDumpLoadsBackInTraversalOrder(@TempDir Path directory) throws IOException {
+        CrimeStore store = new CrimeDataGenerator(11).generate(20_000);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(store, false);
+        assertTrue(tree.delete(tree.nearestNeighbor(new double[]{1_352_000, 412_000}).getCrimeDetails()));
+        assertEquals(store.size() - 1, tree.size());
+
+        for (TraversalOrder order : new TraversalOrder[]{TraversalOrder.PREORDER, TraversalOrder.LEVEL_ORDER}) {
+            Path file = directory.resolve(order + ".csv");
+            assertEquals(tree.size(), tree.dump(order, file));
+            CrimeStore loaded = CrimeCsvLoader.loadStore(file);
+            List<CrimeRecord> expected = tree.stream(order).toList();
+            assertEquals(expected.size(), loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                assertEquals(expected.get(i), loaded.get(i));
+            }
+        }
+
+        // Writing straight from the store gives the same line as writing the record
+        StringWriter fromStore = new StringWriter();
+        StringWriter fromRecord = new StringWriter();
+        try (CrimeCsvWriter storeWriter = new CrimeCsvWriter(fromStore); CrimeCsvWriter recordWriter = new CrimeCsvWriter(fromRecord)) {
+            for (int i = 0; i < 500; i++) {
+                storeWriter.write(store, i);
+                recordWriter.write(store.get(i));
+            }
+        }
+        assertEquals(fromRecord.toString(), fromStore.toString());
+    }
+
+    @Test
+    void testAppendDoubleMatchesDoubleToString() {
+        Random random = new Random(29);
+        StringBuilder line = new StringBuilder();
+        double[] edges = {0, -0.0, 1e-3, 9.99e-4, 1e7, 9_999_999.999_999_99, 0.1 + 0.2, 1.0 / 3, 100, -42.5, 0.005, 1.000_000_01,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1_354_000.5, 40.456789, -79.987654};
+        for (int i = 0; i < 200_000 + edges.length; i++) {
+            double value;
+            if (i < edges.length) {
+                value = edges[i];
+            } else {
+                // Decimals with a few fraction digits, like the coordinates of the CSV, and arbitrary doubles
+                int digits = random.nextInt(10);
+                value = switch (i % 3) {
+                    case 0 -> Math.round(random.nextDouble() * 2e6 * Math.pow(10, digits)) / Math.pow(10, digits);
+                    case 1 -> (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+                    default -> Double.longBitsToDouble(random.nextLong());
+                };
+            }
+            line.setLength(0);
+            CrimeCsvWriter.appendDouble(line, value);
+            assertEquals(Double.toString(value), line.toString());
+        }
+    }
+}
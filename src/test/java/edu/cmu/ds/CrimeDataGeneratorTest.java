@@ -0,0 +1,96 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrimeDataGeneratorTest {
+
+    @Test
+    void testGeneratedFileLoadsLikeTheRealOne(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("generated.csv");
+        int rows = 50_000;
+        new CrimeDataGenerator(7).write(rows, file);
+        CrimeStore store = CrimeCsvLoader.loadStore(file);
+        assertEquals(rows, store.size());
+
+        Set<String> locations = new HashSet<>();
+        Map<String, Integer> offenses = new HashMap<>();
+        for (int i = 0; i < rows; i++) {
+            assertTrue(store.x(i) >= CrimeDataGenerator.MIN_X && store.x(i) <= CrimeDataGenerator.MAX_X);
+            assertTrue(store.y(i) >= CrimeDataGenerator.MIN_Y && store.y(i) <= CrimeDataGenerator.MAX_Y);
+            if (i > 0) {
+                assertTrue(store.time(i) >= store.time(i - 1), "rows must be in date order");
+                assertTrue(store.epochDay(i) >= store.epochDay(i - 1));
+            }
+            assertEquals(store.time(i) - CrimeDataGenerator.FIRST_DAY, store.epochDay(i) - store.epochDay(0));
+            locations.add(store.x(i) + "," + store.y(i));
+            offenses.merge(store.offense(i), 1, Integer::sum);
+        }
+        assertEquals("1/1/90", store.date(0));
+        assertEquals("12/31/01", store.date(rows - 1));
+        // Like the real file, a location holds two or more records on average
+        assertTrue(locations.size() < rows / 2, locations.size() + " locations");
+        assertEquals(4, offenses.size());
+        assertEquals(0.63, offenses.get("ROBBERY") / (double) rows, 0.02);
+        assertEquals(0.011, offenses.get("MURDER/MANSLAUGHTER") / (double) rows, 0.005);
+
+        // Records are clustered: as in the real file, the busiest tenth of a 20 x 20 grid holds most of them
+        int[] cells = new int[400];
+        for (int i = 0; i < rows; i++) {
+            int column = (int) Math.min(19, (store.x(i) - CrimeDataGenerator.MIN_X) / (CrimeDataGenerator.MAX_X - CrimeDataGenerator.MIN_X) * 20);
+            int row = (int) Math.min(19, (store.y(i) - CrimeDataGenerator.MIN_Y) / (CrimeDataGenerator.MAX_Y - CrimeDataGenerator.MIN_Y) * 20);
+            cells[row * 20 + column]++;
+        }
+        Arrays.sort(cells);
+        int busiest = 0;
+        for (int i = cells.length - 40; i < cells.length; i++) {
+            busiest += cells[i];
+        }
+        assertTrue(busiest > rows / 2, busiest + " records in the busiest cells");
+
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(store, false);
+        assertEquals(rows, tree.countInRange(new double[]{CrimeDataGenerator.MIN_X, CrimeDataGenerator.MIN_Y},
+                new double[]{CrimeDataGenerator.MAX_X, CrimeDataGenerator.MAX_Y}));
+    }
+
+    @Test
+    void testGenerationIsDeterministicAndMatchesTheStore() throws IOException {
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+        new CrimeDataGenerator(3).write(5000, first);
+        new CrimeDataGenerator(3).write(5000, second);
+        assertEquals(first.toString(), second.toString());
+        StringWriter other = new StringWriter();
+        new CrimeDataGenerator(4).write(5000, other);
+        assertNotEquals(first.toString(), other.toString());
+
+        String[] lines = first.toString().split("\n");
+        assertEquals(5001, lines.length);
+        assertEquals("X,Y,Time,Street,Offense,Date,Tract,Lat,Long", lines[0]);
+        CrimeStore store = new CrimeDataGenerator(3).generate(5000);
+        for (int i = 0; i < store.size(); i++) {
+            String[] columns = lines[i + 1].split(",");
+            assertEquals(9, columns.length);
+            assertEquals(store.x(i), Double.parseDouble(columns[0]));
+            assertEquals(store.street(i), columns[3]);
+            assertEquals(store.date(i), columns[5]);
+            assertEquals(store.latitude(i), Double.parseDouble(columns[7]));
+        }
+
+        StringWriter empty = new StringWriter();
+        new CrimeDataGenerator(3).write(0, empty);
+        assertEquals("X,Y,Time,Street,Offense,Date,Tract,Lat,Long\n", empty.toString());
+    }
+}
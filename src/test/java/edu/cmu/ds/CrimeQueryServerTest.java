@@ -0,0 +1,145 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrimeQueryServerTest {
+
+    private TwoDTree tree;
+    private CrimeQueryServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(19);
+        CrimeRecord[] records = new CrimeRecord[3000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", i % 10 == 0 ? "ARSON" : "ROBBERY", LocalDate.of(1991, 1, 1).plusDays(i % 365).toString(), "12345", "40.1234", "-79.5678");
+        }
+        tree = new TwoDTree();
+        tree.bulkLoad(records, records.length, false);
+        server = new CrimeQueryServer(tree, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws IOException, InterruptedException {
+        return client.send(request(pathAndQuery), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + pathAndQuery)).build();
+    }
+
+    private static int lines(String body) {
+        return body.isEmpty() ? 0 : body.split("\n").length;
+    }
+
+    @Test
+    void testEndpointsMatchTreeQueries() throws IOException, InterruptedException {
+        double[] lowerLeft = {2000, 3000};
+        double[] upperRight = {6000, 8000};
+        String rectangle = "x1=2000&y1=3000&x2=6000&y2=8000";
+
+        HttpResponse<String> range = get("/range?" + rectangle);
+        assertEquals(200, range.statusCode());
+        assertTrue(range.headers().firstValue("Content-Type").orElse("").startsWith("text/csv"));
+        assertEquals(tree.findPointsInRange(lowerLeft, upperRight).toString().trim(), range.body().trim());
+        assertEquals(tree.countInRange(lowerLeft, upperRight) + "\n", get("/count?" + rectangle).body());
+        assertEquals(tree.findPointsInRange(lowerLeft, upperRight, "ARSON").size(), lines(get("/range?" + rectangle + "&offense=ARSON").body()));
+        assertEquals(5, lines(get("/range?" + rectangle + "&limit=5").body()));
+        LocalDate march = LocalDate.of(1991, 3, 1);
+        assertEquals(tree.findPointsInRange(lowerLeft, upperRight, march, march.plusDays(30)).size(),
+                lines(get("/range?" + rectangle + "&from=1991-03-01&to=1991-03-31").body()));
+        assertEquals(2, lines(get("/range?" + rectangle + "&from=1991-03-01&to=1991-03-31&limit=2").body()));
+        ListOfCrimes inMarch = tree.findPointsInRange(lowerLeft, upperRight, march, march.plusDays(30));
+        int marchArson = 0;
+        for (int i = 0; i < inMarch.size(); i++) {
+            if (inMarch.getCrime(i).offense().equals("ARSON")) {
+                marchArson++;
+            }
+        }
+        assertEquals(marchArson, lines(get("/range?" + rectangle + "&from=1991-03-01&to=1991-03-31&offense=ARSON").body()));
+
+        Neighbor nearest = tree.nearestNeighbor(new double[]{5000, 5000});
+        assertEquals(nearest.getDistance() + "," + nearest.getCrimeDetails() + "\n", get("/nearest?x=5000&y=5000").body());
+        assertEquals(7, lines(get("/nearest?x=5000&y=5000&k=7").body()));
+        String arson = get("/nearest?x=5000&y=5000&k=3&offense=ARSON").body();
+        assertEquals(3, lines(arson));
+        assertFalse(arson.contains("ROBBERY"));
+
+        HttpResponse<String> kml = get("/kml?" + rectangle + "&offense=ARSON");
+        assertEquals(200, kml.statusCode());
+        assertTrue(kml.body().contains("<kml"));
+        assertEquals(tree.findPointsInRange(lowerLeft, upperRight, "ARSON").size(), kml.body().split("<Placemark>").length - 1);
+        HttpResponse<byte[]> kmz = client.send(request("/kml?" + rectangle + "&kmz=true"), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals('P', kmz.body()[0]);
+        assertEquals('K', kmz.body()[1]);
+    }
+
+    @Test
+    void testInvalidRequests() throws IOException, InterruptedException {
+        assertEquals(400, get("/range?x1=2000&y1=3000&x2=6000").statusCode());
+        assertEquals("Parameter y2 must be a number\n", get("/range?x1=2000&y1=3000&x2=6000&y2=abc").body());
+        assertEquals(400, get("/range?x1=0&y1=0&x2=1&y2=1&from=1991-03-01").statusCode());
+        assertEquals(400, get("/range?x1=0&y1=0&x2=1&y2=1&from=March&to=1991-03-31").statusCode());
+        assertEquals(400, get("/range?x1=0&y1=0&x2=1&y2=1&limit=-1").statusCode());
+        assertEquals(400, get("/nearest?x=1&y=1&k=0").statusCode());
+        assertEquals(404, get("/unknown").statusCode());
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(request("/count").uri()).POST(HttpRequest.BodyPublishers.ofString("x")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+        assertEquals(200, get("/nearest?x=1&y=1").statusCode());
+    }
+
+    @Test
+    void testParseQuery() {
+        Map<String, List<String>> parameters = CrimeQueryServer.parseQuery("offense=AGGRAVATED%20ASSAULT&offense=MURDER%2FMANSLAUGHTER&x=1.5&flag&&");
+        assertEquals(List.of("AGGRAVATED ASSAULT", "MURDER/MANSLAUGHTER"), parameters.get("offense"));
+        assertEquals(List.of("1.5"), parameters.get("x"));
+        assertEquals(List.of(""), parameters.get("flag"));
+        assertTrue(CrimeQueryServer.parseQuery(null).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> CrimeQueryServer.parseQuery("x=%zz"));
+    }
+
+    @Test
+    void testManyConcurrentRequests() {
+        Random random = new Random(23);
+        int requests = 2000;
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            int x = random.nextInt(9000);
+            int y = random.nextInt(9000);
+            int expected = tree.countInRange(new double[]{x, y}, new double[]{x + 1000, y + 1000});
+            responses[i] = client.sendAsync(request("/range?x1=" + x + "&y1=" + y + "&x2=" + (x + 1000) + "&y2=" + (y + 1000)),
+                    HttpResponse.BodyHandlers.ofString()).thenAccept(response -> {
+                assertEquals(200, response.statusCode());
+                assertEquals(expected, lines(response.body()));
+            });
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+}
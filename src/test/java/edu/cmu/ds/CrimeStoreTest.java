@@ -0,0 +1,78 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrimeStoreTest {
+
+    @Test
+    void testGetReturnsAddedRecords() {
+        CrimeStore store = new CrimeStore(1);
+        CrimeRecord[] records = {
+                new CrimeRecord(1348656.471, 399538.5342, 32874, "100 BONIFAY ST", "ROBBERY", "1/1/90", "160600", "40.40865518", "-79.9760891"),
+                new CrimeRecord(1359951.481, 410726.1273, 32874, "320 SCHENLEY RD", "ROBBERY", "1/1/90", "140100", "40.44013011", "-79.93653583"),
+                new CrimeRecord(100.5, 200.6, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1230", "1e5"),
+                new CrimeRecord(110.7, 210.8, 1400, null, "Assault", null, "54321", "unknown", null)
+        };
+        for (int i = 0; i < records.length; i++) {
+            assertEquals(i, store.add(records[i]));
+        }
+
+        assertEquals(records.length, store.size());
+        assertArrayEquals(records, store.toArray());
+        assertSame(store.get(0).offense(), store.get(1).offense());
+        assertEquals(store.offenseId(0), store.offenseId(1));
+        assertEquals(3, store.offenseCount());
+        assertEquals("ROBBERY", store.offenseName(store.findOffense("ROBBERY")));
+        assertEquals(-1, store.findOffense("ARSON"));
+        assertEquals(40.40865518, store.latitude(0));
+        assertEquals(40.123, store.latitude(2));
+        assertTrue(Double.isNaN(store.latitude(3)));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(records.length));
+    }
+
+    @Test
+    void testEpochDays() {
+        assertEquals(LocalDate.of(1990, 1, 1).toEpochDay(), CrimeStore.parseEpochDay("1/1/90"));
+        assertEquals(LocalDate.of(2001, 12, 31).toEpochDay(), CrimeStore.parseEpochDay("12/31/01"));
+        assertEquals(LocalDate.of(2024, 9, 28).toEpochDay(), CrimeStore.parseEpochDay("2024-09-28"));
+        assertEquals(LocalDate.of(1875, 2, 3).toEpochDay(), CrimeStore.parseEpochDay("2/3/1875"));
+        assertEquals(CrimeStore.NO_DATE, CrimeStore.parseEpochDay("2/30/90"));
+        assertEquals(CrimeStore.NO_DATE, CrimeStore.parseEpochDay("yesterday"));
+        assertEquals(CrimeStore.NO_DATE, CrimeStore.parseEpochDay(null));
+
+        CrimeStore store = new CrimeStore();
+        store.add(1, 2, 3, "Main St", "ROBBERY", "1/1/90", "1", "40.1", "-79.1");
+        store.add(1, 2, 3, "Main St", "ROBBERY", "1/2/90", "1", "40.1", "-79.1");
+        assertEquals(1, store.epochDay(1) - store.epochDay(0));
+    }
+
+    @Test
+    void testAddAllTranslatesDictionaries() {
+        CrimeStore first = new CrimeStore();
+        first.add(1, 1, 1, "A St", "ROBBERY", "1/1/90", "1", "40.1", "-79.1");
+        CrimeStore second = new CrimeStore();
+        second.add(2, 2, 2, "B St", "RAPE", "1/2/90", "2", "40.20", "-79.2");
+        second.add(3, 3, 3, "A St", "ROBBERY", "1/1/90", "1", "40.3", "-79.3");
+
+        first.addAll(second);
+        assertEquals(3, first.size());
+        assertEquals(second.get(0), first.get(1));
+        assertEquals(second.get(1), first.get(2));
+        assertEquals(first.offenseId(0), first.offenseId(2));
+        assertEquals("40.20", first.get(1).latitude());
+    }
+
+    @Test
+    void testFootprintIsSmallerThanRecords() {
+        CrimeStore store = new CrimeStore(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            store.add(i, i, i, (i % 100) + " MAIN ST", "ROBBERY", "1/" + (i % 28 + 1) + "/90", "160600", "40." + i + "1", "-79." + i + "1");
+        }
+        // A CrimeRecord alone is about 64 bytes before any of its Strings
+        assertTrue(store.estimatedFootprintBytes() < 10_000L * 64);
+    }
+}
@@ -0,0 +1,128 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatTwoDTreeTest {
+
+    private CrimeRecord[] records;
+    private FlatTwoDTree flatTree;
+    private TwoDTree nodeTree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        records = new CrimeRecord[5000];
+        for (int i = 0; i < records.length; i++) {
+            // Round to a coarse grid so that many points share a coordinate
+            double x = Math.floor(random.nextDouble() * 1000);
+            double y = Math.floor(random.nextDouble() * 1000);
+            records[i] = new CrimeRecord(x, y, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        flatTree = new FlatTwoDTree(records, records.length);
+        nodeTree = new TwoDTree();
+        nodeTree.bulkLoad(records.clone(), records.length, false);
+    }
+
+    @Test
+    void testFindPointsInRangeMatchesNodeTree() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            double x1 = random.nextDouble() * 1000;
+            double y1 = random.nextDouble() * 1000;
+            double[] lowerLeft = {x1, y1};
+            double[] upperRight = {x1 + random.nextDouble() * 300, y1 + random.nextDouble() * 300};
+            assertEquals(nodeTree.findPointsInRange(lowerLeft, upperRight).size(), flatTree.findPointsInRange(lowerLeft, upperRight).size());
+        }
+    }
+
+    @Test
+    void testFindPointsInRangeIncludesBoundaries() {
+        CrimeRecord crime = records[123];
+        ListOfCrimes crimes = flatTree.findPointsInRange(new double[]{crime.x(), crime.y()}, new double[]{crime.x(), crime.y()});
+        assertTrue(crimes.size() >= 1);
+        assertEquals(crime.x(), crimes.getCrime(0).x());
+        assertEquals(crime.y(), crimes.getCrime(0).y());
+    }
+
+    @Test
+    void testNearestNeighborMatchesBruteForce() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            double[] point = {random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100};
+            double best = Double.MAX_VALUE;
+            for (CrimeRecord record : records) {
+                best = Math.min(best, Math.hypot(record.x() - point[0], record.y() - point[1]));
+            }
+            assertEquals(best, flatTree.nearestNeighbor(point).getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void testEmptyTree() {
+        FlatTwoDTree empty = new FlatTwoDTree(new CrimeRecord[0], 0);
+        assertEquals(0, empty.findPointsInRange(new double[]{0, 0}, new double[]{10, 10}).size());
+        assertNull(empty.nearestNeighbor(new double[]{1, 1}).getCrimeDetails());
+    }
+
+    @Test
+    void testFootprintIsSmallerThanNodeTree() {
+        assertEquals(records.length, flatTree.size());
+        assertTrue(flatTree.estimatedFootprintBytes() * 3 < nodeTree.estimatedFootprintBytes());
+    }
+
+    @Test
+    void testVisitPointsInRange() {
+        double[] lowerLeft = {100.0, 200.0};
+        double[] upperRight = {600.0, 700.0};
+        int[] visited = new int[1];
+        assertTrue(flatTree.visitPointsInRange(lowerLeft, upperRight, (x, y, index) -> {
+            assertEquals(flatTree.getRecord(index).x(), x);
+            assertEquals(flatTree.getRecord(index).y(), y);
+            visited[0]++;
+            return true;
+        }));
+        assertEquals(flatTree.findPointsInRange(lowerLeft, upperRight).size(), visited[0]);
+
+        visited[0] = 0;
+        assertFalse(flatTree.visitPointsInRange(lowerLeft, upperRight, (x, y, index) -> ++visited[0] < 3));
+        assertEquals(3, visited[0]);
+    }
+
+    @Test
+    void testVisitLevelOrder() {
+        boolean[] seen = new boolean[records.length];
+        int[] visited = new int[1];
+        double[] root = new double[2];
+        assertTrue(flatTree.visitLevelOrder((x, y, index) -> {
+            assertFalse(seen[index]);
+            seen[index] = true;
+            assertEquals(records[index].x(), x);
+            assertEquals(records[index].y(), y);
+            if (visited[0]++ == 0) {
+                root[0] = x;
+                root[1] = y;
+            }
+            return true;
+        }));
+        assertEquals(records.length, visited[0]);
+
+        // The root splits the points on x at their median
+        int left = 0;
+        int right = 0;
+        for (CrimeRecord record : records) {
+            left += record.x() < root[0] ? 1 : 0;
+            right += record.x() > root[0] ? 1 : 0;
+        }
+        assertTrue(left < records.length / 2 + 1 && right < records.length / 2 + 1);
+
+        visited[0] = 0;
+        assertFalse(flatTree.visitLevelOrder((x, y, index) -> ++visited[0] < 10));
+        assertEquals(10, visited[0]);
+        assertTrue(new FlatTwoDTree(new CrimeRecord[0], 0).visitLevelOrder((x, y, index) -> false));
+    }
+}
@@ -0,0 +1,44 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntQueueTest {
+
+    @Test
+    void testEnqueueAndDequeueInOrder() {
+        IntQueue queue = new IntQueue(2);
+        assertTrue(queue.isEmpty());
+        int next = 0;
+        int expected = 0;
+        // Keep the head moving around the ring while the queue grows, so that growth copies wrapped elements
+        for (int round = 0; round < 500; round++) {
+            queue.enqueue(next++);
+            queue.enqueue(next++);
+            assertEquals(expected, queue.peek());
+            assertEquals(expected++, queue.dequeue());
+        }
+        assertEquals(500, queue.size());
+        while (!queue.isEmpty()) {
+            assertEquals(expected++, queue.dequeue());
+        }
+        assertEquals(next, expected);
+    }
+
+    @Test
+    void testEmptyQueue() {
+        IntQueue queue = new IntQueue();
+        assertThrows(NoSuchElementException.class, queue::dequeue);
+        assertThrows(NoSuchElementException.class, queue::peek);
+        queue.enqueue(-7);
+        queue.enqueue(3);
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        queue.enqueue(5);
+        assertEquals(5, queue.dequeue());
+        assertThrows(IllegalArgumentException.class, () -> new IntQueue(-1));
+    }
+}
@@ -0,0 +1,38 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntStackTest {
+
+    @Test
+    void testPushAndPopInReverseOrder() {
+        IntStack stack = new IntStack(0);
+        assertTrue(stack.isEmpty());
+        for (int i = 0; i < 1000; i++) {
+            stack.push(i * 3);
+        }
+        assertEquals(1000, stack.size());
+        for (int i = 999; i >= 0; i--) {
+            assertEquals(i * 3, stack.peek());
+            assertEquals(i * 3, stack.pop());
+        }
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    void testEmptyStack() {
+        IntStack stack = new IntStack();
+        assertThrows(NoSuchElementException.class, stack::pop);
+        assertThrows(NoSuchElementException.class, stack::peek);
+        stack.push(4);
+        stack.clear();
+        assertTrue(stack.isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new IntStack(-1));
+        assertEquals(32, IntStack.grownCapacity(16));
+        assertThrows(IllegalStateException.class, () -> IntStack.grownCapacity(Integer.MAX_VALUE - 8));
+    }
+}
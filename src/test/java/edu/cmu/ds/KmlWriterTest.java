@@ -0,0 +1,86 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KmlWriterTest {
+
+    private ListOfCrimes listOfCrimes;
+    private CrimeRecord crime1;
+    private CrimeRecord crime2;
+
+    @BeforeEach
+    void setUp() {
+        listOfCrimes = new ListOfCrimes();
+        crime1 = new CrimeRecord(100.5, 200.6, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        crime2 = new CrimeRecord(110.7, 210.8, 1400, "Elm St", "Assault", "2024-09-27", "54321", "41.1234", "-78.5678");
+        listOfCrimes.addCrime(crime1);
+        listOfCrimes.addCrime(crime2);
+    }
+
+    @Test
+    void testWriterMatchesToKML() throws IOException {
+        StringWriter out = new StringWriter();
+        try (KmlWriter writer = new KmlWriter(out)) {
+            writer.write(crime1);
+            writer.write(crime2);
+            assertEquals(2, writer.getPlacemarkCount());
+        }
+        assertEquals(listOfCrimes.toKML(), out.toString());
+    }
+
+    @Test
+    void testChannelAndStreamMatchToKML() throws IOException {
+        ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+        try (KmlWriter writer = KmlWriter.toChannel(Channels.newChannel(channelBytes))) {
+            writer.visit(crime1.x(), crime1.y(), crime1);
+            writer.visit(crime2.x(), crime2.y(), crime2);
+        }
+        assertEquals(listOfCrimes.toKML(), channelBytes.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+        try (KmlWriter writer = KmlWriter.toStream(streamBytes)) {
+            writer.write(crime1);
+            writer.write(crime2);
+        }
+        assertEquals(listOfCrimes.toKML(), streamBytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testKmzHoldsDocument() throws IOException {
+        ByteArrayOutputStream kmz = new ByteArrayOutputStream();
+        try (KmlWriter writer = KmlWriter.toKmz(kmz)) {
+            writer.write(crime1);
+            writer.write(crime2);
+        }
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(kmz.toByteArray()))) {
+            ZipEntry entry = zip.getNextEntry();
+            assertNotNull(entry);
+            assertEquals("doc.kml", entry.getName());
+            assertEquals(listOfCrimes.toKML(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            assertNull(zip.getNextEntry());
+        }
+    }
+
+    @Test
+    void testEscapesSpecialCharacters() throws IOException {
+        CrimeRecord crime = new CrimeRecord(1.0, 2.0, 1300, "Penn & 5th <A>", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        StringWriter out = new StringWriter();
+        try (KmlWriter writer = new KmlWriter(out)) {
+            writer.write(crime);
+        }
+        assertTrue(out.toString().contains("<description>Penn &amp; 5th &lt;A&gt;</description>"));
+    }
+}
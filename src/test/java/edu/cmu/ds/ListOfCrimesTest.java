@@ -3,6 +3,9 @@ package edu.cmu.ds;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ListOfCrimesTest {
@@ -83,4 +86,38 @@ class ListOfCrimesTest {
 
         assertEquals(expectedKML.trim(), listOfCrimes.toKML().trim());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSize() {
+        assertEquals(0, listOfCrimes.size());
+        listOfCrimes.addCrime(crime1);
+        listOfCrimes.addCrime(crime2);
+        assertEquals(2, listOfCrimes.size());
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        ListOfCrimes crimes = new ListOfCrimes(2);
+        for (int i = 0; i < 100_000; i++) {
+            crimes.addCrime(i % 2 == 0 ? crime1 : crime2);
+        }
+        assertEquals(100_000, crimes.size());
+        assertEquals(crime1, crimes.getCrime(99_998));
+        assertEquals(crime2, crimes.getCrime(99_999));
+        assertNull(crimes.getCrime(100_000));
+    }
+
+    @Test
+    void testIterator() {
+        listOfCrimes.addCrime(crime1);
+        listOfCrimes.addCrime(crime2);
+        listOfCrimes.addCrime(crime3);
+
+        Iterator<CrimeRecord> iterator = listOfCrimes.iterator();
+        assertEquals(crime1, iterator.next());
+        assertEquals(crime2, iterator.next());
+        assertEquals(crime3, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+}
@@ -0,0 +1,114 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest {
+
+    private CrimeRecord[] records;
+    private TwoDTree tree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(29);
+        records = new CrimeRecord[2000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+    }
+
+    @Test
+    void testRepeatedQueriesHitTheCache() {
+        QueryCache cache = new QueryCache(tree, 10, 100_000);
+        double[] lowerLeft = {1000, 2000};
+        double[] upperRight = {4000, 6000};
+        ListOfCrimes first = cache.findPointsInRange(lowerLeft, upperRight);
+        assertEquals(tree.findPointsInRange(lowerLeft, upperRight).toString(), first.toString());
+        assertSame(first, cache.findPointsInRange(new double[]{1000, 2000}, new double[]{4000, 6000}));
+        assertSame(first, cache.findPointsInRange(new double[]{1000, 2000}, new double[]{4000, 6000}));
+
+        Neighbor nearest = cache.nearestNeighbor(new double[]{0.0, 5000});
+        assertSame(nearest, cache.nearestNeighbor(new double[]{-0.0, 5000}));
+        assertEquals(tree.nearestNeighbor(new double[]{0, 5000}).getCrimeDetails(), nearest.getCrimeDetails());
+
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(0.6, cache.hitRate(), 1e-9);
+        assertEquals(2, cache.size());
+        assertEquals(first.size() + 1, cache.cachedRecords());
+    }
+
+    @Test
+    void testInsertAndDeleteInvalidate() {
+        QueryCache cache = new QueryCache(tree, 10, 100_000);
+        double[] lowerLeft = {0, 0};
+        double[] upperRight = {5000, 5000};
+        int before = cache.findPointsInRange(lowerLeft, upperRight).size();
+
+        CrimeRecord added = new CrimeRecord(2500, 2500, 1400, "Elm St", "Assault", "2024-09-28", "54321", "41.1234", "-80.5678");
+        tree.insert(new double[]{added.x(), added.y()}, added);
+        assertEquals(before + 1, cache.findPointsInRange(lowerLeft, upperRight).size());
+        assertEquals(added, cache.nearestNeighbor(new double[]{2500, 2500}).getCrimeDetails());
+        assertEquals(1, cache.invalidations());
+
+        assertTrue(tree.delete(added));
+        assertEquals(before, cache.findPointsInRange(lowerLeft, upperRight).size());
+        assertNotEquals(added, cache.nearestNeighbor(new double[]{2500, 2500}).getCrimeDetails());
+        assertEquals(2, cache.invalidations());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedWithinBounds() {
+        QueryCache cache = new QueryCache(tree, 3, 100_000);
+        for (int i = 0; i < 3; i++) {
+            cache.nearestNeighbor(new double[]{i, i});
+        }
+        cache.nearestNeighbor(new double[]{0, 0});
+        cache.nearestNeighbor(new double[]{3, 3});
+        assertEquals(1, cache.evictions());
+        assertEquals(3, cache.size());
+        // {1, 1} was the least recently used and is gone; {0, 0} was used again and stays
+        long misses = cache.misses();
+        cache.nearestNeighbor(new double[]{0, 0});
+        assertEquals(misses, cache.misses());
+        cache.nearestNeighbor(new double[]{1, 1});
+        assertEquals(misses + 1, cache.misses());
+
+        // The record bound evicts older results and keeps results larger than the bound out of the cache
+        QueryCache small = new QueryCache(tree, 100, 200);
+        double[] quarter = {2500, 2500};
+        ListOfCrimes a = small.findPointsInRange(new double[]{0, 0}, quarter);
+        ListOfCrimes b = small.findPointsInRange(new double[]{5000, 5000}, new double[]{7500, 7500});
+        assertTrue(a.size() + b.size() > 200 && a.size() <= 200 && b.size() <= 200, a.size() + " " + b.size());
+        assertEquals(1, small.size());
+        assertEquals(b.size(), small.cachedRecords());
+        assertEquals(1, small.evictions());
+        small.findPointsInRange(new double[]{0, 0}, new double[]{10_000, 10_000});
+        assertEquals(1, small.size());
+        small.clear();
+        assertEquals(0, small.size());
+        assertEquals(0, small.cachedRecords());
+    }
+
+    @Test
+    void testConcurrentTreeVersionsInvalidate() {
+        ConcurrentTwoDTree concurrent = new ConcurrentTwoDTree(tree);
+        QueryCache cache = new QueryCache(concurrent, 10, 100_000);
+        double[] lowerLeft = {0, 0};
+        double[] upperRight = {10_000, 10_000};
+        assertEquals(records.length, cache.findPointsInRange(lowerLeft, upperRight).size());
+        assertEquals(records.length, cache.findPointsInRange(lowerLeft, upperRight).size());
+        concurrent.insert(new double[]{1, 1}, records[0]);
+        assertEquals(records.length + 1, cache.findPointsInRange(lowerLeft, upperRight).size());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.invalidations());
+    }
+}
@@ -0,0 +1,154 @@
+package edu.cmu.ds;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsTest {
+
+    private TwoDTree tree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(37);
+        CrimeRecord[] records = new CrimeRecord[4000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", i % 4 == 0 ? "RAPE" : "ROBBERY", LocalDate.of(1991, 1, 1).plusDays(i % 365).toString(), "12345", "40.1234", "-79.5678");
+        }
+        tree = new TwoDTree();
+        tree.bulkLoad(records, records.length, false);
+        QueryMetrics.setEnabled(true);
+        QueryMetrics.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryMetrics.setEnabled(true);
+    }
+
+    @Test
+    void testQueriesRecordTheirWork() {
+        double[] lowerLeft = {1000, 1000};
+        double[] upperRight = {2000, 2000};
+        int found = tree.findPointsInRange(lowerLeft, upperRight).size();
+        QueryMetrics.Recorder range = QueryMetrics.of(QueryMetrics.Query.RANGE);
+        assertEquals(1, range.getQueries());
+        assertEquals(found, range.getResults());
+        // A small rectangle examines a small part of the tree and skips most subtrees
+        assertTrue(range.getNodesVisited() >= found && range.getNodesVisited() < tree.size() / 4, range.toString());
+        assertTrue(range.getPruningRatio() > 0.2, range.toString());
+
+        int rapes = tree.findPointsInRange(lowerLeft, upperRight, "RAPE").size();
+        assertEquals(2, range.getQueries());
+        assertEquals(found + rapes, range.getResults());
+
+        int count = tree.countInRange(lowerLeft, upperRight);
+        assertEquals(1, QueryMetrics.of(QueryMetrics.Query.COUNT).getQueries());
+        assertEquals(count, QueryMetrics.of(QueryMetrics.Query.COUNT).getResults());
+
+        tree.nearestNeighbor(new double[]{5000, 5000});
+        tree.kNearest(new double[]{5000, 5000}, 5);
+        tree.nearestNeighbor(new double[]{5000, 5000}, "RAPE");
+        tree.withinRadius(new double[]{5000, 5000}, 300);
+        tree.findPointsInRange(lowerLeft, upperRight, LocalDate.of(1991, 3, 1), LocalDate.of(1991, 3, 31));
+        assertEquals(1, QueryMetrics.of(QueryMetrics.Query.NEAREST).getResults());
+        assertEquals(2, QueryMetrics.of(QueryMetrics.Query.K_NEAREST).getQueries());
+        assertEquals(6, QueryMetrics.of(QueryMetrics.Query.K_NEAREST).getResults());
+        assertEquals(1, QueryMetrics.of(QueryMetrics.Query.RADIUS).getQueries());
+        assertEquals(1, QueryMetrics.of(QueryMetrics.Query.DATE_WINDOW).getQueries());
+        for (QueryMetrics.Query query : QueryMetrics.Query.values()) {
+            QueryMetrics.Recorder recorder = QueryMetrics.of(query);
+            assertTrue(recorder.getNodesVisited() > 0, recorder.toString());
+            assertTrue(recorder.getP50LatencyMicros() > 0 && recorder.getP50LatencyMicros() <= recorder.getP999LatencyMicros(), recorder.toString());
+        }
+
+        // A visitor that stops early is still recorded, with the records it received
+        tree.visitPointsInRange(lowerLeft, upperRight, (x, y, crimeRecord) -> false);
+        assertEquals(3, range.getQueries());
+        assertEquals(found + rapes + 1, range.getResults());
+    }
+
+    @Test
+    void testSwitchedOffRecordsNothing() {
+        QueryMetrics.setEnabled(false);
+        tree.findPointsInRange(new double[]{0, 0}, new double[]{5000, 5000});
+        tree.nearestNeighbor(new double[]{1, 1});
+        assertEquals(0, QueryMetrics.of(QueryMetrics.Query.RANGE).getQueries());
+        assertEquals(0, QueryMetrics.of(QueryMetrics.Query.NEAREST).getQueries());
+        assertFalse(QueryMetrics.of(QueryMetrics.Query.RANGE).isEnabled());
+
+        QueryMetrics.of(QueryMetrics.Query.COUNT).setEnabled(true);
+        assertTrue(QueryMetrics.isEnabled());
+        tree.nearestNeighbor(new double[]{1, 1});
+        assertEquals(1, QueryMetrics.of(QueryMetrics.Query.NEAREST).getQueries());
+        QueryMetrics.reset();
+        assertEquals(0, QueryMetrics.of(QueryMetrics.Query.NEAREST).getQueries());
+        assertEquals(0, QueryMetrics.of(QueryMetrics.Query.NEAREST).getP99LatencyMicros());
+    }
+
+    @Test
+    void testHistogramPercentilesWithinBucketPrecision() {
+        for (long nanos : new long[]{0, 1, 15, 16, 17, 100, 1000, 123_456, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= nanos);
+            assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.upperBound(bucket)));
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < nanos);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i * 10L);
+        }
+        assertEquals(100_000, histogram.count());
+        assertEquals(500_000, histogram.percentile(0.5), 500_000 * 0.125);
+        assertEquals(990_000, histogram.percentile(0.99), 990_000 * 0.125);
+        assertEquals(999_000, histogram.percentile(0.999), 999_000 * 0.125);
+        assertTrue(histogram.percentile(0.5) <= histogram.percentile(0.99));
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(0));
+    }
+
+    @Test
+    void testExposedOverJmxAndFlightRecorder(@TempDir Path directory) throws Exception {
+        QueryMetrics.registerMBeans();
+        QueryMetrics.registerMBeans();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("edu.cmu.ds:type=QueryMetrics,name=COUNT");
+        tree.countInRange(new double[]{0, 0}, new double[]{3000, 3000});
+        assertEquals(1L, server.getAttribute(name, "Queries"));
+        assertTrue((Double) server.getAttribute(name, "P99LatencyMicros") > 0);
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Queries"));
+
+        Path file = directory.resolve("queries.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("edu.cmu.ds.Query");
+            recording.start();
+            tree.countInRange(new double[]{0, 0}, new double[]{3000, 3000});
+            tree.kNearest(new double[]{0, 0}, 3);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("edu.cmu.ds.Query")).toList();
+        assertEquals(2, events.size());
+        assertEquals("COUNT", events.get(0).getString("query"));
+        assertEquals(3, events.get(1).getLong("results"));
+        assertTrue(events.get(1).getLong("nodesVisited") > 0);
+    }
+}
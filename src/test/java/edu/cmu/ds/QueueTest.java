@@ -63,4 +63,29 @@ class QueueTest {
     void testPeekOnEmptyQueue() {
         assertNull(queue.peek()); // Should return null when peeking an empty queue
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGrowsAcrossTheEndOfTheRing() {
+        Queue<Integer> small = new Queue<>(4);
+        int next = 0;
+        int expected = 0;
+        // Keep the head moving around the ring while the queue grows, so that growth copies wrapped elements
+        for (int round = 0; round < 200; round++) {
+            small.enqueue(next++);
+            small.enqueue(next++);
+            small.enqueue(next++);
+            assertEquals(expected++, small.dequeue());
+            assertEquals(expected++, small.dequeue());
+        }
+        assertEquals(next - expected, small.size());
+        while (!small.isEmpty()) {
+            assertEquals(expected++, small.dequeue());
+        }
+        assertEquals(next, expected);
+        assertNull(small.dequeue());
+        assertThrows(IllegalArgumentException.class, () -> new Queue<Integer>(-1));
+        assertEquals(1, Queue.capacityFor(0));
+        assertEquals(16, Queue.capacityFor(16));
+        assertEquals(32, Queue.capacityFor(17));
+    }
+}
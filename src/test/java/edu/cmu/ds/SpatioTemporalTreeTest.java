@@ -0,0 +1,102 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatioTemporalTreeTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(1990, 1, 1);
+
+    private CrimeRecord[] records;
+    private SpatioTemporalTree temporalTree;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        records = new CrimeRecord[5000];
+        for (int i = 0; i < records.length; i++) {
+            double x = Math.floor(random.nextDouble() * 1000);
+            double y = Math.floor(random.nextDouble() * 1000);
+            LocalDate date = FIRST_DAY.plusDays(random.nextInt(3650));
+            // Mix the two date forms of the data set, and leave a few dates unparseable
+            String text = i % 100 == 0 ? "unknown" : i % 2 == 0 ? date.toString()
+                    : date.getMonthValue() + "/" + date.getDayOfMonth() + "/" + String.format("%02d", date.getYear() % 100);
+            records[i] = new CrimeRecord(x, y, 1300, "Main St", "Robbery", text, "12345", "40.1234", "-79.5678");
+        }
+        CrimeStore store = new CrimeStore();
+        for (CrimeRecord record : records) {
+            store.add(record);
+        }
+        temporalTree = new SpatioTemporalTree(store);
+    }
+
+    private int bruteForceCount(double[] lowerLeft, double[] upperRight, LocalDate fromDate, LocalDate toDate) {
+        int count = 0;
+        for (CrimeRecord record : records) {
+            int day = CrimeStore.parseEpochDay(record.date());
+            if (record.x() >= lowerLeft[0] && record.x() <= upperRight[0] && record.y() >= lowerLeft[1] && record.y() <= upperRight[1]
+                    && day != CrimeStore.NO_DATE && day >= fromDate.toEpochDay() && day <= toDate.toEpochDay()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testFindPointsInRangeMatchesBruteForce() {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            double x1 = random.nextDouble() * 1000;
+            double y1 = random.nextDouble() * 1000;
+            double[] lowerLeft = {x1, y1};
+            double[] upperRight = {x1 + random.nextDouble() * 500, y1 + random.nextDouble() * 500};
+            LocalDate fromDate = FIRST_DAY.plusDays(random.nextInt(3650));
+            LocalDate toDate = fromDate.plusDays(random.nextInt(400));
+
+            ListOfCrimes found = temporalTree.findPointsInRange(lowerLeft, upperRight, fromDate, toDate);
+            assertEquals(bruteForceCount(lowerLeft, upperRight, fromDate, toDate), found.size());
+            for (CrimeRecord record : found) {
+                LocalDate date = LocalDate.ofEpochDay(CrimeStore.parseEpochDay(record.date()));
+                assertFalse(date.isBefore(fromDate) || date.isAfter(toDate));
+            }
+        }
+    }
+
+    @Test
+    void testWindowBoundariesAndUnparseableDates() {
+        double[] lowerLeft = {0, 0};
+        double[] upperRight = {1000, 1000};
+        assertEquals(records.length - 50, temporalTree.findPointsInRange(lowerLeft, upperRight, LocalDate.MIN, LocalDate.MAX).size());
+        assertEquals(0, temporalTree.findPointsInRange(lowerLeft, upperRight, FIRST_DAY, FIRST_DAY.minusDays(1)).size());
+
+        LocalDate day = LocalDate.parse(records[2].date());
+        assertEquals(bruteForceCount(lowerLeft, upperRight, day, day), temporalTree.findPointsInRange(lowerLeft, upperRight, day, day).size());
+        assertTrue(temporalTree.findPointsInRange(lowerLeft, upperRight, day, day).size() >= 1);
+
+        int[] visited = new int[1];
+        assertFalse(temporalTree.visitPointsInRange(lowerLeft, upperRight, LocalDate.MIN, LocalDate.MAX, (x, y, index) -> ++visited[0] < 3));
+        assertEquals(3, visited[0]);
+    }
+
+    @Test
+    void testTwoDTreeRebuildsIndexAfterInsert() {
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        double[] lowerLeft = {0, 0};
+        double[] upperRight = {1000, 1000};
+        LocalDate march = LocalDate.of(1991, 3, 1);
+        int before = tree.findPointsInRange(lowerLeft, upperRight, march, march.plusDays(30)).size();
+        assertEquals(bruteForceCount(lowerLeft, upperRight, march, march.plusDays(30)), before);
+
+        CrimeRecord added = new CrimeRecord(500.5, 500.5, 1300, "Elm St", "Assault", "3/15/91", "54321", "41.1234", "-80.5678");
+        tree.insert(new double[]{added.x(), added.y()}, added);
+        ListOfCrimes after = tree.findPointsInRange(new double[]{500, 500}, new double[]{501, 501}, march, march.plusDays(30));
+        assertEquals(before + 1, tree.findPointsInRange(lowerLeft, upperRight, march, march.plusDays(30)).size());
+        assertTrue(after.toString().contains("Elm St"));
+    }
+}
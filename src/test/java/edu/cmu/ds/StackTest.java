@@ -64,4 +64,19 @@ class StackTest {
     void testPeekOnEmptyStack() {
         assertNull(stack.peek()); // Should return null when peeking an empty stack
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        Stack<Integer> small = new Stack<>(0);
+        for (int i = 0; i < 1000; i++) {
+            small.push(i);
+        }
+        assertEquals(1000, small.size());
+        for (int i = 999; i >= 0; i--) {
+            assertEquals(i, small.peek());
+            assertEquals(i, small.pop());
+        }
+        assertNull(small.pop());
+        assertThrows(IllegalArgumentException.class, () -> new Stack<Integer>(-1));
+    }
+}
@@ -0,0 +1,195 @@
+package edu.cmu.ds;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeSnapshotTest {
+
+    private static final String HEADER = "X,Y,Time,Street,Offense,Date,Tract,Lat,Long";
+
+    @TempDir
+    Path tempDir;
+
+    private Path writeCsv(int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder csv = new StringBuilder(HEADER);
+        String[] offenses = {"ROBBERY", "RAPE", "AGGRAVATED ASSAULT", "MURDER/MANSLAUGHTER"};
+        for (int i = 0; i < count; i++) {
+            csv.append('\r').append(1_300_000 + random.nextInt(100_000)).append('.').append(random.nextInt(1000))
+                    .append(',').append(380_000 + random.nextInt(60_000)).append(",32874,")
+                    .append(random.nextInt(50)).append(" MAIN ST,").append(offenses[random.nextInt(offenses.length)])
+                    .append(",1/1/90,160600,40.4").append(i).append(",-79.9").append(i);
+        }
+        Path file = tempDir.resolve("crimes.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static CrimeRecord[] preorder(TwoDTree tree) {
+        int[] indexes = new int[tree.size()];
+        tree.toPreorder(indexes, new byte[tree.size()]);
+        CrimeRecord[] records = new CrimeRecord[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            records[i] = tree.getStore().get(indexes[i]);
+        }
+        return records;
+    }
+
+    @Test
+    void testRoundTripKeepsStructureAndRecords() throws IOException {
+        Path csv = writeCsv(3000, 1);
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TwoDTree built = TreeSnapshot.loadOrBuild(csv, snapshot);
+        assertTrue(Files.exists(snapshot));
+
+        TwoDTree loaded = TreeSnapshot.read(snapshot, csv);
+        assertNotNull(loaded);
+        assertEquals(built.size(), loaded.size());
+        assertEquals(built.height(), loaded.height());
+        assertArrayEquals(preorder(built), preorder(loaded));
+
+        double[] lowerLeft = {1_320_000, 390_000};
+        double[] upperRight = {1_370_000, 420_000};
+        assertEquals(built.findPointsInRange(lowerLeft, upperRight).size(), loaded.countInRange(lowerLeft, upperRight));
+        double[] point = {1_350_000, 400_000};
+        assertEquals(built.nearestNeighbor(point).getDistance(), loaded.nearestNeighbor(point).getDistance());
+    }
+
+    @Test
+    void testRoundTripKeepsRecordsSharingCoordinates() throws IOException {
+        // 2000 records at 100 locations
+        Random random = new Random(7);
+        TwoDTree tree = new TwoDTree();
+        CrimeRecord[] records = new CrimeRecord[2000];
+        for (int i = 0; i < records.length; i++) {
+            int location = random.nextInt(100);
+            records[i] = new CrimeRecord(1_300_000 + location * 101, 380_000 + location * 37, 32874, i + " MAIN ST", "ROBBERY", "1/1/90", "160600", "40.4", "-79.9");
+        }
+        tree.bulkLoad(records, records.length, false);
+        assertTrue(tree.delete(records[0]));
+        Path snapshot = tempDir.resolve("duplicates.snapshot");
+        TreeSnapshot.write(tree, snapshot, 0, 0, 0);
+
+        TwoDTree loaded = TreeSnapshot.read(snapshot, 0, 0, 0);
+        assertNotNull(loaded);
+        assertEquals(tree.size(), loaded.size());
+        assertEquals(tree.nodeCount(), loaded.nodeCount());
+        assertEquals(tree.height(), loaded.height());
+        assertArrayEquals(preorder(tree), preorder(loaded));
+        double[] point = {records[1].x(), records[1].y()};
+        assertEquals(tree.countInRange(point, point), loaded.findPointsInRange(point, point).size());
+        assertTrue(loaded.delete(records[1]));
+        assertEquals(tree.countInRange(point, point) - 1, loaded.countInRange(point, point));
+    }
+
+    @Test
+    void testStaleSnapshotIsRebuilt() throws IOException {
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TreeSnapshot.loadOrBuild(writeCsv(500, 1), snapshot);
+
+        Path csv = writeCsv(800, 2);
+        assertNull(TreeSnapshot.read(snapshot, csv));
+        TwoDTree rebuilt = TreeSnapshot.loadOrBuild(csv, snapshot);
+        assertEquals(800, rebuilt.size());
+        assertNotNull(TreeSnapshot.read(snapshot, csv));
+    }
+
+    @Test
+    void testRebuiltSnapshotHoldsChecksumOfTheCsv() throws IOException {
+        Path csv = writeCsv(500, 5);
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TreeSnapshot.loadOrBuild(csv, snapshot);
+
+        // The checksum taken while loading matches one computed from the file afterwards
+        assertNotNull(TreeSnapshot.read(snapshot, Files.size(csv), TreeSnapshot.modified(csv) + 1, TreeSnapshot.checksum(csv)));
+    }
+
+    @Test
+    void testTouchedCsvIsCheckedByItsChecksum() throws IOException {
+        Path csv = writeCsv(500, 4);
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TreeSnapshot.loadOrBuild(csv, snapshot);
+
+        // Same contents, new modification time: the checksum matches and the snapshot takes the new time
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(TreeSnapshot.modified(csv) + 60_000));
+        assertNotNull(TreeSnapshot.read(snapshot, csv));
+        assertNotNull(TreeSnapshot.read(snapshot, Files.size(csv), TreeSnapshot.modified(csv), 0));
+        assertNull(TreeSnapshot.read(snapshot, Files.size(csv), TreeSnapshot.modified(csv) + 1, 0));
+
+        // Same size and modification time, other contents: not noticed; other modification time too: stale
+        byte[] bytes = Files.readAllBytes(csv);
+        bytes[bytes.length - 1] = (byte) (bytes[bytes.length - 1] == '1' ? '2' : '1');
+        long modified = TreeSnapshot.modified(csv);
+        Files.write(csv, bytes);
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(modified));
+        assertNotNull(TreeSnapshot.read(snapshot, csv));
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(modified + 60_000));
+        assertNull(TreeSnapshot.read(snapshot, csv));
+    }
+
+    @Test
+    void testCorruptSnapshotIsRebuilt() throws IOException {
+        Path csv = writeCsv(500, 3);
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TreeSnapshot.loadOrBuild(csv, snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> TreeSnapshot.read(snapshot, csv));
+        assertEquals(500, TreeSnapshot.loadOrBuild(csv, snapshot).size());
+        assertEquals(bytes.length, Files.size(snapshot));
+    }
+
+    @Test
+    void testEmptyTreeAndNullFields() throws IOException {
+        Path snapshot = tempDir.resolve("empty.snapshot");
+        TreeSnapshot.write(new TwoDTree(), snapshot, 0, 0, 0);
+        TwoDTree empty = TreeSnapshot.read(snapshot, 0, 0, 0);
+        assertNotNull(empty);
+        assertEquals(0, empty.size());
+
+        TwoDTree tree = new TwoDTree();
+        tree.insert(new double[]{1, 2}, new CrimeRecord(1, 2, 5, null, "ROBBERY", null, "1", "40.1", "-79.1"));
+        tree.insert(new double[]{3, 4}, new CrimeRecord(3, 4, 6, "Main St", "RAPE", "1/2/90", "2", "40.10", null));
+        TreeSnapshot.write(tree, snapshot, 0, 0, 0);
+        assertArrayEquals(preorder(tree), preorder(TreeSnapshot.read(snapshot, 0, 0, 0)));
+    }
+
+    @Test
+    void testSnapshotOfTreeWithDeletesHoldsLiveRecords() throws IOException {
+        Path csv = writeCsv(2000, 5);
+        Path snapshot = tempDir.resolve("crimes.snapshot");
+        TwoDTree tree = TreeSnapshot.loadOrBuild(csv, snapshot);
+        CrimeRecord[] records = preorder(tree);
+        for (int i = 0; i < records.length; i += 3) {
+            assertTrue(tree.delete(records[i]));
+        }
+        assertTrue(tree.deletedCount() > 0);
+        TreeSnapshot.write(tree, snapshot, Files.size(csv), TreeSnapshot.modified(csv), TreeSnapshot.checksum(csv));
+
+        TwoDTree loaded = TreeSnapshot.read(snapshot, csv);
+        assertNotNull(loaded);
+        assertEquals(tree.size(), loaded.size());
+        assertEquals(0, loaded.deletedCount());
+        String[] expected = new String[records.length - (records.length + 2) / 3];
+        for (int i = 0, j = 0; i < records.length; i++) {
+            if (i % 3 != 0) {
+                expected[j++] = records[i].toString();
+            }
+        }
+        String[] actual = Arrays.stream(preorder(loaded)).map(CrimeRecord::toString).toArray(String[]::new);
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+    }
+}
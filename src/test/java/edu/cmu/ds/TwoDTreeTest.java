@@ -5,6 +5,16 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class TwoDTreeTest {
 
@@ -74,4 +84,735 @@ class TwoDTreeTest {
         assertNotNull(tree);
         // You would check here if crime records are correctly loaded and inserted into the tree
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBulkLoadBuildsBalancedTree() {
+        // Records sorted by x, which would make record-by-record insertion degenerate into a chain
+        int count = 10_000;
+        CrimeRecord[] records = new CrimeRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new CrimeRecord(i, i % 100, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records, count, false);
+
+        assertEquals(count, tree.size());
+        assertEquals(14, tree.height());  // ceil(log2(10001))
+        int expected = 0;
+        for (int i = 100; i <= 1100; i++) {
+            if (i % 100 <= 49) {
+                expected++;
+            }
+        }
+        assertEquals(expected, tree.findPointsInRange(new double[]{100.0, 0.0}, new double[]{1100.0, 49.0}).size());
+    }
+
+    @Test
+    void testParallelBulkLoadMatchesSequential() {
+        int count = 50_000;
+        CrimeRecord[] sequential = new CrimeRecord[count];
+        CrimeRecord[] parallel = new CrimeRecord[count];
+        for (int i = 0; i < count; i++) {
+            sequential[i] = new CrimeRecord((i * 7919L) % count, (i * 104729L) % 1000, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+            parallel[i] = sequential[i];
+        }
+
+        TwoDTree sequentialTree = new TwoDTree();
+        sequentialTree.bulkLoad(sequential, count, false);
+        TwoDTree parallelTree = new TwoDTree();
+        parallelTree.bulkLoad(parallel, count, true);
+
+        assertEquals(sequentialTree.height(), parallelTree.height());
+        double[] lowerLeft = {1000.0, 100.0};
+        double[] upperRight = {20000.0, 400.0};
+        assertEquals(sequentialTree.findPointsInRange(lowerLeft, upperRight).size(), parallelTree.findPointsInRange(lowerLeft, upperRight).size());
+        assertEquals(sequentialTree.nearestNeighbor(new double[]{12345.5, 500.5}).getCrimeDetails(),
+                parallelTree.nearestNeighbor(new double[]{12345.5, 500.5}).getCrimeDetails());
+    }
+
+    @Test
+    void testInsertAfterBulkLoad() {
+        CrimeRecord crime1 = new CrimeRecord(10.0, 20.0, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        CrimeRecord crime2 = new CrimeRecord(15.0, 25.0, 1400, "Elm St", "Assault", "2024-09-28", "54321", "41.1234", "-80.5678");
+        CrimeRecord crime3 = new CrimeRecord(5.0, 10.0, 1500, "Oak St", "Burglary", "2024-09-28", "67890", "42.1234", "-81.5678");
+
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(new CrimeRecord[]{crime1, crime2}, 2, false);
+        tree.insert(new double[]{crime3.x(), crime3.y()}, crime3);
+
+        assertEquals(3, tree.size());
+        assertEquals(crime3, tree.nearestNeighbor(new double[]{4.0, 9.0}).getCrimeDetails());
+    }
+
+    @Test
+    void testDegenerateTreeOnSmallStack() throws InterruptedException {
+        // A chain where every node is the right child of the previous one, far deeper than a recursive walk could handle.
+        // Inserts rebalance, so the chain is built directly, as a snapshot of an old unbalanced tree would be.
+        int count = 20_000;
+        CrimeStore store = new CrimeStore(count);
+        byte[] shape = new byte[count];
+        for (int i = 0; i < count; i++) {
+            store.add(new CrimeRecord(i, i, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678"));
+            shape[i] = (byte) (i < count - 1 ? 2 : 0);
+        }
+        TwoDTree tree = TwoDTree.fromPreorder(store, shape);
+
+        int[] height = new int[1];
+        int[] inRange = new int[1];
+        CrimeRecord[] nearest = new CrimeRecord[1];
+        Thread worker = new Thread(null, () -> {
+            height[0] = tree.height();
+            inRange[0] = tree.findPointsInRange(new double[]{1000.0, 1000.0}, new double[]{1999.0, 1999.0}).size();
+            nearest[0] = tree.nearestNeighbor(new double[]{15_000.2, 15_000.1}).getCrimeDetails();
+        }, "small-stack", 64 * 1024);
+        worker.start();
+        worker.join();
+
+        assertEquals(count, height[0]);
+        assertEquals(1000, inRange[0]);
+        assertEquals(15_000.0, nearest[0].x());
+    }
+
+    private static CrimeRecord[] randomRecords(int count, long seed) {
+        Random random = new Random(seed);
+        CrimeRecord[] records = new CrimeRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        return records;
+    }
+
+    @Test
+    void testNearestNeighborMatchesBruteForce() {
+        CrimeRecord[] records = randomRecords(3000, 3);
+        TwoDTree tree = new TwoDTree();
+        for (CrimeRecord record : records) {
+            tree.insert(new double[]{record.x(), record.y()}, record);
+        }
+
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            double best = Double.MAX_VALUE;
+            for (CrimeRecord record : records) {
+                best = Math.min(best, Math.hypot(record.x() - point[0], record.y() - point[1]));
+            }
+            assertEquals(best, tree.nearestNeighbor(point).getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void testKNearestMatchesBruteForce() {
+        CrimeRecord[] records = randomRecords(3000, 13);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+
+        Random random = new Random(17);
+        for (int i = 0; i < 100; i++) {
+            double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            double[] expected = new double[records.length];
+            for (int j = 0; j < records.length; j++) {
+                expected[j] = Math.hypot(records[j].x() - point[0], records[j].y() - point[1]);
+            }
+            Arrays.sort(expected);
+
+            Neighbor[] neighbors = tree.kNearest(point, 20);
+            assertEquals(20, neighbors.length);
+            for (int j = 0; j < neighbors.length; j++) {
+                assertEquals(expected[j], neighbors[j].getDistance(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void testKNearestSmallTree() {
+        CrimeRecord crime1 = new CrimeRecord(10.0, 20.0, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        CrimeRecord crime2 = new CrimeRecord(15.0, 25.0, 1400, "Elm St", "Assault", "2024-09-28", "54321", "41.1234", "-80.5678");
+        TwoDTree tree = new TwoDTree();
+        tree.insert(new double[]{crime1.x(), crime1.y()}, crime1);
+        tree.insert(new double[]{crime2.x(), crime2.y()}, crime2);
+
+        Neighbor[] neighbors = tree.kNearest(new double[]{14.0, 24.0}, 5);
+        assertEquals(2, neighbors.length);
+        assertEquals(crime2, neighbors[0].getCrimeDetails());
+        assertEquals(crime1, neighbors[1].getCrimeDetails());
+        assertEquals(0, tree.kNearest(new double[]{14.0, 24.0}, 0).length);
+        assertEquals(0, new TwoDTree().kNearest(new double[]{14.0, 24.0}, 3).length);
+    }
+
+    @Test
+    void testWithinRadiusMatchesBruteForce() {
+        CrimeRecord[] records = randomRecords(3000, 23);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+
+        Random random = new Random(29);
+        for (int i = 0; i < 100; i++) {
+            double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            double radius = random.nextDouble() * 1000;
+            int expected = 0;
+            for (CrimeRecord record : records) {
+                if (Math.hypot(record.x() - point[0], record.y() - point[1]) <= radius) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, tree.withinRadius(point, radius).size());
+        }
+    }
+
+    @Test
+    void testCountInRangeMatchesFindPointsInRange() {
+        CrimeRecord[] records = randomRecords(5000, 31);
+        TwoDTree bulkTree = new TwoDTree();
+        bulkTree.bulkLoad(records.clone(), records.length, true);
+        TwoDTree insertedTree = new TwoDTree();
+        for (CrimeRecord record : records) {
+            insertedTree.insert(new double[]{record.x(), record.y()}, record);
+        }
+
+        Random random = new Random(37);
+        for (int i = 0; i < 200; i++) {
+            double x1 = random.nextDouble() * 10_000;
+            double y1 = random.nextDouble() * 10_000;
+            double[] lowerLeft = {x1, y1};
+            double[] upperRight = {x1 + random.nextDouble() * 5000, y1 + random.nextDouble() * 5000};
+            int expected = bulkTree.findPointsInRange(lowerLeft, upperRight).size();
+            assertEquals(expected, bulkTree.countInRange(lowerLeft, upperRight));
+            assertEquals(expected, insertedTree.countInRange(lowerLeft, upperRight));
+        }
+        assertEquals(records.length, bulkTree.countInRange(new double[]{0, 0}, new double[]{10_000, 10_000}));
+        assertEquals(0, new TwoDTree().countInRange(new double[]{0, 0}, new double[]{10_000, 10_000}));
+    }
+
+    @Test
+    void testStreamingRangeQueriesMatchFindPointsInRange() {
+        CrimeRecord[] records = randomRecords(3000, 41);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        double[] lowerLeft = {2000.0, 3000.0};
+        double[] upperRight = {6000.0, 8000.0};
+        ListOfCrimes expected = tree.findPointsInRange(lowerLeft, upperRight);
+
+        ListOfCrimes consumed = new ListOfCrimes();
+        tree.findPointsInRange(lowerLeft, upperRight, consumed::addCrime);
+        assertEquals(expected.toString(), consumed.toString());
+
+        ListOfCrimes iterated = new ListOfCrimes();
+        Iterator<CrimeRecord> iterator = tree.rangeIterator(lowerLeft, upperRight);
+        while (iterator.hasNext()) {
+            iterated.addCrime(iterator.next());
+        }
+        assertEquals(expected.toString(), iterated.toString());
+        assertThrows(NoSuchElementException.class, iterator::next);
+
+        assertEquals(expected.size(), tree.rangeStream(lowerLeft, upperRight).count());
+    }
+
+    @Test
+    void testVisitPointsInRangeStopsEarly() {
+        CrimeRecord[] records = randomRecords(3000, 43);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+
+        int[] visited = new int[1];
+        boolean completed = tree.visitPointsInRange(new double[]{0, 0}, new double[]{10_000, 10_000}, (x, y, crimeRecord) -> {
+            assertEquals(crimeRecord.x(), x);
+            assertEquals(crimeRecord.y(), y);
+            return ++visited[0] < 10;
+        });
+        assertFalse(completed);
+        assertEquals(10, visited[0]);
+        assertEquals(5, tree.rangeStream(new double[]{0, 0}, new double[]{10_000, 10_000}).limit(5).count());
+    }
+
+    @Test
+    void testOffenseFilteredQueriesMatchBruteForce() {
+        // 80 offense types, so ids past 62 share the overflow bit of the offense masks
+        Random random = new Random(47);
+        CrimeRecord[] records = new CrimeRecord[4000];
+        for (int i = 0; i < records.length; i++) {
+            String offense = random.nextInt(10) == 0 ? "RARE " + random.nextInt(75) : random.nextBoolean() ? "ROBBERY" : "ASSAULT";
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    "Main St", offense, "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        TwoDTree bulkTree = new TwoDTree();
+        bulkTree.bulkLoad(records.clone(), records.length, true);
+        TwoDTree insertedTree = new TwoDTree();
+        for (CrimeRecord record : records) {
+            insertedTree.insert(new double[]{record.x(), record.y()}, record);
+        }
+
+        String[][] filters = {{"ROBBERY"}, {"RARE 3", "RARE 70"}, {"RARE 74", "ASSAULT", "NO SUCH OFFENSE"}};
+        for (TwoDTree tree : new TwoDTree[]{bulkTree, insertedTree}) {
+            for (int i = 0; i < 50; i++) {
+                String[] offenses = filters[i % filters.length];
+                double[] lowerLeft = {random.nextDouble() * 5000, random.nextDouble() * 5000};
+                double[] upperRight = {lowerLeft[0] + random.nextDouble() * 5000, lowerLeft[1] + random.nextDouble() * 5000};
+                ListOfCrimes expected = new ListOfCrimes();
+                for (CrimeRecord record : tree.findPointsInRange(lowerLeft, upperRight)) {
+                    if (Arrays.asList(offenses).contains(record.offense())) {
+                        expected.addCrime(record);
+                    }
+                }
+                assertEquals(expected.toString(), tree.findPointsInRange(lowerLeft, upperRight, offenses).toString());
+
+                double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+                double[] distances = Arrays.stream(records).filter(record -> Arrays.asList(offenses).contains(record.offense()))
+                        .mapToDouble(record -> Math.hypot(record.x() - point[0], record.y() - point[1])).sorted().toArray();
+                Neighbor[] neighbors = tree.kNearest(point, 10, offenses);
+                assertEquals(Math.min(10, distances.length), neighbors.length);
+                for (int j = 0; j < neighbors.length; j++) {
+                    assertEquals(distances[j], neighbors[j].getDistance(), 1e-9);
+                    assertTrue(Arrays.asList(offenses).contains(neighbors[j].getCrimeDetails().offense()));
+                }
+                assertEquals(distances[0], tree.nearestNeighbor(point, offenses).getDistance(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void testOffenseFilteredQueriesWithoutMatches() {
+        CrimeRecord[] records = randomRecords(500, 53);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        double[] lowerLeft = {0, 0};
+        double[] upperRight = {10_000, 10_000};
+
+        assertEquals(500, tree.findPointsInRange(lowerLeft, upperRight, "Robbery").size());
+        assertEquals(0, tree.findPointsInRange(lowerLeft, upperRight, "Assault").size());
+        assertEquals(0, tree.findPointsInRange(lowerLeft, upperRight, new String[0]).size());
+        assertEquals(0, tree.kNearest(new double[]{5000, 5000}, 3, "Assault").length);
+        Neighbor none = tree.nearestNeighbor(new double[]{5000, 5000}, "Assault");
+        assertNull(none.getCrimeDetails());
+        assertEquals(Double.MAX_VALUE, none.getDistance());
+        assertNull(new TwoDTree().nearestNeighbor(new double[]{5000, 5000}, "Robbery").getCrimeDetails());
+    }
+
+    @Test
+    void testSortedAndClusteredInsertsStayBalanced() {
+        TwoDTree sorted = new TwoDTree();
+        for (int i = 0; i < 20_000; i++) {
+            CrimeRecord crime = new CrimeRecord(i, i, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+            sorted.insert(new double[]{crime.x(), crime.y()}, crime);
+        }
+        // log base 1/0.7 of 20,000 is 27.8, against a minimal height of 15
+        assertTrue(sorted.height() <= 28, "height " + sorted.height());
+        assertTrue(sorted.balanceRatio() <= 1.94, "ratio " + sorted.balanceRatio());
+        assertEquals(1000, sorted.findPointsInRange(new double[]{1000.0, 1000.0}, new double[]{1999.0, 1999.0}).size());
+        assertEquals(20_000, sorted.countInRange(new double[]{0, 0}, new double[]{20_000, 20_000}));
+
+        // Many crimes along one street: a few distinct x values and repeated points, inserted after a bulk load
+        CrimeRecord[] records = randomRecords(5000, 59);
+        TwoDTree clustered = new TwoDTree();
+        clustered.bulkLoad(records.clone(), records.length, false);
+        assertEquals(1.0, clustered.balanceRatio());
+        Random random = new Random(61);
+        CrimeRecord[] street = new CrimeRecord[20_000];
+        for (int i = 0; i < street.length; i++) {
+            street[i] = new CrimeRecord(5000 + random.nextInt(3), i / 4, 1300, "Penn Ave", "Assault", "2024-09-28", "12345", "40.1234", "-79.5678");
+            clustered.insert(new double[]{street[i].x(), street[i].y()}, street[i]);
+        }
+        assertTrue(clustered.height() <= 30, "height " + clustered.height());
+        assertEquals(25_000, clustered.countInRange(new double[]{0, 0}, new double[]{10_000, 10_000}));
+        assertEquals(street.length, clustered.findPointsInRange(new double[]{0, 0}, new double[]{10_000, 10_000}, "Assault").size());
+        for (int i = 0; i < 200; i++) {
+            double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            double best = Double.MAX_VALUE;
+            for (CrimeRecord record : records) {
+                best = Math.min(best, Math.hypot(record.x() - point[0], record.y() - point[1]));
+            }
+            for (CrimeRecord record : street) {
+                best = Math.min(best, Math.hypot(record.x() - point[0], record.y() - point[1]));
+            }
+            assertEquals(best, clustered.nearestNeighbor(point).getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void testBalanceRatioOfSmallTrees() {
+        TwoDTree tree = new TwoDTree();
+        assertEquals(1.0, tree.balanceRatio());
+        CrimeRecord crime = new CrimeRecord(10.0, 20.0, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        tree.insert(new double[]{crime.x(), crime.y()}, crime);
+        assertEquals(1.0, tree.balanceRatio());
+        tree.insert(new double[]{crime.x(), crime.y()}, crime);
+        tree.insert(new double[]{crime.x(), crime.y()}, crime);
+        // Three equal points share one node instead of forming a chain
+        assertEquals(1.0, tree.balanceRatio());
+        for (int i = 0; i < 100; i++) {
+            tree.insert(new double[]{crime.x(), crime.y()}, crime);
+        }
+        assertEquals(1, tree.height());
+        assertEquals(1, tree.nodeCount());
+        assertEquals(103, tree.size());
+    }
+
+    @Test
+    void testManyInsertsAtTheSameCoordinates() {
+        TwoDTree tree = new TwoDTree();
+        double[] point = {10.0, 20.0};
+        CrimeRecord[] crimes = new CrimeRecord[1001];
+        for (int i = 0; i < crimes.length; i++) {
+            crimes[i] = new CrimeRecord(10.0, 20.0, 1300, i + " Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(point, crimes[i]);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            assertTrue(tree.delete(crimes[i]));
+        }
+        tree.insert(point, crimes[1000]);
+
+        ListOfCrimes found = tree.findPointsInRange(point, point);
+        assertEquals(667, tree.size());
+        assertEquals(667, found.size());
+        List<String> streets = new ArrayList<>();
+        for (int i = 0; i < found.size(); i++) {
+            streets.add(found.getCrime(i).street());
+        }
+        assertEquals(667, streets.stream().distinct().count());
+        assertFalse(streets.contains("999 Main St"));
+        assertTrue(streets.contains("998 Main St"));
+        assertTrue(streets.contains("1000 Main St"));
+        assertEquals(1, tree.nodeCount());
+    }
+
+    @Test
+    void testRecordsAtTheSameCoordinatesShareANode() {
+        // 3000 records at 300 locations, with the offenses of a location mixed
+        Random random = new Random(89);
+        String[] offenses = {"Robbery", "Burglary", "Arson"};
+        CrimeRecord[] records = new CrimeRecord[3000];
+        for (int i = 0; i < records.length; i++) {
+            int location = random.nextInt(300);
+            records[i] = new CrimeRecord(location * 33.0, (location * 7919) % 10_000, 1300, i + " Main St", offenses[i % 3],
+                    "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        ArrayList<CrimeRecord> live = new ArrayList<>(Arrays.asList(records));
+        assertEquals(records.length, tree.size());
+        assertTrue(tree.nodeCount() <= 300, "nodes " + tree.nodeCount());
+        assertEquals(32 - Integer.numberOfLeadingZeros(tree.nodeCount()), tree.height());
+        assertMatchesBruteForce(tree, live, random);
+        for (TraversalOrder order : TraversalOrder.values()) {
+            assertEquals(records.length, tree.stream(order).count(), order.toString());
+        }
+        double[] point = {records[0].x(), records[0].y()};
+        int atPoint = 0;
+        int arsonAtPoint = 0;
+        for (CrimeRecord record : records) {
+            if (record.x() == point[0] && record.y() == point[1]) {
+                atPoint++;
+                arsonAtPoint += record.offense().equals("Arson") ? 1 : 0;
+            }
+        }
+        assertEquals(atPoint, tree.withinRadius(point, 0).size());
+        assertEquals(arsonAtPoint, tree.findPointsInRange(point, point, "Arson").size());
+        assertEquals(Math.min(arsonAtPoint, 5), tree.kNearest(point, 5, "Arson").length);
+        int iterated = 0;
+        for (Iterator<CrimeRecord> iterator = tree.rangeIterator(point, point); iterator.hasNext(); iterator.next()) {
+            iterated++;
+        }
+        assertEquals(atPoint, iterated);
+
+        // Inserting at a known location joins its node; deleting all but one record of a node leaves no tombstone
+        int nodes = tree.nodeCount();
+        CrimeRecord extra = new CrimeRecord(point[0], point[1], 1400, "Elm St", "Arson", "2024-09-28", "12345", "40.1234", "-79.5678");
+        tree.insert(point.clone(), extra);
+        live.add(extra);
+        assertEquals(nodes, tree.nodeCount());
+        assertEquals(arsonAtPoint + 1, tree.findPointsInRange(point, point, "Arson").size());
+        for (int i = live.size() - 1; i >= 0 && tree.countInRange(point, point) > 1; i--) {
+            if (live.get(i).x() == point[0] && live.get(i).y() == point[1]) {
+                assertTrue(tree.delete(live.remove(i)));
+            }
+        }
+        assertEquals(1, tree.countInRange(point, point));
+        assertEquals(0, tree.deletedCount());
+        assertMatchesBruteForce(tree, live, random);
+
+        // Deleting the last record of a node makes it a tombstone, and a record inserted there gets a new node
+        CrimeRecord last = tree.findPointsInRange(point, point).getCrime(0);
+        assertTrue(tree.delete(last));
+        live.remove(last);
+        assertEquals(nodes - 1, tree.nodeCount() - tree.deletedCount());
+        assertEquals(0, tree.withinRadius(point, 0).size());
+        tree.insert(point.clone(), last);
+        live.add(last);
+        assertEquals(nodes, tree.nodeCount() - tree.deletedCount());
+        assertEquals(last, tree.nearestNeighbor(point).getCrimeDetails());
+        assertMatchesBruteForce(tree, live, random);
+        tree.compact();
+        assertEquals(nodes, tree.nodeCount());
+        assertMatchesBruteForce(tree, live, random);
+    }
+
+    @Test
+    void testSignedZeroCoordinatesShareANode() {
+        CrimeRecord negative = new CrimeRecord(-0.0, 5.0, 1300, "Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        CrimeRecord positive = new CrimeRecord(0.0, 5.0, 1400, "Elm St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(new CrimeRecord[]{negative, positive}, 2, true);
+        assertEquals(1, tree.nodeCount());
+        assertEquals(2, tree.countInRange(new double[]{0, 5}, new double[]{0, 5}));
+        assertTrue(tree.delete(positive));
+        assertEquals(negative, tree.nearestNeighbor(new double[]{0, 5}).getCrimeDetails());
+    }
+
+    private static void assertMatchesBruteForce(TwoDTree tree, ArrayList<CrimeRecord> live, Random random) {
+        assertEquals(live.size(), tree.size());
+        assertEquals(live.size(), tree.findPointsInRange(new double[]{0, 0}, new double[]{10_000, 10_000}).size());
+        assertTrue(tree.deletedCount() <= TwoDTree.COMPACTION_THRESHOLD * tree.nodeCount(), "tombstones " + tree.deletedCount());
+        for (int i = 0; i < 20; i++) {
+            double x1 = random.nextDouble() * 10_000;
+            double y1 = random.nextDouble() * 10_000;
+            double[] lowerLeft = {x1, y1};
+            double[] upperRight = {x1 + random.nextDouble() * 5000, y1 + random.nextDouble() * 5000};
+            int expected = 0;
+            for (CrimeRecord record : live) {
+                if (record.x() >= lowerLeft[0] && record.x() <= upperRight[0] && record.y() >= lowerLeft[1] && record.y() <= upperRight[1]) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, tree.findPointsInRange(lowerLeft, upperRight).size());
+            assertEquals(expected, tree.countInRange(lowerLeft, upperRight));
+
+            double[] point = {random.nextDouble() * 10_000, random.nextDouble() * 10_000};
+            double[] distances = new double[live.size()];
+            for (int j = 0; j < distances.length; j++) {
+                distances[j] = Math.hypot(live.get(j).x() - point[0], live.get(j).y() - point[1]);
+            }
+            Arrays.sort(distances);
+            Neighbor[] neighbors = tree.kNearest(point, 5);
+            for (int j = 0; j < neighbors.length; j++) {
+                assertEquals(distances[j], neighbors[j].getDistance(), 1e-9);
+            }
+            assertEquals(distances[0], tree.nearestNeighbor(point).getDistance(), 1e-9);
+        }
+    }
+
+    @Test
+    void testDeleteAndUpdateMatchBruteForce() {
+        Random random = new Random(67);
+        CrimeRecord[] records = new CrimeRecord[4000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                    i + " Main St", "Robbery", "2024-09-28", "12345", "40.1234", "-79.5678");
+        }
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        ArrayList<CrimeRecord> live = new ArrayList<>(Arrays.asList(records));
+
+        for (int round = 0; round < 30; round++) {
+            for (int i = 0; i < 100; i++) {
+                CrimeRecord victim = live.remove(random.nextInt(live.size()));
+                assertTrue(tree.delete(victim));
+                assertFalse(tree.delete(victim));
+            }
+            for (int i = 0; i < 20; i++) {
+                int index = random.nextInt(live.size());
+                CrimeRecord old = live.get(index);
+                CrimeRecord corrected = new CrimeRecord(Math.floor(random.nextDouble() * 10_000), Math.floor(random.nextDouble() * 10_000), 1300,
+                        old.street(), "Aggravated Assault", "2024-09-28", "12345", "40.1234", "-79.5678");
+                assertTrue(tree.update(old, corrected));
+                live.set(index, corrected);
+            }
+            assertMatchesBruteForce(tree, live, random);
+        }
+        int reclassified = 0;
+        for (CrimeRecord record : live) {
+            if (record.offense().equals("Aggravated Assault")) {
+                reclassified++;
+            }
+        }
+        assertEquals(reclassified, tree.findPointsInRange(new double[]{0, 0}, new double[]{10_000, 10_000}, "Aggravated Assault").size());
+
+        tree.compact();
+        assertEquals(0, tree.deletedCount());
+        assertEquals(1.0, tree.balanceRatio());
+        assertMatchesBruteForce(tree, live, random);
+        for (CrimeRecord record : new ArrayList<>(live)) {
+            assertTrue(tree.delete(record));
+        }
+        assertEquals(0, tree.size());
+        assertNull(tree.nearestNeighbor(new double[]{0, 0}).getCrimeDetails());
+        assertEquals(0, tree.countInRange(new double[]{0, 0}, new double[]{10_000, 10_000}));
+    }
+
+    @Test
+    void testDeleteSkipsTombstonesAndDuplicates() {
+        CrimeRecord crime = new CrimeRecord(10.0, 20.0, 1300, "Main St", "Robbery", "3/15/91", "12345", "40.1234", "-79.5678");
+        CrimeRecord other = new CrimeRecord(10.0, 20.0, 1400, "Elm St", "Assault", "3/16/91", "54321", "41.1234", "-80.5678");
+        CrimeRecord[] records = randomRecords(1000, 71);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        for (int i = 0; i < 3; i++) {
+            tree.insert(new double[]{crime.x(), crime.y()}, crime);
+        }
+        tree.insert(new double[]{other.x(), other.y()}, other);
+        LocalDate march = LocalDate.of(1991, 3, 1);
+        assertEquals(4, tree.findPointsInRange(new double[]{10, 20}, new double[]{10, 20}, march, march.plusDays(30)).size());
+
+        // Equal records are deleted one at a time; a record at the same point stays
+        assertTrue(tree.delete(crime));
+        assertEquals(3, tree.findPointsInRange(new double[]{10, 20}, new double[]{10, 20}).size());
+        assertTrue(tree.delete(crime));
+        assertTrue(tree.delete(crime));
+        assertFalse(tree.delete(crime));
+        assertEquals(other, tree.nearestNeighbor(new double[]{10, 20}).getCrimeDetails());
+        assertEquals(0, tree.findPointsInRange(new double[]{10, 20}, new double[]{10, 20}, "Robbery").size());
+        assertEquals(1, tree.findPointsInRange(new double[]{10, 20}, new double[]{10, 20}, march, march.plusDays(30)).size());
+        Iterator<CrimeRecord> iterator = tree.rangeIterator(new double[]{10, 20}, new double[]{10, 20});
+        assertEquals(other, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, tree.withinRadius(new double[]{10, 20}, 0.5).size());
+        assertFalse(tree.update(crime, other));
+        assertEquals(records.length + 1, tree.size());
+    }
+
+    @Test
+    void testDateWindowsStayCorrectAcrossInsertsAndDeletes() {
+        Random random = new Random(97);
+        LocalDate first = LocalDate.of(1991, 1, 1);
+        ArrayList<CrimeRecord> live = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            live.add(datedRecord(random, first, i));
+        }
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(live.toArray(new CrimeRecord[0]), live.size(), false);
+
+        // 1500 changes go past TwoDTree.TEMPORAL_PATCH_MINIMUM, so the index is patched first and rebuilt later
+        for (int round = 0; round < 30; round++) {
+            assertDateWindowsMatchBruteForce(tree, live, random, first);
+            for (int i = 0; i < 25; i++) {
+                CrimeRecord record = datedRecord(random, first, 2000 + 25 * round + i);
+                tree.insert(new double[]{record.x(), record.y()}, record);
+                live.add(record);
+                assertTrue(tree.delete(live.remove(random.nextInt(live.size()))));
+            }
+        }
+        tree.compact();
+        assertDateWindowsMatchBruteForce(tree, live, random, first);
+    }
+
+    private static CrimeRecord datedRecord(Random random, LocalDate first, int i) {
+        return new CrimeRecord(Math.floor(random.nextDouble() * 1000), Math.floor(random.nextDouble() * 1000), 1300, i + " Main St", "Robbery",
+                first.plusDays(random.nextInt(365)).toString(), "12345", "40.1234", "-79.5678");
+    }
+
+    private static void assertDateWindowsMatchBruteForce(TwoDTree tree, List<CrimeRecord> live, Random random, LocalDate first) {
+        for (int query = 0; query < 5; query++) {
+            double x = random.nextDouble() * 800;
+            double y = random.nextDouble() * 800;
+            LocalDate from = first.plusDays(random.nextInt(300));
+            LocalDate to = from.plusDays(random.nextInt(60));
+            List<String> expected = new ArrayList<>();
+            for (CrimeRecord record : live) {
+                LocalDate date = LocalDate.parse(record.date());
+                if (record.x() >= x && record.x() <= x + 200 && record.y() >= y && record.y() <= y + 200 && !date.isBefore(from) && !date.isAfter(to)) {
+                    expected.add(record.street());
+                }
+            }
+            ListOfCrimes found = tree.findPointsInRange(new double[]{x, y}, new double[]{x + 200, y + 200}, from, to);
+            List<String> actual = new ArrayList<>();
+            for (int i = 0; i < found.size(); i++) {
+                actual.add(found.getCrime(i).street());
+            }
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testTraversalOrders() {
+        TwoDTree tree = new TwoDTree();
+        // Root A splits on x, B and C on y: A(50,50) has B(25,70) on the left and C(75,30) on the right, B has D(10,10) and E(30,90)
+        double[][] points = {{50, 50}, {25, 70}, {75, 30}, {10, 10}, {30, 90}};
+        for (int i = 0; i < points.length; i++) {
+            tree.insert(points[i], new CrimeRecord(points[i][0], points[i][1], 1300, String.valueOf((char) ('A' + i)), "Robbery", "3/15/91", "12345", "40.1234", "-79.5678"));
+        }
+        assertEquals("DBEAC", streets(tree, TraversalOrder.INORDER));
+        assertEquals("ABDEC", streets(tree, TraversalOrder.PREORDER));
+        assertEquals("DEBCA", streets(tree, TraversalOrder.POSTORDER));
+        assertEquals("ABCDE", streets(tree, TraversalOrder.LEVEL_ORDER));
+        assertEquals("DEBCA", streets(tree, TraversalOrder.REVERSE_LEVEL_ORDER));
+
+        // The visitor receives the coordinates of each record and can stop the traversal
+        StringBuilder visited = new StringBuilder();
+        assertFalse(tree.traverse(TraversalOrder.PREORDER, (x, y, crimeRecord) -> {
+            assertEquals(x, crimeRecord.x());
+            assertEquals(y, crimeRecord.y());
+            visited.append(crimeRecord.street());
+            return visited.length() < 3;
+        }));
+        assertEquals("ABD", visited.toString());
+        assertTrue(tree.traverse(TraversalOrder.INORDER, (x, y, crimeRecord) -> true));
+
+        // Deleted records are skipped while their subtrees are still walked
+        assertTrue(tree.delete(tree.nearestNeighbor(new double[]{25, 70}).getCrimeDetails()));
+        assertEquals("DEAC", streets(tree, TraversalOrder.INORDER));
+        assertEquals("DECA", streets(tree, TraversalOrder.REVERSE_LEVEL_ORDER));
+
+        // The logging traversals still walk the same nodes
+        tree.inorder();
+        tree.preorder();
+        tree.postorder();
+        tree.levelOrderPrint();
+        tree.reverseLevelOrderPrint();
+        assertEquals(0, new TwoDTree().stream(TraversalOrder.LEVEL_ORDER).count());
+    }
+
+    @Test
+    void testTraversalsVisitEveryRecordOnce() {
+        CrimeRecord[] records = randomRecords(5000, 83);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        CrimeRecord[] sorted = records.clone();
+        Arrays.sort(sorted, (a, b) -> a.toString().compareTo(b.toString()));
+        for (TraversalOrder order : TraversalOrder.values()) {
+            CrimeRecord[] visited = tree.stream(order).toArray(CrimeRecord[]::new);
+            Arrays.sort(visited, (a, b) -> a.toString().compareTo(b.toString()));
+            assertArrayEquals(sorted, visited, order.toString());
+            List<CrimeRecord> traversed = new ArrayList<>();
+            tree.traverse(order, (x, y, crimeRecord) -> traversed.add(crimeRecord));
+            assertEquals(tree.stream(order).toList(), traversed, order.toString());
+        }
+    }
+
+    @Test
+    void testQueriesOnVirtualThreadsReuseTraversalStacks() throws Exception {
+        CrimeRecord[] records = randomRecords(5000, 89);
+        TwoDTree tree = new TwoDTree();
+        tree.bulkLoad(records.clone(), records.length, false);
+        double[] lowerLeft = {2000, 2000};
+        double[] upperRight = {4000, 4000};
+        int expected = tree.findPointsInRange(lowerLeft, upperRight).size();
+
+        long allocatedBefore = TwoDTree.stacksAllocated();
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2000; i++) {
+                double[] point = {i * 5.0, i * 5.0};
+                results.add(executor.submit(() -> {
+                    assertNotNull(tree.nearestNeighbor(point));
+                    return tree.findPointsInRange(lowerLeft, upperRight).size();
+                }));
+            }
+        }
+        for (Future<Integer> result : results) {
+            assertEquals(expected, result.get());
+        }
+        // 4000 queries ran on 2000 threads; a new stack is only made when every pooled one is held at the same time
+        assertTrue(TwoDTree.stacksAllocated() - allocatedBefore <= TwoDTree.STACK_POOL_SIZE);
+    }
+
+    private static String streets(TwoDTree tree, TraversalOrder order) {
+        StringBuilder streets = new StringBuilder();
+        tree.stream(order).forEach(crimeRecord -> streets.append(crimeRecord.street()));
+        return streets.toString();
+    }
+}